@@ -20,6 +20,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
@@ -27,6 +28,8 @@
 import org.smartdata.SmartContext;
 import org.smartdata.protocol.message.ActionStatus;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
@@ -39,11 +42,15 @@
 @Getter
 public abstract class SmartAction {
   private static final Logger LOG = LoggerFactory.getLogger(SmartAction.class);
+  // Reports can be lost, so the whole output is resent periodically and on finish
+  private static final long FULL_OUTPUT_REPORT_INTERVAL_MS = 60_000L;
 
   private final ByteArrayOutputStream resultOutputStream;
   private final PrintStream resultPrintStream;
   private final ByteArrayOutputStream logOutputStream;
   private final PrintStream logPrintStream;
+  private final ReportCursor resultCursor;
+  private final ReportCursor logCursor;
 
   @Setter
   private long cmdletId;
@@ -61,6 +68,7 @@ public abstract class SmartAction {
   private Map<String, String> arguments;
   private long startTime;
   private long finishTime;
+  private long fullOutputReportTime;
 
   private volatile boolean successful;
   private volatile boolean finished;
@@ -72,6 +80,8 @@ public SmartAction() {
     this.resultPrintStream = new PrintStream(resultOutputStream, false);
     this.logOutputStream = new ByteArrayOutputStream(64 * 1024);
     this.logPrintStream = new PrintStream(logOutputStream, false);
+    this.resultCursor = new ReportCursor();
+    this.logCursor = new ReportCursor();
   }
 
   /**
@@ -146,6 +156,44 @@ public ActionStatus getActionStatus() {
         finished);
   }
 
+  /**
+   * Returns the action status containing only the result and log
+   * appended since the previous call of this method. The whole result
+   * and log are returned with the zero offsets once in a while and
+   * in the status of the finished action.
+   */
+  public synchronized ActionStatus pollActionStatus() {
+    // the whole output is written before the action is marked as finished
+    boolean isFinished = finished;
+    long now = System.currentTimeMillis();
+    boolean fullOutput = isFinished
+        || now - fullOutputReportTime >= FULL_OUTPUT_REPORT_INTERVAL_MS;
+    if (fullOutput) {
+      resultCursor.reset();
+      logCursor.reset();
+      fullOutputReportTime = now;
+    }
+    long resultOffset = resultCursor.reportedChars;
+    String result = resultCursor.poll(resultOutputStream, isFinished);
+    long logOffset = logCursor.reportedChars;
+    String log = logCursor.poll(logOutputStream, isFinished);
+
+    ActionStatus status = new ActionStatus(
+        cmdletId,
+        lastAction,
+        actionId,
+        getProgress(),
+        result,
+        log,
+        startTime,
+        finishTime,
+        throwable,
+        isFinished);
+    status.setResultOffset(resultOffset);
+    status.setLogOffset(logOffset);
+    return status;
+  }
+
   private void stop() {
     logPrintStream.close();
     resultPrintStream.close();
@@ -156,4 +204,58 @@ public boolean getExpectedAfterRun() {
     ActionStatus actionStatus = getActionStatus();
     return actionStatus.isFinished() && actionStatus.getThrowable() == null;
   }
+
+  /**
+   * Position of the action output already included in the polled statuses.
+   */
+  private static class ReportCursor {
+    private int reportedBytes;
+    private long reportedChars;
+
+    private void reset() {
+      reportedBytes = 0;
+      reportedChars = 0;
+    }
+
+    /**
+     * Returns the output written since the previous poll. The incomplete
+     * character at the end of the unfinished output is left for the next poll.
+     */
+    private String poll(ByteArrayOutputStream outputStream, boolean isFinished) {
+      if (outputStream.size() == reportedBytes) {
+        return "";
+      }
+      // the input stream is backed by the current buffers without copying them
+      try (InputStream input = outputStream.toInputStream()) {
+        IOUtils.skipFully(input, reportedBytes);
+        byte[] newBytes = IOUtils.toByteArray(input);
+        int length = isFinished ? newBytes.length : completeCharsLength(newBytes);
+        String text = new String(newBytes, 0, length, StandardCharsets.UTF_8);
+        reportedBytes += length;
+        reportedChars += text.length();
+        return text;
+      } catch (IOException e) {
+        // in-memory streams don't throw
+        throw new IllegalStateException(e);
+      }
+    }
+
+    /**
+     * Returns the length of the bytes without the trailing incomplete
+     * UTF-8 sequence, if any.
+     */
+    private static int completeCharsLength(byte[] bytes) {
+      // sequences are at most 4 bytes long
+      for (int i = bytes.length - 1; i >= Math.max(0, bytes.length - 4); i--) {
+        int head = bytes[i] & 0xFF;
+        if ((head & 0xC0) == 0x80) {
+          // continuation byte
+          continue;
+        }
+        int sequenceLength = head >= 0xF0 ? 4 : head >= 0xE0 ? 3 : head >= 0xC0 ? 2 : 1;
+        return i + sequenceLength > bytes.length ? i : bytes.length;
+      }
+      return bytes.length;
+    }
+  }
 }
@@ -140,6 +140,32 @@ public void reportFileAccessEvent(FileAccessEvent event)
     maybeUpdateActiveSmartServer(reportedServerHandle);
   }
 
+  @Override
+  public void reportFileAccessEvents(List<FileAccessEvent> events)
+      throws IOException {
+    List<FileAccessEvent> eventsToReport = events.stream()
+        .filter(event -> !shouldIgnore(event.getPath()))
+        .collect(Collectors.toList());
+    if (eventsToReport.isEmpty()) {
+      return;
+    }
+    checkOpen();
+
+    IOException lastException = null;
+    for (SmartServerHandle serverHandle : smartServerHandles.handles()) {
+      try {
+        serverHandle.getProtocol().reportFileAccessEvents(eventsToReport);
+        maybeUpdateActiveSmartServer(serverHandle);
+        return;
+      } catch (IOException exception) {
+        lastException = exception;
+      }
+    }
+
+    throw new IOException(
+        "Failed to report access events to SSM servers", lastException);
+  }
+
   @Override
   public FileState getFileState(String filePath) throws IOException {
     checkOpen();
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.client.fileaccess;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.client.SmartServerHandle;
+import org.smartdata.client.SmartServerHandles;
+import org.smartdata.metrics.FileAccessEvent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Report file access events asynchronously. Events are put into the bounded
+ * buffer without blocking the caller and are reported to the smart servers
+ * by the background thread either periodically or when the buffer contains
+ * enough events. Accesses of the same file are coalesced into a single event
+ * with the access count and the time of the last access.
+ * If the buffer is full, new events are dropped.
+ */
+public class BatchedFileAccessReportStrategy implements FileAccessReportStrategy {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(BatchedFileAccessReportStrategy.class);
+
+  private final SmartServerHandles smartServerHandles;
+  private final BlockingQueue<FileAccessEvent> eventBuffer;
+  private final int batchSize;
+  private final long flushIntervalMs;
+  private final ScheduledExecutorService flushExecutor;
+  private final AtomicBoolean flushRequested;
+
+  private final AtomicLong droppedEvents;
+  private final AtomicLong reportedEvents;
+  private final AtomicLong failedEvents;
+  private final AtomicLong sentEvents;
+
+  private volatile SmartServerHandle lastReportedServer;
+  private long lastLoggedDroppedEvents;
+
+  public BatchedFileAccessReportStrategy(
+      SmartServerHandles smartServerHandles,
+      int bufferSize,
+      int batchSize,
+      long flushIntervalMs) {
+    this.smartServerHandles = smartServerHandles;
+    this.eventBuffer = new ArrayBlockingQueue<>(bufferSize);
+    this.batchSize = batchSize;
+    this.flushIntervalMs = flushIntervalMs;
+    this.flushRequested = new AtomicBoolean(false);
+    this.droppedEvents = new AtomicLong();
+    this.reportedEvents = new AtomicLong();
+    this.failedEvents = new AtomicLong();
+    this.sentEvents = new AtomicLong();
+    this.lastReportedServer = smartServerHandles.activeServer();
+
+    this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "smart-client-access-report");
+      thread.setDaemon(true);
+      return thread;
+    });
+    flushExecutor.scheduleWithFixedDelay(
+        this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Buffers file access event without blocking.
+   * @return Handle of the Smart Server to which the last batch
+   * of events was successfully sent.
+   */
+  @Override
+  public SmartServerHandle reportFileAccessEvent(FileAccessEvent event) {
+    FileAccessEvent timedEvent = event.getTimestamp() > 0
+        ? event
+        : new FileAccessEvent(event.getPath(), System.currentTimeMillis(),
+            event.getAccessedBy(), event.getAccessCount());
+
+    if (!eventBuffer.offer(timedEvent)) {
+      droppedEvents.incrementAndGet();
+    } else if (eventBuffer.size() >= batchSize) {
+      requestFlush();
+    }
+    return lastReportedServer;
+  }
+
+  private void requestFlush() {
+    if (flushRequested.compareAndSet(false, true)) {
+      try {
+        flushExecutor.execute(this::flush);
+      } catch (Exception e) {
+        // strategy is closed
+        flushRequested.set(false);
+      }
+    }
+  }
+
+  private void flush() {
+    flushRequested.set(false);
+    try {
+      List<FileAccessEvent> drainedEvents = new ArrayList<>(batchSize);
+      while (eventBuffer.drainTo(drainedEvents, batchSize) > 0) {
+        report(coalesce(drainedEvents), drainedEvents.size());
+        drainedEvents.clear();
+      }
+      logDroppedEvents();
+    } catch (Exception e) {
+      LOG.error("Error reporting file access events", e);
+    }
+  }
+
+  private List<FileAccessEvent> coalesce(List<FileAccessEvent> events) {
+    Map<String, FileAccessEvent> coalescedEvents = new LinkedHashMap<>();
+    for (FileAccessEvent event : events) {
+      coalescedEvents.merge(event.getPath(), event, this::merge);
+    }
+    return new ArrayList<>(coalescedEvents.values());
+  }
+
+  private FileAccessEvent merge(FileAccessEvent first, FileAccessEvent second) {
+    FileAccessEvent lastEvent = first.getTimestamp() > second.getTimestamp()
+        ? first : second;
+    return new FileAccessEvent(
+        lastEvent.getPath(),
+        lastEvent.getTimestamp(),
+        lastEvent.getAccessedBy(),
+        first.getAccessCount() + second.getAccessCount());
+  }
+
+  private void report(List<FileAccessEvent> events, int accessCount) {
+    for (SmartServerHandle serverHandle : smartServerHandles.handles()) {
+      try {
+        serverHandle.getProtocol().reportFileAccessEvents(events);
+        lastReportedServer = serverHandle;
+        reportedEvents.addAndGet(accessCount);
+        sentEvents.addAndGet(events.size());
+        return;
+      } catch (IOException exception) {
+        LOG.debug("Failed to report access events to {}", serverHandle, exception);
+      }
+    }
+
+    failedEvents.addAndGet(accessCount);
+    LOG.warn("Failed to report {} access events to SSM servers, skipping them", accessCount);
+  }
+
+  private void logDroppedEvents() {
+    long currentDroppedEvents = droppedEvents.get();
+    if (currentDroppedEvents > lastLoggedDroppedEvents) {
+      LOG.warn("{} file access events were dropped due to the full report buffer",
+          currentDroppedEvents - lastLoggedDroppedEvents);
+      lastLoggedDroppedEvents = currentDroppedEvents;
+    }
+  }
+
+  /**
+   * Returns the number of events dropped because of the buffer overflow.
+   */
+  public long getDroppedEvents() {
+    return droppedEvents.get();
+  }
+
+  /**
+   * Returns the number of events successfully reported to the smart server.
+   */
+  public long getReportedEvents() {
+    return reportedEvents.get();
+  }
+
+  /**
+   * Returns the number of events failed to be reported to all smart servers.
+   */
+  public long getFailedEvents() {
+    return failedEvents.get();
+  }
+
+  /**
+   * Returns the number of coalesced events actually sent to the smart server.
+   */
+  public long getSentEvents() {
+    return sentEvents.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (flushExecutor.isShutdown()) {
+      return;
+    }
+    // report remaining events before closing
+    flushExecutor.execute(this::flush);
+    flushExecutor.shutdown();
+    try {
+      if (!flushExecutor.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS)) {
+        flushExecutor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      flushExecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -36,6 +36,25 @@ public interface FileAccessReportStrategy extends Closeable {
 
   static FileAccessReportStrategy from(
       Configuration config, SmartServerHandles smartServerHandles) {
+    boolean batchReportEnabled = config.getBoolean(
+        SmartConfKeys.SMART_CLIENT_BATCH_REPORT_ENABLED,
+        SmartConfKeys.SMART_CLIENT_BATCH_REPORT_ENABLED_DEFAULT);
+
+    if (batchReportEnabled) {
+      int bufferSize = config.getInt(
+          SmartConfKeys.SMART_CLIENT_BATCH_REPORT_BUFFER_SIZE_KEY,
+          SmartConfKeys.SMART_CLIENT_BATCH_REPORT_BUFFER_SIZE_DEFAULT);
+      int batchSize = config.getInt(
+          SmartConfKeys.SMART_CLIENT_BATCH_REPORT_BATCH_SIZE_KEY,
+          SmartConfKeys.SMART_CLIENT_BATCH_REPORT_BATCH_SIZE_DEFAULT);
+      long flushIntervalMs = config.getLong(
+          SmartConfKeys.SMART_CLIENT_BATCH_REPORT_FLUSH_INTERVAL_MS_KEY,
+          SmartConfKeys.SMART_CLIENT_BATCH_REPORT_FLUSH_INTERVAL_MS_DEFAULT);
+
+      return new BatchedFileAccessReportStrategy(
+          smartServerHandles, bufferSize, batchSize, flushIntervalMs);
+    }
+
     boolean parallelReportEnabled = config.getBoolean(
         SmartConfKeys.SMART_CLIENT_CONCURRENT_REPORT_ENABLED,
         SmartConfKeys.SMART_CLIENT_CONCURRENT_REPORT_ENABLED_DEFAULT);
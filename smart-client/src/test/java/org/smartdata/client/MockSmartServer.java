@@ -24,7 +24,10 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MockSmartServer implements SmartClientProtocol {
   private final boolean failReportAccessEvent;
@@ -32,6 +35,7 @@ public class MockSmartServer implements SmartClientProtocol {
   private final long delayMs;
   private final Map<String, FileState> expectedFileStates;
   private final Map<String, Integer> reportedAccessCounts;
+  private final AtomicInteger reportedBatches;
 
   private MockSmartServer(
       boolean failReportAccessEvent,
@@ -42,7 +46,8 @@ private MockSmartServer(
     this.failGetFileState = failGetFileState;
     this.expectedFileStates = expectedFileStates;
     this.delayMs = delayMs;
-    this.reportedAccessCounts = new HashMap<>();
+    this.reportedAccessCounts = new ConcurrentHashMap<>();
+    this.reportedBatches = new AtomicInteger();
   }
 
   @Override
@@ -55,6 +60,18 @@ public void reportFileAccessEvent(FileAccessEvent event) throws IOException {
     reportedAccessCounts.merge(event.getPath(), 1, Integer::sum);
   }
 
+  @Override
+  public void reportFileAccessEvents(List<FileAccessEvent> events) throws IOException {
+    if (failReportAccessEvent) {
+      throw new IOException();
+    }
+
+    maybeSleep();
+    reportedBatches.incrementAndGet();
+    events.forEach(event ->
+        reportedAccessCounts.merge(event.getPath(), event.getAccessCount(), Integer::sum));
+  }
+
   @Override
   public FileState getFileState(String filePath) throws IOException {
     if (failGetFileState) {
@@ -81,6 +98,10 @@ public Map<String, Integer> getReportedAccessCounts() {
     return reportedAccessCounts;
   }
 
+  public int getReportedBatches() {
+    return reportedBatches.get();
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.client.fileaccess;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+import org.smartdata.client.MockSmartServer;
+import org.smartdata.client.SmartServerHandle;
+import org.smartdata.client.SmartServerHandles;
+import org.smartdata.metrics.FileAccessEvent;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.smartdata.client.MockSmartServer.activeServerHandle;
+import static org.smartdata.client.MockSmartServer.standbyServerHandle;
+import static org.smartdata.conf.SmartConfKeys.SMART_CLIENT_BATCH_REPORT_BATCH_SIZE_KEY;
+import static org.smartdata.conf.SmartConfKeys.SMART_CLIENT_BATCH_REPORT_BUFFER_SIZE_KEY;
+import static org.smartdata.conf.SmartConfKeys.SMART_CLIENT_BATCH_REPORT_ENABLED;
+import static org.smartdata.conf.SmartConfKeys.SMART_CLIENT_BATCH_REPORT_FLUSH_INTERVAL_MS_KEY;
+
+public class BatchedFileAccessReportStrategyTest {
+
+  private Configuration getConfig(int bufferSize, int batchSize, long flushIntervalMs) {
+    Configuration config = new Configuration();
+    config.setBoolean(SMART_CLIENT_BATCH_REPORT_ENABLED, true);
+    config.setInt(SMART_CLIENT_BATCH_REPORT_BUFFER_SIZE_KEY, bufferSize);
+    config.setInt(SMART_CLIENT_BATCH_REPORT_BATCH_SIZE_KEY, batchSize);
+    config.setLong(SMART_CLIENT_BATCH_REPORT_FLUSH_INTERVAL_MS_KEY, flushIntervalMs);
+    return config;
+  }
+
+  @Test
+  public void testCoalesceAccessEvents() throws IOException {
+    SmartServerHandle activeServerHandle = activeServerHandle(new InetSocketAddress(1));
+    List<SmartServerHandle> serverHandles = Arrays.asList(
+        standbyServerHandle(new InetSocketAddress(2)),
+        activeServerHandle);
+
+    Map<String, Integer> expectedFileAccessCounts = new HashMap<>();
+    expectedFileAccessCounts.put("/test0", 3);
+    expectedFileAccessCounts.put("/test1", 1);
+    expectedFileAccessCounts.put("/test2", 2);
+
+    BatchedFileAccessReportStrategy strategy = (BatchedFileAccessReportStrategy)
+        FileAccessReportStrategy.from(
+            getConfig(100, 100, 60000), new SmartServerHandles(serverHandles));
+    try {
+      expectedFileAccessCounts.forEach((file, count) -> {
+        for (int i = 0; i < count; i++) {
+          strategy.reportFileAccessEvent(new FileAccessEvent(file));
+        }
+      });
+    } finally {
+      strategy.close();
+    }
+
+    MockSmartServer activeServer = (MockSmartServer) activeServerHandle.getProtocol();
+    assertEquals(expectedFileAccessCounts, activeServer.getReportedAccessCounts());
+    assertEquals(1, activeServer.getReportedBatches());
+    assertEquals(6, strategy.getReportedEvents());
+    assertEquals(3, strategy.getSentEvents());
+    assertEquals(activeServerHandle, strategy.reportFileAccessEvent(new FileAccessEvent("/")));
+  }
+
+  @Test
+  public void testFlushByBatchSize() throws Exception {
+    SmartServerHandle activeServerHandle = activeServerHandle(new InetSocketAddress(1));
+    MockSmartServer activeServer = (MockSmartServer) activeServerHandle.getProtocol();
+
+    try (FileAccessReportStrategy strategy = FileAccessReportStrategy.from(
+        getConfig(100, 5, 60000),
+        new SmartServerHandles(Arrays.asList(activeServerHandle)))) {
+      for (int i = 0; i < 5; i++) {
+        strategy.reportFileAccessEvent(new FileAccessEvent("/test" + i));
+      }
+
+      long deadline = System.currentTimeMillis() + 10000;
+      while (activeServer.getReportedBatches() == 0
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, activeServer.getReportedBatches());
+      assertEquals(5, activeServer.getReportedAccessCounts().size());
+    }
+  }
+
+  @Test
+  public void testDropEventsOnOverflow() throws IOException {
+    SmartServerHandle activeServerHandle = MockSmartServer.activeServerHandle(
+        new InetSocketAddress(1));
+
+    BatchedFileAccessReportStrategy strategy = new BatchedFileAccessReportStrategy(
+        new SmartServerHandles(Arrays.asList(activeServerHandle)), 10, 100, 60000);
+    try {
+      for (int i = 0; i < 15; i++) {
+        strategy.reportFileAccessEvent(new FileAccessEvent("/test"));
+      }
+      assertEquals(5, strategy.getDroppedEvents());
+    } finally {
+      strategy.close();
+    }
+
+    MockSmartServer activeServer = (MockSmartServer) activeServerHandle.getProtocol();
+    assertEquals(10, (int) activeServer.getReportedAccessCounts().get("/test"));
+  }
+
+  @Test
+  public void testSkipEventsIfNoActiveServer() throws IOException {
+    BatchedFileAccessReportStrategy strategy = new BatchedFileAccessReportStrategy(
+        new SmartServerHandles(Arrays.asList(
+            standbyServerHandle(new InetSocketAddress(1)),
+            standbyServerHandle(new InetSocketAddress(2)))),
+        10, 10, 60000);
+    try {
+      strategy.reportFileAccessEvent(new FileAccessEvent("/test"));
+    } finally {
+      strategy.close();
+    }
+
+    assertEquals(1, strategy.getFailedEvents());
+    assertTrue(strategy.getReportedEvents() == 0);
+  }
+}
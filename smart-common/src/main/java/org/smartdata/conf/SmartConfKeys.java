@@ -31,6 +31,18 @@ public class SmartConfKeys {
 
     public static final String SMART_NAMESPACE_FETCHER_BATCH_KEY = "smart.namespace.fetcher.batch";
     public static final int SMART_NAMESPACE_FETCHER_BATCH_DEFAULT = 500;
+    public static final String SMART_NAMESPACE_FETCHER_MAX_BATCH_KEY =
+            "smart.namespace.fetcher.batch.max";
+    public static final int SMART_NAMESPACE_FETCHER_MAX_BATCH_DEFAULT = 5000;
+    public static final String SMART_NAMESPACE_FETCHER_MAX_PENDING_BATCHES_KEY =
+            "smart.namespace.fetcher.pending.batches.max";
+    public static final int SMART_NAMESPACE_FETCHER_MAX_PENDING_BATCHES_DEFAULT = 40;
+    public static final String SMART_NAMESPACE_FETCHER_ESTIMATE_TOTAL_KEY =
+            "smart.namespace.fetcher.estimate.total";
+    public static final boolean SMART_NAMESPACE_FETCHER_ESTIMATE_TOTAL_DEFAULT = true;
+    public static final String SMART_NAMESPACE_FETCHER_FSIMAGE_PATH_KEY =
+            "smart.namespace.fetcher.fsimage.path";
+    public static final String SMART_NAMESPACE_FETCHER_FSIMAGE_PATH_DEFAULT = "";
 
     public static final String SMART_DFS_NAMENODE_RPCSERVER_KEY = "smart.dfs.namenode.rpcserver";
 
@@ -39,6 +51,9 @@ public class SmartConfKeys {
             "smart.namespace.fetcher.ignore.unsuccessive.inotify.event";
     public static final boolean SMART_NAMESPACE_FETCHER_IGNORE_UNSUCCESSIVE_INOTIFY_EVENT_DEFAULT =
             false;
+    public static final String SMART_INOTIFY_APPLY_BATCH_SIZE_KEY =
+            "smart.inotify.apply.batch.size";
+    public static final int SMART_INOTIFY_APPLY_BATCH_SIZE_DEFAULT = 1000;
     public static final String SMART_NAMESPACE_FETCHER_PRODUCERS_NUM_KEY =
             "smart.namespace.fetcher.producers.num";
     public static final int SMART_NAMESPACE_FETCHER_PRODUCERS_NUM_DEFAULT = 3;
@@ -78,6 +93,14 @@ public class SmartConfKeys {
             "smart.file.access.count.aggregator.failover.retry.count";
     public static final int SMART_ACCESS_COUNT_AGGREGATOR_FAILOVER_MAX_RETRIES_DEFAULT = 60;
 
+    public static final String SMART_ACCESS_COUNT_AGGREGATION_BUCKET_MS_KEY =
+            "smart.file.access.count.aggregation.bucket.ms";
+    public static final long SMART_ACCESS_COUNT_AGGREGATION_BUCKET_MS_DEFAULT = 5000L;
+
+    public static final String SMART_ACCESS_COUNT_PATH_CACHE_SIZE_KEY =
+            "smart.file.access.count.path.cache.size";
+    public static final long SMART_ACCESS_COUNT_PATH_CACHE_SIZE_DEFAULT = 1000000L;
+
     public static final String SMART_FILE_ACCESS_PARTITIONS_RETENTION_POLICY_KEY =
             "smart.file.access.partition.retention.policy";
 
@@ -89,9 +112,6 @@ public class SmartConfKeys {
             "smart.cached.file.fetch.interval.ms";
     public static final long SMART_CACHED_FILE_FETCH_INTERVAL_MS_DEFAULT = 5 * 1000L;
 
-    public static final String SMART_NAMESPACE_FETCH_INTERVAL_MS_KEY =
-            "smart.namespace.fetch.interval.ms";
-    public static final long SMART_NAMESPACE_FETCH_INTERVAL_MS_DEFAULT = 1L;
 
     // File access partitions
   public static final String SMART_FILE_ACCESS_PARTITIONS_RETENTION_COUNT_KEY =
@@ -103,6 +123,16 @@ public class SmartConfKeys {
     // RuleManager
     public static final String SMART_RULE_EXECUTORS_KEY = "smart.rule.executors";
     public static final int SMART_RULE_EXECUTORS_DEFAULT = 5;
+    public static final String SMART_RULE_ACCESS_COUNT_SETTLE_DELAY_MS_KEY =
+            "smart.rule.access.count.settle.delay.ms";
+    public static final long SMART_RULE_ACCESS_COUNT_SETTLE_DELAY_MS_DEFAULT = 30000L;
+    public static final String SMART_RULE_QUERY_TIMEOUT_MS_KEY = "smart.rule.query.timeout.ms";
+    public static final long SMART_RULE_QUERY_TIMEOUT_MS_DEFAULT = 300000L;
+    public static final String SMART_RULE_SUBMIT_BATCH_SIZE_KEY = "smart.rule.submit.batch.size";
+    public static final int SMART_RULE_SUBMIT_BATCH_SIZE_DEFAULT = 1000;
+    public static final String SMART_RULE_SUBMIT_WAIT_TIMEOUT_MS_KEY =
+            "smart.rule.submit.wait.timeout.ms";
+    public static final long SMART_RULE_SUBMIT_WAIT_TIMEOUT_MS_DEFAULT = 60000L;
 
     public static final String SMART_CMDLET_EXECUTORS_KEY = "smart.cmdlet.executors";
     public static final int SMART_CMDLET_EXECUTORS_DEFAULT = 10;
@@ -134,9 +164,25 @@ public class SmartConfKeys {
             "smart.cmdlet.cache.batch";
     public static final int SMART_CMDLET_CACHE_BATCH_DEFAULT =
             600;
+    public static final String SMART_CMDLET_CACHE_SYNC_MAX_DELAY_MS_KEY =
+            "smart.cmdlet.cache.sync.max.delay.ms";
+    public static final long SMART_CMDLET_CACHE_SYNC_MAX_DELAY_MS_DEFAULT = 200;
     public static final String SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_SRV_INST_KEY =
             "smart.cmdlet.mover.max.concurrent.blocks.per.srv.inst";
     public static final int SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_SRV_INST_DEFAULT = 0;
+    public static final String SMART_CMDLET_MOVER_BLOCK_MOVE_THREADS_KEY =
+            "smart.cmdlet.mover.block.move.threads";
+    public static final int SMART_CMDLET_MOVER_BLOCK_MOVE_THREADS_DEFAULT = 32;
+    public static final String SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_DATANODE_KEY =
+            "smart.cmdlet.mover.max.concurrent.blocks.per.datanode";
+    public static final int SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_DATANODE_DEFAULT = 10;
+    public static final String SMART_CMDLET_SCHEDULER_ACTION_WEIGHTS_KEY =
+            "smart.cmdlet.scheduler.action.weights";
+    public static final String SMART_CMDLET_SCHEDULER_RESERVED_SLOTS_KEY =
+            "smart.cmdlet.scheduler.reserved.slots";
+    public static final String SMART_CMDLET_SCHEDULER_RULE_MAX_ACTIVE_KEY =
+            "smart.cmdlet.scheduler.rule.max.active";
+    public static final int SMART_CMDLET_SCHEDULER_RULE_MAX_ACTIVE_DEFAULT = 0;
 
     // Schedulers
     public static final String SMART_COPY_SCHEDULER_BASE_SYNC_BATCH_KEY =
@@ -168,6 +214,17 @@ public class SmartConfKeys {
         "smart.copy.scheduler.diff.cache.sync.threshold";
     public static final int SMART_COPY_SCHEDULER_DIFF_CACHE_SYNC_THRESHOLD_DEFAULT =
         500;
+    public static final String SMART_COPY_SCHEDULER_PENDING_DIFF_BATCH_KEY =
+        "smart.copy.scheduler.pending.diff.batch";
+    public static final int SMART_COPY_SCHEDULER_PENDING_DIFF_BATCH_DEFAULT =
+        5000;
+    public static final String SMART_COPY_SCHEDULER_PENDING_DIFF_RESCAN_INTERVAL_MS_KEY =
+        "smart.copy.scheduler.pending.diff.rescan.interval.ms";
+    public static final long SMART_COPY_SCHEDULER_PENDING_DIFF_RESCAN_INTERVAL_MS_DEFAULT =
+        10 * 60 * 1000L;
+    public static final String SMART_COPY_SCHEDULER_PENDING_DIFF_GRACE_IDS_KEY =
+        "smart.copy.scheduler.pending.diff.grace.ids";
+    public static final int SMART_COPY_SCHEDULER_PENDING_DIFF_GRACE_IDS_DEFAULT = 1000;
 
     public static final String SMART_FILE_DIFF_MAX_NUM_RECORDS_KEY =
             "smart.file.diff.max.num.records";
@@ -177,6 +234,12 @@ public class SmartConfKeys {
     public static final String SMART_MOVER_SCHEDULER_REPORT_FETCH_INTERVAL_MS_KEY =
             "smart.mover.scheduler.storage.report.fetch.interval.ms";
     public static final long SMART_MOVER_SCHEDULER_REPORT_FETCH_INTERVAL_MS_DEFAULT = 2 * 60 * 1000;
+    public static final String SMART_MOVER_SCHEDULER_PLANNING_THREADS_KEY =
+            "smart.mover.scheduler.planning.threads";
+    public static final int SMART_MOVER_SCHEDULER_PLANNING_THREADS_DEFAULT = 4;
+    public static final String SMART_MOVER_SCHEDULER_PREPARED_PLANS_KEY =
+            "smart.mover.scheduler.prepared.plans";
+    public static final int SMART_MOVER_SCHEDULER_PREPARED_PLANS_DEFAULT = 200;
 
     public static final String SMART_SMALL_FILE_METASTORE_INSERT_BATCH_SIZE_KEY =
             "smart.metastore.small-file.insert.batch.size";
@@ -197,6 +260,19 @@ public class SmartConfKeys {
     public static final long SMART_ACTION_MOVE_THROTTLE_MB_DEFAULT = 0L;  // 0 means unlimited
     public static final String SMART_ACTION_COPY_THROTTLE_MB_KEY = "smart.action.copy.throttle.mb";
     public static final long SMART_ACTION_COPY_THROTTLE_MB_DEFAULT = 0L;  // 0 means unlimited
+    public static final String SMART_ACTION_COPY_PARALLEL_THRESHOLD_KEY =
+            "smart.action.copy.parallel.threshold";
+    public static final long SMART_ACTION_COPY_PARALLEL_THRESHOLD_DEFAULT =
+            1024L * 1024 * 1024;  // 0 disables parallel copy
+    public static final String SMART_ACTION_COPY_PARALLEL_STREAMS_KEY =
+            "smart.action.copy.parallel.streams";
+    public static final int SMART_ACTION_COPY_PARALLEL_STREAMS_DEFAULT = 8;
+    public static final String SMART_ACTION_COPY_PARALLEL_BLOCKS_PER_PART_KEY =
+            "smart.action.copy.parallel.blocks.per.part";
+    public static final int SMART_ACTION_COPY_PARALLEL_BLOCKS_PER_PART_DEFAULT = 4;
+    public static final String SMART_ACTION_COPY_PARALLEL_PART_RETRIES_KEY =
+            "smart.action.copy.parallel.part.retries";
+    public static final int SMART_ACTION_COPY_PARALLEL_PART_RETRIES_DEFAULT = 3;
     public static final String SMART_ACTION_EC_THROTTLE_MB_KEY = "smart.action.ec.throttle.mb";
     public static final long SMART_ACTION_EC_THROTTLE_MB_DEFAULT = 0L;
     public static final String SMART_ACTION_LOCAL_EXECUTION_DISABLED_KEY =
@@ -267,6 +343,12 @@ public class SmartConfKeys {
     public static final String SMART_COMPRESSION_CODEC_DEFAULT = "Zlib";
     public static final String SMART_COMPRESSION_MAX_SPLIT = "smart.compression.max.split";
     public static final int SMART_COMPRESSION_MAX_SPLIT_DEFAULT = 1000;
+    public static final String SMART_COMPRESSION_WORKERS_NUM_KEY =
+            "smart.compression.workers.num";
+    public static final int SMART_COMPRESSION_WORKERS_NUM_DEFAULT = 1;
+    public static final String SMART_COMPRESSION_INPUT_CACHED_CHUNKS_KEY =
+            "smart.compression.input.cached.chunks";
+    public static final int SMART_COMPRESSION_INPUT_CACHED_CHUNKS_DEFAULT = 4;
 
     // Enable current report or not in SSM HA mode.
     public static final String SMART_CLIENT_CONCURRENT_REPORT_ENABLED =
@@ -277,6 +359,41 @@ public class SmartConfKeys {
             "smart.client.report.tasks.timeout.ms";
     public static final long SMART_CLIENT_REPORT_TASKS_TIMEOUT_MS_DEFAULT = 2000;
 
+    // Report file access events asynchronously in coalesced batches
+    public static final String SMART_CLIENT_BATCH_REPORT_ENABLED =
+            "smart.client.batch.report.enabled";
+    public static final boolean SMART_CLIENT_BATCH_REPORT_ENABLED_DEFAULT = false;
+
+    public static final String SMART_CLIENT_BATCH_REPORT_BUFFER_SIZE_KEY =
+            "smart.client.batch.report.buffer.size";
+    public static final int SMART_CLIENT_BATCH_REPORT_BUFFER_SIZE_DEFAULT = 10000;
+
+    public static final String SMART_CLIENT_BATCH_REPORT_BATCH_SIZE_KEY =
+            "smart.client.batch.report.batch.size";
+    public static final int SMART_CLIENT_BATCH_REPORT_BATCH_SIZE_DEFAULT = 1000;
+
+    public static final String SMART_CLIENT_BATCH_REPORT_FLUSH_INTERVAL_MS_KEY =
+            "smart.client.batch.report.flush.interval.ms";
+    public static final long SMART_CLIENT_BATCH_REPORT_FLUSH_INTERVAL_MS_DEFAULT = 1000;
+
+    // Cache file states in the client to avoid requesting them on every operation
+    public static final String SMART_CLIENT_FILE_STATE_CACHE_ENABLED =
+            "smart.client.file.state.cache.enabled";
+    public static final boolean SMART_CLIENT_FILE_STATE_CACHE_ENABLED_DEFAULT = false;
+
+    public static final String SMART_CLIENT_FILE_STATE_CACHE_SIZE_KEY =
+            "smart.client.file.state.cache.size";
+    public static final long SMART_CLIENT_FILE_STATE_CACHE_SIZE_DEFAULT = 10000;
+
+    public static final String SMART_CLIENT_FILE_STATE_CACHE_TTL_MS_KEY =
+            "smart.client.file.state.cache.ttl.ms";
+    public static final long SMART_CLIENT_FILE_STATE_CACHE_TTL_MS_DEFAULT = 5000;
+
+    // Resolve file states of the directory listing page in parallel
+    public static final String SMART_CLIENT_FILE_STATE_FETCH_THREADS_KEY =
+            "smart.client.file.state.fetch.threads";
+    public static final int SMART_CLIENT_FILE_STATE_FETCH_THREADS_DEFAULT = 16;
+
     public static final String SMART_CLIENT_ACTIVE_SERVER_CACHE_PATH_KEY =
             "smart.client.active.server.cache.path";
     public static final String SMART_CLIENT_ACTIVE_SERVER_CACHE_PATH_DEFAULT =
@@ -27,6 +27,9 @@ public class CompressionFileInfo {
   private boolean needReplace = false;
   private String tempPath = null;
   private CompressionFileState compressionFileState = null;
+  // statistics of the compression to size the buffer and the number of workers
+  private double throughputMbPerSec = 0;
+  private double cpuPercent = 0;
 
   public CompressionFileInfo(boolean needReplace, CompressionFileState compressionFileState) {
     this(needReplace, null, compressionFileState);
@@ -66,4 +69,20 @@ public String getTempPath() {
   public boolean needReplace() {
     return needReplace;
   }
+
+  public double getThroughputMbPerSec() {
+    return throughputMbPerSec;
+  }
+
+  public void setThroughputMbPerSec(double throughputMbPerSec) {
+    this.throughputMbPerSec = throughputMbPerSec;
+  }
+
+  public double getCpuPercent() {
+    return cpuPercent;
+  }
+
+  public void setCpuPercent(double cpuPercent) {
+    this.cpuPercent = cpuPercent;
+  }
 }
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.model;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary encoding of the file states stored in the SSM file state xattr.
+ *
+ * <p>The encoding starts with the format marker and version followed by
+ * the variable-length encoded fields of the state. Position mappings of the
+ * compressed files are stored as deltas between the adjacent offsets,
+ * so they take a few bytes per offset. States written with
+ * the Java serialization by the previous versions are still readable.
+ */
+public class FileStateSerializer {
+  static final byte FORMAT_MARKER = 'S';
+  static final byte VERSION = 1;
+
+  // First bytes of the Java serialization stream, see ObjectStreamConstants
+  private static final byte JAVA_STREAM_MAGIC_HIGH = (byte) 0xAC;
+  private static final byte JAVA_STREAM_MAGIC_LOW = (byte) 0xED;
+
+  private FileStateSerializer() {
+  }
+
+  public static byte[] serialize(FileState fileState) throws IOException {
+    if (!isSupported(fileState)) {
+      return SerializationUtils.serialize(fileState);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(FORMAT_MARKER);
+      out.writeByte(VERSION);
+      WritableUtils.writeVInt(out, fileState.getFileType().getValue());
+      WritableUtils.writeVInt(out, fileState.getFileStage().getValue());
+      writeString(out, fileState.getPath());
+      if (fileState instanceof CompressionFileState) {
+        writeCompressionState(out, (CompressionFileState) fileState);
+      } else if (fileState instanceof CompactFileState) {
+        writeContainerInfo(out, ((CompactFileState) fileState).getFileContainerInfo());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  public static FileState deserialize(byte[] bytes) throws IOException {
+    if (bytes.length >= 2
+        && bytes[0] == JAVA_STREAM_MAGIC_HIGH
+        && bytes[1] == JAVA_STREAM_MAGIC_LOW) {
+      try {
+        return (FileState) SerializationUtils.deserialize(bytes);
+      } catch (SerializationException | ClassCastException e) {
+        throw new IOException("Failed to deserialize file state", e);
+      }
+    }
+    if (bytes.length < 2 || bytes[0] != FORMAT_MARKER) {
+      throw new IOException("Unknown file state encoding");
+    }
+    if (bytes[1] > VERSION) {
+      throw new IOException("Unsupported file state encoding version: " + bytes[1]);
+    }
+
+    DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(bytes, 2, bytes.length - 2));
+    FileState.FileType fileType = FileState.FileType.fromValue(WritableUtils.readVInt(in));
+    FileState.FileStage fileStage = FileState.FileStage.fromValue(WritableUtils.readVInt(in));
+    if (fileType == null || fileStage == null) {
+      throw new IOException("Unknown file state type or stage");
+    }
+    String path = readString(in);
+    switch (fileType) {
+      case COMPRESSION:
+        return readCompressionState(in, path, fileStage);
+      case COMPACT:
+        return new CompactFileState(path, readContainerInfo(in));
+      case S3:
+        return new S3FileState(path);
+      default:
+        return new NormalFileState(path);
+    }
+  }
+
+  /**
+   * States of other classes or with the stage not implied
+   * by their class are stored with the Java serialization.
+   */
+  private static boolean isSupported(FileState fileState) {
+    Class<?> stateClass = fileState.getClass();
+    if (stateClass == CompressionFileState.class) {
+      return true;
+    }
+    return (stateClass == CompactFileState.class
+        || stateClass == NormalFileState.class
+        || stateClass == S3FileState.class)
+        && fileState.getFileStage() == FileState.FileStage.DONE;
+  }
+
+  private static void writeCompressionState(DataOutput out, CompressionFileState state)
+      throws IOException {
+    WritableUtils.writeVInt(out, state.getBufferSize());
+    writeString(out, state.getCompressionImpl());
+    WritableUtils.writeVLong(out, state.getOriginalLength());
+    WritableUtils.writeVLong(out, state.getCompressedLength());
+    // all original chunks except the last one have the buffer size
+    writeOffsets(out, state.getOriginalPos(), state.getBufferSize());
+    writeOffsets(out, state.getCompressedPos(), 0);
+  }
+
+  private static CompressionFileState readCompressionState(
+      DataInput in, String path, FileState.FileStage fileStage) throws IOException {
+    int bufferSize = WritableUtils.readVInt(in);
+    String compressionImpl = readString(in);
+    long originalLength = WritableUtils.readVLong(in);
+    long compressedLength = WritableUtils.readVLong(in);
+    Long[] originalPos = readOffsets(in, bufferSize);
+    Long[] compressedPos = readOffsets(in, 0);
+    return new CompressionFileState(path, bufferSize, compressionImpl,
+        originalLength, compressedLength, originalPos, compressedPos, fileStage);
+  }
+
+  private static void writeContainerInfo(DataOutput out, FileContainerInfo containerInfo)
+      throws IOException {
+    out.writeBoolean(containerInfo != null);
+    if (containerInfo != null) {
+      writeString(out, containerInfo.getContainerFilePath());
+      WritableUtils.writeVLong(out, containerInfo.getOffset());
+      WritableUtils.writeVLong(out, containerInfo.getLength());
+    }
+  }
+
+  private static FileContainerInfo readContainerInfo(DataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    String containerFilePath = readString(in);
+    long offset = WritableUtils.readVLong(in);
+    long length = WritableUtils.readVLong(in);
+    return new FileContainerInfo(containerFilePath, offset, length);
+  }
+
+  /**
+   * Writes the differences between the deltas of the adjacent offsets
+   * and the expected delta.
+   */
+  private static void writeOffsets(DataOutput out, Long[] offsets, long expectedDelta)
+      throws IOException {
+    if (offsets == null) {
+      WritableUtils.writeVInt(out, -1);
+      return;
+    }
+    WritableUtils.writeVInt(out, offsets.length);
+    for (int i = 0; i < offsets.length; i++) {
+      long delta = i == 0 ? offsets[0] : offsets[i] - offsets[i - 1] - expectedDelta;
+      WritableUtils.writeVLong(out, delta);
+    }
+  }
+
+  private static Long[] readOffsets(DataInput in, long expectedDelta) throws IOException {
+    int length = WritableUtils.readVInt(in);
+    if (length < 0) {
+      return null;
+    }
+    Long[] offsets = new Long[length];
+    for (int i = 0; i < length; i++) {
+      long delta = WritableUtils.readVLong(in);
+      offsets[i] = i == 0 ? delta : offsets[i - 1] + expectedDelta + delta;
+    }
+    return offsets;
+  }
+
+  private static void writeString(DataOutput out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      Text.writeString(out, value);
+    }
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    return in.readBoolean() ? Text.readString(in) : null;
+  }
+}
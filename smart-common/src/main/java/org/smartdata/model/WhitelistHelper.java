@@ -17,6 +17,7 @@
  */
 package org.smartdata.model;
 
+import org.smartdata.exception.CmdletRejectedException;
 import org.smartdata.utils.PathUtil;
 
 import java.io.IOException;
@@ -49,7 +50,7 @@ public static void validateCmdletPathCovered(
 
       String filePath = args.get(CmdletDescriptor.HDFS_FILE_PATH);
       if (!pathChecker.isCovered(filePath)) {
-        throw new IOException("Path " + filePath + " is not in the whitelist.");
+        throw new CmdletRejectedException("Path " + filePath + " is not in the whitelist.");
       }
     }
   }
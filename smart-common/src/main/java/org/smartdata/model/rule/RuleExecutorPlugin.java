@@ -20,6 +20,7 @@
 import org.smartdata.model.CmdletDescriptor;
 import org.smartdata.model.RuleInfo;
 
+import java.util.Collections;
 import java.util.List;
 
 public interface RuleExecutorPlugin {
@@ -50,6 +51,18 @@ public interface RuleExecutorPlugin {
    */
   List<String> preSubmitCmdlet(RuleInfo ruleInfo, List<String> objects);
 
+  /**
+   * Called after the last part of the rule condition result was passed to
+   * {@link #preSubmitCmdlet}, which is called for each fetched part of the result.
+   * Plugins combining objects of several parts return the objects held back
+   * from the previous calls.
+   *
+   * @return object list that will be used for Cmdlet submission.
+   */
+  default List<String> flushPendingObjects(RuleInfo ruleInfo) {
+    return Collections.emptyList();
+  }
+
   /**
    * Called right before the CmdletDescriptor been submitted to CmdletManager.
    *
@@ -26,6 +26,9 @@ public class ActionStatus implements Serializable {
   private float percentage;
   private String result;
   private String log;
+  // Positions of the reported result and log in the whole action result and log
+  private long resultOffset;
+  private long logOffset;
   private long startTime;
   private long finishTime;
   private Throwable throwable;
@@ -133,6 +136,42 @@ public void setLog(String log) {
     this.log = log;
   }
 
+  public long getResultOffset() {
+    return resultOffset;
+  }
+
+  public void setResultOffset(long resultOffset) {
+    this.resultOffset = resultOffset;
+  }
+
+  public long getLogOffset() {
+    return logOffset;
+  }
+
+  public void setLogOffset(long logOffset) {
+    this.logOffset = logOffset;
+  }
+
+  /**
+   * Returns the status of the action with the result and log
+   * of the previous status followed by the ones of this status.
+   * The whole result or log of this status replaces the previous one.
+   */
+  public ActionStatus appendTo(ActionStatus previous) {
+    if (previous == null) {
+      return this;
+    }
+    if (resultOffset > previous.getResultOffset()) {
+      result = previous.getResult() + getResult();
+      resultOffset = previous.getResultOffset();
+    }
+    if (logOffset > previous.getLogOffset()) {
+      log = previous.getLog() + getLog();
+      logOffset = previous.getLogOffset();
+    }
+    return this;
+  }
+
   public long getStartTime() {
     return startTime;
   }
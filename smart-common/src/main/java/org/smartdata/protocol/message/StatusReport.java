@@ -19,9 +19,76 @@
 
 import lombok.Data;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 @Data
 public class StatusReport implements StatusMessage {
   private final List<ActionStatus> actionStatuses;
+
+  /**
+   * Reports sent to the remote master are serialized compressed.
+   */
+  private Object writeReplace() throws ObjectStreamException {
+    return new SerializedReport(actionStatuses);
+  }
+
+  private static class SerializedReport implements Serializable {
+    // Smaller reports are sent uncompressed
+    private static final int MIN_COMPRESSED_SIZE = 4 * 1024;
+
+    private transient List<ActionStatus> actionStatuses;
+
+    private SerializedReport(List<ActionStatus> actionStatuses) {
+      this.actionStatuses = actionStatuses;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream statusesOut = new ObjectOutputStream(bytes)) {
+        statusesOut.writeObject(actionStatuses == null
+            ? null : new ArrayList<>(actionStatuses));
+      }
+      boolean compressed = bytes.size() >= MIN_COMPRESSED_SIZE;
+      if (compressed) {
+        ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+        try (OutputStream deflaterOut = new DeflaterOutputStream(compressedBytes)) {
+          bytes.writeTo(deflaterOut);
+        }
+        bytes = compressedBytes;
+      }
+      out.writeBoolean(compressed);
+      out.writeInt(bytes.size());
+      bytes.writeTo(out);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      boolean compressed = in.readBoolean();
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      InputStream statusesIn = new ByteArrayInputStream(bytes);
+      if (compressed) {
+        statusesIn = new InflaterInputStream(statusesIn);
+      }
+      try (ObjectInputStream objectIn = new ObjectInputStream(statusesIn)) {
+        actionStatuses = (List<ActionStatus>) objectIn.readObject();
+      }
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+      return new StatusReport(actionStatuses);
+    }
+  }
 }
@@ -23,10 +23,12 @@
 import org.smartdata.protocol.ClientServerProto.GetFileStateRequestProto;
 import org.smartdata.protocol.ClientServerProto.GetFileStateResponseProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventRequestProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsRequestProto;
 import org.smartdata.protocol.SmartClientProtocol;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 
 import static org.smartdata.protocol.protobuffer.ProtoBufferHelper.ipc;
 
@@ -51,6 +53,12 @@ public void reportFileAccessEvent(FileAccessEvent event) throws IOException {
     ipc(() -> rpcProxy.reportFileAccessEvent(null, req));
   }
 
+  @Override
+  public void reportFileAccessEvents(List<FileAccessEvent> events) throws IOException {
+    ReportFileAccessEventsRequestProto req = ProtoBufferHelper.convert(events);
+    ipc(() -> rpcProxy.reportFileAccessEvents(null, req));
+  }
+
   @Override
   public FileState getFileState(String filePath) throws IOException {
     GetFileStateRequestProto req = GetFileStateRequestProto.newBuilder()
@@ -30,9 +30,12 @@
 import org.smartdata.protocol.ClientServerProto.CompressionFileStateProto;
 import org.smartdata.protocol.ClientServerProto.FileStateProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventRequestProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsRequestProto;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class ProtoBufferHelper {
 
@@ -86,11 +89,31 @@ public static ReportFileAccessEventRequestProto convert(FileAccessEvent event) {
         .setFilePath(event.getPath())
         .setFileId(0)
         .setAccessedBy(event.getAccessedBy())
+        .setAccessCount(event.getAccessCount())
+        .setTimestamp(event.getTimestamp())
         .build();
   }
 
   public static FileAccessEvent convert(final ReportFileAccessEventRequestProto event) {
-    return new FileAccessEvent(event.getFilePath(), 0, event.getAccessedBy());
+    return new FileAccessEvent(event.getFilePath(), event.getTimestamp(),
+        event.getAccessedBy(), event.getAccessCount());
+  }
+
+  public static ReportFileAccessEventsRequestProto convert(List<FileAccessEvent> events) {
+    ReportFileAccessEventsRequestProto.Builder builder =
+        ReportFileAccessEventsRequestProto.newBuilder();
+    for (FileAccessEvent event : events) {
+      builder.addEvents(convert(event));
+    }
+    return builder.build();
+  }
+
+  public static List<FileAccessEvent> convert(ReportFileAccessEventsRequestProto proto) {
+    List<FileAccessEvent> events = new ArrayList<>(proto.getEventsCount());
+    for (ReportFileAccessEventRequestProto event : proto.getEventsList()) {
+      events.add(convert(event));
+    }
+    return events;
   }
 
   private static FileContainerInfo convert(CompactFileStateProto proto) {
@@ -25,6 +25,8 @@
 import org.smartdata.protocol.ClientServerProto.GetFileStateResponseProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventRequestProto;
 import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventResponseProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsRequestProto;
+import org.smartdata.protocol.ClientServerProto.ReportFileAccessEventsResponseProto;
 import org.smartdata.protocol.SmartServerProtocols;
 
 import java.io.IOException;
@@ -50,6 +52,18 @@ public ReportFileAccessEventResponseProto reportFileAccessEvent(
     }
   }
 
+  @Override
+  public ReportFileAccessEventsResponseProto reportFileAccessEvents(
+      RpcController controller, ReportFileAccessEventsRequestProto req)
+      throws ServiceException {
+    try {
+      server.reportFileAccessEvents(ProtoBufferHelper.convert(req));
+      return ReportFileAccessEventsResponseProto.newBuilder().build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetFileStateResponseProto getFileState(RpcController controller,
                                                 GetFileStateRequestProto req)
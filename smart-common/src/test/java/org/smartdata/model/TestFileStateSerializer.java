@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.model;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class TestFileStateSerializer {
+  private static final int CHUNKS = 5000;
+
+  @Test
+  public void testCompressionFileState() throws Exception {
+    CompressionFileState state = compressionFileState();
+    CompressionFileState decoded = (CompressionFileState) roundTrip(state);
+
+    Assert.assertEquals(state, decoded);
+    Assert.assertEquals(state.getBufferSize(), decoded.getBufferSize());
+    Assert.assertEquals(state.getCompressionImpl(), decoded.getCompressionImpl());
+    Assert.assertEquals(state.getOriginalLength(), decoded.getOriginalLength());
+    Assert.assertEquals(state.getCompressedLength(), decoded.getCompressedLength());
+    Assert.assertArrayEquals(state.getOriginalPos(), decoded.getOriginalPos());
+    Assert.assertArrayEquals(state.getCompressedPos(), decoded.getCompressedPos());
+  }
+
+  @Test
+  public void testProcessingCompressionFileState() throws Exception {
+    CompressionFileState state = new CompressionFileState(
+        "/file", FileState.FileStage.PROCESSING);
+    Assert.assertEquals(state, roundTrip(state));
+  }
+
+  @Test
+  public void testCompactFileState() throws Exception {
+    CompactFileState state = new CompactFileState("/small",
+        new FileContainerInfo("/container", 1024L, 12L));
+    CompactFileState decoded = (CompactFileState) roundTrip(state);
+
+    Assert.assertEquals(state, decoded);
+    FileContainerInfo containerInfo = decoded.getFileContainerInfo();
+    Assert.assertEquals("/container", containerInfo.getContainerFilePath());
+    Assert.assertEquals(1024L, containerInfo.getOffset());
+    Assert.assertEquals(12L, containerInfo.getLength());
+  }
+
+  @Test
+  public void testNormalFileState() throws Exception {
+    Assert.assertEquals(new NormalFileState("/file"), roundTrip(new NormalFileState("/file")));
+    Assert.assertEquals(new S3FileState("/file"), roundTrip(new S3FileState("/file")));
+  }
+
+  @Test
+  public void testReadJavaSerializedState() throws Exception {
+    CompressionFileState state = compressionFileState();
+    CompressionFileState decoded = (CompressionFileState) FileStateSerializer.deserialize(
+        SerializationUtils.serialize(state));
+
+    Assert.assertEquals(state, decoded);
+    Assert.assertArrayEquals(state.getCompressedPos(), decoded.getCompressedPos());
+  }
+
+  @Test
+  public void testEncodingSize() throws Exception {
+    CompressionFileState state = compressionFileState();
+    int javaSize = SerializationUtils.serialize(state).length;
+    int encodedSize = FileStateSerializer.serialize(state).length;
+    // offsets of 1MB chunks take a few bytes instead of the boxed longs
+    Assert.assertTrue("Encoded size " + encodedSize + ", java size " + javaSize,
+        encodedSize * 4 < javaSize);
+    Assert.assertTrue(encodedSize < 6 * CHUNKS);
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnsupportedVersion() throws Exception {
+    byte[] bytes = FileStateSerializer.serialize(new NormalFileState("/file"));
+    bytes[1] = FileStateSerializer.VERSION + 1;
+    FileStateSerializer.deserialize(bytes);
+  }
+
+  private FileState roundTrip(FileState state) throws IOException {
+    return FileStateSerializer.deserialize(FileStateSerializer.serialize(state));
+  }
+
+  private CompressionFileState compressionFileState() {
+    Long[] originalPos = new Long[CHUNKS];
+    Long[] compressedPos = new Long[CHUNKS];
+    int bufferSize = 1024 * 1024;
+    for (int i = 0; i < CHUNKS; i++) {
+      originalPos[i] = (long) i * bufferSize;
+      compressedPos[i] = (long) i * (bufferSize / 3) + i % 7;
+    }
+    return CompressionFileState.newBuilder()
+        .setFileName("/compressed")
+        .setBufferSize(bufferSize)
+        .setCompressImpl("Zlib")
+        .setOriginalLength((long) CHUNKS * bufferSize - 10)
+        .setCompressedLength((long) CHUNKS * (bufferSize / 3))
+        .setOriginalPos(originalPos)
+        .setCompressedPos(compressedPos)
+        .setFileStage(FileState.FileStage.DONE)
+        .build();
+  }
+}
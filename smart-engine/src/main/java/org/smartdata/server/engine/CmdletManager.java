@@ -20,6 +20,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -30,6 +31,7 @@
 import org.smartdata.cmdlet.parser.CmdletParser;
 import org.smartdata.cmdlet.parser.ParsedCmdlet;
 import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.exception.CmdletRejectedException;
 import org.smartdata.exception.NotFoundException;
 import org.smartdata.exception.QueueFullException;
 import org.smartdata.exception.SsmParseException;
@@ -43,6 +45,7 @@
 import org.smartdata.hdfs.scheduler.SmallFileScheduler;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
 import org.smartdata.model.ActionInfo;
 import org.smartdata.model.CmdletDescriptor;
 import org.smartdata.model.CmdletInfo;
@@ -72,30 +75,38 @@
 import org.smartdata.server.engine.audit.aspect.ReturnsAuditId;
 import org.smartdata.server.engine.cmdlet.CmdletDispatcher;
 import org.smartdata.server.engine.cmdlet.CmdletExecutorService;
+import org.smartdata.server.engine.cmdlet.CmdletFairSharePolicy;
 import org.smartdata.server.engine.cmdlet.CmdletInfoHandler;
 import org.smartdata.server.engine.cmdlet.CmdletManagerContext;
+import org.smartdata.server.engine.cmdlet.CmdletSchedulingMetrics;
+import org.smartdata.server.engine.cmdlet.CmdletSchedulingQueue;
+import org.smartdata.server.engine.cmdlet.CmdletTurnScheduler;
 import org.smartdata.server.engine.cmdlet.DeleteTerminatedCmdletsTask;
 import org.smartdata.server.engine.cmdlet.DetectTimeoutActionsTask;
 import org.smartdata.server.engine.cmdlet.InMemoryRegistry;
 import org.smartdata.server.engine.cmdlet.RuleCmdletTracker;
+import org.smartdata.server.engine.cmdlet.WakeUpSignal;
 
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static org.smartdata.metastore.utils.MetaStoreUtils.logAndBuildMetastoreException;
@@ -112,6 +123,10 @@
  * to avoid duplicated Cmdlet, then enqueue into pendingCmdlet. When the Cmdlet is scheduled it
  * will be remove out of the queue and marked in the runningCmdlets.
  *
+ * <p>Pending cmdlets are queued by the type of their first action and are scheduled
+ * by the dedicated scheduler thread, which is woken up on submission of the new cmdlets
+ * and when the dispatched cmdlets free the executor slots.
+ *
  * <p>The map idToCmdlets stores all the recent CmdletInfos, including pending and running Cmdlets.
  * After the Cmdlet is finished or cancelled or failed, it's status will be flush to DB.
  */
@@ -119,13 +134,24 @@
 public class CmdletManager extends AbstractService
     implements ActionStatusUpdateListener, ClusterNodeMetricsProvider, Auditable {
   private static final Logger LOG = LoggerFactory.getLogger(CmdletManager.class);
+  // wait time of the scheduler thread if it isn't woken up by any event
+  private static final long SCHEDULE_RETRY_INTERVAL_MS = 50;
+  private static final long SCHEDULE_IDLE_INTERVAL_MS = 500;
 
   private final ScheduledExecutorService executorService;
+  private final ExecutorService schedulerService;
   private final MetaStore metaStore;
   private final int maxNumPendingCmdlets;
-  private final List<Long> pendingCmdlets;
-  private final List<Long> schedulingCmdlets;
+  private final CmdletSchedulingQueue pendingCmdlets;
   private final Queue<Long> scheduledCmdlets;
+  private final WakeUpSignal scheduleSignal;
+  // monitor of the submitters waiting for the pending queue capacity
+  private final Object pendingCapacityMonitor;
+  // pending queue capacity reserved by the cmdlets being submitted
+  private final AtomicInteger reservedPendingCmdlets;
+  private final CmdletSchedulingMetrics schedulingMetrics;
+  private final CmdletFairSharePolicy fairSharePolicy;
+  private final CmdletTurnScheduler turnScheduler;
   private final Map<Long, LaunchCmdlet> idToLaunchCmdlets;
   private final List<Long> runningCmdlets;
   // Track a CmdletDescriptor from the submission to
@@ -152,10 +178,22 @@ public CmdletManager(
 
     this.metaStore = context.getMetaStore();
     this.executorService = Executors.newScheduledThreadPool(4);
+    this.schedulerService = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("cmdlet-scheduler")
+        .setDaemon(true)
+        .build());
     this.runningCmdlets = new ArrayList<>();
-    this.pendingCmdlets = new LinkedList<>();
-    this.schedulingCmdlets = new LinkedList<>();
+    this.pendingCmdlets = new CmdletSchedulingQueue();
     this.scheduledCmdlets = new LinkedBlockingQueue<>();
+    this.scheduleSignal = new WakeUpSignal();
+    this.pendingCapacityMonitor = new Object();
+    this.reservedPendingCmdlets = new AtomicInteger();
+    this.fairSharePolicy = new CmdletFairSharePolicy(context.getConf());
+    this.turnScheduler = new CmdletTurnScheduler(
+        pendingCmdlets, fairSharePolicy, this::getFreeScheduleSlots, this::scheduleCmdlet);
+    this.schedulingMetrics = SmartMetricsSystem.register(CmdletSchedulingMetrics.NAME,
+        "Cmdlet scheduling metrics",
+        new CmdletSchedulingMetrics(pendingCmdlets, scheduledCmdlets));
     this.idToLaunchCmdlets = new ConcurrentHashMap<>();
     this.schedulers = ArrayListMultimap.create();
     //because we have to ignore exceptions while creating services,
@@ -308,7 +346,7 @@ private void checkActionsOnSubmit(CmdletInfo cmdletInfo,
     for (ActionInfo actionInfo : actionInfos) {
       for (ActionScheduler p : schedulers.get(actionInfo.getActionName())) {
         if (!p.onSubmit(cmdletInfo, actionInfo)) {
-          throw new IOException("Action rejected by scheduler: " + actionInfo);
+          throw new CmdletRejectedException("Action rejected by scheduler: " + actionInfo);
         }
       }
     }
@@ -318,7 +356,7 @@ private void checkActionsOnSubmit(CmdletInfo cmdletInfo,
   public void start() throws IOException {
     LOG.info("Starting ...");
     executorService.scheduleAtFixedRate(cmdletPurgeTask, 10, 5000, TimeUnit.MILLISECONDS);
-    executorService.scheduleAtFixedRate(new ScheduleTask(), 100, 50, TimeUnit.MILLISECONDS);
+    schedulerService.execute(new ScheduleTask());
     executorService.scheduleAtFixedRate(detectTimeoutActionsTask, 1000, 5000,
         TimeUnit.MILLISECONDS);
 
@@ -345,6 +383,7 @@ public void stop() throws IOException {
     }
 
     executorService.shutdown();
+    schedulerService.shutdownNow();
     inMemoryRegistry.stop();
 
     dispatcher.shutDownExcutorServices();
@@ -390,13 +429,28 @@ private CmdletDescriptor buildCmdletDescriptor(String cmdlet) throws SsmParseExc
     }
   }
 
-  private void validatePendingCmdletsCount() throws QueueFullException {
-    if (maxNumPendingCmdlets <= pendingCmdlets.size() + schedulingCmdlets.size()) {
-      throw new QueueFullException("Pending cmdlets exceeds value specified by key '"
-          + SmartConfKeys.SMART_CMDLET_MAX_NUM_PENDING_KEY + "' = " + maxNumPendingCmdlets);
+  /**
+   * Reserves the pending queue capacity for the cmdlets being submitted,
+   * so that concurrent submitters can't overfill the queue. The reservation
+   * should be released after the cmdlets are enqueued.
+   */
+  private void reservePendingCmdlets(int cmdletsNum) throws QueueFullException {
+    while (true) {
+      int reserved = reservedPendingCmdlets.get();
+      if (maxNumPendingCmdlets < getNumPendingScheduleCmdlets() + reserved + cmdletsNum) {
+        throw new QueueFullException("Pending cmdlets exceeds value specified by key '"
+            + SmartConfKeys.SMART_CMDLET_MAX_NUM_PENDING_KEY + "' = " + maxNumPendingCmdlets);
+      }
+      if (reservedPendingCmdlets.compareAndSet(reserved, reserved + cmdletsNum)) {
+        return;
+      }
     }
   }
 
+  private void releasePendingCmdlets(int cmdletsNum) {
+    reservedPendingCmdlets.addAndGet(-cmdletsNum);
+  }
+
   public long submitCmdlet(CmdletDescriptor cmdletDescriptor) throws IOException {
     // To avoid repeatedly submitting task. If tracker contains one CmdletDescriptor
     // with the same rule id and cmdlet string, return -1.
@@ -404,10 +458,107 @@ public long submitCmdlet(CmdletDescriptor cmdletDescriptor) throws IOException {
       LOG.warn("Refuse to repeatedly submit cmdlet '{}'", cmdletDescriptor);
       return -1;
     }
-    validatePendingCmdletsCount();
+    reservePendingCmdlets(1);
 
     CmdletInfo cmdletInfo = cmdletInfoHandler
         .createCmdletInfo(cmdletDescriptor);
+    try {
+      List<ActionInfo> actionInfos = prepareActions(cmdletDescriptor, cmdletInfo);
+      // Insert cmdletinfo and actionInfos to metastore and cache.
+      syncCmdAction(cmdletInfo, actionInfos);
+    } finally {
+      releasePendingCmdlets(1);
+    }
+    if (cmdletDescriptor.isRuleCmdlet()) {
+      ruleCmdletTracker.track(cmdletInfo.getId(), cmdletDescriptor);
+    }
+    return cmdletInfo.getId();
+  }
+
+  /**
+   * Submit the batch of cmdlets. Duplicated descriptors and descriptors of the
+   * rule cmdlets, which are still tracked, are skipped as well as the cmdlets
+   * rejected during validation or failed to be prepared. All accepted cmdlets
+   * are enqueued at once.
+   *
+   * @return ids of the submitted cmdlets
+   * @throws QueueFullException if the pending queue has no room for the whole batch
+   */
+  public List<Long> submitCmdlets(List<CmdletDescriptor> cmdletDescriptors)
+      throws QueueFullException {
+    Set<CmdletDescriptor> uniqueDescriptors = new LinkedHashSet<>(cmdletDescriptors);
+    uniqueDescriptors.removeIf(ruleCmdletTracker::contains);
+    if (uniqueDescriptors.isEmpty()) {
+      return Collections.emptyList();
+    }
+    int reserved = uniqueDescriptors.size();
+    reservePendingCmdlets(reserved);
+
+    List<Long> cmdletIds = new ArrayList<>(uniqueDescriptors.size());
+    try {
+      List<CmdletSchedulingQueue.Entry> queueEntries = new ArrayList<>(uniqueDescriptors.size());
+      for (CmdletDescriptor cmdletDescriptor : uniqueDescriptors) {
+        CmdletInfo cmdletInfo = cmdletInfoHandler.createCmdletInfo(cmdletDescriptor);
+        try {
+          List<ActionInfo> actionInfos = prepareActions(cmdletDescriptor, cmdletInfo);
+          actionInfos.forEach(actionInfoHandler::store);
+          cmdletInfoHandler.storeUnfinished(cmdletInfo);
+        } catch (CmdletRejectedException e) {
+          // it's common for rule cmdlets, e.g. when file isn't in the whitelist
+          LOG.debug("Cmdlet '{}' was rejected", cmdletDescriptor, e);
+          continue;
+        } catch (IOException e) {
+          LOG.error("Failed to submit cmdlet '{}'", cmdletDescriptor, e);
+          continue;
+        }
+        if (cmdletDescriptor.isRuleCmdlet()) {
+          ruleCmdletTracker.track(cmdletInfo.getId(), cmdletDescriptor);
+        }
+        cmdletIds.add(cmdletInfo.getId());
+        queueEntries.add(new CmdletSchedulingQueue.Entry(cmdletInfo.getId(),
+            cmdletDescriptor.getActionName(0), cmdletInfo.getRuleId(),
+            System.currentTimeMillis()));
+      }
+
+      queueEntries.forEach(pendingCmdlets::add);
+    } finally {
+      releasePendingCmdlets(reserved);
+    }
+    if (!cmdletIds.isEmpty()) {
+      scheduleSignal.signal();
+    }
+    return cmdletIds;
+  }
+
+  /**
+   * Wait until the pending queue has room for the specified number of cmdlets
+   * or for the whole queue, if the number exceeds its capacity.
+   *
+   * @return false if the queue wasn't freed within the timeout
+   */
+  public boolean awaitPendingCapacity(int cmdletsNum, long timeoutMs)
+      throws InterruptedException {
+    int requiredCapacity = Math.min(cmdletsNum, maxNumPendingCmdlets);
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (pendingCapacityMonitor) {
+      while (maxNumPendingCmdlets - getNumPendingScheduleCmdlets()
+          - reservedPendingCmdlets.get() < requiredCapacity) {
+        long waitTimeMs = deadline - System.currentTimeMillis();
+        if (waitTimeMs <= 0) {
+          return false;
+        }
+        pendingCapacityMonitor.wait(waitTimeMs);
+      }
+    }
+    return true;
+  }
+
+  public int getMaxNumPendingCmdlets() {
+    return maxNumPendingCmdlets;
+  }
+
+  private List<ActionInfo> prepareActions(
+      CmdletDescriptor cmdletDescriptor, CmdletInfo cmdletInfo) throws IOException {
     List<ActionInfo> actionInfos = actionInfoHandler
         .createActionInfos(cmdletDescriptor, cmdletInfo);
 
@@ -416,12 +567,7 @@ public long submitCmdlet(CmdletDescriptor cmdletDescriptor) throws IOException {
 
     // Let Scheduler check actioninfo onsubmit and add them to cmdletinfo
     checkActionsOnSubmit(cmdletInfo, actionInfos);
-    // Insert cmdletinfo and actionInfos to metastore and cache.
-    syncCmdAction(cmdletInfo, actionInfos);
-    if (cmdletDescriptor.isRuleCmdlet()) {
-      ruleCmdletTracker.track(cmdletInfo.getId(), cmdletDescriptor);
-    }
-    return cmdletInfo.getId();
+    return actionInfos;
   }
 
   /**
@@ -434,24 +580,30 @@ private void syncCmdAction(CmdletInfo cmdletInfo,
     cmdletInfoHandler.storeUnfinished(cmdletInfo);
 
     if (cmdletInfo.getState() == CmdletState.PENDING) {
-      synchronized (pendingCmdlets) {
-        pendingCmdlets.add(cmdletInfo.getId());
-      }
+      pendingCmdlets.add(
+          cmdletInfo.getId(), actionInfos.get(0).getActionName(), cmdletInfo.getRuleId());
+      scheduleSignal.signal();
     } else if (cmdletInfo.getState() == CmdletState.DISPATCHED) {
       runningCmdlets.add(cmdletInfo.getId());
+      fairSharePolicy.onCmdletActive(cmdletInfo.getId(),
+          actionInfos.get(0).getActionName(), cmdletInfo.getRuleId());
       LaunchCmdlet launchCmdlet = cmdletInfoHandler.createLaunchCmdlet(cmdletInfo);
       idToLaunchCmdlets.put(cmdletInfo.getId(), launchCmdlet);
     }
   }
 
-  private boolean shouldStopSchedule() {
+  /**
+   * Returns the number of cmdlets, which can be scheduled without
+   * overfilling the dispatcher queue.
+   */
+  private int getFreeScheduleSlots() {
     int left = dispatcher.getTotalSlotsLeft();
     int total = dispatcher.getTotalSlots();
-    return scheduledCmdlets.size() >= left + total * 0.2;
+    return (int) Math.ceil(left + total * 0.2) - scheduledCmdlets.size();
   }
 
   private int getNumPendingScheduleCmdlets() {
-    return pendingCmdlets.size() + schedulingCmdlets.size();
+    return pendingCmdlets.size();
   }
 
   public void updateNodeCmdletMetrics(ActiveServerNodeCmdletMetrics metrics) {
@@ -464,34 +616,48 @@ public Collection<NodeCmdletMetrics> getNodeMetrics() {
     return dispatcher.getNodeMetrics();
   }
 
-  private void scheduleCmdlets() {
-    synchronized (pendingCmdlets) {
-      if (!pendingCmdlets.isEmpty()) {
-        schedulingCmdlets.addAll(pendingCmdlets);
-        pendingCmdlets.clear();
-      }
-    }
+  /**
+   * Schedules the pending cmdlets according to the fair share policy.
+   *
+   * @return true if some cmdlets should be rescheduled later
+   */
+  private boolean scheduleCmdlets() {
+    boolean hasRetryCmdlets = turnScheduler.schedule();
 
-    Iterator<Long> cmdletIdsIter = schedulingCmdlets.iterator();
-    while (cmdletIdsIter.hasNext() && !shouldStopSchedule()) {
-      CmdletInfo cmdlet = cmdletInfoHandler.getUnfinishedCmdlet(cmdletIdsIter.next());
-      if (cmdlet == null) {
-        cmdletIdsIter.remove();
-        continue;
-      }
+    synchronized (pendingCapacityMonitor) {
+      // wake up submitters waiting for the pending queue capacity
+      pendingCapacityMonitor.notifyAll();
+    }
+    return hasRetryCmdlets;
+  }
 
-      synchronized (cmdlet) {
-        LaunchCmdlet launchCmdlet = cmdletInfoHandler.createLaunchCmdlet(cmdlet);
-        Optional<ScheduleResult> scheduleResult = scheduleCmdlet(cmdlet, launchCmdlet);
+  /**
+   * Schedules the polled cmdlet.
+   *
+   * @return false if the cmdlet should be rescheduled later
+   */
+  private boolean scheduleCmdlet(CmdletSchedulingQueue.Entry entry) {
+    CmdletInfo cmdlet = cmdletInfoHandler.getUnfinishedCmdlet(entry.getCmdletId());
+    if (cmdlet == null) {
+      return true;
+    }
 
-        if (scheduleResult.filter(RETRY::equals).isPresent()) {
-          continue;
-        }
+    synchronized (cmdlet) {
+      long startTime = System.currentTimeMillis();
+      LaunchCmdlet launchCmdlet = cmdletInfoHandler.createLaunchCmdlet(cmdlet);
+      Optional<ScheduleResult> scheduleResult = scheduleCmdlet(cmdlet, launchCmdlet);
+      schedulingMetrics.addScheduleTime(
+          entry.getActionType(), System.currentTimeMillis() - startTime);
 
-        cmdletIdsIter.remove();
-        scheduleResult
-            .ifPresent(result -> handleScheduleResult(result, cmdlet, launchCmdlet));
+      if (scheduleResult.filter(RETRY::equals).isPresent()) {
+        return false;
       }
+
+      schedulingMetrics.addPendingTime(
+          entry.getActionType(), startTime - entry.getEnqueueTime());
+      scheduleResult.ifPresent(
+          result -> handleScheduleResult(result, cmdlet, launchCmdlet, entry.getActionType()));
+      return true;
     }
   }
 
@@ -510,13 +676,16 @@ private Optional<ScheduleResult> scheduleCmdlet(CmdletInfo cmdlet, LaunchCmdlet
   private void handleScheduleResult(
       ScheduleResult result,
       CmdletInfo cmdlet,
-      LaunchCmdlet launchCmdlet) {
+      LaunchCmdlet launchCmdlet,
+      String actionType) {
     try {
       switch (result) {
         case SUCCESS:
           cmdlet.updateState(CmdletState.SCHEDULED);
+          fairSharePolicy.onCmdletActive(cmdlet.getId(), actionType, cmdlet.getRuleId());
           idToLaunchCmdlets.put(cmdlet.getId(), launchCmdlet);
           scheduledCmdlets.add(cmdlet.getId());
+          dispatcher.onCmdletScheduled();
           break;
         case FAIL:
           cmdlet.updateState(CmdletState.CANCELLED);
@@ -631,11 +800,7 @@ private boolean disableCmdletInternal(long cmdletId) throws IOException {
     onCmdletStatusUpdate(
         new CmdletStatus(info.getId(), System.currentTimeMillis(), CmdletState.DISABLED));
 
-    synchronized (pendingCmdlets) {
-      pendingCmdlets.remove(cmdletId);
-    }
-
-    schedulingCmdlets.remove(cmdletId);
+    pendingCmdlets.remove(cmdletId);
 
     scheduledCmdlets.remove(cmdletId);
 
@@ -661,6 +826,8 @@ private void cmdletFinished(CmdletInfo cmdletInfo) {
     dispatcher.onCmdletFinished(cmdletInfo.getId());
     runningCmdlets.remove(cmdletInfo.getId());
     idToLaunchCmdlets.remove(cmdletInfo.getId());
+    fairSharePolicy.onCmdletFinished(cmdletInfo.getId());
+    scheduleSignal.signal();
 
     cmdletInfoHandler.store(cmdletInfo);
   }
@@ -729,17 +896,38 @@ public void onStatusUpdate(ActionStatus actionStatus) throws IOException {
   }
 
   public void onCmdletStatusUpdate(CmdletStatus status) throws IOException {
+    CmdletState state = status.getCurrentState();
+    if (state == CmdletState.DISPATCHED) {
+      updateDispatchWaitTime(status);
+    }
+
     CmdletInfo cmdletInfo = cmdletInfoHandler
         .updateCmdletStatus(status.getCmdletId(), status);
     if (cmdletInfo == null) {
       return;
     }
 
-    CmdletState state = status.getCurrentState();
     if (CmdletState.isTerminalState(state)) {
       cmdletFinished(cmdletInfo);
     } else if (state == CmdletState.DISPATCHED) {
       cmdletInfoHandler.store(cmdletInfo);
+      // the scheduled queue has room for more cmdlets
+      scheduleSignal.signal();
+    }
+  }
+
+  private void updateDispatchWaitTime(CmdletStatus status) {
+    CmdletInfo cmdletInfo = cmdletInfoHandler.getUnfinishedCmdlet(status.getCmdletId());
+    if (cmdletInfo == null
+        || cmdletInfo.getState() != CmdletState.SCHEDULED
+        || cmdletInfo.getActionIds().isEmpty()) {
+      return;
+    }
+    ActionInfo actionInfo =
+        actionInfoHandler.getUnfinishedAction(cmdletInfo.getActionIds().get(0));
+    if (actionInfo != null) {
+      schedulingMetrics.addDispatchWaitTime(actionInfo.getActionName(),
+          status.getStateUpdateTime() - cmdletInfo.getStateChangedTime());
     }
   }
 
@@ -793,10 +981,22 @@ private void inferCmdletStatus(ActionInfo actionInfo) throws IOException {
   private class ScheduleTask implements Runnable {
     @Override
     public void run() {
-      try {
-        scheduleCmdlets();
-      } catch (Exception exception) {
-        // no meaningful info, ignore
+      boolean hasDeferredCmdlets = false;
+      while (!Thread.currentThread().isInterrupted()) {
+        try {
+          scheduleSignal.await(hasDeferredCmdlets
+              ? SCHEDULE_RETRY_INTERVAL_MS
+              : SCHEDULE_IDLE_INTERVAL_MS);
+        } catch (InterruptedException exception) {
+          return;
+        }
+
+        try {
+          hasDeferredCmdlets = scheduleCmdlets();
+        } catch (Exception exception) {
+          // no meaningful info, ignore
+          hasDeferredCmdlets = true;
+        }
       }
     }
   }
@@ -26,11 +26,14 @@
 import org.smartdata.exception.SsmParseException;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.metastore.accesscount.AccessCountWindowStore;
 import org.smartdata.metastore.dao.RuleDao;
 import org.smartdata.metastore.dao.Searchable;
 import org.smartdata.metastore.model.SearchResult;
 import org.smartdata.metastore.queries.PageRequest;
 import org.smartdata.metastore.queries.sort.RuleSortField;
+import org.smartdata.metastore.transaction.TransactionRunner;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
 import org.smartdata.model.CmdletDescriptor;
 import org.smartdata.model.PathChecker;
 import org.smartdata.model.RuleInfo;
@@ -52,6 +55,7 @@
 import org.smartdata.server.engine.rule.ExecutorScheduler;
 import org.smartdata.server.engine.rule.FileCopy2S3Plugin;
 import org.smartdata.server.engine.rule.RuleExecutor;
+import org.smartdata.server.engine.rule.RuleExecutorMetrics;
 import org.smartdata.server.engine.rule.RuleInfoHandler;
 import org.smartdata.server.engine.rule.RuleInfoRepo;
 import org.smartdata.server.engine.rule.SmallFilePlugin;
@@ -92,6 +96,8 @@
   private final SmartPrincipalManager smartPrincipalManager;
   private final RuleDao ruleDao;
   private final RuleInfoHandler ruleInfoHandler;
+  private final AccessCountWindowStore accessCountWindowStore;
+  private final RuleExecutorMetrics ruleExecutorMetrics;
 
   private boolean isClosed = false;
 
@@ -123,6 +129,14 @@ public RuleManager(
     this.metaStore = context.getMetaStore();
     this.ruleDao = metaStore.ruleDao();
     this.ruleInfoHandler = new RuleInfoHandler(ruleDao);
+    this.accessCountWindowStore = new AccessCountWindowStore(
+        metaStore.getDataSource(),
+        new TransactionRunner(metaStore.transactionManager()),
+        context.getConf().getLong(
+            SmartConfKeys.SMART_RULE_ACCESS_COUNT_SETTLE_DELAY_MS_KEY,
+            SmartConfKeys.SMART_RULE_ACCESS_COUNT_SETTLE_DELAY_MS_DEFAULT));
+    this.ruleExecutorMetrics = SmartMetricsSystem.register(RuleExecutorMetrics.NAME,
+        "Rule executions metrics", new RuleExecutorMetrics());
     this.pathChecker = new PathChecker(context.getConf());
 
     FileCopyScheduleStrategy copyScheduleStrategy = FileCopyScheduleStrategy.of(
@@ -213,6 +227,14 @@ public MetaStore getMetaStore() {
     return metaStore;
   }
 
+  public AccessCountWindowStore getAccessCountWindowStore() {
+    return accessCountWindowStore;
+  }
+
+  public RuleExecutorMetrics getRuleExecutorMetrics() {
+    return ruleExecutorMetrics;
+  }
+
   /**
    * Delete a rule in SSM. if dropPendingCmdlets equals false then the rule record will still be
    * kept in Table 'rules', the record will be deleted sometime later.
@@ -26,8 +26,10 @@
 import org.smartdata.conf.ReconfigureException;
 import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.hdfs.HdfsStatesUpdateService;
+import org.smartdata.metastore.accesscount.AccessEventAggregatorMetrics;
 import org.smartdata.metastore.accesscount.DbAccessEventAggregator;
 import org.smartdata.metastore.accesscount.FileAccessManager;
+import org.smartdata.metastore.accesscount.PathFidCache;
 import org.smartdata.metastore.accesscount.failover.AccessCountFailoverFactory;
 import org.smartdata.metastore.partition.FileAccessPartitionManagerImpl;
 import org.smartdata.metastore.partition.FileAccessPartitionService;
@@ -36,6 +38,7 @@
 import org.smartdata.metrics.FileAccessEvent;
 import org.smartdata.metrics.FileAccessEventSource;
 import org.smartdata.metrics.impl.MetricsFactory;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
 import org.smartdata.model.PathChecker;
 import org.smartdata.server.engine.data.AccessEventFetcher;
 
@@ -89,10 +92,18 @@ public void init() throws IOException {
     this.fileAccessEventSource = MetricsFactory.createAccessEventSource(serverContext.getConf());
     AccessCountFailoverFactory accessCountFailoverFactory =
         new AccessCountFailoverFactory(serverContext.getConf());
+    long aggregationBucketMs = serverContext.getConf().getLong(
+        SmartConfKeys.SMART_ACCESS_COUNT_AGGREGATION_BUCKET_MS_KEY,
+        SmartConfKeys.SMART_ACCESS_COUNT_AGGREGATION_BUCKET_MS_DEFAULT);
     DbAccessEventAggregator accessEventAggregator = new DbAccessEventAggregator(
         serverContext.getMetaStore().fileInfoDao(),
         fileAccessManager,
-        accessCountFailoverFactory.create());
+        accessCountFailoverFactory.create(),
+        aggregationBucketMs,
+        SmartMetricsSystem.register(AccessEventAggregatorMetrics.NAME,
+            "File access events aggregation metrics", new AccessEventAggregatorMetrics()),
+        SmartMetricsSystem.register(PathFidCache.NAME,
+            "File path to id cache metrics", serverContext.getMetaStore().pathFidCache()));
     this.accessEventFetcher = new AccessEventFetcher(
         serverContext.getConf(),
         accessEventAggregator,
@@ -169,20 +180,46 @@ public void stop() throws IOException {
   }
 
   public void reportFileAccessEvent(FileAccessEvent event) {
+    if (!shouldAcceptEvent(event)) {
+      return;
+    }
+    event.setTimeStamp(System.currentTimeMillis());
+    this.fileAccessEventSource.insertEventFromSmartClient(event);
+  }
+
+  /**
+   * Accepts a batch of file access events, that may be coalesced
+   * on the client side.
+   */
+  public void reportFileAccessEvents(List<FileAccessEvent> events) {
+    long currentTime = System.currentTimeMillis();
+    for (FileAccessEvent event : events) {
+      if (!shouldAcceptEvent(event)) {
+        continue;
+      }
+      // don't trust client clock further than the current server time
+      long timestamp = event.getTimestamp() > 0
+          ? Math.min(event.getTimestamp(), currentTime)
+          : currentTime;
+      event.setTimeStamp(timestamp);
+      fileAccessEventSource.insertEventFromSmartClient(event);
+    }
+  }
+
+  private boolean shouldAcceptEvent(FileAccessEvent event) {
     String path = event.getPath();
     path = path + (path.endsWith("/") ? "" : "/");
 
     if (pathChecker.isIgnored(path)) {
       LOG.debug("Path {} is in the ignore list. Skip report file access event.", path);
-      return;
+      return false;
     }
 
     if (!pathChecker.isCovered(path)) {
       LOG.debug("Path {} is not in the whitelist. Report file access event failed.", path);
-      return;
+      return false;
     }
-    event.setTimeStamp(System.currentTimeMillis());
-    this.fileAccessEventSource.insertEventFromSmartClient(event);
+    return true;
   }
 
   public void reconfigureProperty(String property, String newVal)
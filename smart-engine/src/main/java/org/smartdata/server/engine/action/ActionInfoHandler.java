@@ -160,8 +160,10 @@ private void updateActionStatusInternal(ActionInfo actionInfo, ActionStatus stat
       return;
     }
 
-    actionInfo.setLog(status.getLog());
-    actionInfo.setResult(status.getResult());
+    actionInfo.setLog(applyOutputUpdate(
+        actionInfo.getLog(), status.getLog(), status.getLogOffset()));
+    actionInfo.setResult(applyOutputUpdate(
+        actionInfo.getResult(), status.getResult(), status.getResultOffset()));
     if (!status.isFinished()) {
       actionInfo.setProgress(status.getPercentage());
       actionInfo.setFinishTime(System.currentTimeMillis());
@@ -179,6 +181,28 @@ private void updateActionStatusInternal(ActionInfo actionInfo, ActionStatus stat
     }
   }
 
+  /**
+   * Executors report only the action output appended since the previous
+   * report starting from the offset. Statuses with the zero offset
+   * contain the whole output, they are sent periodically and on finish,
+   * so the output missed due to lost reports is restored by them.
+   */
+  private String applyOutputUpdate(String output, String update, long offset) {
+    if (offset <= 0 || output == null) {
+      return update;
+    }
+    if (update.isEmpty()) {
+      return output;
+    }
+    if (offset > output.length()) {
+      LOG.debug("Missed {} chars of the action output, waiting for the whole output",
+          offset - output.length());
+      return output;
+    }
+    // the update can overlap with the already applied output
+    return output.substring(0, (int) offset) + update;
+  }
+
   private void updateStorageIfNeeded(ActionInfo info) {
     SmartAction action;
     try {
@@ -135,7 +135,7 @@ public synchronized List<ActionStatus> getActionStatuses() {
     Iterator<SmartAction> iter = actionReportList.iterator();
     while (iter.hasNext()) {
       SmartAction action = iter.next();
-      ActionStatus status = action.getActionStatus();
+      ActionStatus status = action.pollActionStatus();
       statuses.add(status);
       if (status.isFinished()) {
         iter.remove();
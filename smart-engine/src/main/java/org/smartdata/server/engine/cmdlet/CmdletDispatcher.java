@@ -53,6 +53,8 @@
 
 public class CmdletDispatcher implements ClusterNodeMetricsProvider {
   private static final Logger LOG = LoggerFactory.getLogger(CmdletDispatcher.class);
+  // wait time of the dispatch tasks if they aren't woken up by any event
+  private static final long DISPATCH_IDLE_INTERVAL_MS = 100;
   private final Queue<Long> pendingCmdlets;
   private final CmdletManager cmdletManager;
   private final List<Long> runningCmdlets;
@@ -71,6 +73,7 @@ public class CmdletDispatcher implements ClusterNodeMetricsProvider {
   private final boolean disableLocalExec;
   private final boolean logDispResult;
   private final DispatchTask[] dispatchTasks;
+  private final WakeUpSignal dispatchSignal;
   private final int outputDispMetricsInterval; // 0 means no output
 
   // TODO: to be refined
@@ -131,6 +134,7 @@ public CmdletDispatcher(SmartContext smartContext, CmdletManager cmdletManager,
     if (numDisp <= 0) {
       numDisp = 1;
     }
+    this.dispatchSignal = new WakeUpSignal();
     this.dispatchTasks = new DispatchTask[numDisp];
     for (int i = 0; i < numDisp; i++) {
       dispatchTasks[i] = new DispatchTask(this, i);
@@ -175,6 +179,13 @@ public void shutDownExcutorServices() {
     }
   }
 
+  /**
+   * Wakes up the dispatch tasks waiting for the scheduled cmdlets.
+   */
+  public void onCmdletScheduled() {
+    dispatchSignal.signal();
+  }
+
   public LaunchCmdlet getNextCmdletToRun() {
     Long cmdletId = pendingCmdlets.poll();
     if (cmdletId == null) {
@@ -240,6 +251,26 @@ public CmdletDispatcherStat getStat() {
       return stat;
     }
 
+    /**
+     * Runs dispatch rounds until the dispatcher is stopped. Between the rounds
+     * the task waits until new cmdlets are scheduled or executor slots are freed.
+     */
+    private void dispatchUntilStopped() {
+      while (!Thread.currentThread().isInterrupted()) {
+        try {
+          run();
+        } catch (Throwable t) {
+          LOG.error("Cmdlet dispatcher error", t);
+        }
+
+        try {
+          dispatchSignal.await(DISPATCH_IDLE_INTERVAL_MS);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+
     @Override
     public void run() {
       statRound++;
@@ -300,17 +331,21 @@ private boolean dispatch(LaunchCmdlet cmdlet) {
       int idx = 0;
 
       for (int nround = 0; nround < 2 && mod >= 0; nround++) {
+        if (nround > 0) {
+          // executor services are being updated, give them time before retrying
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+          }
+        }
         for (idx = 0; idx < cmdExecSrvInsts.length; idx++) {
           mod -= cmdExecSrvInsts[idx];
           if (mod < 0) {
             break;
           }
         }
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) {
-          // ignore
-        }
       }
 
       if (mod >= 0) {
@@ -458,6 +493,7 @@ public void onCmdletFinished(long cmdletId) {
         completeOn[t.ordinal()] = cmdlet.getNodeId();
       }
     }
+    dispatchSignal.signal();
   }
 
   /**
@@ -528,6 +564,7 @@ public void onNodeMessage(NodeMessage msg, boolean isAdd) {
       cmdExecSrvTotalInsts += v;
       updateSlotsLeft(idx, v * defaultSlots);
     }
+    dispatchSignal.signal();
     LOG.info(String.format("Node "
         + msg.getNodeInfo() + (isAdd ? " added." : " removed.")));
   }
@@ -571,11 +608,8 @@ public void start() {
     registerExecutorService(exe);
 
     CmdletDispatcherHelper.getInst().register(this);
-    long idx = 0;
     for (DispatchTask task : dispatchTasks) {
-      schExecService.scheduleAtFixedRate(task, idx * 200 / dispatchTasks.length,
-          100, TimeUnit.MILLISECONDS);
-      idx++;
+      schExecService.execute(task::dispatchUntilStopped);
     }
     if (outputDispMetricsInterval > 0) {
       schExecService.scheduleAtFixedRate(new LogStatTask(dispatchTasks),
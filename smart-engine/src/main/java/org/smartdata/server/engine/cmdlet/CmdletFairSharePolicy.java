@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import com.google.common.primitives.Ints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares of the cmdlet executor slots between action types and rules.
+ * Action type weights define how many cmdlets of the type are scheduled
+ * per scheduling turn, reserved slots can't be taken by the cmdlets of
+ * the other types and the number of active (scheduled or running) cmdlets
+ * of a single rule can be limited.
+ */
+public class CmdletFairSharePolicy {
+  private static final Logger LOG = LoggerFactory.getLogger(CmdletFairSharePolicy.class);
+  private static final int DEFAULT_WEIGHT = 1;
+
+  private final Map<String, Integer> typeWeights;
+  private final Map<String, Integer> reservedSlots;
+  private final int maxActiveRuleCmdlets;
+
+  private final Map<Long, ActiveCmdlet> activeCmdlets;
+  private final Map<String, Integer> activeTypeCmdlets;
+  private final Map<Long, Integer> activeRuleCmdlets;
+
+  public CmdletFairSharePolicy(SmartConf conf) {
+    this(parseTypeValues(conf, SmartConfKeys.SMART_CMDLET_SCHEDULER_ACTION_WEIGHTS_KEY, 1),
+        parseTypeValues(conf, SmartConfKeys.SMART_CMDLET_SCHEDULER_RESERVED_SLOTS_KEY, 0),
+        conf.getInt(SmartConfKeys.SMART_CMDLET_SCHEDULER_RULE_MAX_ACTIVE_KEY,
+            SmartConfKeys.SMART_CMDLET_SCHEDULER_RULE_MAX_ACTIVE_DEFAULT));
+  }
+
+  public CmdletFairSharePolicy(Map<String, Integer> typeWeights,
+                               Map<String, Integer> reservedSlots,
+                               int maxActiveRuleCmdlets) {
+    this.typeWeights = typeWeights;
+    this.reservedSlots = reservedSlots;
+    this.maxActiveRuleCmdlets = maxActiveRuleCmdlets;
+    this.activeCmdlets = new ConcurrentHashMap<>();
+    this.activeTypeCmdlets = new ConcurrentHashMap<>();
+    this.activeRuleCmdlets = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the number of cmdlets of the action type scheduled per turn.
+   */
+  public int getWeight(String actionType) {
+    return typeWeights.getOrDefault(actionType, DEFAULT_WEIGHT);
+  }
+
+  /**
+   * Checks whether a cmdlet of the action type can take one of the free
+   * slots without taking the slots reserved for the other types.
+   */
+  public boolean hasFreeSlots(String actionType, int freeSlots) {
+    int unusedReservedSlots = 0;
+    for (Map.Entry<String, Integer> reservation : reservedSlots.entrySet()) {
+      if (!reservation.getKey().equals(actionType)) {
+        unusedReservedSlots += Math.max(0,
+            reservation.getValue() - activeTypeCmdlets.getOrDefault(reservation.getKey(), 0));
+      }
+    }
+    return freeSlots > unusedReservedSlots;
+  }
+
+  public boolean isRuleLimitReached(long ruleId) {
+    return ruleId > 0
+        && maxActiveRuleCmdlets > 0
+        && activeRuleCmdlets.getOrDefault(ruleId, 0) >= maxActiveRuleCmdlets;
+  }
+
+  /**
+   * Takes into account the cmdlet, which was scheduled or is already running.
+   */
+  public void onCmdletActive(long cmdletId, String actionType, long ruleId) {
+    ActiveCmdlet activeCmdlet = new ActiveCmdlet(actionType, ruleId);
+    if (activeCmdlets.putIfAbsent(cmdletId, activeCmdlet) != null) {
+      return;
+    }
+    activeTypeCmdlets.merge(actionType, 1, CmdletFairSharePolicy::addCount);
+    if (ruleId > 0) {
+      activeRuleCmdlets.merge(ruleId, 1, CmdletFairSharePolicy::addCount);
+    }
+  }
+
+  public void onCmdletFinished(long cmdletId) {
+    ActiveCmdlet activeCmdlet = activeCmdlets.remove(cmdletId);
+    if (activeCmdlet == null) {
+      return;
+    }
+    activeTypeCmdlets.merge(activeCmdlet.actionType, -1, CmdletFairSharePolicy::addCount);
+    if (activeCmdlet.ruleId > 0) {
+      activeRuleCmdlets.merge(activeCmdlet.ruleId, -1, CmdletFairSharePolicy::addCount);
+    }
+  }
+
+  // removes the counter when it drops to zero
+  private static Integer addCount(Integer count, Integer delta) {
+    int newCount = count + delta;
+    return newCount > 0 ? newCount : null;
+  }
+
+  private static Map<String, Integer> parseTypeValues(
+      SmartConf conf, String key, int minValue) {
+    Map<String, Integer> typeValues = new HashMap<>();
+    for (String typeValue : conf.getTrimmedStringCollection(key)) {
+      String[] parts = typeValue.split(":");
+      Integer value = parts.length == 2 ? Ints.tryParse(parts[1].trim()) : null;
+      if (value == null || value < minValue) {
+        LOG.warn("Skipping wrong value '{}' of the {} option", typeValue, key);
+        continue;
+      }
+      typeValues.put(parts[0].trim(), value);
+    }
+    return Collections.unmodifiableMap(typeValues);
+  }
+
+  private static class ActiveCmdlet {
+    private final String actionType;
+    private final long ruleId;
+
+    private ActiveCmdlet(String actionType, long ruleId) {
+      this.actionType = actionType;
+      this.ruleId = ruleId;
+    }
+  }
+}
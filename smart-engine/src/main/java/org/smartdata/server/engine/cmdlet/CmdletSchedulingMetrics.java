@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics of the cmdlet scheduling pipeline. Queue depth and latencies
+ * of the scheduling stages are reported for each action type:
+ * the time cmdlets wait in the pending queue, the time of the schedulers
+ * calls and the time scheduled cmdlets wait for dispatching. Percentiles
+ * of the pending time are reported as well to compare the waiting time
+ * of the action types sharing the executors.
+ */
+public class CmdletSchedulingMetrics implements MetricsSource {
+  public static final String NAME = "CmdletScheduling";
+  private static final int QUANTILES_INTERVAL_SEC = 60;
+
+  private final MetricsRegistry registry;
+  private final CmdletSchedulingQueue pendingCmdlets;
+  private final Queue<Long> scheduledCmdlets;
+  private final Map<String, StageLatencies> typeLatencies;
+
+  public CmdletSchedulingMetrics(
+      CmdletSchedulingQueue pendingCmdlets, Queue<Long> scheduledCmdlets) {
+    this.registry = new MetricsRegistry(NAME);
+    this.pendingCmdlets = pendingCmdlets;
+    this.scheduledCmdlets = scheduledCmdlets;
+    this.typeLatencies = new ConcurrentHashMap<>();
+  }
+
+  public void addPendingTime(String actionType, long timeMs) {
+    StageLatencies latencies = getLatencies(actionType);
+    latencies.pendingTime.add(timeMs);
+    latencies.pendingTimeQuantiles.add(timeMs);
+  }
+
+  public void addScheduleTime(String actionType, long timeMs) {
+    getLatencies(actionType).scheduleTime.add(timeMs);
+  }
+
+  public void addDispatchWaitTime(String actionType, long timeMs) {
+    getLatencies(actionType).dispatchWaitTime.add(timeMs);
+  }
+
+  private StageLatencies getLatencies(String actionType) {
+    return typeLatencies.computeIfAbsent(actionType, this::createLatencies);
+  }
+
+  private StageLatencies createLatencies(String actionType) {
+    return new StageLatencies(
+        registry.newRate(actionType + "PendingTime",
+            "Time " + actionType + " cmdlets wait for scheduling in milliseconds", false),
+        registry.newRate(actionType + "ScheduleTime",
+            "Time of " + actionType + " cmdlets scheduling in milliseconds", false),
+        registry.newRate(actionType + "DispatchWaitTime",
+            "Time scheduled " + actionType + " cmdlets wait for dispatching in milliseconds",
+            false),
+        new MutableQuantiles(actionType + "PendingTimeQuantiles",
+            "Time " + actionType + " cmdlets wait for scheduling", "ops", "latencyMs",
+            QUANTILES_INTERVAL_SEC));
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    MetricsRecordBuilder recordBuilder = collector.addRecord(registry.info())
+        .addGauge(Interns.info("PendingCmdlets",
+            "Number of cmdlets waiting for scheduling"), pendingCmdlets.size())
+        .addGauge(Interns.info("ScheduledCmdlets",
+            "Number of scheduled cmdlets waiting for dispatching"), scheduledCmdlets.size());
+    for (String actionType : pendingCmdlets.getActionTypes()) {
+      recordBuilder.addGauge(Interns.info(actionType + "PendingCmdlets",
+              "Number of " + actionType + " cmdlets waiting for scheduling"),
+          pendingCmdlets.size(actionType));
+    }
+    registry.snapshot(recordBuilder, all);
+    for (StageLatencies latencies : typeLatencies.values()) {
+      latencies.pendingTimeQuantiles.snapshot(recordBuilder, all);
+    }
+  }
+
+  private static class StageLatencies {
+    private final MutableRate pendingTime;
+    private final MutableRate scheduleTime;
+    private final MutableRate dispatchWaitTime;
+    private final MutableQuantiles pendingTimeQuantiles;
+
+    private StageLatencies(MutableRate pendingTime, MutableRate scheduleTime,
+                           MutableRate dispatchWaitTime, MutableQuantiles pendingTimeQuantiles) {
+      this.pendingTime = pendingTime;
+      this.scheduleTime = scheduleTime;
+      this.dispatchWaitTime = dispatchWaitTime;
+      this.pendingTimeQuantiles = pendingTimeQuantiles;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cmdlets waiting to be scheduled. Cmdlets are queued separately for each
+ * action type, which is the name of the first cmdlet action, so a burst of
+ * cmdlets of one type can be interleaved with the cmdlets of other types.
+ * All operations are lock-free. Removed cmdlets are left in the type queues
+ * and skipped when they are polled.
+ */
+public class CmdletSchedulingQueue {
+  private final Map<String, TypeQueue> typeQueues;
+  private final Map<Long, Entry> queuedCmdlets;
+
+  public CmdletSchedulingQueue() {
+    this.typeQueues = new ConcurrentHashMap<>();
+    this.queuedCmdlets = new ConcurrentHashMap<>();
+  }
+
+  public void add(long cmdletId, String actionType, long ruleId) {
+    add(new Entry(cmdletId, actionType, ruleId, System.currentTimeMillis()));
+  }
+
+  /**
+   * Adds the cmdlet to the tail of its type queue. Polled cmdlets are
+   * returned back this way keeping their enqueue time.
+   */
+  public void add(Entry entry) {
+    if (queuedCmdlets.putIfAbsent(entry.getCmdletId(), entry) != null) {
+      return;
+    }
+    TypeQueue typeQueue = typeQueues.computeIfAbsent(
+        entry.getActionType(), type -> new TypeQueue());
+    typeQueue.size.incrementAndGet();
+    typeQueue.entries.add(entry);
+  }
+
+  /**
+   * Polls the next cmdlet of the action type.
+   *
+   * @return null if there are no queued cmdlets of the type
+   */
+  public Entry poll(String actionType) {
+    TypeQueue typeQueue = typeQueues.get(actionType);
+    if (typeQueue == null) {
+      return null;
+    }
+    Entry entry;
+    while ((entry = typeQueue.entries.poll()) != null) {
+      if (queuedCmdlets.remove(entry.getCmdletId(), entry)) {
+        typeQueue.size.decrementAndGet();
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  public boolean remove(long cmdletId) {
+    Entry entry = queuedCmdlets.remove(cmdletId);
+    if (entry == null) {
+      return false;
+    }
+    typeQueues.get(entry.getActionType()).size.decrementAndGet();
+    return true;
+  }
+
+  public int size() {
+    return queuedCmdlets.size();
+  }
+
+  public int size(String actionType) {
+    TypeQueue typeQueue = typeQueues.get(actionType);
+    return typeQueue == null ? 0 : typeQueue.size.get();
+  }
+
+  public List<String> getActionTypes() {
+    return new ArrayList<>(typeQueues.keySet());
+  }
+
+  private static class TypeQueue {
+    private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+    // the queue itself also contains removed entries
+    private final AtomicInteger size = new AtomicInteger();
+  }
+
+  public static class Entry {
+    private final long cmdletId;
+    private final String actionType;
+    private final long ruleId;
+    private final long enqueueTime;
+
+    public Entry(long cmdletId, String actionType, long ruleId, long enqueueTime) {
+      this.cmdletId = cmdletId;
+      this.actionType = actionType;
+      this.ruleId = ruleId;
+      this.enqueueTime = enqueueTime;
+    }
+
+    public long getCmdletId() {
+      return cmdletId;
+    }
+
+    public String getActionType() {
+      return actionType;
+    }
+
+    public long getRuleId() {
+      return ruleId;
+    }
+
+    public long getEnqueueTime() {
+      return enqueueTime;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Schedules the pending cmdlets taking them from the action type queues in turn.
+ * During each turn the number of scheduled cmdlets of the type is limited by
+ * its weight, cmdlets of the rules having too many active cmdlets are deferred
+ * and the type is skipped if the free slots are reserved for the other types.
+ * Free slots are checked before every polled cmdlet, since each scheduled
+ * cmdlet takes one of them. Every cmdlet is polled at most once per call.
+ */
+public class CmdletTurnScheduler {
+  private final CmdletSchedulingQueue pendingCmdlets;
+  private final CmdletFairSharePolicy fairSharePolicy;
+  private final IntSupplier freeSlots;
+  private final Predicate<CmdletSchedulingQueue.Entry> cmdletScheduler;
+
+  /**
+   * @param freeSlots returns the number of cmdlets, which can be scheduled now
+   * @param cmdletScheduler schedules the polled cmdlet, returns false
+   *                        if the cmdlet should be rescheduled later
+   */
+  public CmdletTurnScheduler(CmdletSchedulingQueue pendingCmdlets,
+                             CmdletFairSharePolicy fairSharePolicy,
+                             IntSupplier freeSlots,
+                             Predicate<CmdletSchedulingQueue.Entry> cmdletScheduler) {
+    this.pendingCmdlets = pendingCmdlets;
+    this.fairSharePolicy = fairSharePolicy;
+    this.freeSlots = freeSlots;
+    this.cmdletScheduler = cmdletScheduler;
+  }
+
+  /**
+   * Schedules the pending cmdlets while there are free slots.
+   *
+   * @return true if some cmdlets should be rescheduled later
+   */
+  public boolean schedule() {
+    List<CmdletSchedulingQueue.Entry> retryCmdlets = new ArrayList<>();
+    List<CmdletSchedulingQueue.Entry> deferredCmdlets = new ArrayList<>();
+    Map<String, Integer> typeBudgets = new LinkedHashMap<>();
+    for (String actionType : pendingCmdlets.getActionTypes()) {
+      typeBudgets.put(actionType, pendingCmdlets.size(actionType));
+    }
+
+    boolean stopped = false;
+    while (!typeBudgets.isEmpty() && !stopped) {
+      Iterator<Map.Entry<String, Integer>> budgetsIter = typeBudgets.entrySet().iterator();
+      while (budgetsIter.hasNext() && !stopped) {
+        Map.Entry<String, Integer> typeBudget = budgetsIter.next();
+        String actionType = typeBudget.getKey();
+        int turnCmdlets = Math.min(fairSharePolicy.getWeight(actionType), typeBudget.getValue());
+
+        boolean typeExhausted = false;
+        int polledCmdlets = 0;
+        while (polledCmdlets < turnCmdlets) {
+          int slots = freeSlots.getAsInt();
+          if (slots <= 0) {
+            stopped = true;
+            break;
+          }
+          if (!fairSharePolicy.hasFreeSlots(actionType, slots)) {
+            typeExhausted = true;
+            break;
+          }
+          CmdletSchedulingQueue.Entry entry = pendingCmdlets.poll(actionType);
+          if (entry == null) {
+            typeExhausted = true;
+            break;
+          }
+          polledCmdlets++;
+          if (fairSharePolicy.isRuleLimitReached(entry.getRuleId())) {
+            // finished cmdlets of the rule will wake up the scheduler
+            deferredCmdlets.add(entry);
+          } else if (!cmdletScheduler.test(entry)) {
+            retryCmdlets.add(entry);
+          }
+        }
+        typeBudget.setValue(typeBudget.getValue() - polledCmdlets);
+        if (typeExhausted || typeBudget.getValue() <= 0) {
+          budgetsIter.remove();
+        }
+      }
+    }
+    retryCmdlets.forEach(pendingCmdlets::add);
+    deferredCmdlets.forEach(pendingCmdlets::add);
+    return !retryCmdlets.isEmpty();
+  }
+}
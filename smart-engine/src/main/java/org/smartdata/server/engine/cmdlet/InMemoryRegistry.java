@@ -17,12 +17,14 @@
  */
 package org.smartdata.server.engine.cmdlet;
 
+import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smartdata.SmartService;
 import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
 import org.smartdata.model.ActionInfo;
 import org.smartdata.model.CmdletInfo;
 import org.smartdata.model.CmdletState;
@@ -30,28 +32,45 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
+/**
+ * Cache of the unfinished cmdlets and their actions with the write-behind
+ * journal of the cmdlet changes. Changed cmdlets are kept in the journal
+ * by id, so all state transitions made between flushes are written
+ * to the metastore once. The journal is flushed when it collects
+ * a batch of cmdlets or when its oldest change waits longer than
+ * the configured delay. Changes failed to be written are left
+ * in the journal and retried after the configured delay.
+ */
 public class InMemoryRegistry implements SmartService {
   private static final Logger LOG = LoggerFactory.getLogger(InMemoryRegistry.class);
+  private static final long SYNC_CHECK_INTERVAL_MS = 50;
 
   private final Map<Long, CmdletInfo> unfinishedCmdlets;
   private final Map<Long, ActionInfo> actions;
+  // journal of the changed cmdlets
   private final Map<Long, CmdletInfo> cmdlets;
   private final List<Long> cmdletsToDelete;
+  // time of the oldest change in the journal or 0 if there are no changes
+  private final AtomicLong oldestChangeTime;
+  // flushes are postponed until this time after a metastore error
+  private volatile long flushRetryTime;
   private final MetaStore metaStore;
 
   private final RuleCmdletTracker ruleCmdletTracker;
 
   private final int cmdletCacheSyncBatchSize;
+  private final long maxSyncDelayMs;
+  private final InMemoryRegistryMetrics metrics;
 
   private final ScheduledExecutorService executorService;
 
@@ -65,11 +84,17 @@ public InMemoryRegistry(
     this.actions = new ConcurrentHashMap<>();
     this.cmdlets = new ConcurrentHashMap<>();
     this.cmdletsToDelete = new ArrayList<>();
+    this.oldestChangeTime = new AtomicLong();
 
     this.metaStore = context.getMetaStore();
     this.cmdletCacheSyncBatchSize = context.getConf()
         .getInt(SmartConfKeys.SMART_CMDLET_CACHE_BATCH,
             SmartConfKeys.SMART_CMDLET_CACHE_BATCH_DEFAULT);
+    this.maxSyncDelayMs = context.getConf()
+        .getLong(SmartConfKeys.SMART_CMDLET_CACHE_SYNC_MAX_DELAY_MS_KEY,
+            SmartConfKeys.SMART_CMDLET_CACHE_SYNC_MAX_DELAY_MS_DEFAULT);
+    this.metrics = SmartMetricsSystem.register(InMemoryRegistryMetrics.NAME,
+        "Cmdlets metastore sync metrics", new InMemoryRegistryMetrics(cmdlets::size));
   }
 
   @Override
@@ -78,15 +103,15 @@ public void init() throws IOException {
 
   @Override
   public void start() throws IOException {
-    executorService.scheduleAtFixedRate(this::syncWithMetastore, 200, 50,
-        TimeUnit.MILLISECONDS);
+    executorService.scheduleAtFixedRate(this::syncWithMetastore, 200,
+        SYNC_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
   }
 
   @Override
   public void stop() throws IOException {
     executorService.shutdownNow();
 
-    syncWithMetastore();
+    flush();
   }
 
   public CmdletInfo updateCmdlet(long cmdletId, Consumer<CmdletInfo> cmdletConsumer) {
@@ -113,12 +138,14 @@ public void addUnfinishedCmdlet(CmdletInfo cmdletInfo) {
 
   public void addCmdlet(CmdletInfo cmdletInfo) {
     cmdlets.put(cmdletInfo.getId(), cmdletInfo);
+    oldestChangeTime.compareAndSet(0, System.currentTimeMillis());
   }
 
   public void deleteCmdletsAsync(List<Long> cmdletIds) {
     synchronized (cmdletsToDelete) {
       cmdletsToDelete.addAll(cmdletIds);
     }
+    oldestChangeTime.compareAndSet(0, System.currentTimeMillis());
   }
 
   public CmdletInfo getUnfinishedCmdlet(long cmdletId) {
@@ -138,56 +165,113 @@ public Map<Long, ActionInfo> getUnfinishedActions() {
   }
 
   private void syncWithMetastore() {
-    if (cmdlets.isEmpty() && cmdletsToDelete.isEmpty()) {
+    long changeTime = oldestChangeTime.get();
+    if (changeTime == 0 || System.currentTimeMillis() < flushRetryTime) {
+      return;
+    }
+    if (cmdlets.size() < cmdletCacheSyncBatchSize
+        && getCmdletsToDeleteCount() < cmdletCacheSyncBatchSize
+        && System.currentTimeMillis() - changeTime < maxSyncDelayMs) {
       return;
     }
-    List<CmdletInfo> cmdletInfos = new ArrayList<>();
-    List<ActionInfo> actionInfos = new ArrayList<>();
-    List<CmdletInfo> cmdletFinished = new ArrayList<>();
+    try {
+      flush();
+    } catch (Exception e) {
+      LOG.error("Error syncing cmdlets with metastore", e);
+    }
+  }
+
+  /**
+   * Writes all journaled changes to the metastore.
+   */
+  private synchronized void flush() {
+    long changeTime = oldestChangeTime.getAndSet(0);
+    if (changeTime == 0) {
+      return;
+    }
+    long startTime = System.currentTimeMillis();
+    metrics.addFlushLag(startTime - changeTime);
 
-    int cmdletsToDeleteCount;
     synchronized (cmdletsToDelete) {
-      cmdletsToDeleteCount = cmdletsToDelete.size();
       cmdletsToDelete.forEach(cmdlets::remove);
     }
 
-    Set<Long> cmdletIds = new HashSet<>(cmdlets.keySet());
-    for (long cmdletId : cmdletIds) {
-      CmdletInfo cmdletInfo = cmdlets.remove(cmdletId);
-      if (cmdletInfo.getState() != CmdletState.DISABLED) {
-        cmdletInfos.add(cmdletInfo);
-
-        cmdletInfo.getActionIds()
-            .stream()
-            .map(actions::get)
-            .filter(Objects::nonNull)
-            .forEach(actionInfos::add);
-      }
-      if (CmdletState.isTerminalState(cmdletInfo.getState())) {
-        cmdletFinished.add(cmdletInfo);
+    int flushedRows = 0;
+    Iterator<Long> cmdletIdsIter = cmdlets.keySet().iterator();
+    while (cmdletIdsIter.hasNext()) {
+      List<CmdletInfo> batch = new ArrayList<>();
+      List<CmdletInfo> cmdletInfos = new ArrayList<>();
+      List<ActionInfo> actionInfos = new ArrayList<>();
+      List<CmdletInfo> cmdletFinished = new ArrayList<>();
+      while (cmdletIdsIter.hasNext() && cmdletInfos.size() < cmdletCacheSyncBatchSize) {
+        CmdletInfo cmdletInfo = cmdlets.remove(cmdletIdsIter.next());
+        if (cmdletInfo == null) {
+          continue;
+        }
+        batch.add(cmdletInfo);
+        if (cmdletInfo.getState() != CmdletState.DISABLED) {
+          cmdletInfos.add(cmdletInfo);
+
+          cmdletInfo.getActionIds()
+              .stream()
+              .map(actions::get)
+              .filter(Objects::nonNull)
+              .forEach(actionInfos::add);
+        }
+        if (CmdletState.isTerminalState(cmdletInfo.getState())) {
+          cmdletFinished.add(cmdletInfo);
+        }
       }
-      if (cmdletInfos.size() >= cmdletCacheSyncBatchSize) {
-        break;
+
+      if (!storeToMetastore(cmdletInfos, actionInfos)) {
+        // the rest of the batches and the deletions are left in the journal,
+        // so that the deletions still follow the writes of the same cmdlets
+        rejournal(batch, changeTime);
+        metrics.addFlush(flushedRows, System.currentTimeMillis() - startTime);
+        return;
       }
+      // finished cmdlets are removed only after they are stored,
+      // so they are always available either in cache or in metastore
+      removeFinishedCmdlets(cmdletFinished);
+      flushedRows += cmdletInfos.size() + actionInfos.size();
     }
 
-    removeFinishedCmdlets(cmdletFinished);
+    flushedRows += deleteCmdletsFromMetastore(changeTime);
+    metrics.addFlush(flushedRows, System.currentTimeMillis() - startTime);
+  }
 
-    storeToMetastore(cmdletInfos, actionInfos);
+  /**
+   * @return false if the cmdlets weren't stored due to the metastore error
+   */
+  private boolean storeToMetastore(List<CmdletInfo> cmdletInfos, List<ActionInfo> actionInfos) {
+    if (cmdletInfos.isEmpty()) {
+      return true;
+    }
+    LOG.debug("Number of cmdlets {} to submit", cmdletInfos.size());
+    try {
+      metaStore.upsertActions(actionInfos);
+      metaStore.upsertCmdlets(cmdletInfos);
+      return true;
+    } catch (MetaStoreException e) {
+      LOG.error("CmdletIds -> [ {} ], submit to DB error", cmdletInfos, e);
+      return false;
+    }
+  }
 
-    deleteCmdletsFromMetastore(cmdletsToDeleteCount);
+  /**
+   * Returns the changes failed to be written back to the journal
+   * unless they were changed again during the flush.
+   */
+  private void rejournal(List<CmdletInfo> batch, long changeTime) {
+    batch.forEach(cmdletInfo -> cmdlets.putIfAbsent(cmdletInfo.getId(), cmdletInfo));
+    onFlushFailure(changeTime);
   }
 
-  private void storeToMetastore(List<CmdletInfo> cmdletInfos, List<ActionInfo> actionInfos) {
-    if (!cmdletInfos.isEmpty()) {
-      LOG.debug("Number of cmdlets {} to submit", cmdletInfos.size());
-      try {
-        metaStore.upsertActions(actionInfos);
-        metaStore.upsertCmdlets(cmdletInfos);
-      } catch (MetaStoreException e) {
-        LOG.error("CmdletIds -> [ {} ], submit to DB error", cmdletInfos, e);
-      }
-    }
+  private void onFlushFailure(long changeTime) {
+    oldestChangeTime.accumulateAndGet(changeTime,
+        (current, failed) -> current == 0 ? failed : Math.min(current, failed));
+    flushRetryTime = System.currentTimeMillis() + maxSyncDelayMs;
+    metrics.addFlushFailure();
   }
 
   private void removeFinishedCmdlets(List<CmdletInfo> cmdletFinished) {
@@ -199,27 +283,37 @@ private void removeFinishedCmdlets(List<CmdletInfo> cmdletFinished) {
     }
   }
 
-  private void deleteCmdletsFromMetastore(int cmdletsToDeleteCount) {
-    if (cmdletsToDeleteCount <= 0) {
-      return;
+  private int getCmdletsToDeleteCount() {
+    synchronized (cmdletsToDelete) {
+      return cmdletsToDelete.size();
     }
+  }
 
-    int realCmdletsToDeleteCount = Math.min(cmdletsToDeleteCount, cmdletCacheSyncBatchSize);
-
+  private int deleteCmdletsFromMetastore(long changeTime) {
     List<Long> cmdletsToDeleteBatch;
     synchronized (cmdletsToDelete) {
-      cmdletsToDeleteBatch = new ArrayList<>(cmdletsToDelete.subList(0, realCmdletsToDeleteCount));
-      cmdletsToDelete.removeAll(cmdletsToDeleteBatch);
+      cmdletsToDeleteBatch = new ArrayList<>(cmdletsToDelete);
+      cmdletsToDelete.clear();
     }
 
-    if (!cmdletsToDeleteBatch.isEmpty()) {
-      LOG.debug("Number of cmdlets {} to delete", cmdletsToDeleteBatch.size());
+    int deletedCmdlets = 0;
+    for (List<Long> cmdletIds : Iterables.partition(
+        cmdletsToDeleteBatch, cmdletCacheSyncBatchSize)) {
+      LOG.debug("Number of cmdlets {} to delete", cmdletIds.size());
       try {
-        metaStore.batchDeleteCmdlet(cmdletsToDeleteBatch);
-        metaStore.batchDeleteCmdletActions(cmdletsToDeleteBatch);
+        metaStore.batchDeleteCmdlet(cmdletIds);
+        metaStore.batchDeleteCmdletActions(cmdletIds);
+        deletedCmdlets += cmdletIds.size();
       } catch (MetaStoreException e) {
-        LOG.error("CmdletIds -> [ {} ], delete from DB error", cmdletsToDeleteBatch, e);
+        LOG.error("CmdletIds -> [ {} ], delete from DB error", cmdletIds, e);
+        synchronized (cmdletsToDelete) {
+          cmdletsToDelete.addAll(
+              cmdletsToDeleteBatch.subList(deletedCmdlets, cmdletsToDeleteBatch.size()));
+        }
+        onFlushFailure(changeTime);
+        break;
       }
     }
+    return deletedCmdlets;
   }
 }
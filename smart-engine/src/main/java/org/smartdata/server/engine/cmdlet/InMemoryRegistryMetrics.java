@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Metrics of the cmdlets write-behind journal: the time changes wait
+ * in the journal before the flush, flush time and throughput.
+ */
+public class InMemoryRegistryMetrics implements MetricsSource {
+  public static final String NAME = "CmdletMetastoreSync";
+
+  private final MetricsRegistry registry;
+  private final MutableRate flushLag;
+  private final MutableRate flushTime;
+  private final MutableCounterLong flushedRows;
+  private final MutableGaugeLong flushRowsPerSecond;
+  private final MutableCounterLong flushFailures;
+  private final IntSupplier journalSize;
+
+  public InMemoryRegistryMetrics(IntSupplier journalSize) {
+    this.registry = new MetricsRegistry(NAME);
+    this.flushLag = registry.newRate("FlushLag",
+        "Time the oldest cmdlet change waits for the flush in milliseconds", false);
+    this.flushTime = registry.newRate("FlushTime",
+        "Time of the journal flush in milliseconds", false);
+    this.flushedRows = registry.newCounter("FlushedRows",
+        "Number of cmdlets and actions written or deleted by the flushes", 0L);
+    this.flushRowsPerSecond = registry.newGauge("FlushRowsPerSecond",
+        "Number of rows written per second during the last flush", 0L);
+    this.flushFailures = registry.newCounter("FlushFailures",
+        "Number of flushes stopped by the metastore errors", 0L);
+    this.journalSize = journalSize;
+  }
+
+  public void addFlushLag(long timeMs) {
+    flushLag.add(timeMs);
+  }
+
+  public void addFlush(int rows, long timeMs) {
+    flushTime.add(timeMs);
+    flushedRows.incr(rows);
+    flushRowsPerSecond.set(rows * 1000L / Math.max(timeMs, 1));
+  }
+
+  public void addFlushFailure() {
+    flushFailures.incr();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    MetricsRecordBuilder recordBuilder = collector.addRecord(registry.info())
+        .addGauge(Interns.info("JournalSize",
+            "Number of changed cmdlets waiting for the flush"), journalSize.getAsInt());
+    registry.snapshot(recordBuilder, all);
+  }
+}
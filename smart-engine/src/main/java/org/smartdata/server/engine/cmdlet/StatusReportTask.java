@@ -29,6 +29,12 @@
 import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Periodically reports statuses of the actions run by the executor.
+ * Actions are polled on every run, but the statuses are reported
+ * only once per interval or when enough actions are finished, so
+ * the result and log appended between the reports are accumulated.
+ */
 public class StatusReportTask implements Runnable {
   private final StatusReporter statusReporter;
   private final CmdletExecutor cmdletExecutor;
@@ -56,7 +62,8 @@ public void run() {
     Optional.ofNullable(cmdletExecutor.getStatusReport())
         .map(StatusReport::getActionStatuses)
         .orElseGet(Collections::emptyList)
-        .forEach(status -> idToActionStatus.put(status.getActionId(), status));
+        .forEach(status -> idToActionStatus.merge(
+            status.getActionId(), status, (previous, next) -> next.appendTo(previous)));
 
     if (idToActionStatus.isEmpty()) {
       return;
@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wakes up the worker waiting for the new work. Signals sent while
+ * the worker is busy are coalesced into a single wake-up.
+ */
+public class WakeUpSignal {
+  private final Semaphore permits = new Semaphore(0);
+
+  public void signal() {
+    if (permits.availablePermits() == 0) {
+      permits.release();
+    }
+  }
+
+  /**
+   * Waits for the signal at most the specified time.
+   *
+   * @return false if the waiting time elapsed before the signal
+   */
+  public boolean await(long timeoutMs) throws InterruptedException {
+    boolean signaled = permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+    permits.drainPermits();
+    return signaled;
+  }
+}
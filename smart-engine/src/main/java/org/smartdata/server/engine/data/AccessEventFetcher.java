@@ -63,6 +63,7 @@ public void stop() {
     if (scheduledFuture != null) {
       scheduledFuture.cancel(true);
     }
+    fetchTask.flush();
   }
 
   private static class FetchTask implements Runnable {
@@ -86,5 +87,13 @@ public void run() {
         LOG.error("IngestionTask onAccessEventsArrived error", e);
       }
     }
+
+    public void flush() {
+      try {
+        accessEventAggregator.flush();
+      } catch (Exception e) {
+        LOG.error("Error saving pending access counts", e);
+      }
+    }
   }
 }
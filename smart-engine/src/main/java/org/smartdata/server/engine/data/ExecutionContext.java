@@ -48,6 +48,10 @@ public void setProperty(String property, Object value) {
     envVariables.put(property, value);
   }
 
+  public Object getProperty(String property) {
+    return envVariables.get(property);
+  }
+
   public String getString(String property) {
     Object val = envVariables.get(property);
     if (val == null) {
@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.rule;
+
+import org.smartdata.metastore.MetaStore;
+import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.model.rule.RuleTranslationResult;
+import org.smartdata.server.engine.data.ExecutionContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rule query compiled from the {@link RuleTranslationResult}. Statements are
+ * parsed only once: rule variables are replaced with the prepared statement
+ * parameters and function calls are resolved to the rule functions,
+ * so each execution only binds the current values of the variables.
+ * Since the SQL text doesn't change between executions, the metastore
+ * can reuse its prepared statements.
+ */
+public class CompiledRuleQuery {
+  private static final Pattern CALL_PATTERN =
+      Pattern.compile("\\$@([a-zA-Z_]+[a-zA-Z0-9_]*)\\(([a-zA-Z_][a-zA-Z0-9_]*)?\\)");
+
+  private final List<Statement> statements;
+
+  private CompiledRuleQuery(List<Statement> statements) {
+    this.statements = statements;
+  }
+
+  /**
+   * Compiles the translated rule.
+   * @param functions rule functions available to the rule statements by name
+   */
+  public static CompiledRuleQuery compile(
+      RuleTranslationResult translationResult,
+      Map<String, Function<List<Object>, String>> functions) throws IOException {
+    List<Statement> statements = new ArrayList<>();
+    List<String> sqlStatements = translationResult.getSqlStatements();
+    for (int index = 0; index < sqlStatements.size(); index++) {
+      String sql = sqlStatements.get(index).trim();
+      boolean isResultQuery = index == translationResult.getRetSqlIndex();
+
+      Matcher callMatcher = CALL_PATTERN.matcher(sql);
+      if (!isResultQuery && callMatcher.matches()) {
+        Function<List<Object>, String> function = functions.get(callMatcher.group(1));
+        if (function == null) {
+          throw new IOException("Unknown rule function: " + callMatcher.group(1));
+        }
+        List<Object> parameters = callMatcher.group(2) == null
+            ? Collections.emptyList()
+            : translationResult.getParameter(callMatcher.group(2));
+        statements.add(new FunctionCall(function, parameters));
+      } else if (callMatcher.find()) {
+        throw new IOException("Rule function calls are supported "
+            + "only as separate statements: " + sql);
+      } else if (isResultQuery || sql.length() > 5) {
+        statements.add(PreparedQuery.parse(sql, isResultQuery));
+      }
+    }
+    return new CompiledRuleQuery(statements);
+  }
+
+  /**
+   * Executes all rule statements.
+   * @return paths of the files returned by the rule result query
+   */
+  public List<String> execute(ExecutionContext executionCtx,
+                              MetaStore metaStore,
+                              int queryTimeoutSec) throws MetaStoreException {
+    List<String> files = new ArrayList<>();
+    execute(executionCtx, metaStore, queryTimeoutSec, (sql, args) ->
+        files.addAll(metaStore.executeFilesPathQuery(sql, args, queryTimeoutSec)));
+    return files;
+  }
+
+  /**
+   * Executes all rule statements streaming paths of the files returned
+   * by the rule result query to the consumer in batches.
+   * @param fetchSize number of the result rows fetched at once
+   * @param batchConsumer returns false to stop fetching the rest of the result
+   */
+  public void stream(ExecutionContext executionCtx,
+                     MetaStore metaStore,
+                     int queryTimeoutSec,
+                     int fetchSize,
+                     Predicate<List<String>> batchConsumer) throws MetaStoreException {
+    execute(executionCtx, metaStore, queryTimeoutSec, (sql, args) ->
+        metaStore.streamFilesPathQuery(sql, args, queryTimeoutSec, fetchSize, batchConsumer));
+  }
+
+  private void execute(ExecutionContext executionCtx,
+                       MetaStore metaStore,
+                       int queryTimeoutSec,
+                       ResultQueryExecutor resultQueryExecutor) throws MetaStoreException {
+    for (Statement statement : statements) {
+      statement.execute(executionCtx, metaStore, queryTimeoutSec, resultQueryExecutor);
+    }
+  }
+
+  private interface ResultQueryExecutor {
+    void execute(String sql, Object[] args) throws MetaStoreException;
+  }
+
+  private interface Statement {
+    void execute(ExecutionContext executionCtx,
+                 MetaStore metaStore,
+                 int queryTimeoutSec,
+                 ResultQueryExecutor resultQueryExecutor) throws MetaStoreException;
+  }
+
+  private static class FunctionCall implements Statement {
+    private final Function<List<Object>, String> function;
+    private final List<Object> parameters;
+
+    private FunctionCall(Function<List<Object>, String> function, List<Object> parameters) {
+      this.function = function;
+      this.parameters = parameters;
+    }
+
+    @Override
+    public void execute(ExecutionContext executionCtx,
+                        MetaStore metaStore,
+                        int queryTimeoutSec,
+                        ResultQueryExecutor resultQueryExecutor) throws MetaStoreException {
+      // functions are allowed to return the statement to be executed
+      String sql = function.apply(parameters);
+      if (sql != null && sql.trim().length() > 5) {
+        metaStore.execute(sql, new Object[0], queryTimeoutSec);
+      }
+    }
+  }
+
+  private static class PreparedQuery implements Statement {
+    private final String sql;
+    private final List<String> variables;
+    private final boolean returnsFiles;
+
+    private PreparedQuery(String sql, List<String> variables, boolean returnsFiles) {
+      this.sql = sql;
+      this.variables = variables;
+      this.returnsFiles = returnsFiles;
+    }
+
+    /**
+     * Replaces variables with the statement parameters
+     * skipping the quoted string literals.
+     */
+    private static PreparedQuery parse(String rawSql, boolean returnsFiles) {
+      StringBuilder sql = new StringBuilder();
+      List<String> variables = new ArrayList<>();
+      boolean inLiteral = false;
+      int pos = 0;
+      while (pos < rawSql.length()) {
+        char symbol = rawSql.charAt(pos);
+        if (symbol == '\'') {
+          inLiteral = !inLiteral;
+        }
+        int varEnd = inLiteral ? pos : variableEnd(rawSql, pos);
+        if (varEnd > pos) {
+          variables.add(rawSql.substring(pos + 1, varEnd));
+          sql.append('?');
+          pos = varEnd;
+        } else {
+          sql.append(symbol);
+          pos++;
+        }
+      }
+
+      String statement = sql.toString().trim();
+      if (statement.endsWith(";")) {
+        statement = statement.substring(0, statement.length() - 1);
+      }
+      return new PreparedQuery(statement, variables, returnsFiles);
+    }
+
+    private static int variableEnd(String sql, int pos) {
+      if (sql.charAt(pos) != '$'
+          || pos + 1 >= sql.length()
+          || !isIdentifierStart(sql.charAt(pos + 1))) {
+        return pos;
+      }
+      int end = pos + 2;
+      while (end < sql.length() && isIdentifierPart(sql.charAt(end))) {
+        end++;
+      }
+      return end;
+    }
+
+    private static boolean isIdentifierStart(char symbol) {
+      return Character.isLetter(symbol) || symbol == '_';
+    }
+
+    private static boolean isIdentifierPart(char symbol) {
+      return isIdentifierStart(symbol) || Character.isDigit(symbol);
+    }
+
+    @Override
+    public void execute(ExecutionContext executionCtx,
+                        MetaStore metaStore,
+                        int queryTimeoutSec,
+                        ResultQueryExecutor resultQueryExecutor) throws MetaStoreException {
+      Object[] args = new Object[variables.size()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = executionCtx.getProperty(variables.get(i));
+        if (args[i] == null) {
+          throw new MetaStoreException("Rule variable " + variables.get(i) + " is not set");
+        }
+      }
+
+      if (returnsFiles) {
+        resultQueryExecutor.execute(sql, args);
+      } else {
+        metaStore.execute(sql, args, queryTimeoutSec);
+      }
+    }
+  }
+}
@@ -17,9 +17,11 @@
  */
 package org.smartdata.server.engine.rule;
 
-import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.exception.NotFoundException;
 import org.smartdata.exception.QueueFullException;
 import org.smartdata.metastore.MetaStore;
@@ -31,26 +33,25 @@
 import org.smartdata.model.rule.RuleExecutorPluginManager;
 import org.smartdata.model.rule.RuleTranslationResult;
 import org.smartdata.model.rule.TimeBasedScheduleInfo;
+import org.smartdata.server.engine.CmdletManager;
 import org.smartdata.server.engine.RuleManager;
 import org.smartdata.server.engine.data.ExecutionContext;
 
 import java.io.IOException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Execute rule queries and return result.
  */
 public class RuleExecutor implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(RuleExecutor.class.getName());
-
-  private static final Pattern VAR_PATTERN = Pattern.compile("\\$([a-zA-Z_]+[a-zA-Z0-9_]*)");
-  private static final Pattern CALL_PATTERN =
-      Pattern.compile("\\$@([a-zA-Z_]+[a-zA-Z0-9_]*)\\(([a-zA-Z_][a-zA-Z0-9_]*)?\\)");
+  // interval of the exit checks while waiting for the pending queue capacity
+  private static final long PENDING_CAPACITY_CHECK_INTERVAL_MS = 1000L;
 
   private final RuleManager ruleManager;
   private final RuleTranslationResult translationResult;
@@ -60,7 +61,13 @@ public class RuleExecutor implements Runnable {
   private final RuleTranslationResult originalTranslationResult;
   private final ExecutionContext executionCtx;
   private final MetaStore metastore;
-  private final Stack<String> dynamicCleanups;
+  private final Map<String, Function<List<Object>, String>> ruleFunctions;
+  private final int queryTimeoutSec;
+  private final int submitBatchSize;
+  private final long submitWaitTimeoutMs;
+  private final RuleExecutorMetrics metrics;
+  // compiled lazily, because plugins can modify statements of the new executor
+  private CompiledRuleQuery compiledQuery;
 
   private volatile boolean exited;
   private long exitTime;
@@ -72,7 +79,21 @@ public RuleExecutor(RuleManager ruleManager, ExecutionContext executionCtx,
     this.metastore = metastore;
     this.translationResult = translationResult;
     this.originalTranslationResult = translationResult.copy();
-    this.dynamicCleanups = new Stack<>();
+    this.ruleFunctions = ImmutableMap.of(
+        "genVirtualAccessCountTable", this::genVirtualAccessCountTable,
+        "genVirtualAccessCountTableTopValue", this::genVirtualAccessCountTableTopValue,
+        "genVirtualAccessCountTableBottomValue", this::genVirtualAccessCountTableBottomValue);
+    this.queryTimeoutSec = (int) TimeUnit.MILLISECONDS.toSeconds(
+        ruleManager.getContext().getConf().getLong(
+            SmartConfKeys.SMART_RULE_QUERY_TIMEOUT_MS_KEY,
+            SmartConfKeys.SMART_RULE_QUERY_TIMEOUT_MS_DEFAULT));
+    this.submitBatchSize = ruleManager.getContext().getConf().getInt(
+        SmartConfKeys.SMART_RULE_SUBMIT_BATCH_SIZE_KEY,
+        SmartConfKeys.SMART_RULE_SUBMIT_BATCH_SIZE_DEFAULT);
+    this.submitWaitTimeoutMs = ruleManager.getContext().getConf().getLong(
+        SmartConfKeys.SMART_RULE_SUBMIT_WAIT_TIMEOUT_MS_KEY,
+        SmartConfKeys.SMART_RULE_SUBMIT_WAIT_TIMEOUT_MS_DEFAULT);
+    this.metrics = ruleManager.getRuleExecutorMetrics();
     this.exited = false;
   }
 
@@ -84,88 +105,29 @@ public RuleTranslationResult getOriginalTranslateResult() {
     return originalTranslationResult;
   }
 
-  private String unfoldSqlStatement(String sql) {
-    return unfoldVariables(unfoldFunctionCalls(sql));
-  }
-
-  private String unfoldVariables(String sql) {
-    String ret = sql;
-    executionCtx.setProperty("NOW", System.currentTimeMillis());
-    Matcher m = VAR_PATTERN.matcher(sql);
-    while (m.find()) {
-      String rep = m.group();
-      String varName = m.group(1);
-      String value = executionCtx.getString(varName);
-      ret = ret.replace(rep, value);
-    }
-    return ret;
-  }
-
-  private String unfoldFunctionCalls(String sql) {
-    String ret = sql;
-    Matcher m = CALL_PATTERN.matcher(sql);
-    while (m.find()) {
-      String rep = m.group();
-      String funcName = m.group(1);
-      String paraName = m.groupCount() == 2 ? m.group(2) : null;
-      List<Object> params = translationResult.getParameter(paraName);
-      String value = callFunction(funcName, params);
-      ret = ret.replace(rep, value == null ? "" : value);
-    }
-    return ret;
-  }
-
-  public List<String> executeFileRuleQuery() {
-    int index = 0;
-    List<String> ret = new ArrayList<>();
-    for (String sql : translationResult.getSqlStatements()) {
-      sql = unfoldSqlStatement(sql);
-      try {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Rule " + executionCtx.getRuleId() + " --> " + sql);
-        }
-        if (index == translationResult.getRetSqlIndex()) {
-          ret = metastore.executeFilesPathQuery(sql);
-        } else {
-          sql = sql.trim();
-          if (sql.length() > 5) {
-            metastore.execute(sql);
-          }
-        }
-        index++;
-      } catch (MetaStoreException e) {
-        LOG.error("Rule " + executionCtx.getRuleId() + " exception", e);
-        return ret;
-      }
-    }
-
-    while (!dynamicCleanups.empty()) {
-      String sql = dynamicCleanups.pop();
-      try {
-        metastore.execute(sql);
-      } catch (MetaStoreException e) {
-        LOG.error("Rule " + executionCtx.getRuleId() + " exception", e);
-      }
-    }
-    return ret;
-  }
-
-  public String callFunction(String funcName, List<Object> parameters) {
+  /**
+   * Executes the rule query passing the result files to the consumer in batches.
+   */
+  public void executeFileRuleQuery(Predicate<List<String>> filesConsumer) {
     try {
-      Method m = getClass().getMethod(funcName, List.class);
-      return (String) (m.invoke(this, parameters));
-    } catch (Exception e) {
-      LOG.error("Rule " + executionCtx.getRuleId() + " exception when call " + funcName, e);
-      return null;
+      if (compiledQuery == null) {
+        compiledQuery = CompiledRuleQuery.compile(translationResult, ruleFunctions);
+      }
+      executionCtx.setProperty("NOW", System.currentTimeMillis());
+      compiledQuery.stream(executionCtx, metastore, queryTimeoutSec,
+          submitBatchSize, filesConsumer);
+    } catch (IOException e) {
+      metrics.incrFailedQueries();
+      LOG.error("Rule " + executionCtx.getRuleId() + " exception", e);
     }
   }
 
-  public String genVirtualAccessCountTableTopValue(List<Object> parameters) {
+  private String genVirtualAccessCountTableTopValue(List<Object> parameters) {
     genVirtualAccessCountTableValue(parameters, true);
     return null;
   }
 
-  public String genVirtualAccessCountTableBottomValue(List<Object> parameters) {
+  private String genVirtualAccessCountTableBottomValue(List<Object> parameters) {
     genVirtualAccessCountTableValue(parameters, false);
     return null;
   }
@@ -188,38 +150,18 @@ private void genVirtualAccessCountTableValue(List<Object> parameters, boolean to
     executionCtx.setProperty(var, count == null ? 0L : count);
   }
 
-  public String genVirtualAccessCountTable(List<Object> parameters) {
+  private String genVirtualAccessCountTable(List<Object> parameters) {
     List<Object> paraList = (List<Object>) parameters.get(0);
-    String newTable = (String) parameters.get(1);
+    String table = (String) parameters.get(1);
     long interval = paraList.isEmpty() ? 0L : (long) paraList.get(0);
-    String countFilter = "";
-    long currentTimeMillis = System.currentTimeMillis();
-    return generateSQL(newTable, countFilter, metastore, currentTimeMillis - interval,
-        currentTimeMillis);
-  }
-
-  @VisibleForTesting
-  static String generateSQL(
-      String newTable,
-      String countFilter,
-      MetaStore adapter,
-      long startTime,
-      long endTime) {
-    String sqlFinal, sqlCreate;
-    sqlCreate = "CREATE TABLE " + newTable + "(fid INTEGER NOT NULL, count INTEGER NOT NULL);";
     try {
-      adapter.execute(sqlCreate);
+      ruleManager.getAccessCountWindowStore()
+          .refresh(table, interval, System.currentTimeMillis());
     } catch (MetaStoreException e) {
-      LOG.error("Cannot create table " + newTable, e);
+      LOG.error("Rule " + executionCtx.getRuleId()
+          + " failed to refresh access count table " + table, e);
     }
-    String sqlCountFilter =
-        (countFilter == null || countFilter.isEmpty())
-            ? ""
-            : " HAVING count(*) " + countFilter;
-    sqlFinal = "INSERT INTO " + newTable + " SELECT fid, count(*) AS count FROM file_access\n"
-        + "WHERE access_time >= " + startTime + " AND access_time <= " + endTime
-        + " GROUP BY fid" + sqlCountFilter + " ;";
-    return sqlFinal;
+    return null;
   }
 
   @Override
@@ -242,8 +184,7 @@ public void run() {
       }
 
       long endCheckTime;
-      int numCmdSubmitted = 0;
-      List<String> files = new ArrayList<>();
+      CmdletSubmitter cmdletSubmitter = null;
 
       RuleInfo info;
       try {
@@ -289,35 +230,25 @@ public void run() {
       }
 
       if (continueExecution) {
-        files = executeFileRuleQuery();
+        // cmdlets are submitted while the query result is being fetched
+        cmdletSubmitter = new CmdletSubmitter(info);
+        executeFileRuleQuery(cmdletSubmitter);
+        cmdletSubmitter.flushPlugins();
         if (exited) {
           exitSchedule();
         }
       }
       endCheckTime = System.currentTimeMillis();
-      if (continueExecution) {
-        for (RuleExecutorPlugin plugin : plugins) {
-          files = plugin.preSubmitCmdlet(info, files);
-        }
-        numCmdSubmitted = submitCmdlets(info, files);
-      }
+      int numCmdSubmitted = cmdletSubmitter == null ? 0 : cmdletSubmitter.numSubmitted;
+      long submitTime = cmdletSubmitter == null ? 0 : cmdletSubmitter.submitTimeMs;
       ruleManager.updateRuleInfo(rid, null, startCheckTime, 1, numCmdSubmitted);
 
       long endProcessTime = System.currentTimeMillis();
-      if (endProcessTime - startCheckTime > 2000 || LOG.isDebugEnabled()) {
-        LOG.warn(
-            "Rule "
-                + executionCtx.getRuleId()
-                + " execution took "
-                + (endProcessTime - startCheckTime)
-                + "ms. QueryTime = "
-                + (endCheckTime - startCheckTime)
-                + "ms, SubmitTime = "
-                + (endProcessTime - endCheckTime)
-                + "ms, fileNum = "
-                + numCmdSubmitted
-                + ".");
-      }
+      long queryTime = endCheckTime - startCheckTime - submitTime;
+      metrics.addQueryTime(rid, queryTime);
+      metrics.addSubmitTime(rid, submitTime);
+      LOG.debug("Rule {} execution took {}ms. QueryTime = {}ms, SubmitTime = {}ms, fileNum = {}.",
+          rid, endProcessTime - startCheckTime, queryTime, submitTime, numCmdSubmitted);
 
       if (scheduleInfo.isOneShot()) {
         ruleManager.updateRuleInfo(rid, RuleState.FINISHED, startCheckTime, 0, 0);
@@ -342,6 +273,7 @@ private void exitSchedule() {
     // throw an exception
     exitTime = System.currentTimeMillis();
     exited = true;
+    metrics.removeRule(executionCtx.getRuleId());
     if (LOG.isDebugEnabled()) {
       LOG.debug("Rule " + executionCtx.getRuleId() + " exit rule executor.");
     }
@@ -349,39 +281,122 @@ private void exitSchedule() {
     throw new RuntimeException("Rule executor exit exception");
   }
 
-  private int submitCmdlets(RuleInfo ruleInfo, List<String> files) {
-    long ruleId = ruleInfo.getId();
-    if (files == null || files.isEmpty() || ruleManager.getCmdletManager() == null) {
-      return 0;
+  /**
+   * Submits cmdlets for the batches of the rule result files. While the pending
+   * cmdlets queue is full, the submitter waits for its capacity, so that fetching
+   * of the rest of the rule result is paused.
+   */
+  private class CmdletSubmitter implements Predicate<List<String>> {
+    private final RuleInfo ruleInfo;
+    private final long waitDeadline;
+    private int numSubmitted;
+    private long submitTimeMs;
+    private boolean received;
+    private boolean stopped;
+
+    private CmdletSubmitter(RuleInfo ruleInfo) {
+      this.ruleInfo = ruleInfo;
+      this.waitDeadline = System.currentTimeMillis() + submitWaitTimeoutMs;
     }
-    int nSubmitted = 0;
-    List<RuleExecutorPlugin> plugins = RuleExecutorPluginManager.getPlugins();
-    CmdletDescriptor templateCmdlet = translationResult.getCmdDescriptor();
-    for (String file : files) {
-      if (exited) {
-        break;
+
+    @Override
+    public boolean test(List<String> files) {
+      received = true;
+      return submit(files, RuleExecutorPluginManager.getPlugins());
+    }
+
+    /**
+     * Submits cmdlets for the objects held back by the plugins to combine
+     * them with the next result parts. The objects held back by the plugin
+     * are passed only to the plugins following it. Plugins are called
+     * at least once per execution, even if the rule result is empty.
+     */
+    private void flushPlugins() {
+      List<RuleExecutorPlugin> plugins = RuleExecutorPluginManager.getPlugins();
+      if (!received && !stopped) {
+        test(new ArrayList<>());
       }
+      for (int i = 0; i < plugins.size(); i++) {
+        List<String> files = plugins.get(i).flushPendingObjects(ruleInfo);
+        if (!stopped && files != null && !files.isEmpty()) {
+          submit(files, plugins.subList(i + 1, plugins.size()));
+        }
+      }
+    }
+
+    private boolean submit(List<String> files, List<RuleExecutorPlugin> plugins) {
+      long startTime = System.currentTimeMillis();
       try {
-        CmdletDescriptor cmdletDescriptor = new CmdletDescriptor(templateCmdlet);
-        cmdletDescriptor.setRuleId(ruleId);
-        cmdletDescriptor.setCmdletParameter(CmdletDescriptor.HDFS_FILE_PATH, file);
-        for (RuleExecutorPlugin plugin : plugins) {
-          cmdletDescriptor = plugin.preSubmitCmdletDescriptor(
-              ruleInfo, translationResult, cmdletDescriptor);
+        stopped = !submitCmdlets(files, plugins);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        stopped = true;
+      } finally {
+        submitTimeMs += System.currentTimeMillis() - startTime;
+      }
+      return !stopped;
+    }
+
+    private boolean submitCmdlets(List<String> files,
+                                  List<RuleExecutorPlugin> plugins) throws InterruptedException {
+      CmdletManager cmdletManager = ruleManager.getCmdletManager();
+      if (cmdletManager == null) {
+        return false;
+      }
+      for (RuleExecutorPlugin plugin : plugins) {
+        files = plugin.preSubmitCmdlet(ruleInfo, files);
+      }
+      if (files == null) {
+        return !exited;
+      }
+
+      List<CmdletDescriptor> descriptors = new ArrayList<>(files.size());
+      for (String file : files) {
+        descriptors.add(createCmdletDescriptor(file));
+      }
+
+      int batchSize = Math.max(1,
+          Math.min(submitBatchSize, cmdletManager.getMaxNumPendingCmdlets()));
+      for (List<CmdletDescriptor> batch : Lists.partition(descriptors, batchSize)) {
+        if (!submitBatch(cmdletManager, batch)) {
+          return false;
         }
-        long cid = ruleManager.getCmdletManager().submitCmdlet(cmdletDescriptor);
-        // Not really submitted if cid is -1.
-        if (cid != -1) {
-          nSubmitted++;
+      }
+      return !exited;
+    }
+
+    private boolean submitBatch(CmdletManager cmdletManager,
+                                List<CmdletDescriptor> batch) throws InterruptedException {
+      while (!exited) {
+        long waitTimeMs = waitDeadline - System.currentTimeMillis();
+        if (cmdletManager.awaitPendingCapacity(batch.size(),
+            Math.min(waitTimeMs, PENDING_CAPACITY_CHECK_INTERVAL_MS))) {
+          try {
+            numSubmitted += cmdletManager.submitCmdlets(batch).size();
+            return true;
+          } catch (QueueFullException e) {
+            // the queue was filled by the concurrent submission, wait again
+          }
+        } else if (waitTimeMs <= PENDING_CAPACITY_CHECK_INTERVAL_MS) {
+          LOG.debug("Rule {} stopped cmdlets submission, pending cmdlets queue is full",
+              ruleInfo.getId());
+          return false;
         }
-      } catch (QueueFullException e) {
-        break;
-      } catch (IOException e) {
-        // it's common here, ignore this and continue submit
-        LOG.debug("Failed to submit cmdlet for file {} due to Exception", file, e);
       }
+      return false;
+    }
+
+    private CmdletDescriptor createCmdletDescriptor(String file) {
+      CmdletDescriptor cmdletDescriptor =
+          new CmdletDescriptor(translationResult.getCmdDescriptor());
+      cmdletDescriptor.setRuleId(ruleInfo.getId());
+      cmdletDescriptor.setCmdletParameter(CmdletDescriptor.HDFS_FILE_PATH, file);
+      for (RuleExecutorPlugin plugin : RuleExecutorPluginManager.getPlugins()) {
+        cmdletDescriptor = plugin.preSubmitCmdletDescriptor(
+            ruleInfo, translationResult, cmdletDescriptor);
+      }
+      return cmdletDescriptor;
     }
-    return nSubmitted;
   }
 
   public boolean isExited() {
@@ -391,5 +406,6 @@ public boolean isExited() {
   public void setExited() {
     exitTime = System.currentTimeMillis();
     exited = true;
+    metrics.removeRule(executionCtx.getRuleId());
   }
 }
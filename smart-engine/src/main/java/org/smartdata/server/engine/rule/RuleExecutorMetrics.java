@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.rule;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency metrics of the rule executions. Besides the aggregated rates,
+ * query and cmdlet submission time percentiles are reported for each
+ * running rule.
+ */
+public class RuleExecutorMetrics implements MetricsSource {
+  public static final String NAME = "RuleExecutor";
+  private static final int QUANTILES_INTERVAL_SEC = 60;
+
+  private final MetricsRegistry registry;
+  private final MutableRate queryTime;
+  private final MutableRate submitTime;
+  private final MutableCounterLong failedQueries;
+  private final Map<Long, RuleLatencies> ruleLatencies;
+
+  public RuleExecutorMetrics() {
+    this.registry = new MetricsRegistry(NAME);
+    this.queryTime = registry.newRate("QueryTime",
+        "Time of the rule query execution in milliseconds", false);
+    this.submitTime = registry.newRate("SubmitTime",
+        "Time of the rule cmdlets submission in milliseconds", false);
+    this.failedQueries = registry.newCounter("FailedQueries",
+        "Number of failed or timed out rule queries", 0L);
+    this.ruleLatencies = new ConcurrentHashMap<>();
+  }
+
+  public void addQueryTime(long ruleId, long timeMs) {
+    queryTime.add(timeMs);
+    getRuleLatencies(ruleId).queryTime.add(timeMs);
+  }
+
+  public void addSubmitTime(long ruleId, long timeMs) {
+    submitTime.add(timeMs);
+    getRuleLatencies(ruleId).submitTime.add(timeMs);
+  }
+
+  public void incrFailedQueries() {
+    failedQueries.incr();
+  }
+
+  public long getFailedQueries() {
+    return failedQueries.value();
+  }
+
+  /**
+   * Stops reporting latencies of the rule, e.g. when its executor exits.
+   */
+  public void removeRule(long ruleId) {
+    RuleLatencies latencies = ruleLatencies.remove(ruleId);
+    if (latencies != null) {
+      latencies.queryTime.stop();
+      latencies.submitTime.stop();
+    }
+  }
+
+  private RuleLatencies getRuleLatencies(long ruleId) {
+    return ruleLatencies.computeIfAbsent(ruleId, RuleLatencies::new);
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    MetricsRecordBuilder recordBuilder = collector.addRecord(registry.info());
+    registry.snapshot(recordBuilder, all);
+    for (RuleLatencies latencies : ruleLatencies.values()) {
+      latencies.queryTime.snapshot(recordBuilder, all);
+      latencies.submitTime.snapshot(recordBuilder, all);
+    }
+  }
+
+  private static class RuleLatencies {
+    private final MutableQuantiles queryTime;
+    private final MutableQuantiles submitTime;
+
+    private RuleLatencies(long ruleId) {
+      this.queryTime = new MutableQuantiles("Rule" + ruleId + "QueryTime",
+          "Query time of the rule " + ruleId, "ops", "latencyMs", QUANTILES_INTERVAL_SEC);
+      this.submitTime = new MutableQuantiles("Rule" + ruleId + "SubmitTime",
+          "Cmdlets submission time of the rule " + ruleId, "ops", "latencyMs",
+          QUANTILES_INTERVAL_SEC);
+    }
+  }
+}
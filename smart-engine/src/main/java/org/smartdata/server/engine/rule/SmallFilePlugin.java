@@ -58,6 +58,8 @@ public class SmallFilePlugin implements RuleExecutorPlugin {
   private long containerFileSizeThreshold;
   private Map<String, FileInfo> firstFileInfoCache;
   private Map<RuleInfo, Map<String, FileInfo>> containerFileInfoCache;
+  // small files of the incomplete compact batches kept between the rule result parts
+  private Map<Long, Map<SmallFileStatus, List<String>>> pendingSmallFiles;
   private static final String COMPACT_ACTION_NAME = "compact";
   private static final String CONTAINER_FILE_PREFIX = "_container_file_";
   private static final Logger LOG = LoggerFactory.getLogger(SmallFilePlugin.class);
@@ -74,6 +76,7 @@ public SmallFilePlugin(ServerContext context, CmdletManager cmdletManager) {
     this.containerFileSizeThreshold = containerFileThresholdMB * 1024 * 1024;
     this.firstFileInfoCache = new ConcurrentHashMap<>();
     this.containerFileInfoCache = new ConcurrentHashMap<>();
+    this.pendingSmallFiles = new ConcurrentHashMap<>();
   }
 
   @Override
@@ -95,7 +98,8 @@ public List<String> preSubmitCmdlet(final RuleInfo ruleInfo, List<String> object
 
       // Split valid small files according to the file permission
       Map<String, FileInfo> containerFileInfoMap = getContainerFileInfos();
-      Map<SmallFileStatus, List<String>> smallFileStateMap = new HashMap<>();
+      Map<SmallFileStatus, List<String>> smallFileStateMap =
+          pendingSmallFiles.computeIfAbsent(ruleInfo.getId(), id -> new HashMap<>());
       for (String object : objects) {
         LOG.debug("Start handling the file: {}.", object);
 
@@ -136,15 +140,21 @@ public List<String> preSubmitCmdlet(final RuleInfo ruleInfo, List<String> object
         }
       }
 
-      // Split small files according to the batch size
+      // Split small files according to the batch size, the rest of the files
+      // is kept to be grouped with the files of the next result parts
       List<String> smallFileList = new ArrayList<>();
-      for (List<String> listElement : smallFileStateMap.values()) {
-        int size = listElement.size();
-        for (int i = 0; i < size; i += batchSize) {
-          int toIndex = (i + batchSize <= size) ? i + batchSize : size;
-          String smallFiles = new Gson().toJson(listElement.subList(i, toIndex));
+      Iterator<List<String>> iter = smallFileStateMap.values().iterator();
+      while (iter.hasNext()) {
+        List<String> listElement = iter.next();
+        int fullBatchesSize = listElement.size() - listElement.size() % batchSize;
+        for (int i = 0; i < fullBatchesSize; i += batchSize) {
+          String smallFiles = new Gson().toJson(listElement.subList(i, i + batchSize));
           smallFileList.add(smallFiles);
         }
+        listElement.subList(0, fullBatchesSize).clear();
+        if (listElement.isEmpty()) {
+          iter.remove();
+        }
       }
 
       // Update container file info cache for preSubmitCmdletDescriptor
@@ -156,6 +166,20 @@ public List<String> preSubmitCmdlet(final RuleInfo ruleInfo, List<String> object
     }
   }
 
+  @Override
+  public List<String> flushPendingObjects(final RuleInfo ruleInfo) {
+    Map<SmallFileStatus, List<String>> smallFileStateMap =
+        pendingSmallFiles.remove(ruleInfo.getId());
+    if (smallFileStateMap == null) {
+      return Collections.emptyList();
+    }
+    List<String> smallFileList = new ArrayList<>();
+    for (List<String> listElement : smallFileStateMap.values()) {
+      smallFileList.add(new Gson().toJson(listElement));
+    }
+    return smallFileList;
+  }
+
   /**
    * Get container file info map from meta store.
    */
@@ -417,5 +441,6 @@ public boolean equals(Object smallFileStatus) {
 
   @Override
   public void onRuleExecutorExit(final RuleInfo ruleInfo) {
+    pendingSmallFiles.remove(ruleInfo.getId());
   }
 }
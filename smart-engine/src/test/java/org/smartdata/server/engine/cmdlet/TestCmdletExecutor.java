@@ -17,18 +17,22 @@
  */
 package org.smartdata.server.engine.cmdlet;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.smartdata.action.EchoAction;
 import org.smartdata.action.SmartAction;
 import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.protocol.message.ActionStatus;
 import org.smartdata.protocol.message.StatusMessage;
 import org.smartdata.protocol.message.StatusReport;
 import org.smartdata.protocol.message.StatusReporter;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -80,6 +84,103 @@ protected void execute() throws Exception {
     }
   }
 
+  class LoggingAction extends SmartAction {
+    @Override
+    protected void execute() throws Exception {
+      for (int i = 0; i < 20; i++) {
+        appendLog("Log line " + i);
+        Thread.sleep(20);
+      }
+      appendResult("Done");
+    }
+  }
+
+  @Test
+  public void testIncrementalStatusReport() throws InterruptedException {
+    final List<StatusMessage> statusMessages = new Vector<>();
+    StatusReporter reporter = statusMessages::add;
+    SmartConf conf = new SmartConf();
+    // report every 100ms
+    conf.setInt(SmartConfKeys.SMART_STATUS_REPORT_PERIOD_MULTIPLIER_KEY, 10);
+    CmdletExecutor executor = new CmdletExecutor(conf);
+    StatusReportTask statusReportTask = new StatusReportTask(reporter, executor, conf);
+    ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    executorService.scheduleAtFixedRate(
+        statusReportTask, 10, 10, TimeUnit.MILLISECONDS);
+    SmartAction action = new LoggingAction();
+    action.setActionId(101);
+    executor.execute(new Cmdlet(Collections.singletonList(action)));
+
+    Thread.sleep(2000);
+    executorService.shutdownNow();
+    executor.shutdown();
+
+    // every report contains only the log appended after the previous one
+    StringBuilder log = new StringBuilder();
+    int incrementalReports = 0;
+    ActionStatus status = null;
+    for (StatusMessage message : statusMessages) {
+      status = ((StatusReport) message).getActionStatuses().get(0);
+      if (status.getLogOffset() == 0) {
+        log.setLength(0);
+      } else {
+        Assert.assertEquals(log.length(), status.getLogOffset());
+        incrementalReports++;
+      }
+      log.append(status.getLog());
+    }
+    Assert.assertTrue(incrementalReports > 0);
+    Assert.assertEquals(action.getActionStatus().getLog(), log.toString());
+
+    // the finished action reports the whole output to restore the lost reports
+    Assert.assertTrue(status.isFinished());
+    Assert.assertEquals(0L, status.getLogOffset());
+    Assert.assertEquals(action.getActionStatus().getLog(), status.getLog());
+    Assert.assertEquals("Done\n", status.getResult().replace("\r", ""));
+  }
+
+  @Test
+  public void testPollIncompleteChar() throws Exception {
+    SmartAction action = new LoggingAction();
+    byte[] letter = "\u0416".getBytes(StandardCharsets.UTF_8);
+
+    action.getLogOutputStream().write('a');
+    action.getLogOutputStream().write(letter[0]);
+    Assert.assertEquals("a", action.pollActionStatus().getLog());
+
+    action.getLogOutputStream().write(letter[1]);
+    action.getLogOutputStream().write('b');
+    ActionStatus status = action.pollActionStatus();
+    Assert.assertEquals(1L, status.getLogOffset());
+    Assert.assertEquals("\u0416b", status.getLog());
+  }
+
+  @Test
+  public void testSerializeStatusReport() {
+    StringBuilder log = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      log.append("Log line ").append(i).append('\n');
+    }
+    List<ActionStatus> statuses = new ArrayList<>();
+    for (int actionId = 0; actionId < 10; actionId++) {
+      ActionStatus status = new ActionStatus(1L, false, actionId, 0.5f, "",
+          log.toString(), 1L, 0L, null, false);
+      status.setLogOffset(100L);
+      statuses.add(status);
+    }
+    StatusReport report = new StatusReport(statuses);
+
+    byte[] bytes = SerializationUtils.serialize(report);
+    // the repeated log is compressed
+    Assert.assertTrue(bytes.length < log.length());
+    StatusReport deserialized = SerializationUtils.deserialize(bytes);
+    Assert.assertEquals(10, deserialized.getActionStatuses().size());
+    ActionStatus status = deserialized.getActionStatuses().get(9);
+    Assert.assertEquals(9L, status.getActionId());
+    Assert.assertEquals(log.toString(), status.getLog());
+    Assert.assertEquals(100L, status.getLogOffset());
+  }
+
   @Test
   public void testStop() throws InterruptedException {
     final List<StatusMessage> statusMessages = new Vector<>();
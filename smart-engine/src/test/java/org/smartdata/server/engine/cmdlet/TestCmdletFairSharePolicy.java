@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestCmdletFairSharePolicy {
+
+  @Test
+  public void testParseConfiguration() {
+    SmartConf conf = new SmartConf();
+    conf.set(SmartConfKeys.SMART_CMDLET_SCHEDULER_ACTION_WEIGHTS_KEY,
+        "cache:4, allssd : 2, sync:0, wrong, copy:abc");
+    CmdletFairSharePolicy policy = new CmdletFairSharePolicy(conf);
+
+    assertEquals(4, policy.getWeight("cache"));
+    assertEquals(2, policy.getWeight("allssd"));
+    assertEquals(1, policy.getWeight("sync"));
+    assertEquals(1, policy.getWeight("copy"));
+  }
+
+  @Test
+  public void testReservedSlots() {
+    CmdletFairSharePolicy policy = new CmdletFairSharePolicy(
+        Collections.emptyMap(), ImmutableMap.of("cache", 2), 0);
+
+    assertFalse(policy.hasFreeSlots("sync", 2));
+    assertTrue(policy.hasFreeSlots("sync", 3));
+    assertTrue(policy.hasFreeSlots("cache", 1));
+
+    policy.onCmdletActive(1L, "cache", 0L);
+    assertTrue(policy.hasFreeSlots("sync", 2));
+    policy.onCmdletActive(2L, "cache", 0L);
+    assertTrue(policy.hasFreeSlots("sync", 1));
+
+    policy.onCmdletFinished(1L);
+    policy.onCmdletFinished(1L);
+    assertFalse(policy.hasFreeSlots("sync", 1));
+    assertTrue(policy.hasFreeSlots("sync", 2));
+  }
+
+  @Test
+  public void testRuleLimit() {
+    CmdletFairSharePolicy policy = new CmdletFairSharePolicy(
+        Collections.emptyMap(), Collections.emptyMap(), 2);
+
+    policy.onCmdletActive(1L, "sync", 10L);
+    policy.onCmdletActive(2L, "sync", 10L);
+    policy.onCmdletActive(3L, "sync", 0L);
+    policy.onCmdletActive(4L, "sync", 0L);
+
+    assertTrue(policy.isRuleLimitReached(10L));
+    assertFalse(policy.isRuleLimitReached(11L));
+    // limit isn't applied to the cmdlets submitted by users
+    assertFalse(policy.isRuleLimitReached(0L));
+
+    policy.onCmdletFinished(2L);
+    assertFalse(policy.isRuleLimitReached(10L));
+  }
+}
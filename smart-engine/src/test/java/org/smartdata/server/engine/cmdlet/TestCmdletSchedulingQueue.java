@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestCmdletSchedulingQueue {
+  private CmdletSchedulingQueue queue;
+
+  @Before
+  public void setUp() {
+    queue = new CmdletSchedulingQueue();
+  }
+
+  @Test
+  public void testPollByActionType() {
+    queue.add(1L, "copy", 0L);
+    queue.add(2L, "compress", 0L);
+    queue.add(3L, "copy", 0L);
+
+    assertEquals(3, queue.size());
+    assertEquals(2, queue.size("copy"));
+    assertEquals(1, queue.size("compress"));
+    assertEquals(new HashSet<>(Arrays.asList("copy", "compress")),
+        new HashSet<>(queue.getActionTypes()));
+
+    assertEquals(1L, queue.poll("copy").getCmdletId());
+    assertEquals(2L, queue.poll("compress").getCmdletId());
+    assertEquals(3L, queue.poll("copy").getCmdletId());
+    assertNull(queue.poll("copy"));
+    assertNull(queue.poll("unknown"));
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testSkipDuplicates() {
+    queue.add(1L, "copy", 0L);
+    queue.add(1L, "copy", 0L);
+
+    assertEquals(1, queue.size());
+    assertEquals(1L, queue.poll("copy").getCmdletId());
+    assertNull(queue.poll("copy"));
+  }
+
+  @Test
+  public void testRemove() {
+    queue.add(1L, "copy", 0L);
+    queue.add(2L, "copy", 0L);
+
+    assertTrue(queue.remove(1L));
+    assertFalse(queue.remove(1L));
+    assertEquals(1, queue.size());
+    assertEquals(1, queue.size("copy"));
+
+    assertEquals(2L, queue.poll("copy").getCmdletId());
+    assertNull(queue.poll("copy"));
+    assertEquals(0, queue.size("copy"));
+  }
+
+  @Test
+  public void testRequeueKeepsEnqueueTime() {
+    queue.add(1L, "copy", 0L);
+    queue.add(2L, "copy", 0L);
+
+    CmdletSchedulingQueue.Entry entry = queue.poll("copy");
+    queue.add(entry);
+
+    assertEquals(2, queue.size("copy"));
+    assertEquals(2L, queue.poll("copy").getCmdletId());
+    CmdletSchedulingQueue.Entry requeued = queue.poll("copy");
+    assertEquals(1L, requeued.getCmdletId());
+    assertEquals(entry.getEnqueueTime(), requeued.getEnqueueTime());
+  }
+
+  @Test
+  public void testReaddRemovedCmdlet() {
+    queue.add(1L, "copy", 0L);
+    queue.remove(1L);
+    queue.add(1L, "copy", 0L);
+
+    assertEquals(1, queue.size("copy"));
+    assertEquals(1L, queue.poll("copy").getCmdletId());
+    assertNull(queue.poll("copy"));
+    assertEquals(0, queue.size("copy"));
+  }
+}
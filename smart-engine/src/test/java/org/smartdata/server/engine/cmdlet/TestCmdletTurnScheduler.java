@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestCmdletTurnScheduler {
+  private CmdletSchedulingQueue pendingCmdlets;
+  private List<Long> scheduledCmdlets;
+  private int totalSlots;
+
+  @Before
+  public void setUp() {
+    pendingCmdlets = new CmdletSchedulingQueue();
+    scheduledCmdlets = new ArrayList<>();
+  }
+
+  @Test
+  public void testCheckFreeSlotsBeforeEachCmdlet() {
+    CmdletFairSharePolicy policy = new CmdletFairSharePolicy(
+        ImmutableMap.of("cache", 4), Collections.emptyMap(), 0);
+    addCmdlets("cache", 1, 6);
+    totalSlots = 3;
+
+    assertFalse(newScheduler(policy).schedule());
+    // the weight allows 4 cmdlets per turn, but there are only 3 slots
+    assertEquals(3, scheduledCmdlets.size());
+    assertEquals(3, pendingCmdlets.size("cache"));
+  }
+
+  @Test
+  public void testCheckReservedSlotsBeforeEachCmdlet() {
+    CmdletFairSharePolicy policy = new CmdletFairSharePolicy(
+        ImmutableMap.of("sync", 4), ImmutableMap.of("cache", 2), 0);
+    addCmdlets("sync", 1, 4);
+    totalSlots = 4;
+
+    newScheduler(policy).schedule();
+    // the rest of the slots are reserved for the cache cmdlets
+    assertEquals(2, scheduledCmdlets.size());
+    assertEquals(2, pendingCmdlets.size("sync"));
+
+    addCmdlets("cache", 10, 2);
+    newScheduler(policy).schedule();
+    assertEquals(4, scheduledCmdlets.size());
+    assertEquals(0, pendingCmdlets.size("cache"));
+  }
+
+  @Test
+  public void testScheduleTypesInTurn() {
+    CmdletFairSharePolicy policy = new CmdletFairSharePolicy(
+        ImmutableMap.of("cache", 2), Collections.emptyMap(), 0);
+    addCmdlets("cache", 1, 4);
+    addCmdlets("sync", 10, 4);
+    totalSlots = 6;
+
+    newScheduler(policy).schedule();
+    assertEquals(6, scheduledCmdlets.size());
+    assertEquals(0, pendingCmdlets.size("cache"));
+    assertEquals(2, pendingCmdlets.size("sync"));
+  }
+
+  @Test
+  public void testRetryCmdlets() {
+    CmdletFairSharePolicy policy = new CmdletFairSharePolicy(
+        Collections.emptyMap(), Collections.emptyMap(), 0);
+    addCmdlets("cache", 1, 2);
+    totalSlots = 10;
+
+    CmdletTurnScheduler scheduler = new CmdletTurnScheduler(
+        pendingCmdlets, policy, () -> totalSlots, entry -> false);
+    assertTrue(scheduler.schedule());
+    // every cmdlet is polled once per call
+    assertEquals(2, pendingCmdlets.size("cache"));
+  }
+
+  private CmdletTurnScheduler newScheduler(CmdletFairSharePolicy policy) {
+    return new CmdletTurnScheduler(pendingCmdlets, policy,
+        () -> totalSlots - scheduledCmdlets.size(),
+        entry -> {
+          scheduledCmdlets.add(entry.getCmdletId());
+          policy.onCmdletActive(entry.getCmdletId(), entry.getActionType(), entry.getRuleId());
+          return true;
+        });
+  }
+
+  private void addCmdlets(String actionType, long firstId, int count) {
+    for (long id = firstId; id < firstId + count; id++) {
+      pendingCmdlets.add(id, actionType, 0L);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.cmdlet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.metastore.MetaStore;
+import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.model.CmdletInfo;
+import org.smartdata.model.CmdletState;
+import org.smartdata.server.engine.ServerContext;
+
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TestInMemoryRegistry {
+  private MetaStore metaStore;
+  private InMemoryRegistry registry;
+
+  @Before
+  public void setUp() {
+    metaStore = mock(MetaStore.class);
+    registry = new InMemoryRegistry(new ServerContext(new SmartConf(), metaStore),
+        new RuleCmdletTracker(), mock(ScheduledExecutorService.class));
+  }
+
+  @Test
+  public void testKeepFinishedCmdletOnStoreFailure() throws Exception {
+    doThrow(new MetaStoreException("metastore is unavailable"))
+        .doNothing()
+        .when(metaStore).upsertCmdlets(anyList());
+    CmdletInfo cmdletInfo = new CmdletInfo(1L, 0L, CmdletState.DONE, "echo", 0L, 0L);
+    registry.addUnfinishedCmdlet(cmdletInfo);
+    registry.addCmdlet(cmdletInfo);
+    registry.deleteCmdletsAsync(Collections.singletonList(2L));
+
+    registry.stop();
+    // the cmdlet is neither stored nor lost
+    assertNotNull(registry.getUnfinishedCmdlet(1L));
+    verify(metaStore, never()).batchDeleteCmdlet(anyList());
+
+    registry.stop();
+    assertNull(registry.getUnfinishedCmdlet(1L));
+    verify(metaStore, times(2)).upsertCmdlets(Collections.singletonList(cmdletInfo));
+    verify(metaStore).batchDeleteCmdlet(Collections.singletonList(2L));
+  }
+
+  @Test
+  public void testRetryDeletionOnFailure() throws Exception {
+    doThrow(new MetaStoreException("metastore is unavailable"))
+        .doNothing()
+        .when(metaStore).batchDeleteCmdlet(anyList());
+    registry.deleteCmdletsAsync(Collections.singletonList(1L));
+
+    registry.stop();
+    registry.stop();
+    verify(metaStore, times(2)).batchDeleteCmdlet(Collections.singletonList(1L));
+    verify(metaStore).batchDeleteCmdletActions(Collections.singletonList(1L));
+
+    registry.stop();
+    verify(metaStore, times(2)).batchDeleteCmdlet(anyList());
+  }
+}
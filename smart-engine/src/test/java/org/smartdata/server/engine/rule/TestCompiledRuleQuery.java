@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.rule;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.metastore.MetaStore;
+import org.smartdata.model.rule.RuleTranslationResult;
+import org.smartdata.server.engine.data.ExecutionContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestCompiledRuleQuery {
+  private MetaStore metaStore;
+  private ExecutionContext executionCtx;
+  private List<List<Object>> functionCalls;
+  private Map<String, Function<List<Object>, String>> functions;
+
+  @Before
+  public void setUp() {
+    metaStore = mock(MetaStore.class);
+    executionCtx = new ExecutionContext(1L);
+    functionCalls = new ArrayList<>();
+    functions = ImmutableMap.of("genTable", parameters -> {
+      functionCalls.add(parameters);
+      executionCtx.setProperty("tab_value", 10L);
+      return null;
+    });
+  }
+
+  @Test
+  public void testBindVariables() throws Exception {
+    RuleTranslationResult translationResult = translationResult(Arrays.asList(
+        "$@genTable(tab)",
+        "SELECT path FROM file WHERE (($NOW - modification_time) > 1000)"
+            + " AND path LIKE '/dir/$NOW' AND (count > $tab_value);"));
+    when(metaStore.executeFilesPathQuery(any(), any(), anyInt()))
+        .thenReturn(Collections.singletonList("/file"));
+
+    CompiledRuleQuery query = CompiledRuleQuery.compile(translationResult, functions);
+    for (long now = 1; now <= 2; now++) {
+      executionCtx.setProperty("NOW", now);
+      assertEquals(Collections.singletonList("/file"),
+          query.execute(executionCtx, metaStore, 5));
+
+      verify(metaStore).executeFilesPathQuery(
+          eq("SELECT path FROM file WHERE ((? - modification_time) > 1000)"
+              + " AND path LIKE '/dir/$NOW' AND (count > ?)"),
+          eq(new Object[] {now, 10L}),
+          eq(5));
+    }
+    assertEquals(2, functionCalls.size());
+    assertEquals(Collections.singletonList(30000L), functionCalls.get(0));
+    verify(metaStore, never()).execute(any(String.class));
+  }
+
+  @Test
+  public void testStreamResult() throws Exception {
+    RuleTranslationResult translationResult = translationResult(Arrays.asList(
+        "$@genTable(tab)",
+        "SELECT path FROM file WHERE count > $tab_value;"));
+    Predicate<List<String>> batchConsumer = files -> true;
+
+    CompiledRuleQuery query = CompiledRuleQuery.compile(translationResult, functions);
+    query.stream(executionCtx, metaStore, 5, 100, batchConsumer);
+
+    verify(metaStore).streamFilesPathQuery(
+        eq("SELECT path FROM file WHERE count > ?"),
+        eq(new Object[] {10L}),
+        eq(5),
+        eq(100),
+        eq(batchConsumer));
+    verify(metaStore, never()).executeFilesPathQuery(any(), any(), anyInt());
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownFunction() throws Exception {
+    CompiledRuleQuery.compile(translationResult(Arrays.asList(
+        "$@unknownFunction(tab)", "SELECT path FROM file;")), functions);
+  }
+
+  @Test(expected = IOException.class)
+  public void testFunctionCallInsideStatement() throws Exception {
+    CompiledRuleQuery.compile(translationResult(Collections.singletonList(
+        "SELECT path FROM file WHERE fid IN ($@genTable(tab));")), functions);
+  }
+
+  private RuleTranslationResult translationResult(List<String> statements) {
+    return new RuleTranslationResult(
+        new ArrayList<>(statements),
+        ImmutableMap.of("tab", Collections.singletonList(30000L)),
+        statements.size() - 1,
+        null,
+        null,
+        null,
+        Collections.emptyList());
+  }
+}
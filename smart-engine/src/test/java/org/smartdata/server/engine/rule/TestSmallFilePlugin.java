@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.server.engine.rule;
+
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.metastore.MetaStore;
+import org.smartdata.model.FileInfo;
+import org.smartdata.model.NormalFileState;
+import org.smartdata.model.RuleInfo;
+import org.smartdata.server.engine.CmdletManager;
+import org.smartdata.server.engine.ServerContext;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestSmallFilePlugin {
+  private SmallFilePlugin plugin;
+  private RuleInfo ruleInfo;
+
+  @Before
+  public void setUp() throws Exception {
+    MetaStore metaStore = mock(MetaStore.class);
+    when(metaStore.getAllContainerFiles()).thenReturn(Collections.emptyList());
+    when(metaStore.getFile(anyString())).thenAnswer(invocation -> FileInfo.newBuilder()
+        .setPath(invocation.getArgument(0))
+        .setLength(10)
+        .setPermission((short) 420)
+        .setOwner("user")
+        .setGroup("group")
+        .build());
+    when(metaStore.getFileState(anyString())).thenAnswer(
+        invocation -> new NormalFileState(invocation.getArgument(0)));
+
+    SmartConf conf = new SmartConf();
+    conf.setInt(SmartConfKeys.SMART_COMPACT_BATCH_SIZE_KEY, 3);
+    plugin = new SmallFilePlugin(
+        new ServerContext(conf, metaStore), mock(CmdletManager.class));
+    ruleInfo = RuleInfo.builder()
+        .setId(1L)
+        .setRuleText("file: path matches \"/dir/*\" | compact")
+        .build();
+  }
+
+  @Test
+  public void testGroupFilesOfSeveralParts() {
+    assertTrue(plugin.preSubmitCmdlet(ruleInfo,
+        Arrays.asList("/dir/file1", "/dir/file2")).isEmpty());
+
+    assertEquals(Collections.singletonList(toJson("/dir/file1", "/dir/file2", "/dir/file3")),
+        plugin.preSubmitCmdlet(ruleInfo, Arrays.asList("/dir/file3", "/dir/file4")));
+
+    assertEquals(Collections.singletonList(toJson("/dir/file4")),
+        plugin.flushPendingObjects(ruleInfo));
+    assertTrue(plugin.flushPendingObjects(ruleInfo).isEmpty());
+  }
+
+  @Test
+  public void testDropPendingFilesOnExit() {
+    plugin.preSubmitCmdlet(ruleInfo, Arrays.asList("/dir/file1", "/dir/file2"));
+    plugin.onRuleExecutorExit(ruleInfo);
+
+    assertTrue(plugin.flushPendingObjects(ruleInfo).isEmpty());
+  }
+
+  private String toJson(String... files) {
+    List<String> fileList = Arrays.asList(files);
+    return new Gson().toJson(fileList);
+  }
+}
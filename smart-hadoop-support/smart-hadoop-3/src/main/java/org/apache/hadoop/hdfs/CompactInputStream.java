@@ -18,6 +18,8 @@
 package org.apache.hadoop.hdfs;
 
 import org.apache.hadoop.fs.ReadOption;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.io.ByteBufferPool;
 import org.smartdata.model.CompactFileState;
@@ -31,10 +33,21 @@
 import java.util.EnumSet;
 import java.util.List;
 
+/**
+ * Input stream of the small file compacted into the container file.
+ *
+ * <p>The small file is the [offset, offset + length) slice of the container.
+ * All reads are delegated to the separate stream of the container, so
+ * the DFSInputStream internals always work with the container offsets,
+ * while the public methods of this stream translate the offsets relative
+ * to the small file into the container ones. Both streams share the located
+ * blocks of the container, so opening the stream costs a single NameNode request.
+ */
 public class CompactInputStream extends SmartInputStream {
   private final FileContainerInfo fileContainerInfo;
-  private boolean closed = false;
-  private static final String INHERITED_CLASS = "org.apache.hadoop.hdfs.DFSInputStream";
+  private final long offset;
+  private final long length;
+  private final DFSInputStream containerStream;
 
   CompactInputStream(DFSClient dfsClient, boolean verifyChecksum,
                      FileState fileState) throws IOException {
@@ -43,27 +56,23 @@ public class CompactInputStream extends SmartInputStream {
           verifyChecksum,
           fileState);
     this.fileContainerInfo = ((CompactFileState) fileState).getFileContainerInfo();
-    super.seek(fileContainerInfo.getOffset());
+    this.offset = fileContainerInfo.getOffset();
+    this.length = fileContainerInfo.getLength();
+    this.containerStream = new DFSInputStream(dfsClient, src, verifyChecksum, getLocatedBlocks());
+    containerStream.seek(offset);
   }
 
   @Override
   public long getFileLength() {
-    String callerClass = Thread.currentThread().getStackTrace()[2].getClassName();
-    if (INHERITED_CLASS.equals(callerClass)) {
-      return fileContainerInfo.getLength() + fileContainerInfo.getOffset();
-    } else {
-      return fileContainerInfo.getLength();
-    }
+    return length;
   }
 
   @Override
   public List<LocatedBlock> getAllBlocks() throws IOException {
-    List<LocatedBlock> blocks = super.getAllBlocks();
+    List<LocatedBlock> blocks = containerStream.getAllBlocks();
     List<LocatedBlock> ret = new ArrayList<>(16);
-    long off = fileContainerInfo.getOffset();
-    long len = fileContainerInfo.getLength();
     for (LocatedBlock b : blocks) {
-      if (off > b.getStartOffset() + b.getBlockSize() || off + len < b.getStartOffset()) {
+      if (offset > b.getStartOffset() + b.getBlockSize() || offset + length < b.getStartOffset()) {
         continue;
       }
       ret.add(b);
@@ -71,104 +80,182 @@ public List<LocatedBlock> getAllBlocks() throws IOException {
     return ret;
   }
 
+  @Override
+  public synchronized int read() throws IOException {
+    return remaining() > 0 ? containerStream.read() : -1;
+  }
+
   @Override
   public synchronized int read(final byte[] buf, int off, int len) throws IOException {
-    int realLen = (int) Math.min(len, fileContainerInfo.getLength() - getPos());
-    if (realLen == 0) {
-      return -1;
-    } else {
-      return super.read(buf, off, realLen);
+    if (len == 0) {
+      return 0;
     }
+    int realLen = (int) Math.min(len, remaining());
+    return realLen == 0 ? -1 : containerStream.read(buf, off, realLen);
   }
 
   @Override
   public synchronized int read(final ByteBuffer buf) throws IOException {
-    int realLen = (int) Math.min(buf.remaining(), fileContainerInfo.getLength() - getPos());
-    if (realLen == 0) {
+    if (!buf.hasRemaining()) {
+      return 0;
+    }
+    long remaining = remaining();
+    if (remaining == 0) {
       return -1;
-    } else {
-      buf.limit(realLen + buf.position());
-      return super.read(buf);
     }
+    if (buf.remaining() <= remaining) {
+      return containerStream.read(buf);
+    }
+    int limit = buf.limit();
+    buf.limit(buf.position() + (int) remaining);
+    try {
+      return containerStream.read(buf);
+    } finally {
+      buf.limit(limit);
+    }
+  }
+
+  @Override
+  public int read(long position, byte[] buffer, int off, int len) throws IOException {
+    int realLen = readableLength(position, len);
+    return realLen < 0 ? -1 : containerStream.read(offset + position, buffer, off, realLen);
   }
 
   @Override
-  public int read(long position, byte[] buffer, int offset, int length) throws IOException {
-    long realPos = position + fileContainerInfo.getOffset();
-    int realLen = (int) Math.min(length, fileContainerInfo.getLength() - position);
-    if (realLen == 0) {
+  public int read(long position, ByteBuffer buf) throws IOException {
+    int realLen = readableLength(position, buf.remaining());
+    if (realLen < 0) {
       return -1;
-    } else {
-      return super.read(realPos, buffer, offset, realLen);
+    }
+    int limit = buf.limit();
+    buf.limit(buf.position() + realLen);
+    try {
+      return containerStream.read(offset + position, buf);
+    } finally {
+      buf.limit(limit);
     }
   }
 
   @Override
-  public synchronized long getPos() {
-    String callerClass = Thread.currentThread().getStackTrace()[2].getClassName();
-    if (INHERITED_CLASS.equals(callerClass)) {
-      return super.getPos();
-    } else {
-      return super.getPos() - fileContainerInfo.getOffset();
+  public void readFully(long position, ByteBuffer buf) throws IOException {
+    if (position < 0 || position + buf.remaining() > length) {
+      throw new EOFException("Reached the end of file before filling the buffer");
     }
+    containerStream.readFully(offset + position, buf);
+  }
+
+  @Override
+  public synchronized long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+    long skipped = Math.min(n, remaining());
+    seek(getPos() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public synchronized long getPos() {
+    return containerStream.getPos() - offset;
   }
 
   @Override
   public synchronized int available() throws IOException {
-    if (closed) {
+    if (closed.get()) {
       throw new IOException("Stream closed.");
     }
-    final long remaining = getFileLength() - getPos();
+    final long remaining = remaining();
     return remaining <= Integer.MAX_VALUE ? (int) remaining : Integer.MAX_VALUE;
   }
 
   @Override
   public synchronized void seek(long targetPos) throws IOException {
-    String callerClass = Thread.currentThread().getStackTrace()[2].getClassName();
-    if (INHERITED_CLASS.equals(callerClass)) {
-      super.seek(targetPos);
-    } else {
-      if (targetPos > fileContainerInfo.getLength()) {
-        throw new EOFException("Cannot seek after EOF");
-      }
-      if (targetPos < 0) {
-        throw new EOFException("Cannot seek to negative offset");
-      }
-      super.seek(fileContainerInfo.getOffset() + targetPos);
+    if (targetPos > length) {
+      throw new EOFException("Cannot seek after EOF");
+    }
+    if (targetPos < 0) {
+      throw new EOFException("Cannot seek to negative offset");
     }
+    containerStream.seek(offset + targetPos);
   }
 
   @Override
   public synchronized boolean seekToNewSource(long targetPos) throws IOException {
-    String callerClass = Thread.currentThread().getStackTrace()[2].getClassName();
-    if (INHERITED_CLASS.equals(callerClass)) {
-      return super.seekToNewSource(targetPos);
-    } else {
-      if (targetPos < 0) {
-        throw new EOFException("Cannot seek after EOF");
-      } else {
-        return super.seekToNewSource(fileContainerInfo.getOffset() + targetPos);
-      }
+    if (targetPos < 0) {
+      throw new EOFException("Cannot seek after EOF");
     }
+    return containerStream.seekToNewSource(offset + targetPos);
   }
 
   @Override
   public synchronized void setReadahead(Long readahead) throws IOException {
-    long realReadAhead = Math.min(readahead, fileContainerInfo.getLength() - getPos());
-    super.setReadahead(realReadAhead);
+    containerStream.setReadahead(readahead == null ? null : Math.min(readahead, remaining()));
+  }
+
+  @Override
+  public synchronized void setDropBehind(Boolean dropBehind) throws IOException {
+    containerStream.setDropBehind(dropBehind);
   }
 
   @Override
   public synchronized ByteBuffer read(ByteBufferPool bufferPool,
                                       int maxLength, EnumSet<ReadOption> opts)
       throws IOException, UnsupportedOperationException {
-    int realMaxLen = (int) Math.min(maxLength, fileContainerInfo.getLength() - getPos());
-    return super.read(bufferPool, realMaxLen, opts);
+    int realMaxLen = (int) Math.min(maxLength, remaining());
+    return realMaxLen == 0 ? null : containerStream.read(bufferPool, realMaxLen, opts);
+  }
+
+  @Override
+  public synchronized void releaseBuffer(ByteBuffer buffer) {
+    containerStream.releaseBuffer(buffer);
+  }
+
+  @Override
+  public synchronized void unbuffer() {
+    containerStream.unbuffer();
+  }
+
+  @Override
+  public synchronized DatanodeInfo getCurrentDatanode() {
+    return containerStream.getCurrentDatanode();
+  }
+
+  @Override
+  public synchronized ExtendedBlock getCurrentBlock() {
+    return containerStream.getCurrentBlock();
+  }
+
+  @Override
+  public ReadStatistics getReadStatistics() {
+    return containerStream.getReadStatistics();
+  }
+
+  @Override
+  public void clearReadStatistics() {
+    containerStream.clearReadStatistics();
   }
 
   @Override
   public synchronized void close() throws IOException {
-    super.close();
-    this.closed = true;
+    try {
+      containerStream.close();
+    } finally {
+      super.close();
+    }
+  }
+
+  private long remaining() {
+    return Math.max(length - getPos(), 0);
+  }
+
+  /**
+   * Returns the number of bytes that can be read at the position
+   * or -1 if the position is out of the file.
+   */
+  private int readableLength(long position, int len) {
+    if (position < 0 || position >= length) {
+      return -1;
+    }
+    return (int) Math.min(len, length - position);
   }
 }
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs;
 
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.smartdata.model.FileState;
 
 import java.io.IOException;
@@ -29,7 +30,12 @@ public class SmartInputStream extends DFSInputStream {
 
   public SmartInputStream(DFSClient dfsClient, String src, boolean verifyChecksum,
       FileState fileState) throws IOException {
-    super(dfsClient, src, verifyChecksum, dfsClient.getLocatedBlocks(src, 0));
+    this(dfsClient, src, verifyChecksum, fileState, dfsClient.getLocatedBlocks(src, 0));
+  }
+
+  public SmartInputStream(DFSClient dfsClient, String src, boolean verifyChecksum,
+      FileState fileState, LocatedBlocks locatedBlocks) throws IOException {
+    super(dfsClient, src, verifyChecksum, locatedBlocks);
     this.fileState = fileState;
   }
 
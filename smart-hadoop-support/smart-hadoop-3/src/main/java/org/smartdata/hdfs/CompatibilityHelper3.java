@@ -258,11 +258,17 @@ public DBlock getDBlock(DBlock block, StorageGroup source) {
   @Override
   public DFSInputStream getNormalInputStream(DFSClient dfsClient, String src, boolean verifyChecksum,
       FileState fileState) throws IOException {
-    LocatedBlocks locatedBlocks = dfsClient.getLocatedBlocks(src, 0);
+    return getNormalInputStream(dfsClient, src, verifyChecksum, fileState,
+        dfsClient.getLocatedBlocks(src, 0));
+  }
+
+  @Override
+  public DFSInputStream getNormalInputStream(DFSClient dfsClient, String src, boolean verifyChecksum,
+      FileState fileState, LocatedBlocks locatedBlocks) throws IOException {
     ErasureCodingPolicy ecPolicy = locatedBlocks.getErasureCodingPolicy();
     if (ecPolicy != null) {
       return new SmartStripedInputStream(dfsClient, src, verifyChecksum, ecPolicy, locatedBlocks, fileState);
     }
-    return new SmartInputStream(dfsClient, src, verifyChecksum, fileState);
+    return new SmartInputStream(dfsClient, src, verifyChecksum, fileState, locatedBlocks);
   }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.hdfs.MiniClusterHarness;
+import org.smartdata.model.CompactFileState;
+import org.smartdata.model.FileContainerInfo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestCompactInputStream extends MiniClusterHarness {
+  private static final String CONTAINER = "/container";
+  // the small file is stored in the several blocks of the container
+  private static final int OFFSET = 60;
+  private static final int LENGTH = 45;
+
+  private byte[] containerData;
+  private byte[] fileData;
+
+  @Override
+  public MiniDFSCluster createCluster(Configuration conf) throws IOException,
+      IllegalAccessException, ClassNotFoundException, InstantiationException {
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0L);
+    return super.createCluster(conf);
+  }
+
+  @Before
+  public void createContainer() throws Exception {
+    containerData = new byte[170];
+    new Random(2018).nextBytes(containerData);
+    fileData = Arrays.copyOfRange(containerData, OFFSET, OFFSET + LENGTH);
+    try (FSDataOutputStream out = dfs.create(new Path(CONTAINER), (short) 1)) {
+      out.write(containerData);
+    }
+  }
+
+  @Test
+  public void testSequentialRead() throws Exception {
+    try (CompactInputStream in = openSmallFile()) {
+      assertEquals(LENGTH, in.getFileLength());
+      assertEquals(0, in.getPos());
+      assertEquals(LENGTH, in.available());
+      assertEquals(fileData[0] & 0xff, in.read());
+
+      byte[] buf = new byte[100];
+      int readBytes = 1;
+      int read;
+      while ((read = in.read(buf, readBytes, buf.length - readBytes)) > 0) {
+        readBytes += read;
+      }
+      buf[0] = fileData[0];
+      assertEquals(LENGTH, readBytes);
+      assertArrayEquals(fileData, Arrays.copyOf(buf, LENGTH));
+      assertEquals(LENGTH, in.getPos());
+      assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  public void testSeekAndSkip() throws Exception {
+    try (CompactInputStream in = openSmallFile()) {
+      in.seek(30);
+      assertEquals(30, in.getPos());
+      assertEquals(fileData[30] & 0xff, in.read());
+
+      assertEquals(10, in.skip(10));
+      assertEquals(41, in.getPos());
+      assertEquals(fileData[41] & 0xff, in.read());
+      assertEquals(LENGTH - 42, in.skip(100));
+      assertEquals(-1, in.read());
+
+      in.seek(0);
+      assertEquals(fileData[0] & 0xff, in.read());
+    }
+  }
+
+  @Test(expected = EOFException.class)
+  public void testSeekAfterEof() throws Exception {
+    try (CompactInputStream in = openSmallFile()) {
+      in.seek(LENGTH + 1);
+    }
+  }
+
+  @Test
+  public void testByteBufferRead() throws Exception {
+    try (CompactInputStream in = openSmallFile()) {
+      ByteBuffer buffer = ByteBuffer.allocate(100);
+      int readBytes = 0;
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        readBytes += read;
+      }
+      assertEquals(LENGTH, readBytes);
+      assertEquals(100, buffer.limit());
+      buffer.flip();
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      assertArrayEquals(fileData, bytes);
+    }
+  }
+
+  @Test
+  public void testPositionalRead() throws Exception {
+    try (CompactInputStream in = openSmallFile()) {
+      byte[] buf = new byte[20];
+      in.readFully(10, buf, 0, 20);
+      assertArrayEquals(Arrays.copyOfRange(fileData, 10, 30), buf);
+      assertEquals(0, in.getPos());
+
+      assertEquals(5, in.read(LENGTH - 5, buf, 0, 20));
+      assertEquals(-1, in.read(LENGTH, buf, 0, 20));
+
+      ByteBuffer buffer = ByteBuffer.allocate(20);
+      assertEquals(20, in.read(LENGTH - 20, buffer));
+      assertArrayEquals(Arrays.copyOfRange(fileData, LENGTH - 20, LENGTH), buffer.array());
+
+      buffer.clear();
+      in.readFully(5, buffer);
+      assertArrayEquals(Arrays.copyOfRange(fileData, 5, 25), buffer.array());
+    }
+  }
+
+  @Test(expected = EOFException.class)
+  public void testReadFullyAfterEof() throws Exception {
+    try (CompactInputStream in = openSmallFile()) {
+      in.readFully(LENGTH - 10, ByteBuffer.allocate(20));
+    }
+  }
+
+  private CompactInputStream openSmallFile() throws Exception {
+    return new CompactInputStream(dfsClient, true, new CompactFileState("/small_file",
+        new FileContainerInfo(CONTAINER, OFFSET, LENGTH)));
+  }
+}
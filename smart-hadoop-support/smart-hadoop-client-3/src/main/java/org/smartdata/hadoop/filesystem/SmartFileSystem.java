@@ -57,6 +57,7 @@
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.IntFunction;
 
 /**
  * SmartFileSystem Deploy Guide
@@ -172,7 +173,7 @@ public FileStatus getFileStatus(Path f) throws IOException {
     FileStatus oldStatus = super.getFileStatus(f);
     if (oldStatus == null) return null;
     if (oldStatus.getLen() == 0) {
-      FileState fileState = smartDFSClient.getFileState(getPathName(f));
+      FileState fileState = getFileState(getPathName(f), oldStatus);
       if (fileState instanceof CompactFileState) {
         long len = ((CompactFileState) fileState).getFileContainerInfo().getLength();
         return new FileStatus(len, oldStatus.isDirectory(), oldStatus.getReplication(),
@@ -182,7 +183,7 @@ public FileStatus getFileStatus(Path f) throws IOException {
             oldStatus.isSymlink() ? oldStatus.getSymlink() : null, oldStatus.getPath());
       }
     } else {
-      FileState fileState = smartDFSClient.getFileState(getPathName(f));
+      FileState fileState = getFileState(getPathName(f), oldStatus);
       if (fileState instanceof CompressionFileState) {
         long len = ((CompressionFileState) fileState).getOriginalLength();
         return new FileStatus(len, oldStatus.isDirectory(), oldStatus.getReplication(),
@@ -198,14 +199,14 @@ public FileStatus getFileStatus(Path f) throws IOException {
   @Override
   public FileStatus[] listStatus(Path p) throws IOException {
     FileStatus[] oldStatus = super.listStatus(p);
+    FileState[] fileStates = getFileStates(oldStatus.length, index ->
+        oldStatus[index].isDirectory() ? null : getPathName(oldStatus[index].getPath()),
+        index -> toHdfsFileStatus(oldStatus[index]));
     ArrayList<FileStatus> newStatus = new ArrayList<>(oldStatus.length);
-    for (FileStatus status : oldStatus) {
-      if (oldStatus == null) {
-        newStatus.add(null);
-        continue;
-      }
+    for (int index = 0; index < oldStatus.length; index++) {
+      FileStatus status = oldStatus[index];
+      FileState fileState = fileStates[index];
       if (status.getLen() == 0) {
-        FileState fileState = smartDFSClient.getFileState(getPathName(status.getPath()));
         if (fileState instanceof CompactFileState) {
           long len = ((CompactFileState) fileState).getFileContainerInfo().getLength();
           newStatus.add(new FileStatus(len, status.isDirectory(), status.getReplication(),
@@ -216,7 +217,6 @@ public FileStatus[] listStatus(Path p) throws IOException {
           newStatus.add(status);
         }
       } else {
-        FileState fileState = smartDFSClient.getFileState(getPathName(status.getPath()));
         if (fileState instanceof CompressionFileState) {
           long len = ((CompressionFileState) fileState).getOriginalLength();
           newStatus.add(new FileStatus(len, status.isDirectory(), status.getReplication(),
@@ -231,6 +231,46 @@ public FileStatus[] listStatus(Path p) throws IOException {
     return newStatus.toArray(new FileStatus[oldStatus.length]);
   }
 
+  /**
+   * Resolves states of all files of the listing at once instead of
+   * requesting them one by one. Directories don't have states.
+   *
+   * @param pathByIndex returns path of the listed file or null for directories
+   * @param statusByIndex returns status of the listed file or null if unknown
+   * @return file states by the listing index, null for directories
+   */
+  private FileState[] getFileStates(int listingSize, IntFunction<String> pathByIndex,
+      IntFunction<HdfsFileStatus> statusByIndex) throws IOException {
+    List<String> filePaths = new ArrayList<>(listingSize);
+    List<HdfsFileStatus> fileStatuses = new ArrayList<>(listingSize);
+    for (int index = 0; index < listingSize; index++) {
+      String filePath = pathByIndex.apply(index);
+      if (filePath != null) {
+        filePaths.add(filePath);
+        fileStatuses.add(statusByIndex.apply(index));
+      }
+    }
+
+    List<FileState> resolvedStates = smartDFSClient.getFileStates(filePaths, fileStatuses);
+    FileState[] fileStates = new FileState[listingSize];
+    int resolvedIndex = 0;
+    for (int index = 0; index < listingSize; index++) {
+      if (pathByIndex.apply(index) != null) {
+        fileStates[index] = resolvedStates.get(resolvedIndex++);
+      }
+    }
+    return fileStates;
+  }
+
+  private FileState getFileState(String filePath, FileStatus fileStatus) throws IOException {
+    return smartDFSClient.getFileState(filePath, toHdfsFileStatus(fileStatus));
+  }
+
+  // statuses returned by the DFSClient keep the file id required by the file state cache
+  private static HdfsFileStatus toHdfsFileStatus(FileStatus fileStatus) {
+    return fileStatus instanceof HdfsFileStatus ? (HdfsFileStatus) fileStatus : null;
+  }
+
   @Override
   public BlockLocation[] getFileBlockLocations(Path p, final long start,
       final long len) throws IOException {
@@ -566,6 +606,7 @@ public RemoteIterator<LocatedFileStatus> next(final FileSystem fs, final Path p)
       implements RemoteIterator<T> {
 
     private DirectoryListing thisListing;
+    private FileState[] listingFileStates;
     private int i;
     private Path p;
     private String src;
@@ -587,6 +628,7 @@ private SmartDirListingIterator(Path p, PathFilter filter,
       if (thisListing == null) {
         throw new FileNotFoundException("File " + p + " does not exist.");
       }
+      listingFileStates = getListingFileStates();
       i = 0;
     }
 
@@ -600,6 +642,7 @@ private SmartDirListingIterator(Path p, boolean needLocation)
     public boolean hasNext() throws IOException {
       while (curStat == null && hasNextNoFilter()) {
         T next;
+        FileState fileState = listingFileStates[i];
         HdfsFileStatus fileStat = thisListing.getPartialListing()[i++];
         if (needLocation) {
           next = (T)((HdfsLocatedFileStatus) fileStat).makeQualifiedLocated(getUri(), p);
@@ -607,7 +650,6 @@ public boolean hasNext() throws IOException {
 
           // Reconstruct FileStatus
           if (next.getLen() == 0) {
-            FileState fileState = smartDFSClient.getFileState(fileName);
             if (fileState instanceof CompactFileState) {
               CompactFileState compactFileState = (CompactFileState) fileState;
               long len = compactFileState.getFileContainerInfo().getLength();
@@ -626,19 +668,14 @@ public boolean hasNext() throws IOException {
                   next.getPath(),
                   blockLocations);
             }
-          } else {
-            FileState fileState = smartDFSClient.getFileState(fileName);
-            if (fileState instanceof CompressionFileState) {
-              next = getCompressedFileStatus(fileState, next);
-            }
+          } else if (fileState instanceof CompressionFileState) {
+            next = getCompressedFileStatus(fileState, next);
           }
         } else {
           next = (T) fileStat.makeQualified(getUri(), p);
-          String fileName = next.getPath().toUri().getPath();
 
           // Reconstruct FileStatus
           if (next.getLen() == 0) {
-            FileState fileState = smartDFSClient.getFileState(fileName);
             if (fileState instanceof CompactFileState) {
               CompactFileState compactFileState = (CompactFileState) fileState;
               long len = compactFileState.getFileContainerInfo().getLength();
@@ -654,11 +691,8 @@ public boolean hasNext() throws IOException {
                   next.isSymlink() ? next.getSymlink() : null,
                   next.getPath());
             }
-          } else {
-            FileState fileState = smartDFSClient.getFileState(fileName);
-            if (fileState instanceof CompressionFileState) {
-              next = getCompressedFileStatus(fileState, next);
-            }
+          } else if (fileState instanceof CompressionFileState) {
+            next = getCompressedFileStatus(fileState, next);
           }
         }
 
@@ -776,6 +810,13 @@ private void convertBlockLocation(BlockLocation blockLocation,
       blockLocation.setLength(originEnd - originStart + 1);
     }
 
+    private FileState[] getListingFileStates() throws IOException {
+      HdfsFileStatus[] partialListing = thisListing.getPartialListing();
+      return getFileStates(partialListing.length, index ->
+          partialListing[index].isDirectory() ? null : partialListing[index].getFullName(src),
+          index -> partialListing[index]);
+    }
+
     /**
      * Check if there is a next item before applying the given filter
      */
@@ -791,6 +832,7 @@ private boolean hasNextNoFilter() throws IOException {
         if (thisListing == null) {
           return false;
         }
+        listingFileStates = getListingFileStates();
         i = 0;
       }
       return (i < thisListing.getPartialListing().length);
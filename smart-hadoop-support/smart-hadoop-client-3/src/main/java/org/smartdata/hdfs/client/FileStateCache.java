@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.smartdata.model.FileState;
+import org.smartdata.model.NormalFileState;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+
+/**
+ * Bounded client side cache of the file states, used to avoid requesting
+ * the file state xattr from the NameNode on every client operation.
+ * Most of the files are in the normal state, so absence of the state
+ * is cached as well.
+ *
+ * <p>Each entry is stamped with the id of the file it was loaded for and
+ * is used only for the file status with the same id. SSM actions change
+ * the state by replacing the file with a new one, so entries of the replaced
+ * files, as well as of the files under renamed or deleted directories,
+ * are never used. Normal states of the empty files are not cached, since
+ * the small file compaction sets the state after replacing the file
+ * with an empty one. Entries are invalidated on the changes made
+ * by the client itself.
+ */
+public class FileStateCache implements MetricsSource {
+  public static final String NAME = "FileStateCache";
+
+  // cached instead of the normal states to not keep the path twice
+  private static final FileState NORMAL_STATE = new NormalFileState("");
+
+  private final Cache<String, Entry> cache;
+  private final AtomicLong version;
+  private final AtomicLong invalidations;
+  private final AtomicLong staleEntries;
+
+  public FileStateCache(long maxSize, long ttlMs) {
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(Math.max(maxSize, 0L))
+        .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+        // run eviction in the caller thread instead of the common pool
+        .executor(Runnable::run)
+        .recordStats()
+        .build();
+    this.version = new AtomicLong();
+    this.invalidations = new AtomicLong();
+    this.staleEntries = new AtomicLong();
+  }
+
+  /**
+   * Returns the cached state of the file or loads it with the loader.
+   * States of the files under processing are not cached, since
+   * they are going to be changed soon.
+   *
+   * @param path path of the file
+   * @param fileStatus status of the file, fetched before the call
+   */
+  public FileState get(String path, HdfsFileStatus fileStatus, FileStateLoader loader)
+      throws IOException {
+    FileState fileState = getIfPresent(path, fileStatus);
+    if (fileState != null) {
+      return fileState;
+    }
+
+    long expectedVersion = version.get();
+    fileState = loader.load(path);
+    if (isCacheable(fileStatus, fileState)) {
+      cache.put(path, new Entry(fileStatus.getFileId(),
+          fileState instanceof NormalFileState ? NORMAL_STATE : fileState));
+      // the file could be changed by the client during the loading
+      if (version.get() != expectedVersion) {
+        cache.invalidate(path);
+      }
+    }
+    return fileState;
+  }
+
+  /**
+   * Returns the cached state of the file or null if it isn't cached
+   * or was cached for another file with the same path.
+   */
+  public FileState getIfPresent(String path, HdfsFileStatus fileStatus) {
+    Entry entry = cache.getIfPresent(path);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.fileId != fileStatus.getFileId()) {
+      staleEntries.incrementAndGet();
+      cache.asMap().remove(path, entry);
+      return null;
+    }
+    return entry.fileState == NORMAL_STATE ? new NormalFileState(path) : entry.fileState;
+  }
+
+  /**
+   * Removes the cached state of the path. States of the files under
+   * the path are left as is, since they are stamped with the file ids.
+   */
+  public void invalidate(String path) {
+    version.incrementAndGet();
+    invalidations.incrementAndGet();
+    String normalizedPath = path.length() > 1 && path.endsWith("/")
+        ? path.substring(0, path.length() - 1)
+        : path;
+    cache.invalidate(normalizedPath);
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  public long getStaleEntries() {
+    return staleEntries.get();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    CacheStats stats = cache.stats();
+    collector.addRecord(NAME)
+        .addCounter(info("Hits", "Number of file states resolved from the cache"),
+            stats.hitCount())
+        .addCounter(info("Misses", "Number of file states requested from the NameNode"),
+            stats.missCount())
+        .addCounter(info("Evictions", "Number of file states evicted due to the size limit"),
+            stats.evictionCount())
+        .addCounter(info("Invalidations", "Number of invalidations by the client operations"),
+            invalidations.get())
+        .addCounter(info("StaleEntries", "Number of cached states of the replaced files"),
+            staleEntries.get())
+        .addGauge(info("Size", "Estimated number of cached file states"),
+            cache.estimatedSize())
+        .addGauge(info("HitRate", "Ratio of file states resolved from the cache"),
+            (float) stats.hitRate());
+  }
+
+  private boolean isCacheable(HdfsFileStatus fileStatus, FileState fileState) {
+    if (fileState.getFileStage() == FileState.FileStage.PROCESSING) {
+      return false;
+    }
+    return fileStatus.getLen() > 0 || !(fileState instanceof NormalFileState);
+  }
+
+  private static class Entry {
+    private final long fileId;
+    private final FileState fileState;
+
+    private Entry(long fileId, FileState fileState) {
+      this.fileId = fileId;
+      this.fileState = fileState;
+    }
+  }
+
+  /**
+   * Loads the file state from the NameNode.
+   */
+  public interface FileStateLoader {
+    FileState load(String path) throws IOException;
+  }
+}
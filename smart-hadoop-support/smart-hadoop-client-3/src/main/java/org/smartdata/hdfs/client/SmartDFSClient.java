@@ -17,21 +17,24 @@
  */
 package org.smartdata.hdfs.client;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.MD5MD5CRC32FileChecksum;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.XAttrSetFlag;
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSClient;
 import org.apache.hadoop.hdfs.DFSInputStream;
+import org.apache.hadoop.hdfs.DFSOutputStream;
 import org.apache.hadoop.hdfs.SmartInputStreamFactory;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsPathHandle;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
@@ -42,32 +45,45 @@
 import org.slf4j.LoggerFactory;
 import org.smartdata.SmartConstants;
 import org.smartdata.client.SmartClient;
+import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.hdfs.CompatibilityHelperLoader;
 import org.smartdata.metrics.FileAccessEvent;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
 import org.smartdata.model.CompactFileState;
 import org.smartdata.model.CompressionFileState;
 import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateSerializer;
 import org.smartdata.model.NormalFileState;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class SmartDFSClient extends DFSClient {
   private static final Logger LOG = LoggerFactory.getLogger(SmartDFSClient.class);
   private static final String CALLER_CLASS = "org.apache.hadoop.hdfs.DFSClient";
   private SmartClient smartClient = null;
   private boolean healthy = false;
+  private FileStateCache fileStateCache = null;
+  private ThreadPoolExecutor fileStateFetcher = null;
 
   public SmartDFSClient(final URI nameNodeUri, final Configuration conf,
       final InetSocketAddress smartServerAddress) throws IOException {
     super(nameNodeUri, conf);
+    initFileStateCache(conf);
+    initFileStateFetcher(conf);
     if (isSmartClientDisabled()) {
       return;
     }
@@ -82,6 +98,8 @@ public SmartDFSClient(final URI nameNodeUri, final Configuration conf,
 
   public SmartDFSClient(URI nameNodeUri, Configuration conf) throws IOException {
     super(nameNodeUri, conf);
+    initFileStateCache(conf);
+    initFileStateFetcher(conf);
     if (isSmartClientDisabled()) {
       return;
     }
@@ -96,6 +114,8 @@ public SmartDFSClient(URI nameNodeUri, Configuration conf) throws IOException {
 
   public SmartDFSClient(Configuration conf) throws IOException {
     super(conf);
+    initFileStateCache(conf);
+    initFileStateFetcher(conf);
     if (isSmartClientDisabled()) {
       return;
     }
@@ -116,9 +136,10 @@ public DFSInputStream open(String src) throws IOException {
   /**
    * Functionality: create an InputStream and report access event to SSM server.
    *
-   * DFSClient is firstly used to get an Inputstream to get file length. The real
-   * InputStream returned is obtained from SmartInputStreamFactory which has some
-   * considerations about compression, compact, S3 etc.
+   * DFSClient is firstly used to get the file status together with its blocks,
+   * so that the file state is resolved for the same file the stream reads.
+   * The real InputStream returned is obtained from SmartInputStreamFactory
+   * which has some considerations about compression, compact, S3 etc.
    *
    * It is supported that DFSStripedInputstream can be obtained for reading normal
    * EC data, but it is NOT supported to combine EC with SSM compact, SSM compression
@@ -130,13 +151,18 @@ public DFSInputStream open(String src) throws IOException {
   public DFSInputStream open(String src, int buffersize,
       boolean verifyChecksum) throws IOException {
     DFSInputStream is;
-    FileState fileState = getFileState(src);
+    HdfsLocatedFileStatus fileStatus = getLocatedFileInfo(src, true);
+    // let the stream report the missing file or directory as the DFSClient does
+    boolean isFile = fileStatus != null && !fileStatus.isDirectory();
+    FileState fileState = isFile
+        ? getFileState(src, fileStatus)
+        : getFileState(src);
     if (fileState.getFileStage().equals(FileState.FileStage.PROCESSING)) {
       throw new IOException("Cannot open " + src + " when it is under PROCESSING to "
           + fileState.getFileType());
     }
-    is = SmartInputStreamFactory.create(this, src,
-        verifyChecksum, fileState);
+    is = SmartInputStreamFactory.create(this, src, verifyChecksum,
+        fileState, isFile ? fileStatus.getLocatedBlocks() : null);
     // Report access event to smart server.
     reportFileAccessEvent(src);
     return is;
@@ -168,6 +194,82 @@ public DFSInputStream open(HdfsPathHandle fd, int buffersize, boolean verifyChec
     return is;
   }
 
+  @Override
+  public DFSOutputStream create(String src, FsPermission permission,
+      EnumSet<CreateFlag> flag, boolean createParent, short replication,
+      long blockSize, Progressable progress, int buffersize,
+      Options.ChecksumOpt checksumOpt, InetSocketAddress[] favoredNodes,
+      String ecPolicyName, String storagePolicy) throws IOException {
+    try {
+      return super.create(src, permission, flag, createParent, replication, blockSize,
+          progress, buffersize, checksumOpt, favoredNodes, ecPolicyName, storagePolicy);
+    } finally {
+      invalidateFileState(src);
+    }
+  }
+
+  @Override
+  public DFSOutputStream primitiveCreate(String src, FsPermission absPermission,
+      EnumSet<CreateFlag> flag, boolean createParent, short replication,
+      long blockSize, Progressable progress, int buffersize,
+      Options.ChecksumOpt checksumOpt) throws IOException {
+    try {
+      return super.primitiveCreate(src, absPermission, flag, createParent, replication,
+          blockSize, progress, buffersize, checksumOpt);
+    } finally {
+      invalidateFileState(src);
+    }
+  }
+
+  @Override
+  public boolean delete(String src, boolean recursive) throws IOException {
+    try {
+      return super.delete(src, recursive);
+    } finally {
+      invalidateFileState(src);
+    }
+  }
+
+  @Override
+  public boolean rename(String src, String dst) throws IOException {
+    try {
+      return super.rename(src, dst);
+    } finally {
+      invalidateFileState(src);
+      invalidateFileState(dst);
+    }
+  }
+
+  @Override
+  public void rename(String src, String dst, Options.Rename... options)
+      throws IOException {
+    try {
+      super.rename(src, dst, options);
+    } finally {
+      invalidateFileState(src);
+      invalidateFileState(dst);
+    }
+  }
+
+  @Override
+  public void setXAttr(String src, String name, byte[] value,
+      EnumSet<XAttrSetFlag> flag) throws IOException {
+    try {
+      super.setXAttr(src, name, value, flag);
+    } finally {
+      invalidateFileState(src);
+    }
+  }
+
+  @Override
+  public void removeXAttr(String src, String name) throws IOException {
+    try {
+      super.removeXAttr(src, name);
+    } finally {
+      invalidateFileState(src);
+    }
+  }
+
   @Override
   public boolean truncate(String src, long newLength) throws IOException {
     FileState fileState = getFileState(src);
@@ -228,7 +330,7 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
       return null;
     }
 
-    FileState fileState = getFileState(src);
+    FileState fileState = getFileState(src, oldStatus);
 
     if (oldStatus.getLen() == 0 && fileState instanceof CompactFileState) {
       long len = ((CompactFileState) fileState).getFileContainerInfo().getLength();
@@ -376,6 +478,10 @@ public long getBlockSize(String f) throws IOException {
   public void concat(String trg, String [] srcs) throws IOException {
     try {
       super.concat(trg, srcs);
+      invalidateFileState(trg);
+      for (String src : srcs) {
+        invalidateFileState(src);
+      }
     } catch (IOException e) {
       for (String src : srcs) {
         FileState fileState = getFileState(src);
@@ -550,6 +656,12 @@ public synchronized void close() throws IOException {
     try {
       super.close();
     } finally {
+      if (fileStateCache != null) {
+        SmartMetricsSystem.unregister(fileStateCacheMetricsName());
+      }
+      if (fileStateFetcher != null) {
+        fileStateFetcher.shutdownNow();
+      }
       try {
         if (smartClient != null) {
           smartClient.close();
@@ -604,6 +716,47 @@ private void reportFileAccessEvent(String src) {
     }
   }
 
+  private void initFileStateCache(Configuration conf) {
+    if (!conf.getBoolean(SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_ENABLED,
+        SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_ENABLED_DEFAULT)) {
+      return;
+    }
+    FileStateCache cache = new FileStateCache(
+        conf.getLong(SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_SIZE_KEY,
+            SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_SIZE_DEFAULT),
+        conf.getLong(SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_TTL_MS_KEY,
+            SmartConfKeys.SMART_CLIENT_FILE_STATE_CACHE_TTL_MS_DEFAULT));
+    fileStateCache = SmartMetricsSystem.register(fileStateCacheMetricsName(),
+        "File state cache of the smart client", cache);
+  }
+
+  private void initFileStateFetcher(Configuration conf) {
+    int threads = conf.getInt(SmartConfKeys.SMART_CLIENT_FILE_STATE_FETCH_THREADS_KEY,
+        SmartConfKeys.SMART_CLIENT_FILE_STATE_FETCH_THREADS_DEFAULT);
+    if (threads <= 0) {
+      return;
+    }
+    // threads are stopped when the client doesn't list directories
+    fileStateFetcher = new ThreadPoolExecutor(threads, threads,
+        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "file-state-fetcher-" + getClientName());
+          thread.setDaemon(true);
+          return thread;
+        });
+    fileStateFetcher.allowCoreThreadTimeOut(true);
+  }
+
+  // several clients can exist in the same process
+  private String fileStateCacheMetricsName() {
+    return FileStateCache.NAME + "-" + getClientName();
+  }
+
+  private void invalidateFileState(String path) {
+    if (fileStateCache != null) {
+      fileStateCache.invalidate(path);
+    }
+  }
+
   /**
    * Check if the smart client is disabled.
    */
@@ -624,17 +777,97 @@ public String getExceptionMsg(String operation, String fileType) {
   }
 
   /**
-   * Get file state of the specified file.
+   * Get file state of the specified file from the NameNode.
    *
    * @param filePath the path of source file
    * @return file state of source file
    * @throws IOException e
    */
   public FileState getFileState(String filePath) throws IOException {
+    return fetchFileState(filePath);
+  }
+
+  /**
+   * Get file state of the specified file, which may be resolved from the cache.
+   *
+   * @param filePath the path of source file
+   * @param fileStatus status of source file, null if unknown
+   * @return file state of source file
+   * @throws IOException e
+   */
+  public FileState getFileState(String filePath, HdfsFileStatus fileStatus)
+      throws IOException {
+    return fileStateCache == null || fileStatus == null
+        ? fetchFileState(filePath)
+        : fileStateCache.get(filePath, fileStatus, this::fetchFileState);
+  }
+
+  /**
+   * Get file states of the specified files, e.g. of the directory listing page.
+   * Cached states are resolved immediately, the rest are requested
+   * from the NameNode in parallel.
+   *
+   * @param filePaths paths of the files
+   * @param fileStatuses statuses of the files, null if unknown
+   * @return file states in the order of the paths
+   * @throws IOException e
+   */
+  public List<FileState> getFileStates(List<String> filePaths,
+      List<HdfsFileStatus> fileStatuses) throws IOException {
+    List<FileState> fileStates = new ArrayList<>(filePaths.size());
+    if (fileStateFetcher == null || filePaths.size() < 2) {
+      for (int i = 0; i < filePaths.size(); i++) {
+        fileStates.add(getFileState(filePaths.get(i), fileStatuses.get(i)));
+      }
+      return fileStates;
+    }
+
+    List<Future<FileState>> fetchedStates = new ArrayList<>(filePaths.size());
+    for (int i = 0; i < filePaths.size(); i++) {
+      String filePath = filePaths.get(i);
+      HdfsFileStatus fileStatus = fileStatuses.get(i);
+      FileState cachedState = fileStateCache == null || fileStatus == null
+          ? null
+          : fileStateCache.getIfPresent(filePath, fileStatus);
+      fetchedStates.add(cachedState == null
+          ? fileStateFetcher.submit(() -> getFileState(filePath, fileStatus))
+          : null);
+      fileStates.add(cachedState);
+    }
+
+    try {
+      for (int i = 0; i < fetchedStates.size(); i++) {
+        if (fetchedStates.get(i) != null) {
+          fileStates.set(i, fetchedStates.get(i).get());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching file states");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to fetch file states", e.getCause());
+    } finally {
+      for (Future<FileState> fetchedState : fetchedStates) {
+        if (fetchedState != null) {
+          fetchedState.cancel(false);
+        }
+      }
+    }
+    return fileStates;
+  }
+
+  public FileStateCache getFileStateCache() {
+    return fileStateCache;
+  }
+
+  private FileState fetchFileState(String filePath) throws IOException {
     try {
       byte[] fileState = getXAttr(filePath, SmartConstants.SMART_FILE_STATE_XATTR_NAME);
       if (fileState != null) {
-        return (FileState) SerializationUtils.deserialize(fileState);
+        return FileStateSerializer.deserialize(fileState);
       }
     } catch (RemoteException e) {
       return new NormalFileState(filePath);
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hadoop.filesystem;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.SmartConstants;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.hdfs.MiniClusterHarness;
+import org.smartdata.model.CompactFileState;
+import org.smartdata.model.CompressionFileState;
+import org.smartdata.model.FileContainerInfo;
+import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateSerializer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestSmartFileSystemListing extends MiniClusterHarness {
+  private static final Logger LOG = LoggerFactory.getLogger(TestSmartFileSystemListing.class);
+
+  private static final Path LISTING_DIR = new Path("/listing");
+  private static final int LIST_LIMIT = 100;
+  private static final int FILES_NUM = 250;
+  private static final long COMPACT_FILE_LEN = 100L;
+  private static final long COMPRESSED_FILE_LEN = 1000L;
+
+  @Override
+  public MiniDFSCluster createCluster(Configuration conf)
+      throws IOException, IllegalAccessException, ClassNotFoundException, InstantiationException {
+    // split the listing into several pages
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, LIST_LIMIT);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, DEFAULT_BLOCK_SIZE);
+    return super.createCluster(conf);
+  }
+
+  @Test
+  public void testListingFileStates() throws Exception {
+    Map<String, Long> expectedLengths = createFiles();
+
+    for (int fetchThreads : new int[] {0, 16}) {
+      try (FileSystem smartFs = createSmartFileSystem(fetchThreads)) {
+        assertEquals(expectedLengths, getLengths(smartFs.listStatus(LISTING_DIR)));
+        assertEquals(expectedLengths, getLengths(smartFs.listStatusIterator(LISTING_DIR)));
+      }
+    }
+  }
+
+  @Test
+  public void benchmarkListing() throws Exception {
+    createFiles();
+    int rounds = 20;
+
+    long plainTime = timeListing(rounds, dfs);
+    long sequentialTime;
+    try (FileSystem smartFs = createSmartFileSystem(0)) {
+      sequentialTime = timeListing(rounds, smartFs);
+    }
+    long parallelTime;
+    try (FileSystem smartFs = createSmartFileSystem(
+        SmartConfKeys.SMART_CLIENT_FILE_STATE_FETCH_THREADS_DEFAULT)) {
+      parallelTime = timeListing(rounds, smartFs);
+    }
+
+    LOG.info("Average listing time of {} files: DistributedFileSystem = {}ms, "
+            + "SmartFileSystem with sequential file states fetch = {}ms, "
+            + "SmartFileSystem with parallel file states fetch = {}ms",
+        FILES_NUM, plainTime / rounds, sequentialTime / rounds, parallelTime / rounds);
+  }
+
+  private Map<String, Long> createFiles() throws Exception {
+    Map<String, Long> expectedLengths = new HashMap<>();
+    dfs.mkdirs(new Path(LISTING_DIR, "subdir"));
+    expectedLengths.put("subdir", 0L);
+    for (int i = 0; i < FILES_NUM; i++) {
+      // compressed file has data, others are empty to speed up the preparation
+      long length = i == FILES_NUM - 1 ? 10L : 0L;
+      DFSTestUtil.createFile(dfs, new Path(LISTING_DIR, "file-" + i), length, (short) 1, 0L);
+      expectedLengths.put("file-" + i, length);
+    }
+
+    String compactFile = LISTING_DIR + "/file-0";
+    setFileState(new CompactFileState(compactFile,
+        new FileContainerInfo("/container", 0L, COMPACT_FILE_LEN)));
+    expectedLengths.put("file-0", COMPACT_FILE_LEN);
+
+    String compressedFile = LISTING_DIR + "/file-" + (FILES_NUM - 1);
+    setFileState(CompressionFileState.newBuilder()
+        .setFileName(compressedFile)
+        .setBufferSize(10)
+        .setOriginalLength(COMPRESSED_FILE_LEN)
+        .setCompressedLength(10L)
+        .setOriginalPos(new Long[] {0L})
+        .setCompressedPos(new Long[] {0L})
+        .setFileStage(FileState.FileStage.DONE)
+        .build());
+    expectedLengths.put("file-" + (FILES_NUM - 1), COMPRESSED_FILE_LEN);
+    return expectedLengths;
+  }
+
+  private void setFileState(FileState fileState) throws IOException {
+    dfs.setXAttr(new Path(fileState.getPath()), SmartConstants.SMART_FILE_STATE_XATTR_NAME,
+        FileStateSerializer.serialize(fileState));
+  }
+
+  private FileSystem createSmartFileSystem(int fetchThreads) throws IOException {
+    Configuration conf = new Configuration(smartContext.getConf());
+    conf.setInt(SmartConfKeys.SMART_CLIENT_FILE_STATE_FETCH_THREADS_KEY, fetchThreads);
+    SmartFileSystem smartFs = new SmartFileSystem();
+    smartFs.initialize(dfs.getUri(), conf);
+    return smartFs;
+  }
+
+  private long timeListing(int rounds, FileSystem fs) throws IOException {
+    // warm up connections
+    fs.listStatus(LISTING_DIR);
+    long startTime = System.currentTimeMillis();
+    for (int i = 0; i < rounds; i++) {
+      fs.listStatus(LISTING_DIR);
+    }
+    return System.currentTimeMillis() - startTime;
+  }
+
+  private Map<String, Long> getLengths(FileStatus[] statuses) {
+    Map<String, Long> lengths = new HashMap<>();
+    for (FileStatus status : statuses) {
+      lengths.put(status.getPath().getName(), status.getLen());
+    }
+    return lengths;
+  }
+
+  private Map<String, Long> getLengths(RemoteIterator<FileStatus> statuses) throws IOException {
+    Map<String, Long> lengths = new HashMap<>();
+    while (statuses.hasNext()) {
+      FileStatus status = statuses.next();
+      lengths.put(status.getPath().getName(), status.getLen());
+    }
+    return lengths;
+  }
+}
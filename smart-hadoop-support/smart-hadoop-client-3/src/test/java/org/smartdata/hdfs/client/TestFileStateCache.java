@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.client;
+
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.model.CompactFileState;
+import org.smartdata.model.CompressionFileState;
+import org.smartdata.model.FileContainerInfo;
+import org.smartdata.model.FileState;
+import org.smartdata.model.NormalFileState;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestFileStateCache {
+  private FileStateCache cache;
+  private Map<String, FileState> states;
+  private Map<String, HdfsFileStatus> statuses;
+  private Map<String, Integer> loads;
+
+  @Before
+  public void setUp() {
+    cache = new FileStateCache(100, 60000);
+    states = new HashMap<>();
+    statuses = new HashMap<>();
+    loads = new HashMap<>();
+  }
+
+  @Test
+  public void testCacheNormalAndSmartStates() throws Exception {
+    states.put("/compressed", new CompressionFileState("/compressed", 1024));
+
+    for (int i = 0; i < 3; i++) {
+      FileState normalState = get("/normal");
+      assertTrue(normalState instanceof NormalFileState);
+      assertEquals("/normal", normalState.getPath());
+      assertTrue(get("/compressed") instanceof CompressionFileState);
+    }
+    assertEquals(1, (int) loads.get("/normal"));
+    assertEquals(1, (int) loads.get("/compressed"));
+    assertEquals(4, cache.stats().hitCount());
+  }
+
+  @Test
+  public void testSkipProcessingState() throws Exception {
+    FileState processingState = new CompressionFileState("/file", 1024);
+    processingState.setFileStage(FileState.FileStage.PROCESSING);
+    states.put("/file", processingState);
+
+    get("/file");
+    get("/file");
+    assertEquals(2, (int) loads.get("/file"));
+  }
+
+  @Test
+  public void testReloadReplacedFile() throws Exception {
+    assertTrue(get("/file") instanceof NormalFileState);
+
+    // the file is replaced with the compressed one
+    statuses.put("/file", status(2, 512));
+    states.put("/file", new CompressionFileState("/file", 1024));
+    assertTrue(get("/file") instanceof CompressionFileState);
+    assertTrue(get("/file") instanceof CompressionFileState);
+    assertEquals(2, (int) loads.get("/file"));
+    assertEquals(1, cache.getStaleEntries());
+  }
+
+  @Test
+  public void testSkipNormalStateOfEmptyFile() throws Exception {
+    // the compacted file is empty until its state is set
+    statuses.put("/file", status(1, 0));
+    get("/file");
+    get("/file");
+    assertEquals(2, (int) loads.get("/file"));
+
+    states.put("/file", new CompactFileState("/file",
+        new FileContainerInfo("/container", 0, 1024)));
+    assertTrue(get("/file") instanceof CompactFileState);
+    assertTrue(get("/file") instanceof CompactFileState);
+    assertEquals(3, (int) loads.get("/file"));
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    get("/dir");
+    get("/dir/file1");
+    get("/file2");
+
+    cache.invalidate("/file2");
+    cache.invalidate("/dir/");
+    for (String path : new String[] {"/dir", "/dir/file1", "/file2"}) {
+      get(path);
+    }
+    assertEquals(2, (int) loads.get("/dir"));
+    // files under the directory are checked with the file ids instead
+    assertEquals(1, (int) loads.get("/dir/file1"));
+    assertEquals(2, (int) loads.get("/file2"));
+    assertEquals(2, cache.getInvalidations());
+  }
+
+  @Test
+  public void testInvalidateDuringLoad() throws Exception {
+    cache.get("/file", status(1, 512), path -> {
+      cache.invalidate(path);
+      return new NormalFileState(path);
+    });
+    get("/file");
+    assertEquals(1, (int) loads.get("/file"));
+  }
+
+  private FileState get(String path) throws Exception {
+    return cache.get(path, statuses.getOrDefault(path, status(1, 512)), filePath -> {
+      loads.merge(filePath, 1, Integer::sum);
+      return states.getOrDefault(filePath, new NormalFileState(filePath));
+    });
+  }
+
+  private static HdfsFileStatus status(long fileId, long length) {
+    return new HdfsFileStatus.Builder()
+        .fileId(fileId)
+        .length(length)
+        .build();
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs;
+
+import org.apache.hadoop.io.ByteBufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of heap buffers keeping at most maxPooledBytes of the returned
+ * buffers. Buffers returned above the limit, buffers larger than
+ * maxBufferSize and direct buffers are left to the garbage collector,
+ * so the pool doesn't keep the memory of the peak usage forever.
+ */
+public class BoundedByteBufferPool implements ByteBufferPool {
+  private final long maxPooledBytes;
+  private final int maxBufferSize;
+  // pooled buffers by their capacity
+  private final TreeMap<Integer, Deque<ByteBuffer>> buffers;
+  private long pooledBytes;
+
+  public BoundedByteBufferPool(long maxPooledBytes, int maxBufferSize) {
+    this.maxPooledBytes = maxPooledBytes;
+    this.maxBufferSize = maxBufferSize;
+    this.buffers = new TreeMap<>();
+  }
+
+  @Override
+  public ByteBuffer getBuffer(boolean direct, int length) {
+    if (direct) {
+      return ByteBuffer.allocateDirect(length);
+    }
+    ByteBuffer buffer = pollBuffer(length);
+    if (buffer == null) {
+      return ByteBuffer.allocate(length);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  @Override
+  public void putBuffer(ByteBuffer buffer) {
+    if (buffer.isDirect() || buffer.capacity() > maxBufferSize) {
+      return;
+    }
+    synchronized (this) {
+      if (pooledBytes + buffer.capacity() > maxPooledBytes) {
+        return;
+      }
+      buffers.computeIfAbsent(buffer.capacity(), capacity -> new ArrayDeque<>())
+          .push(buffer);
+      pooledBytes += buffer.capacity();
+    }
+  }
+
+  public synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  private synchronized ByteBuffer pollBuffer(int length) {
+    Map.Entry<Integer, Deque<ByteBuffer>> entry = buffers.ceilingEntry(length);
+    // don't waste the buffers much larger than requested
+    if (entry == null || entry.getKey() > 2L * length) {
+      return null;
+    }
+    ByteBuffer buffer = entry.getValue().pop();
+    if (entry.getValue().isEmpty()) {
+      buffers.remove(entry.getKey());
+    }
+    pooledBytes -= buffer.capacity();
+    return buffer;
+  }
+}
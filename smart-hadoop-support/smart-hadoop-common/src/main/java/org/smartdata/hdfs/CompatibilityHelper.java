@@ -103,4 +103,8 @@ List<String> getStorageTypeForEcBlock(LocatedBlock lb, BlockStoragePolicy policy
 
   DFSInputStream getNormalInputStream(DFSClient dfsClient, String src, boolean verifyChecksum,
                                       FileState fileState) throws IOException;
+
+  DFSInputStream getNormalInputStream(DFSClient dfsClient, String src, boolean verifyChecksum,
+                                      FileState fileState, LocatedBlocks locatedBlocks)
+      throws IOException;
 }
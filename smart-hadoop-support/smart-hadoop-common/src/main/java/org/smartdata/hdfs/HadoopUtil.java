@@ -17,7 +17,6 @@
  */
 package org.smartdata.hdfs;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSClient;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
@@ -33,6 +32,7 @@
 import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.model.FileInfo;
 import org.smartdata.model.FileState;
+import org.smartdata.model.FileStateSerializer;
 import org.smartdata.model.NormalFileState;
 
 import java.io.IOException;
@@ -45,7 +45,6 @@
 import java.nio.file.Paths;
 import java.security.PrivilegedExceptionAction;
 import java.util.Map;
-import java.util.Optional;
 
 import static org.smartdata.utils.PathUtil.getRawPath;
 
@@ -313,7 +312,7 @@ public static FileState getFileState(DFSClient dfsClient, String filePath)
       byte[] fileState = dfsClient.getXAttr(filePath,
           SmartConstants.SMART_FILE_STATE_XATTR_NAME);
       if (fileState != null) {
-        return (FileState) SerializationUtils.deserialize(fileState);
+        return FileStateSerializer.deserialize(fileState);
       }
     } catch (RemoteException e) {
       return new NormalFileState(filePath);
@@ -328,10 +327,9 @@ public static FileState getFileState(
     try {
       byte[] fileState = fileSystem.getXAttr(
           filePath, SmartConstants.SMART_FILE_STATE_XATTR_NAME);
-      return Optional.ofNullable(fileState)
-          .map(SerializationUtils::deserialize)
-          .map(FileState.class::cast)
-          .orElseGet(() -> new NormalFileState(getRawPath(filePath)));
+      return fileState == null
+          ? new NormalFileState(getRawPath(filePath))
+          : FileStateSerializer.deserialize(fileState);
     } catch (RemoteException e) {
       return new NormalFileState(getRawPath(filePath));
     }
@@ -17,20 +17,49 @@
  */
 package org.smartdata.hdfs;
 
-
-import lombok.Builder.Default;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Builder;
+import lombok.Builder.Default;
 import lombok.RequiredArgsConstructor;
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.IOUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 
+/**
+ * Copies count bytes of the input stream starting from the offset
+ * to the output stream.
+ *
+ * <p>If read-ahead is enabled, the next chunk is read by the shared pool
+ * of daemon threads while the previous one is written, so reading and
+ * writing overlap. Chunk buffers are taken from the process-wide bounded
+ * pool and reused by the subsequent copies. The offset is reached with seek if
+ * the input stream supports it. Progress is reported at most once
+ * per progress interval and after the last chunk.
+ */
 @RequiredArgsConstructor
 @Builder
 public class StreamCopyHandler {
+  // larger buffers of the compression and compact actions aren't pooled
+  private static final ByteBufferPool BUFFER_POOL =
+      new BoundedByteBufferPool(64L * 1024 * 1024, 4 * 1024 * 1024);
+
+  private static final ExecutorService READ_AHEAD_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("stream-copy-read-ahead-%d")
+          .build());
+
   private final InputStream inputStream;
 
   private final OutputStream outputStream;
@@ -47,6 +76,12 @@ public class StreamCopyHandler {
   @Default
   private final boolean closeStreams = false;
 
+  @Default
+  private final boolean readAhead = true;
+
+  @Default
+  private final long progressIntervalMs = 1000;
+
   @Default
   private final Consumer<Float> progressConsumer = progress -> {};
 
@@ -57,37 +92,143 @@ public static Builder of(InputStream inputStream, OutputStream outputStream) {
   }
 
   public void runCopy() throws IOException {
-    byte[] buf = new byte[bufferSize];
-    long bytesRemaining = count;
-    int bytesRead;
-
     try {
       maybeSkip();
 
-      while (bytesRemaining > 0) {
-        int bytesToRead = (int) Math.min(bytesRemaining, bufferSize);
+      // there is nothing to overlap for a single chunk
+      if (readAhead && count > bufferSize) {
+        copyWithReadAhead();
+      } else {
+        copy();
+      }
+    } finally {
+      if (closeStreams) {
+        IOUtils.closeStream(outputStream);
+        IOUtils.closeStream(inputStream);
+      }
+    }
+  }
 
-        bytesRead = inputStream.read(buf, 0, bytesToRead);
+  private void copy() throws IOException {
+    ByteBuffer buffer = BUFFER_POOL.getBuffer(false, bufferSize);
+    try {
+      ProgressReporter progressReporter = new ProgressReporter();
+      long bytesRemaining = count;
+      while (bytesRemaining > 0) {
+        int bytesRead = read(buffer, bytesRemaining);
         if (bytesRead == -1) {
           break;
         }
 
-        outputStream.write(buf, 0, bytesRead);
+        outputStream.write(buffer.array(), buffer.arrayOffset(), bytesRead);
+        bytesRemaining -= bytesRead;
+        progressReporter.report(bytesRemaining);
+      }
+    } finally {
+      BUFFER_POOL.putBuffer(buffer);
+    }
+  }
+
+  private void copyWithReadAhead() throws IOException {
+    ByteBuffer[] buffers = {
+        BUFFER_POOL.getBuffer(false, bufferSize),
+        BUFFER_POOL.getBuffer(false, bufferSize)
+    };
+    Future<Integer> pendingRead = null;
+    try {
+      ProgressReporter progressReporter = new ProgressReporter();
+      long bytesRemaining = count;
+      int current = 0;
+      pendingRead = readAsync(buffers[current], bytesRemaining);
+      while (bytesRemaining > 0) {
+        int bytesRead = await(pendingRead);
+        pendingRead = null;
+        if (bytesRead == -1) {
+          break;
+        }
         bytesRemaining -= bytesRead;
 
-        progressConsumer.accept(((float) (count - bytesRemaining)) / count);
+        ByteBuffer filledBuffer = buffers[current];
+        current ^= 1;
+        if (bytesRemaining > 0) {
+          pendingRead = readAsync(buffers[current], bytesRemaining);
+        }
+
+        outputStream.write(filledBuffer.array(), filledBuffer.arrayOffset(), bytesRead);
+        progressReporter.report(bytesRemaining);
       }
     } finally {
-      if (closeStreams) {
-        IOUtils.closeStream(outputStream);
-        IOUtils.closeStream(inputStream);
+      // the buffer and the input stream can't be released until the read finishes
+      awaitQuietly(pendingRead);
+      BUFFER_POOL.putBuffer(buffers[0]);
+      BUFFER_POOL.putBuffer(buffers[1]);
+    }
+  }
+
+  private int read(ByteBuffer buffer, long bytesRemaining) throws IOException {
+    int bytesToRead = (int) Math.min(bytesRemaining, bufferSize);
+    return inputStream.read(buffer.array(), buffer.arrayOffset(), bytesToRead);
+  }
+
+  private Future<Integer> readAsync(ByteBuffer buffer, long bytesRemaining) {
+    return READ_AHEAD_EXECUTOR.submit(() -> read(buffer, bytesRemaining));
+  }
+
+  private int await(Future<Integer> pendingRead) throws IOException {
+    try {
+      return pendingRead.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading the input stream");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
       }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private void awaitQuietly(Future<Integer> pendingRead) {
+    if (pendingRead == null) {
+      return;
+    }
+    boolean interrupted = false;
+    while (true) {
+      try {
+        pendingRead.get();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } catch (ExecutionException e) {
+        break;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
     }
   }
 
   private void maybeSkip() throws IOException {
-    if (offset != 0) {
-      inputStream.skip(offset);
+    if (offset == 0) {
+      return;
+    }
+    if (inputStream instanceof Seekable) {
+      ((Seekable) inputStream).seek(offset);
+    } else {
+      IOUtils.skipFully(inputStream, offset);
+    }
+  }
+
+  private class ProgressReporter {
+    private long lastReportTime = System.currentTimeMillis();
+
+    private void report(long bytesRemaining) {
+      long now = System.currentTimeMillis();
+      if (bytesRemaining > 0 && now - lastReportTime < progressIntervalMs) {
+        return;
+      }
+      lastReportTime = now;
+      progressConsumer.accept(((float) (count - bytesRemaining)) / count);
     }
   }
 }
@@ -33,21 +33,32 @@ public class StorageMap {
   private final StorageGroupMap<Source> sources;
   private final StorageGroupMap<StorageGroup> targets;
   private final Map<String, List<StorageGroup>> targetStorageTypeMap;
+  private final Map<StorageGroup, Long> targetRemaining;
 
   public StorageMap() {
     this.sources = new StorageGroupMap<>();
     this.targets = new StorageGroupMap<>();
     this.targetStorageTypeMap = new HashMap<>();
+    this.targetRemaining = new HashMap<>();
     for (String t : CompatibilityHelperLoader.getHelper().getMovableTypes()) {
       targetStorageTypeMap.put(t, new LinkedList<StorageGroup>());
     }
   }
 
   public void add(Source source, StorageGroup target) {
+    add(source, target, Long.MAX_VALUE);
+  }
+
+  /**
+   * Adds the datanode storages.
+   * @param remaining remaining space of the target storage in bytes
+   */
+  public void add(Source source, StorageGroup target, long remaining) {
     sources.put(source);
     if (target != null) {
       targets.put(target);
       getTargetStorages(target.getStorageType()).add(target);
+      targetRemaining.put(target, remaining);
     }
   }
 
@@ -71,6 +82,10 @@ public List<StorageGroup> getTargetStorages(String t) {
     return targetStorageTypeMap.get(t);
   }
 
+  public long getTargetRemaining(StorageGroup target) {
+    return targetRemaining.getOrDefault(target, Long.MAX_VALUE);
+  }
+
   public static class StorageGroupMap<G extends StorageGroup> {
     private static String toKey(String datanodeUuid, String storageType) {
       return datanodeUuid + ":" + storageType;
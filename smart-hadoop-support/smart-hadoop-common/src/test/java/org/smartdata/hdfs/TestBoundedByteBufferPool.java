@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TestBoundedByteBufferPool {
+
+  @Test
+  public void testReuseBuffer() {
+    BoundedByteBufferPool pool = new BoundedByteBufferPool(1024, 512);
+    ByteBuffer buffer = pool.getBuffer(false, 100);
+    buffer.put((byte) 1);
+    pool.putBuffer(buffer);
+    assertEquals(100, pool.getPooledBytes());
+
+    ByteBuffer reused = pool.getBuffer(false, 80);
+    assertSame(buffer, reused);
+    assertEquals(0, reused.position());
+    assertEquals(0, pool.getPooledBytes());
+    // the pooled buffer is too large for the request
+    pool.putBuffer(reused);
+    assertNotSame(buffer, pool.getBuffer(false, 10));
+  }
+
+  @Test
+  public void testLimitPooledBytes() {
+    BoundedByteBufferPool pool = new BoundedByteBufferPool(1024, 512);
+    for (int i = 0; i < 4; i++) {
+      pool.putBuffer(ByteBuffer.allocate(300));
+    }
+    assertEquals(900, pool.getPooledBytes());
+
+    pool.putBuffer(ByteBuffer.allocate(1000));
+    pool.putBuffer(ByteBuffer.allocateDirect(100));
+    assertEquals(900, pool.getPooledBytes());
+  }
+}
@@ -17,8 +17,8 @@
  */
 package org.smartdata.hdfs.action;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.mutable.MutableFloat;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileStatus;
@@ -26,20 +26,26 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.XAttrSetFlag;
 import org.apache.hadoop.hdfs.CompressionCodecFactory;
+import org.apache.hadoop.hdfs.ParallelCompressorStream;
 import org.apache.hadoop.hdfs.SmartCompressorStream;
 import org.smartdata.action.ActionException;
 import org.smartdata.action.annotation.ActionSignature;
 import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.model.CompressionFileInfo;
 import org.smartdata.model.CompressionFileState;
+import org.smartdata.model.FileStateSerializer;
 import org.smartdata.utils.StringUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.smartdata.SmartConstants.SMART_FILE_STATE_XATTR_NAME;
 import static org.smartdata.utils.PathUtil.getRawPath;
@@ -56,15 +62,19 @@
             + CompressionAction.BUF_SIZE
             + " $bufSize "
             + CompressionAction.CODEC
-            + " $codec"
+            + " $codec "
+            + CompressionAction.WORKERS
+            + " $workers"
 )
 public class CompressionAction extends HdfsAction {
   public static final String COMPRESS_TMP = "-compressTmp";
   public static final String BUF_SIZE = "-bufSize";
   public static final String CODEC = "-codec";
+  public static final String WORKERS = "-workers";
 
   private static final Set<String> SUPPORTED_CODECS =
       CompressionCodecFactory.getInstance().getSupportedCodecs();
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
 
   private final Gson compressionInfoSerializer;
 
@@ -79,6 +89,10 @@ public class CompressionAction extends HdfsAction {
   private String compressCodec;
   // Specified by user in action arg.
   private int userDefinedBufferSize;
+  // Number of chunks compressed concurrently. Can be set in config or action arg.
+  private int workersNum;
+  private double throughputMbPerSec;
+  private double cpuPercent;
 
   private CompressionFileState compressionFileState;
 
@@ -102,6 +116,11 @@ public void init(Map<String, String> args) {
       this.userDefinedBufferSize = (int) StringUtil.parseToByte(args.get(BUF_SIZE));
     }
     this.compressCodec = args.get(CODEC) != null ? args.get(CODEC) : compressCodec;
+    this.workersNum = args.containsKey(WORKERS) && !args.get(WORKERS).isEmpty()
+        ? Integer.parseInt(args.get(WORKERS))
+        : getContext().getConf().getInt(
+            SmartConfKeys.SMART_COMPRESSION_WORKERS_NUM_KEY,
+            SmartConfKeys.SMART_COMPRESSION_WORKERS_NUM_DEFAULT);
     // This is a temp path for compressing a file.
     this.compressTmpPath = getPathArg(COMPRESS_TMP);
     this.progress = new MutableFloat(0.0F);
@@ -165,6 +184,8 @@ protected void execute() throws Exception {
         appendLog("Compressed file length: " + destFileStatus.getLen());
         compressionFileInfo =
             new CompressionFileInfo(true, getRawPath(compressTmpPath), compressionFileState);
+        compressionFileInfo.setThroughputMbPerSec(throughputMbPerSec);
+        compressionFileInfo.setCpuPercent(cpuPercent);
       }
     }
 
@@ -187,10 +208,39 @@ protected void execute() throws Exception {
   }
 
   private void compress(InputStream inputStream, OutputStream outputStream) throws IOException {
+    long startTime = System.nanoTime();
+    long startCpuTime = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+    long workersCpuTime = 0;
     // We use 'progress' (a percentage) to track compression progress.
-    SmartCompressorStream smartCompressorStream = new SmartCompressorStream(
-        inputStream, outputStream, bufferSize, compressionFileState, progress);
-    smartCompressorStream.convert();
+    if (workersNum > 1) {
+      ExecutorService executor = Executors.newFixedThreadPool(workersNum,
+          new ThreadFactoryBuilder()
+              .setNameFormat("compression-worker-%d")
+              .setDaemon(true)
+              .build());
+      try {
+        ParallelCompressorStream compressorStream = new ParallelCompressorStream(
+            inputStream, outputStream, bufferSize, compressionFileState, progress,
+            executor, workersNum);
+        compressorStream.convert();
+        workersCpuTime = compressorStream.getWorkersCpuTime();
+      } finally {
+        executor.shutdownNow();
+      }
+    } else {
+      SmartCompressorStream smartCompressorStream = new SmartCompressorStream(
+          inputStream, outputStream, bufferSize, compressionFileState, progress);
+      smartCompressorStream.convert();
+    }
+
+    long elapsedTime = Math.max(System.nanoTime() - startTime, 1);
+    long cpuTime = THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuTime + workersCpuTime;
+    throughputMbPerSec = compressionFileState.getOriginalLength() / (1024.0 * 1024.0)
+        / (elapsedTime / 1e9);
+    // may exceed 100% with several workers
+    cpuPercent = 100.0 * cpuTime / elapsedTime;
+    appendLog(String.format("Compressed with %d workers: %.2f MB/s, CPU %.1f%%",
+        Math.max(workersNum, 1), throughputMbPerSec, cpuPercent));
   }
 
   private int getActualBuffSize(long fileSize) {
@@ -214,7 +264,7 @@ private int getActualBuffSize(long fileSize) {
 
   private void setXAttr(Path path, CompressionFileState compressionFileState) throws IOException {
     localFileSystem.setXAttr(path, SMART_FILE_STATE_XATTR_NAME,
-        SerializationUtils.serialize(compressionFileState),
+        FileStateSerializer.serialize(compressionFileState),
         EnumSet.of(XAttrSetFlag.CREATE));
   }
 
@@ -21,9 +21,13 @@
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.smartdata.SmartContext;
 import org.smartdata.action.ActionException;
 import org.smartdata.action.annotation.ActionSignature;
+import org.smartdata.conf.SmartConf;
 import org.smartdata.hdfs.StreamCopyHandler;
+import org.smartdata.hdfs.action.copy.ParallelRangeCopier;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -42,6 +46,8 @@
  * If dest doesn't contains "hdfs" prefix, then destination will be set to
  * current cluster, i.e., copy between dirs in current cluster.
  * Note that destination should contains filename.
+ * Large ranges are copied to HDFS destinations in parallel,
+ * see {@link ParallelRangeCopier}.
  */
 @ActionSignature(
     actionId = "copy",
@@ -141,6 +147,39 @@ private void copyWithOffset(
       FileSystem srcFileSystem,
       FileSystem destFileSystem,
       int bufferSize, long offset, long length) throws IOException {
+    ParallelRangeCopier parallelCopier = new ParallelRangeCopier(
+        Optional.ofNullable(getContext())
+            .map(SmartContext::getConf)
+            .orElseGet(SmartConf::new),
+        bufferSize, this::appendResult);
+    if (!parallelCopier.isApplicable(destFileSystem, destPath, length)) {
+      parallelCopier.deleteStaleParts(destFileSystem, destPath);
+      copyRange(srcFileSystem, destFileSystem, bufferSize, offset, length);
+      return;
+    }
+
+    long blockSize = getFileStatus(destFileSystem, destPath)
+        .filter(destFileStatus -> offset != 0)
+        .map(FileStatus::getBlockSize)
+        .orElseGet(() -> destFileSystem.getDefaultBlockSize(destPath));
+    short replication = getReplication(destFileSystem.getDefaultReplication(destPath));
+    long headEnd = ParallelRangeCopier.getHeadEnd(offset, length, blockSize);
+    parallelCopier.deleteStaleParts(destFileSystem, destPath, headEnd, offset + length, blockSize);
+
+    appendLog(String.format("Copy with offset %s and length %s in parallel", offset, length));
+    // align the destination file length with the block size before the parts concat
+    copyRange(srcFileSystem, destFileSystem, bufferSize, offset, headEnd - offset);
+    if (!parallelCopier.copy(srcFileSystem, srcFileStatus, (DistributedFileSystem) destFileSystem,
+        destPath, headEnd, offset + length, blockSize, replication)) {
+      appendLog("Falling back to the sequential copy");
+      copyRange(srcFileSystem, destFileSystem, bufferSize, headEnd, offset + length - headEnd);
+    }
+  }
+
+  private void copyRange(
+      FileSystem srcFileSystem,
+      FileSystem destFileSystem,
+      int bufferSize, long offset, long length) throws IOException {
     appendLog(
         String.format("Copy with offset %s and length %s", offset, length));
 
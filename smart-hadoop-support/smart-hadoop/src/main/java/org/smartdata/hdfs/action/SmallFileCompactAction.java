@@ -21,7 +21,6 @@
 import com.google.gson.reflect.TypeToken;
 import lombok.Getter;
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
@@ -34,6 +33,7 @@
 import org.smartdata.action.annotation.ActionSignature;
 import org.smartdata.model.CompactFileState;
 import org.smartdata.model.FileContainerInfo;
+import org.smartdata.model.FileStateSerializer;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -203,7 +203,7 @@ private void truncateAndSetXAttr(Path path, CompactFileState compactFileState)
 
     // Set file container info into XAttr
     localFileSystem.setXAttr(path,
-        xAttrNameFileSate, SerializationUtils.serialize(compactFileState),
+        xAttrNameFileSate, FileStateSerializer.serialize(compactFileState),
         EnumSet.of(XAttrSetFlag.CREATE));
     localFileSystem.setXAttr(path, xAttrNameCheckSum,
         checksumBytes, EnumSet.of(XAttrSetFlag.CREATE));
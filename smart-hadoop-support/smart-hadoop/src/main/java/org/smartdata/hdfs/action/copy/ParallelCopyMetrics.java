@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.action.copy;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+/**
+ * Metrics of the file parts copied by the {@link ParallelRangeCopier}.
+ * Besides the aggregated values, the number of bytes copied per second
+ * since the previous snapshot is reported.
+ */
+public class ParallelCopyMetrics implements MetricsSource {
+  public static final String NAME = "ParallelCopy";
+
+  private final MetricsRegistry registry;
+  private final MutableRate partCopyTime;
+  private final MutableCounterLong copiedBytes;
+  private final MutableCounterLong retriedParts;
+  private final MutableCounterLong failedParts;
+  private long lastSnapshotBytes;
+  private long lastSnapshotTime;
+
+  public ParallelCopyMetrics() {
+    this.registry = new MetricsRegistry(NAME);
+    this.partCopyTime = registry.newRate("PartCopyTime",
+        "Time of the file part copy in milliseconds", false);
+    this.copiedBytes = registry.newCounter("CopiedBytes",
+        "Number of bytes of the successfully copied file parts", 0L);
+    this.retriedParts = registry.newCounter("RetriedParts",
+        "Number of the file part copy retries", 0L);
+    this.failedParts = registry.newCounter("FailedParts",
+        "Number of the file parts failed to be copied after all retries", 0L);
+    this.lastSnapshotTime = System.currentTimeMillis();
+  }
+
+  public void addPartCopy(long bytes, long timeMs) {
+    partCopyTime.add(timeMs);
+    copiedBytes.incr(bytes);
+  }
+
+  public void incrRetriedParts() {
+    retriedParts.incr();
+  }
+
+  public void incrFailedParts() {
+    failedParts.incr();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    MetricsRecordBuilder recordBuilder = collector.addRecord(registry.info())
+        .addGauge(Interns.info("CopiedBytesPerSecond",
+            "Number of bytes copied per second since the last snapshot"),
+            copiedBytesPerSecond());
+    registry.snapshot(recordBuilder, all);
+  }
+
+  private synchronized long copiedBytesPerSecond() {
+    long now = System.currentTimeMillis();
+    long bytes = copiedBytes.value();
+    long rate = (bytes - lastSnapshotBytes) * 1000L / Math.max(now - lastSnapshotTime, 1);
+    lastSnapshotBytes = bytes;
+    lastSnapshotTime = now;
+    return rate;
+  }
+}
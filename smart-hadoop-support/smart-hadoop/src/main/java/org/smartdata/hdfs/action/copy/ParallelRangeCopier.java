@@ -0,0 +1,395 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.action.copy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.hdfs.StreamCopyHandler;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Copies a byte range of the file using several streams. The range is split
+ * into block-aligned parts, which are copied concurrently into temporary files
+ * next to the destination file and then appended to it with HDFS concat.
+ *
+ * <p>Each part is retried separately. Copied parts are kept if the copy fails,
+ * so the next copy of the same range copies only the missing parts. A part is
+ * reused only if the source file wasn't modified after the part was copied.
+ * The parts are recorded in the destination file xattr, so that the parts
+ * not reused by the next copy of the file are deleted.
+ *
+ * <p>If the parts can't be concatenated, they are deleted and the caller
+ * should copy the range sequentially.
+ */
+public class ParallelRangeCopier {
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelRangeCopier.class);
+  private static final String PART_SRC_MTIME_XATTR = "user.ssm.copy.src.mtime";
+  private static final String DEST_PARTS_XATTR = "user.ssm.copy.parts";
+
+  private static ParallelCopyMetrics sharedMetrics;
+
+  private final long threshold;
+  private final int streams;
+  private final int blocksPerPart;
+  private final int partRetries;
+  private final int bufferSize;
+  private final Consumer<String> resultLogger;
+  private final ParallelCopyMetrics metrics;
+
+  public ParallelRangeCopier(Configuration conf, int bufferSize, Consumer<String> resultLogger) {
+    this.threshold = conf.getLong(
+        SmartConfKeys.SMART_ACTION_COPY_PARALLEL_THRESHOLD_KEY,
+        SmartConfKeys.SMART_ACTION_COPY_PARALLEL_THRESHOLD_DEFAULT);
+    this.streams = Math.max(1, conf.getInt(
+        SmartConfKeys.SMART_ACTION_COPY_PARALLEL_STREAMS_KEY,
+        SmartConfKeys.SMART_ACTION_COPY_PARALLEL_STREAMS_DEFAULT));
+    this.blocksPerPart = Math.max(1, conf.getInt(
+        SmartConfKeys.SMART_ACTION_COPY_PARALLEL_BLOCKS_PER_PART_KEY,
+        SmartConfKeys.SMART_ACTION_COPY_PARALLEL_BLOCKS_PER_PART_DEFAULT));
+    this.partRetries = conf.getInt(
+        SmartConfKeys.SMART_ACTION_COPY_PARALLEL_PART_RETRIES_KEY,
+        SmartConfKeys.SMART_ACTION_COPY_PARALLEL_PART_RETRIES_DEFAULT);
+    this.bufferSize = bufferSize;
+    this.resultLogger = resultLogger;
+    this.metrics = getSharedMetrics();
+  }
+
+  private static synchronized ParallelCopyMetrics getSharedMetrics() {
+    if (sharedMetrics == null) {
+      sharedMetrics = SmartMetricsSystem.register(ParallelCopyMetrics.NAME,
+          "File parts copied by the parallel copy actions", new ParallelCopyMetrics());
+    }
+    return sharedMetrics;
+  }
+
+  /**
+   * Checks whether the range should be copied in parallel. Only HDFS
+   * destinations are supported, because parts are stitched with concat,
+   * which rejects files of encryption zones and erasure coded files.
+   */
+  public boolean isApplicable(FileSystem destFileSystem, Path destPath, long length)
+      throws IOException {
+    if (threshold <= 0
+        || length < threshold
+        || streams <= 1
+        || !(destFileSystem instanceof DistributedFileSystem)) {
+      return false;
+    }
+    DistributedFileSystem dfs = (DistributedFileSystem) destFileSystem;
+    FileStatus dirStatus = getNearestExistingStatus(dfs, destPath.getParent());
+    if (dfs.getEZForPath(dirStatus.getPath()) != null) {
+      resultLogger.accept("Parallel copy isn't supported in encryption zones");
+      return false;
+    }
+    if (dirStatus.isErasureCoded() || isErasureCodedFile(dfs, destPath)) {
+      resultLogger.accept("Parallel copy isn't supported for erasure coded files");
+      return false;
+    }
+    return true;
+  }
+
+  private static FileStatus getNearestExistingStatus(
+      DistributedFileSystem dfs, Path path) throws IOException {
+    for (Path current = path; ; current = current.getParent()) {
+      try {
+        return dfs.getFileStatus(current);
+      } catch (FileNotFoundException e) {
+        if (current.isRoot()) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static boolean isErasureCodedFile(
+      DistributedFileSystem dfs, Path path) throws IOException {
+    try {
+      return dfs.getFileStatus(path).isErasureCoded();
+    } catch (FileNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the end of the head of the range, which should be written
+   * directly to the destination file to align its length with the block
+   * size, so that the parts could be concatenated to it.
+   */
+  public static long getHeadEnd(long offset, long length, long blockSize) {
+    long alignedOffset = (offset + blockSize - 1) / blockSize * blockSize;
+    return Math.min(alignedOffset, offset + length);
+  }
+
+  /**
+   * Deletes the parts left by the previous copies of the file.
+   * Should be called before the destination file is modified by the copy.
+   */
+  public void deleteStaleParts(FileSystem destFileSystem, Path destPath) throws IOException {
+    deleteStaleParts(destFileSystem, destPath, Collections.emptyList());
+  }
+
+  /**
+   * Deletes the parts left by the previous copies of the file, which
+   * won't be reused by the parallel copy of the [start, end) range.
+   */
+  public void deleteStaleParts(FileSystem destFileSystem, Path destPath,
+                               long start, long end, long blockSize) throws IOException {
+    deleteStaleParts(destFileSystem, destPath, planParts(destPath, start, end, blockSize));
+  }
+
+  private void deleteStaleParts(FileSystem destFileSystem, Path destPath,
+                                List<Part> reusedParts) throws IOException {
+    // parts are created only if parallel copy is enabled
+    if (threshold <= 0 || streams <= 1 || !(destFileSystem instanceof DistributedFileSystem)) {
+      return;
+    }
+    byte[] recordedParts;
+    try {
+      recordedParts = destFileSystem.getXAttrs(destPath).get(DEST_PARTS_XATTR);
+    } catch (FileNotFoundException e) {
+      return;
+    }
+    if (recordedParts == null) {
+      return;
+    }
+    Set<Path> reusedPaths = reusedParts.stream()
+        .map(part -> part.path)
+        .collect(Collectors.toSet());
+    for (String partStart : new String(recordedParts, StandardCharsets.UTF_8).split(",")) {
+      Path partPath = getPartPath(destPath, Long.parseLong(partStart));
+      if (!reusedPaths.contains(partPath) && destFileSystem.delete(partPath, false)) {
+        resultLogger.accept("Deleted stale part " + partPath);
+      }
+    }
+    destFileSystem.removeXAttr(destPath, DEST_PARTS_XATTR);
+  }
+
+  /**
+   * Copies the [start, end) range of the source file in parallel and appends
+   * it to the destination file. The destination file length should be equal
+   * to the start and be a multiple of the block size.
+   *
+   * @return false if the parts can't be concatenated to the destination file,
+   *     then the range should be copied sequentially
+   */
+  public boolean copy(FileSystem srcFileSystem, FileStatus srcFileStatus,
+                      DistributedFileSystem destFileSystem, Path destPath,
+                      long start, long end, long blockSize, short replication)
+      throws IOException {
+    if (start >= end) {
+      return true;
+    }
+    List<Part> parts = planParts(destPath, start, end, blockSize);
+    // record the parts to delete them if they aren't reused by the next copy
+    destFileSystem.setXAttr(destPath, DEST_PARTS_XATTR, parts.stream()
+        .map(part -> String.valueOf(part.start))
+        .collect(Collectors.joining(","))
+        .getBytes(StandardCharsets.UTF_8));
+
+    long startTime = System.currentTimeMillis();
+    ExecutorService partExecutor = Executors.newFixedThreadPool(
+        Math.min(streams, parts.size()),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("parallel-copy-%d")
+            .build());
+    try {
+      List<Future<?>> partFutures = new ArrayList<>();
+      for (Part part : parts) {
+        partFutures.add(partExecutor.submit(() -> {
+          copyPartWithRetries(srcFileSystem, srcFileStatus, destFileSystem,
+              part, blockSize, replication);
+          return null;
+        }));
+      }
+      waitAll(partFutures);
+    } finally {
+      partExecutor.shutdownNow();
+    }
+
+    try {
+      destFileSystem.concat(destPath,
+          parts.stream().map(part -> part.path).toArray(Path[]::new));
+    } catch (IOException e) {
+      LOG.warn("Failed to concat the parts of {}", destPath, e);
+      resultLogger.accept("Failed to concat the parts: " + e.getMessage());
+      deleteParts(destFileSystem, parts);
+      destFileSystem.removeXAttr(destPath, DEST_PARTS_XATTR);
+      return false;
+    }
+    destFileSystem.removeXAttr(destPath, DEST_PARTS_XATTR);
+
+    long timeMs = Math.max(System.currentTimeMillis() - startTime, 1);
+    resultLogger.accept(String.format(
+        "Copied %d bytes in %d parts using %d streams in %d ms (%d bytes/s)",
+        end - start, parts.size(), Math.min(streams, parts.size()), timeMs,
+        (end - start) * 1000L / timeMs));
+    return true;
+  }
+
+  private List<Part> planParts(Path destPath, long start, long end, long blockSize) {
+    List<Part> parts = new ArrayList<>();
+    long partSize = blockSize * blocksPerPart;
+    for (long partStart = start; partStart < end; partStart += partSize) {
+      parts.add(new Part(getPartPath(destPath, partStart),
+          partStart, Math.min(partSize, end - partStart)));
+    }
+    return parts;
+  }
+
+  private static Path getPartPath(Path destPath, long partStart) {
+    return new Path(destPath.getParent(), "." + destPath.getName() + ".part-" + partStart);
+  }
+
+  private void deleteParts(DistributedFileSystem destFileSystem, List<Part> parts) {
+    for (Part part : parts) {
+      try {
+        destFileSystem.delete(part.path, false);
+      } catch (IOException e) {
+        LOG.warn("Failed to delete part {}", part, e);
+      }
+    }
+  }
+
+  private void waitAll(List<Future<?>> partFutures) throws IOException {
+    IOException failure = null;
+    for (Future<?> partFuture : partFutures) {
+      try {
+        partFuture.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for the parts copy", e);
+      } catch (ExecutionException e) {
+        // wait for the rest parts to reuse them during the next copy
+        if (failure == null) {
+          failure = e.getCause() instanceof IOException
+              ? (IOException) e.getCause()
+              : new IOException(e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void copyPartWithRetries(FileSystem srcFileSystem, FileStatus srcFileStatus,
+                                   DistributedFileSystem destFileSystem, Part part,
+                                   long blockSize, short replication) throws IOException {
+    for (int attempt = 0; ; attempt++) {
+      try {
+        copyPart(srcFileSystem, srcFileStatus, destFileSystem, part, blockSize, replication);
+        return;
+      } catch (IOException e) {
+        if (attempt >= partRetries) {
+          metrics.incrFailedParts();
+          throw e;
+        }
+        LOG.warn("Failed to copy part {}, retrying", part, e);
+        metrics.incrRetriedParts();
+      }
+    }
+  }
+
+  private void copyPart(FileSystem srcFileSystem, FileStatus srcFileStatus,
+                        DistributedFileSystem destFileSystem, Part part,
+                        long blockSize, short replication) throws IOException {
+    byte[] srcModificationTime = Long.toString(srcFileStatus.getModificationTime())
+        .getBytes(StandardCharsets.UTF_8);
+    if (isCopied(destFileSystem, part, srcModificationTime)) {
+      resultLogger.accept("Reused already copied part " + part);
+      return;
+    }
+
+    long startTime = System.currentTimeMillis();
+    try (InputStream in = srcFileSystem.open(srcFileStatus.getPath());
+         OutputStream out = destFileSystem.create(
+             part.path, true, bufferSize, replication, blockSize)) {
+      StreamCopyHandler.of(in, out)
+          .offset(part.start)
+          .count(part.length)
+          .bufferSize(bufferSize)
+          .build()
+          .runCopy();
+    }
+
+    long copiedLength = destFileSystem.getFileStatus(part.path).getLen();
+    if (copiedLength != part.length) {
+      throw new IOException(String.format("Copied %d bytes of part %s, "
+          + "source file is shorter than expected", copiedLength, part));
+    }
+    destFileSystem.setXAttr(part.path, PART_SRC_MTIME_XATTR, srcModificationTime);
+
+    metrics.addPartCopy(part.length, System.currentTimeMillis() - startTime);
+    resultLogger.accept("Copied part " + part);
+  }
+
+  private boolean isCopied(DistributedFileSystem destFileSystem, Part part,
+                           byte[] srcModificationTime) throws IOException {
+    FileStatus partStatus;
+    try {
+      partStatus = destFileSystem.getFileStatus(part.path);
+    } catch (FileNotFoundException e) {
+      return false;
+    }
+    return partStatus.getLen() == part.length
+        && Arrays.equals(srcModificationTime,
+        destFileSystem.getXAttrs(part.path).get(PART_SRC_MTIME_XATTR));
+  }
+
+  private static class Part {
+    private final Path path;
+    private final long start;
+    private final long length;
+
+    private Part(Path path, long start, long length) {
+      this.path = path;
+      this.start = start;
+      this.length = length;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("[%d, %d) %s", start, start + length, path);
+    }
+  }
+}
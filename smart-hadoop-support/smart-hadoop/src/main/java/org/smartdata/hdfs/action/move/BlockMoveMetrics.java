@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.action.move;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Metrics of the block moves executed by the {@link BlockMoveService}.
+ * Besides the aggregated values, the number of bytes moved per second
+ * since the previous snapshot is reported for each target datanode.
+ */
+public class BlockMoveMetrics implements MetricsSource {
+  public static final String NAME = "BlockMove";
+  private static final String DATANODE_RECORD = "BlockMoveDatanode";
+
+  private final MetricsRegistry registry;
+  private final MutableRate moveTime;
+  private final MutableCounterLong movedBytes;
+  private final MutableCounterLong failedMoves;
+  private final Map<String, DatanodeMoves> datanodeMoves;
+  private volatile IntSupplier activeMoves;
+  private volatile IntSupplier queuedMoves;
+
+  public BlockMoveMetrics() {
+    this.registry = new MetricsRegistry(NAME);
+    this.moveTime = registry.newRate("MoveTime",
+        "Time of the block replica move in milliseconds", false);
+    this.movedBytes = registry.newCounter("MovedBytes",
+        "Number of bytes of the successfully moved block replicas", 0L);
+    this.failedMoves = registry.newCounter("FailedMoves",
+        "Number of failed block replica moves", 0L);
+    this.datanodeMoves = new ConcurrentHashMap<>();
+    this.activeMoves = () -> 0;
+    this.queuedMoves = () -> 0;
+  }
+
+  public void setMovesSuppliers(IntSupplier activeMoves, IntSupplier queuedMoves) {
+    this.activeMoves = activeMoves;
+    this.queuedMoves = queuedMoves;
+  }
+
+  public void addMove(String datanode, long bytes, long timeMs, boolean successful) {
+    moveTime.add(timeMs);
+    if (successful) {
+      movedBytes.incr(bytes);
+      datanodeMoves.computeIfAbsent(datanode, key -> new DatanodeMoves())
+          .movedBytes.addAndGet(bytes);
+    } else {
+      failedMoves.incr();
+    }
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    MetricsRecordBuilder recordBuilder = collector.addRecord(registry.info())
+        .addGauge(Interns.info("ActiveMoves",
+            "Number of block replicas being moved"), activeMoves.getAsInt())
+        .addGauge(Interns.info("QueuedMoves",
+            "Number of block replica moves waiting for a free slot"), queuedMoves.getAsInt());
+    registry.snapshot(recordBuilder, all);
+
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, DatanodeMoves> entry : datanodeMoves.entrySet()) {
+      DatanodeMoves moves = entry.getValue();
+      long bytes = moves.movedBytes.get();
+      collector.addRecord(DATANODE_RECORD)
+          .tag(Interns.info("Datanode", "Transfer address of the target datanode"),
+              entry.getKey())
+          .addCounter(Interns.info("MovedBytes",
+              "Number of bytes moved to the datanode"), bytes)
+          .addGauge(Interns.info("MovedBytesPerSecond",
+              "Number of bytes moved to the datanode per second since the last snapshot"),
+              moves.bytesPerSecond(bytes, now));
+    }
+  }
+
+  private static class DatanodeMoves {
+    private final AtomicLong movedBytes = new AtomicLong();
+    private long lastSnapshotBytes;
+    private long lastSnapshotTime = System.currentTimeMillis();
+
+    private synchronized long bytesPerSecond(long bytes, long now) {
+      long rate = (bytes - lastSnapshotBytes) * 1000L / Math.max(now - lastSnapshotTime, 1);
+      lastSnapshotBytes = bytes;
+      lastSnapshotTime = now;
+      return rate;
+    }
+  }
+}
@@ -0,0 +1,293 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.action.move;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.protocol.datatransfer.TrustedChannelResolver;
+import org.apache.hadoop.hdfs.protocol.datatransfer.sasl.DataTransferSaslUtil;
+import org.apache.hadoop.hdfs.protocol.datatransfer.sasl.SaslDataTransferClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Process-wide service executing block replica moves of all mover actions.
+ *
+ * <p>Moves are executed by the shared bounded thread pool, so the number
+ * of parallel moves doesn't grow with the number of running actions.
+ * The number of parallel moves to a single datanode is limited as well:
+ * moves exceeding the limit are queued and started by the completion of
+ * the previous move to the same datanode. Namenode connectors and SASL
+ * data transfer clients are created once per namenode and shared by
+ * the executors holding them. A transport is closed only when no executor
+ * has held it for {@link #TRANSPORT_EXPIRATION_MIN} minutes.
+ */
+public class BlockMoveService {
+  static final Logger LOG = LoggerFactory.getLogger(BlockMoveService.class);
+  static final int TRANSPORT_EXPIRATION_MIN = 30;
+
+  private static BlockMoveService instance;
+
+  private final ExecutorService moveExecutor;
+  private final int maxMovesPerDatanode;
+  private final Map<String, DatanodeSlots> datanodeSlots;
+  private final AtomicInteger activeMoves;
+  private final AtomicInteger queuedMoves;
+  private final Map<URI, SharedTransport> transports;
+  private final Function<URI, Transport> transportFactory;
+  private final long transportExpirationMs;
+  private final Configuration conf;
+  private final BlockMoveMetrics metrics;
+
+  @VisibleForTesting
+  BlockMoveService(Configuration conf, int threads,
+      int maxMovesPerDatanode, BlockMoveMetrics metrics) {
+    this(conf, threads, maxMovesPerDatanode, metrics, null,
+        TimeUnit.MINUTES.toMillis(TRANSPORT_EXPIRATION_MIN));
+  }
+
+  @VisibleForTesting
+  BlockMoveService(Configuration conf, int threads, int maxMovesPerDatanode,
+      BlockMoveMetrics metrics, Function<URI, Transport> transportFactory,
+      long transportExpirationMs) {
+    this.conf = conf;
+    this.maxMovesPerDatanode = maxMovesPerDatanode;
+    this.moveExecutor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder()
+            .setNameFormat("block-mover-%d")
+            .setDaemon(true)
+            .build());
+    this.datanodeSlots = new ConcurrentHashMap<>();
+    this.activeMoves = new AtomicInteger();
+    this.queuedMoves = new AtomicInteger();
+    this.transports = new ConcurrentHashMap<>();
+    this.transportFactory = transportFactory != null
+        ? transportFactory : this::createTransport;
+    this.transportExpirationMs = transportExpirationMs;
+    this.metrics = metrics;
+    metrics.setMovesSuppliers(activeMoves::get, queuedMoves::get);
+  }
+
+  /**
+   * Returns the service shared by all mover actions of the process,
+   * creating it with the provided configuration on the first call.
+   */
+  public static synchronized BlockMoveService getInstance(Configuration conf) {
+    if (instance == null) {
+      int threads = conf.getInt(
+          SmartConfKeys.SMART_CMDLET_MOVER_BLOCK_MOVE_THREADS_KEY,
+          SmartConfKeys.SMART_CMDLET_MOVER_BLOCK_MOVE_THREADS_DEFAULT);
+      int maxMovesPerInst = conf.getInt(
+          SmartConfKeys.SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_SRV_INST_KEY,
+          SmartConfKeys.SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_SRV_INST_DEFAULT);
+      if (maxMovesPerInst > 0) {
+        threads = Math.min(threads, maxMovesPerInst);
+      }
+      int maxMovesPerDatanode = conf.getInt(
+          SmartConfKeys.SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_DATANODE_KEY,
+          SmartConfKeys.SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_DATANODE_DEFAULT);
+      BlockMoveMetrics metrics = SmartMetricsSystem.register(BlockMoveMetrics.NAME,
+          "Block replica moves of the mover actions", new BlockMoveMetrics());
+      instance = new BlockMoveService(conf, Math.max(threads, 1), maxMovesPerDatanode, metrics);
+    }
+    return instance;
+  }
+
+  /**
+   * Returns the namenode connector and the data transfer client
+   * shared by all moves of the namenode blocks. The transport stays open
+   * until it is released by {@link #releaseTransport(URI)}.
+   */
+  public Transport acquireTransport(URI namenode) throws IOException {
+    closeIdleTransports();
+    try {
+      return transports.compute(namenode, (key, shared) -> {
+        SharedTransport result = shared != null
+            ? shared : new SharedTransport(transportFactory.apply(key));
+        result.holders++;
+        return result;
+      }).transport;
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Releases the transport acquired by {@link #acquireTransport(URI)}.
+   */
+  public void releaseTransport(URI namenode) {
+    transports.computeIfPresent(namenode, (key, shared) -> {
+      if (--shared.holders == 0) {
+        shared.releaseTime = System.currentTimeMillis();
+      }
+      return shared;
+    });
+    closeIdleTransports();
+  }
+
+  @VisibleForTesting
+  int getTransportsCount() {
+    return transports.size();
+  }
+
+  /**
+   * Submits the replica move.
+   * @return future completed with true if the replica was moved successfully
+   */
+  public CompletableFuture<Boolean> submit(ReplicaMove move) {
+    return submit(move.getTargetAddress(), move.getNumBytes(), move::run);
+  }
+
+  @VisibleForTesting
+  CompletableFuture<Boolean> submit(String datanode, long bytes, BooleanSupplier move) {
+    CompletableFuture<Boolean> result = new CompletableFuture<>();
+    DatanodeSlots slots = datanodeSlots.computeIfAbsent(datanode, key -> new DatanodeSlots());
+    Runnable task = () -> runMove(datanode, bytes, move, slots, result);
+    if (slots.acquireOrEnqueue(task)) {
+      moveExecutor.execute(task);
+    }
+    return result;
+  }
+
+  private void runMove(String datanode, long bytes, BooleanSupplier move,
+      DatanodeSlots slots, CompletableFuture<Boolean> result) {
+    activeMoves.incrementAndGet();
+    long startTime = System.currentTimeMillis();
+    boolean successful = false;
+    try {
+      successful = move.getAsBoolean();
+    } catch (Throwable t) {
+      LOG.error("Unexpected error during the block move to {}", datanode, t);
+    } finally {
+      activeMoves.decrementAndGet();
+      metrics.addMove(datanode, bytes, System.currentTimeMillis() - startTime, successful);
+      Runnable next = slots.releaseOrPoll();
+      if (next != null) {
+        moveExecutor.execute(next);
+      }
+    }
+    result.complete(successful);
+  }
+
+  private Transport createTransport(URI namenode) {
+    try {
+      return new Transport(new NameNodeConnector(namenode, conf), conf);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void closeIdleTransports() {
+    long now = System.currentTimeMillis();
+    for (URI namenode : transports.keySet()) {
+      transports.computeIfPresent(namenode, (key, shared) -> {
+        if (shared.holders > 0 || now - shared.releaseTime < transportExpirationMs) {
+          return shared;
+        }
+        LOG.debug("Closing the idle block move transport of {}", key);
+        shared.transport.getNameNodeConnector().close();
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Transport with the number of executors holding it.
+   * Guarded by the transports map.
+   */
+  private static class SharedTransport {
+    private final Transport transport;
+    private int holders;
+    private long releaseTime;
+
+    private SharedTransport(Transport transport) {
+      this.transport = transport;
+    }
+  }
+
+  /**
+   * Connector to the namenode and the SASL data transfer client of its datanodes.
+   */
+  public static class Transport {
+    private final NameNodeConnector nnc;
+    private final SaslDataTransferClient saslClient;
+
+    @VisibleForTesting
+    Transport(NameNodeConnector nnc, Configuration conf) {
+      this.nnc = nnc;
+      this.saslClient = new SaslDataTransferClient(conf,
+          DataTransferSaslUtil.getSaslPropertiesResolver(conf),
+          TrustedChannelResolver.getInstance(conf), nnc.fallbackToSimpleAuth);
+    }
+
+    public NameNodeConnector getNameNodeConnector() {
+      return nnc;
+    }
+
+    public SaslDataTransferClient getSaslClient() {
+      return saslClient;
+    }
+  }
+
+  /**
+   * Moves to the datanode which are either running or waiting for the free slot.
+   */
+  private class DatanodeSlots {
+    private final Queue<Runnable> waitingMoves = new ArrayDeque<>();
+    private int runningMoves;
+
+    private synchronized boolean acquireOrEnqueue(Runnable move) {
+      if (maxMovesPerDatanode <= 0 || runningMoves < maxMovesPerDatanode) {
+        runningMoves++;
+        return true;
+      }
+      waitingMoves.add(move);
+      queuedMoves.incrementAndGet();
+      return false;
+    }
+
+    /** @return the next waiting move, which takes the released slot */
+    private synchronized Runnable releaseOrPoll() {
+      Runnable next = waitingMoves.poll();
+      if (next == null) {
+        runningMoves--;
+      } else {
+        queuedMoves.decrementAndGet();
+      }
+      return next;
+    }
+  }
+}
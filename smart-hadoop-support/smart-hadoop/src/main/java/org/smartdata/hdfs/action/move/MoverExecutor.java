@@ -23,12 +23,9 @@
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
-import org.apache.hadoop.hdfs.protocol.datatransfer.TrustedChannelResolver;
-import org.apache.hadoop.hdfs.protocol.datatransfer.sasl.DataTransferSaslUtil;
 import org.apache.hadoop.hdfs.protocol.datatransfer.sasl.SaslDataTransferClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.hdfs.CompatibilityHelperLoader;
 import org.smartdata.model.action.FileMovePlan;
 
@@ -37,14 +34,16 @@
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A light-weight executor for Mover.
+ * A light-weight executor for Mover. Replica moves are executed by the
+ * process-wide {@link BlockMoveService}, at most maxConcurrentMoves
+ * of them at once for a single executor.
  */
 public class MoverExecutor {
   static final Logger LOG = LoggerFactory.getLogger(MoverExecutor.class);
@@ -56,11 +55,9 @@ public class MoverExecutor {
   private DFSClient dfsClient;
   private SaslDataTransferClient saslClient;
 
-  private int concurrentMoves;
   private int maxConcurrentMoves;
-  private int maxConcurrentMovesPerInst;
   private int maxRetryTimes;
-  private ExecutorService moveExecutor;
+  private BlockMoveService moveService;
   private List<ReplicaMove> allMoves;
 
   private Map<Long, DBlock> sourceBlockMap;
@@ -68,17 +65,13 @@ public class MoverExecutor {
   private MoverStatus status;
   private List<LocatedBlock> locatedBlocks;
 
-  private static AtomicInteger instances = new AtomicInteger(0);
-
   public MoverExecutor(MoverStatus status, Configuration conf,
       int maxRetryTimes, int maxConcurrentMoves) {
     this.status = status;
     this.conf = conf;
     this.maxRetryTimes = maxRetryTimes;
     this.maxConcurrentMoves = maxConcurrentMoves;
-    maxConcurrentMovesPerInst = conf.getInt(
-        SmartConfKeys.SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_SRV_INST_KEY,
-        SmartConfKeys.SMART_CMDLET_MOVER_MAX_CONCURRENT_BLOCKS_PER_SRV_INST_DEFAULT);
+    this.moveService = BlockMoveService.getInstance(conf);
   }
 
   /**
@@ -93,7 +86,15 @@ public int executeMove(FileMovePlan plan, PrintStream resultOs, PrintStream logO
     }
 
     init(plan);
+    try {
+      return moveFile(plan, resultOs, logOs);
+    } finally {
+      moveService.releaseTransport(namenode);
+    }
+  }
 
+  private int moveFile(FileMovePlan plan, PrintStream resultOs, PrintStream logOs)
+      throws Exception {
     HdfsFileStatus fileStatus = dfsClient.getFileInfo(fileName);
     if (fileStatus == null) {
       throw new RuntimeException("File does not exist.");
@@ -111,18 +112,7 @@ public int executeMove(FileMovePlan plan, PrintStream resultOs, PrintStream logO
     locatedBlocks = dfsClient.getLocatedBlocks(fileName, 0, plan.getFileLength()).getLocatedBlocks();
 
     parseSchedulePlan(plan);
-
-    concurrentMoves = allMoves.size() >= maxConcurrentMoves ? maxConcurrentMoves : allMoves.size();
-    concurrentMoves = concurrentMoves == 0 ? 1 : concurrentMoves;
-    moveExecutor = Executors.newFixedThreadPool(concurrentMoves);
-    try {
-      instances.incrementAndGet();
-      return doMove(resultOs, logOs);
-    } finally {
-      instances.decrementAndGet();
-      moveExecutor.shutdown();
-      moveExecutor = null;
-    }
+    return doMove(resultOs, logOs);
   }
 
   /**
@@ -135,38 +125,9 @@ public int executeMove(FileMovePlan plan, PrintStream resultOs, PrintStream logO
    */
   public int doMove(PrintStream resultOs, PrintStream logOs) throws Exception {
     for (int retryTimes = 0; retryTimes < maxRetryTimes; retryTimes++) {
-      final AtomicInteger running = new AtomicInteger(0);
-      for (final ReplicaMove replicaMove : allMoves) {
-        moveExecutor.execute(new Runnable() {
-          @Override
-          public void run() {
-            try {
-              running.incrementAndGet();
-              replicaMove.run();
-            } finally {
-              running.decrementAndGet();
-            }
-          }
-        });
-
-        if (maxConcurrentMovesPerInst != 0) {
-          while (running.get() > (maxConcurrentMovesPerInst * 1.0 / instances.get())) {
-            Thread.sleep(50);
-          }
-        }
-      }
-
-      int sleeped = 0;
-      int[] stat = new int[2];
-      while (true) {
-        ReplicaMove.countStatus(allMoves, stat);
-        if (stat[0] == allMoves.size()) {
-          status.increaseMovedBlocks(stat[1]);
-          break;
-        }
-        Thread.sleep(10);
-        sleeped += 10;
-      }
+      long startTime = System.currentTimeMillis();
+      status.increaseMovedBlocks(moveAll());
+      long elapsed = System.currentTimeMillis() - startTime;
 
       int remaining = ReplicaMove.refreshMoverList(allMoves);
       if (allMoves.size() == 0) {
@@ -178,8 +139,8 @@ public void run() {
             retryTimes + 1, maxRetryTimes, remaining));
       }
       LOG.debug("{} : {} moves failed, start a new iteration", this, remaining);
-      if (sleeped < 1000) {
-        Thread.sleep(1000 - sleeped);
+      if (elapsed < 1000) {
+        Thread.sleep(1000 - elapsed);
       }
     }
     int failedMoves = ReplicaMove.failedMoves(allMoves);
@@ -187,6 +148,41 @@ public void run() {
     return failedMoves;
   }
 
+  /**
+   * Submits all moves to the move service keeping at most maxConcurrentMoves
+   * of them in flight: each completed move submits the next one.
+   * @return number of successful moves
+   */
+  private int moveAll() throws InterruptedException {
+    CountDownLatch finished = new CountDownLatch(allMoves.size());
+    AtomicInteger succeeded = new AtomicInteger();
+    Iterator<ReplicaMove> pendingMoves = allMoves.iterator();
+    int concurrentMoves = Math.max(Math.min(maxConcurrentMoves, allMoves.size()), 1);
+    for (int i = 0; i < concurrentMoves; i++) {
+      submitNext(pendingMoves, succeeded, finished);
+    }
+    finished.await();
+    return succeeded.get();
+  }
+
+  private void submitNext(Iterator<ReplicaMove> pendingMoves,
+      AtomicInteger succeeded, CountDownLatch finished) {
+    ReplicaMove move;
+    synchronized (pendingMoves) {
+      if (!pendingMoves.hasNext()) {
+        return;
+      }
+      move = pendingMoves.next();
+    }
+    moveService.submit(move).thenAccept(successful -> {
+      if (successful) {
+        succeeded.incrementAndGet();
+      }
+      finished.countDown();
+      submitNext(pendingMoves, succeeded, finished);
+    });
+  }
+
   @VisibleForTesting
   public int executeMove(FileMovePlan plan) throws Exception {
     return executeMove(plan, null, null);
@@ -200,10 +196,9 @@ public String toString() {
   private void init(FileMovePlan plan) throws IOException {
     this.namenode = plan.getNamenode();
     this.fileName = plan.getFileName();
-    this.nnc = new NameNodeConnector(namenode, conf);
-    this.saslClient = new SaslDataTransferClient(conf,
-        DataTransferSaslUtil.getSaslPropertiesResolver(conf),
-        TrustedChannelResolver.getInstance(conf), nnc.fallbackToSimpleAuth);
+    BlockMoveService.Transport transport = moveService.acquireTransport(namenode);
+    this.nnc = transport.getNameNodeConnector();
+    this.saslClient = transport.getSaslClient();
     dfsClient = nnc.getDistributedFileSystem().getClient();
     allMoves = new ArrayList<>();
   }
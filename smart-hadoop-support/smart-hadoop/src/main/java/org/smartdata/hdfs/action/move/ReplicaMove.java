@@ -80,7 +80,8 @@ public String toString() {
     return bStr + "from " + source.getDisplayName() + " to " + target.getDisplayName();
   }
 
-  public void run() {
+  /** @return true if the replica was moved successfully */
+  public boolean run() {
     LOG.debug("Start moving " + this);
 
     Socket sock = new Socket();
@@ -128,6 +129,16 @@ public void run() {
       IOUtils.closeSocket(sock);
       status.setFinished(true);
     }
+    return status.isSuccessful();
+  }
+
+  /** @return transfer address of the target datanode */
+  public String getTargetAddress() {
+    return target.getDatanodeInfo().getXferAddr();
+  }
+
+  public long getNumBytes() {
+    return block != null ? block.getNumBytes() : 0L;
   }
 
   /** Send a block replace request to the output stream */
@@ -187,33 +198,6 @@ public static int failedMoves(List<ReplicaMove> allMoves) {
     return failedNum;
   }
 
-  public static boolean allMoveFinished(List<ReplicaMove> allMoves) {
-    for (ReplicaMove move : allMoves) {
-      if (!move.status.isFinished()) {
-        return false;
-      }
-    }
-    return true;
-  }
-
-  /**
-   *
-   * @param allMoves
-   * @param ret ret[0] = number finished, ret[1] = number succeeded
-   */
-  public static void countStatus(List<ReplicaMove> allMoves, int[] ret) {
-    ret[0] = 0;
-    ret[1] = 0;
-    for (ReplicaMove move : allMoves) {
-      if (move.status.isFinished()) {
-        ret[0] += 1;
-        if (move.status.isSuccessful()) {
-          ret[1] += 1;
-        }
-      }
-    }
-  }
-
   /**
    * Remove successful moves and refresh the status of remaining ones for a new iteration.
    * @param allMoves
@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.file.equality;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.hdfs.HadoopUtil;
+import org.smartdata.model.FileInfo;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.smartdata.utils.ConfigUtil.toRemoteClusterConfig;
+import static org.smartdata.utils.PathUtil.isAbsoluteRemotePath;
+
+/**
+ * Compares files using the composite CRC checksums of their prefixes.
+ * Unlike the MD5-of-MD5 checksums, composite CRCs don't depend on the
+ * block layout, so the checksum of any file prefix can be compared between
+ * clusters with different block sizes.
+ *
+ * <p>Besides the files equality check, this strategy finds the longest
+ * equal prefix of the files with binary search over the block-aligned
+ * prefixes of the dest file, so the sync action re-copies only the
+ * blocks starting from the first changed one instead of the whole file.
+ */
+public class BlockChecksumFileEqualityStrategy implements FileEqualityStrategy {
+  static final Logger LOG = LoggerFactory.getLogger(BlockChecksumFileEqualityStrategy.class);
+
+  private static final String COMPOSITE_CRC_MODE = "COMPOSITE_CRC";
+
+  private final Configuration config;
+  // file system clients with the composite CRC combine mode
+  // which is read only once during client creation
+  private final Map<URI, FileSystem> fileSystems;
+
+  public BlockChecksumFileEqualityStrategy(Configuration config) {
+    this.config = config;
+    this.fileSystems = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public boolean areEqual(FileInfo srcFileInfo, FileStatus destFileStatus) {
+    if (destFileStatus == null
+        || destFileStatus.getLen() != srcFileInfo.getLength()) {
+      return false;
+    }
+    Path srcPath = new Path(srcFileInfo.getPath());
+    Path destPath = destFileStatus.getPath();
+    try {
+      return prefixesEqual(srcPath, destPath, srcFileInfo.getLength());
+    } catch (IOException exception) {
+      LOG.error("Error comparing checksums of files '{}' and '{}'",
+          srcPath, destPath, exception);
+      return false;
+    }
+  }
+
+  @Override
+  public long getEqualPrefixLength(FileInfo srcFileInfo, FileStatus destFileStatus) {
+    if (destFileStatus == null) {
+      return 0;
+    }
+    long srcLength = srcFileInfo.getLength();
+    long destLength = destFileStatus.getLen();
+    long commonLength = Math.min(srcLength, destLength);
+    // dest file is truncated to the prefix length before append,
+    // so prefixes are aligned with the dest blocks to avoid block recovery
+    long chunkSize = destFileStatus.getBlockSize() > 0
+        ? destFileStatus.getBlockSize()
+        : srcFileInfo.getBlocksize();
+    if (commonLength == 0 || chunkSize <= 0) {
+      return 0;
+    }
+
+    Path srcPath = new Path(srcFileInfo.getPath());
+    Path destPath = destFileStatus.getPath();
+    try {
+      if (prefixesEqual(srcPath, destPath, commonLength)) {
+        return destLength <= srcLength
+            ? commonLength
+            // re-copy the last src block to truncate the dest file tail
+            : (srcLength - 1) / chunkSize * chunkSize;
+      }
+
+      // prefix of lowChunks chunks is known to be equal
+      long lowChunks = 0;
+      long highChunks = (commonLength - 1) / chunkSize;
+      while (lowChunks < highChunks) {
+        long midChunks = (lowChunks + highChunks + 1) >>> 1;
+        if (prefixesEqual(srcPath, destPath, midChunks * chunkSize)) {
+          lowChunks = midChunks;
+        } else {
+          highChunks = midChunks - 1;
+        }
+      }
+      return lowChunks * chunkSize;
+    } catch (IOException exception) {
+      LOG.error("Error comparing block checksums of files '{}' and '{}'",
+          srcPath, destPath, exception);
+      return 0;
+    }
+  }
+
+  private boolean prefixesEqual(Path srcPath, Path destPath, long length)
+      throws IOException {
+    if (length == 0) {
+      return true;
+    }
+    FileChecksum srcChecksum = getFileSystem(srcPath).getFileChecksum(srcPath, length);
+    FileChecksum destChecksum = getFileSystem(destPath).getFileChecksum(destPath, length);
+
+    return Optional.ofNullable(srcChecksum)
+        .filter(checksum -> checksum.equals(destChecksum))
+        .isPresent();
+  }
+
+  private FileSystem getFileSystem(Path path) throws IOException {
+    boolean isRemote = isAbsoluteRemotePath(path);
+    URI fsUri = isRemote ? path.toUri() : HadoopUtil.getNameNodeUri(config);
+    URI fsKey = URI.create(fsUri.getScheme() + "://" + fsUri.getAuthority());
+
+    FileSystem fileSystem = fileSystems.get(fsKey);
+    if (fileSystem == null) {
+      Configuration fsConf = isRemote
+          ? toRemoteClusterConfig(new Configuration())
+          : new Configuration(config);
+      fsConf.set(HdfsClientConfigKeys.DFS_CHECKSUM_COMBINE_MODE_KEY, COMPOSITE_CRC_MODE);
+      fileSystem = FileSystem.newInstance(fsKey, fsConf);
+      FileSystem existing = fileSystems.putIfAbsent(fsKey, fileSystem);
+      if (existing != null) {
+        fileSystem.close();
+        return existing;
+      }
+    }
+    return fileSystem;
+  }
+}
@@ -26,11 +26,30 @@
 public interface FileEqualityStrategy {
   enum Strategy {
     FILE_LENGTH,
-    CHECKSUM
+    CHECKSUM,
+    BLOCK_CHECKSUM
   }
 
   boolean areEqual(FileInfo srcFileInfo, FileStatus destFileStatus);
 
+  /**
+   * Returns length of the source file prefix, which is already present in the
+   * destination file, so only the [prefix, srcLength) range should be copied.
+   * Default implementation can only detect the dest file being
+   * the src file prefix by the file lengths.
+   */
+  default long getEqualPrefixLength(FileInfo srcFileInfo, FileStatus destFileStatus) {
+    if (destFileStatus == null) {
+      return 0;
+    }
+    if (areEqual(srcFileInfo, destFileStatus)) {
+      return srcFileInfo.getLength();
+    }
+    return destFileStatus.getLen() < srcFileInfo.getLength()
+        ? destFileStatus.getLen()
+        : 0;
+  }
+
   static FileEqualityStrategy from(Configuration conf) {
     String rawStrategy = conf.get(
         SmartConfKeys.SMART_SYNC_FILE_EQUALITY_STRATEGY,
@@ -43,9 +62,13 @@ static FileEqualityStrategy from(Configuration conf) {
   }
 
   static FileEqualityStrategy of(Strategy strategy, Configuration conf) {
-    if (Objects.requireNonNull(strategy) == Strategy.CHECKSUM) {
-      return new ChecksumFileEqualityStrategy(conf);
+    switch (Objects.requireNonNull(strategy)) {
+      case CHECKSUM:
+        return new ChecksumFileEqualityStrategy(conf);
+      case BLOCK_CHECKSUM:
+        return new BlockChecksumFileEqualityStrategy(conf);
+      default:
+        return new LengthFileEqualityStrategy();
     }
-    return new LengthFileEqualityStrategy();
   }
 }
@@ -76,7 +76,7 @@ public void run() {
           final Source source = dn.addSource(t);
           final long maxRemaining = getMaxRemaining(r, t);
           final StorageGroup target = maxRemaining > 0L ? dn.addTarget(t) : null;
-          storages.add(source, target);
+          storages.add(source, target, maxRemaining);
         }
       }
     } catch (IOException e) {
@@ -0,0 +1,557 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.XAttr;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.XAttrHelper;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatPBINode;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FSImageUtil;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.ErasureCodingSection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeDirectorySection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeReferenceSection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.NameSystemSection;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.StringTableSection;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.hdfs.server.namenode.SerialNumberManager;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.LimitInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smartdata.model.FileInfo;
+import org.smartdata.model.PathChecker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.XATTR_ERASURECODING_POLICY;
+
+/**
+ * Loads the namespace from the local fsimage file, so the full namespace
+ * fetching doesn't issue listing RPCs to the NameNode.
+ *
+ * <p>Image sections are parsed sequentially with the streaming protobuf
+ * reader. Only the directory tree is kept in memory: parents of all inodes
+ * and names of the directories are stored in the open addressing table with
+ * primitive inode id keys. Inodes are then read once more and streamed to the
+ * consumer with the full paths rebuilt from the tree.
+ *
+ * <p>Files are converted the same way as the listing-based fetching does,
+ * including the storage and erasure coding policies inherited from
+ * the parent directories.
+ */
+public class FsImageLoader {
+  public static final Logger LOG = LoggerFactory.getLogger(FsImageLoader.class);
+
+  private static final Pattern IMAGE_NAME_PATTERN = Pattern.compile("fsimage_(\\d+)");
+  private static final int DIRECTORIES_CACHE_SIZE = 4096;
+
+  private final Configuration conf;
+  private final File imageFile;
+  private final FileSummary summary;
+  private final Map<SectionName, FileSummary.Section> sections;
+  private final long txid;
+  private final long numInodes;
+
+  private FsImageLoader(Configuration conf, File imageFile) throws IOException {
+    this.conf = conf;
+    this.imageFile = imageFile;
+    try (RandomAccessFile file = new RandomAccessFile(imageFile, "r")) {
+      if (!FSImageUtil.checkFileFormat(file)) {
+        throw new IOException("Unrecognized fsimage format: " + imageFile);
+      }
+      this.summary = FSImageUtil.loadSummary(file);
+    }
+    this.sections = new EnumMap<>(SectionName.class);
+    for (FileSummary.Section section : summary.getSectionsList()) {
+      SectionName name = SectionName.fromString(section.getName());
+      if (name != null) {
+        sections.put(name, section);
+      }
+    }
+    try (InputStream in = openSection(SectionName.NS_INFO)) {
+      this.txid = NameSystemSection.parseDelimitedFrom(in).getTransactionId();
+    }
+    try (InputStream in = openSection(SectionName.INODE)) {
+      this.numInodes = INodeSection.parseDelimitedFrom(in).getNumInodes();
+    }
+  }
+
+  /**
+   * Opens the fsimage file. If the directory is specified, e.g. the "current"
+   * directory of the NameNode storage, the latest image in it is used.
+   */
+  public static FsImageLoader open(Configuration conf, String path) throws IOException {
+    File file = new File(path);
+    return new FsImageLoader(conf, file.isDirectory() ? findLatestImage(file) : file);
+  }
+
+  private static File findLatestImage(File dir) throws IOException {
+    File latestImage = null;
+    long latestTxid = -1;
+    File[] files = dir.listFiles();
+    for (File file : files == null ? new File[0] : files) {
+      Matcher matcher = IMAGE_NAME_PATTERN.matcher(file.getName());
+      if (matcher.matches() && Long.parseLong(matcher.group(1)) > latestTxid) {
+        latestTxid = Long.parseLong(matcher.group(1));
+        latestImage = file;
+      }
+    }
+    if (latestImage == null) {
+      throw new IOException("No fsimage files found in " + dir);
+    }
+    return latestImage;
+  }
+
+  public File getImageFile() {
+    return imageFile;
+  }
+
+  /**
+   * @return id of the last transaction included in the image
+   */
+  public long getTxid() {
+    return txid;
+  }
+
+  public long getNumInodes() {
+    return numInodes;
+  }
+
+  /**
+   * Streams files of the image to the consumer skipping the not covered and
+   * the ignored paths. Contents of the ignored directories are skipped as well.
+   * @return number of the loaded files
+   */
+  public long load(PathChecker pathChecker, FileInfoConsumer consumer)
+      throws IOException, InterruptedException {
+    long startTime = System.currentTimeMillis();
+    SerialNumberManager.StringTable stringTable = loadStringTable();
+    Map<String, Byte> ecPolicyIds = loadErasureCodingPolicies();
+    InodeTree tree = loadTree(stringTable, ecPolicyIds);
+    LOG.info("Loaded directory tree of the fsimage {} with {} inodes in {}ms",
+        imageFile, numInodes, System.currentTimeMillis() - startTime);
+
+    DirectoryResolver resolver = new DirectoryResolver(tree, pathChecker);
+    long loaded = 0;
+    try (InputStream in = openSection(SectionName.INODE)) {
+      INodeSection.parseDelimitedFrom(in);
+      for (long i = 0; i < numInodes; i++) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedException("Loading of the fsimage was interrupted");
+        }
+        FileInfo fileInfo = toFileInfo(INodeSection.INode.parseDelimitedFrom(in),
+            resolver, stringTable);
+        if (fileInfo != null) {
+          consumer.accept(fileInfo);
+          loaded++;
+        }
+      }
+    }
+    LOG.info("Loaded {} files from the fsimage {} in {}ms",
+        loaded, imageFile, System.currentTimeMillis() - startTime);
+    return loaded;
+  }
+
+  private SerialNumberManager.StringTable loadStringTable() throws IOException {
+    try (InputStream in = openSection(SectionName.STRING_TABLE)) {
+      StringTableSection header = StringTableSection.parseDelimitedFrom(in);
+      SerialNumberManager.StringTable stringTable =
+          SerialNumberManager.newStringTable(header.getNumEntry(), header.getMaskBits());
+      for (int i = 0; i < header.getNumEntry(); i++) {
+        StringTableSection.Entry entry = StringTableSection.Entry.parseDelimitedFrom(in);
+        stringTable.put(entry.getId(), entry.getStr());
+      }
+      return stringTable;
+    }
+  }
+
+  private Map<String, Byte> loadErasureCodingPolicies() throws IOException {
+    Map<String, Byte> policyIds = new HashMap<>();
+    if (!sections.containsKey(SectionName.ERASURE_CODING)) {
+      return policyIds;
+    }
+    try (InputStream in = openSection(SectionName.ERASURE_CODING)) {
+      ErasureCodingSection section = ErasureCodingSection.parseDelimitedFrom(in);
+      for (HdfsProtos.ErasureCodingPolicyProto policy : section.getPoliciesList()) {
+        policyIds.put(policy.getName(), (byte) policy.getId());
+      }
+    }
+    return policyIds;
+  }
+
+  private InodeTree loadTree(SerialNumberManager.StringTable stringTable,
+                             Map<String, Byte> ecPolicyIds) throws IOException {
+    // inodes renamed after the snapshot creation are listed by reference
+    List<Long> referredIds = new ArrayList<>();
+    if (sections.containsKey(SectionName.INODE_REFERENCE)) {
+      try (InputStream in = openSection(SectionName.INODE_REFERENCE)) {
+        INodeReferenceSection.INodeReference reference;
+        while ((reference = INodeReferenceSection.INodeReference.parseDelimitedFrom(in)) != null) {
+          referredIds.add(reference.getReferredId());
+        }
+      }
+    }
+
+    InodeTree tree = new InodeTree(numInodes);
+    try (InputStream in = openSection(SectionName.INODE_DIR)) {
+      INodeDirectorySection.DirEntry entry;
+      while ((entry = INodeDirectorySection.DirEntry.parseDelimitedFrom(in)) != null) {
+        for (int i = 0; i < entry.getChildrenCount(); i++) {
+          tree.setParent(entry.getChildren(i), entry.getParent());
+        }
+        for (int i = 0; i < entry.getRefChildrenCount(); i++) {
+          tree.setParent(referredIds.get(entry.getRefChildren(i)), entry.getParent());
+        }
+      }
+    }
+
+    try (InputStream in = openSection(SectionName.INODE)) {
+      INodeSection.parseDelimitedFrom(in);
+      for (long i = 0; i < numInodes; i++) {
+        INodeSection.INode inode = INodeSection.INode.parseDelimitedFrom(in);
+        if (inode.hasDirectory()) {
+          DirectoryPolicies policies = new DirectoryPolicies();
+          if (inode.getDirectory().hasXAttrs()) {
+            policies.load(FSImageFormatPBINode.Loader.loadXAttrs(
+                inode.getDirectory().getXAttrs(), stringTable), ecPolicyIds);
+          }
+          tree.setDirectory(inode.getId(), inode.getName().toByteArray(),
+              policies.storagePolicy, policies.ecPolicy);
+        }
+      }
+    }
+    return tree;
+  }
+
+  private FileInfo toFileInfo(INodeSection.INode inode,
+                              DirectoryResolver resolver,
+                              SerialNumberManager.StringTable stringTable) {
+    Directory parent = null;
+    if (inode.getId() != INodeId.ROOT_INODE_ID) {
+      long parentId = resolver.tree.getParent(inode.getId());
+      // inodes which are kept only in snapshots have no parent
+      parent = parentId == InodeTree.NO_PARENT ? null : resolver.resolve(parentId);
+      if (parent == null) {
+        return null;
+      }
+    }
+
+    FileInfo.Builder builder = FileInfo.newBuilder().setFileId(inode.getId());
+    String path;
+    long permission;
+    if (inode.hasDirectory()) {
+      Directory directory = resolver.resolve(inode.getId());
+      if (directory == null) {
+        return null;
+      }
+      path = resolver.directoryPath(directory);
+      permission = inode.getDirectory().getPermission();
+      builder.setIsdir(true)
+          .setModificationTime(inode.getDirectory().getModificationTime())
+          .setStoragePolicy(directory.storagePolicy)
+          .setErasureCodingPolicy(directory.ecPolicy);
+    } else if (inode.hasFile()) {
+      INodeSection.INodeFile file = inode.getFile();
+      path = resolver.filePath(parent, inode.getName().toByteArray());
+      permission = file.getPermission();
+      long length = 0;
+      for (HdfsProtos.BlockProto block : file.getBlocksList()) {
+        length += block.getNumBytes();
+      }
+      byte storagePolicy = (byte) file.getStoragePolicyID();
+      builder.setLength(length)
+          .setBlockReplication((short) file.getReplication())
+          .setBlocksize(file.getPreferredBlockSize())
+          .setModificationTime(file.getModificationTime())
+          .setAccessTime(file.getAccessTime())
+          .setStoragePolicy(storagePolicy == 0 ? parent.storagePolicy : storagePolicy)
+          .setErasureCodingPolicy(file.getBlockType() == HdfsProtos.BlockTypeProto.STRIPED
+              ? (byte) file.getErasureCodingPolicyID() : 0);
+    } else {
+      path = resolver.filePath(parent, inode.getName().toByteArray());
+      permission = inode.getSymlink().getPermission();
+      builder.setModificationTime(inode.getSymlink().getModificationTime())
+          .setAccessTime(inode.getSymlink().getAccessTime());
+    }
+    if (path == null) {
+      return null;
+    }
+
+    PermissionStatus permissionStatus =
+        FSImageFormatPBINode.Loader.loadPermission(permission, stringTable);
+    return builder.setPath(path)
+        .setPermission(permissionStatus.getPermission().toShort())
+        .setOwner(permissionStatus.getUserName())
+        .setGroup(permissionStatus.getGroupName())
+        .build();
+  }
+
+  private InputStream openSection(SectionName name) throws IOException {
+    FileSummary.Section section = sections.get(name);
+    if (section == null) {
+      throw new IOException("Section " + name + " not found in the fsimage " + imageFile);
+    }
+    FileInputStream in = new FileInputStream(imageFile);
+    try {
+      in.getChannel().position(section.getOffset());
+      return FSImageUtil.wrapInputStreamForCompression(conf, summary.getCodec(),
+          new BufferedInputStream(new LimitInputStream(in, section.getLength())));
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  private static String childPath(String parentPath, byte[] name) {
+    String childName = new String(name, StandardCharsets.UTF_8);
+    return parentPath.endsWith("/") ? parentPath + childName : parentPath + "/" + childName;
+  }
+
+  /**
+   * Consumer of the loaded files.
+   */
+  public interface FileInfoConsumer {
+    void accept(FileInfo fileInfo) throws InterruptedException;
+  }
+
+  private static class DirectoryPolicies {
+    private byte storagePolicy = 0;
+    // not set policy is inherited from the parent directory
+    private byte ecPolicy = InodeTree.NO_EC_POLICY;
+
+    private void load(List<XAttr> xAttrs, Map<String, Byte> ecPolicyIds) {
+      for (XAttr xAttr : xAttrs) {
+        if (BlockStoragePolicySuite.isStoragePolicyXAttr(xAttr)) {
+          storagePolicy = xAttr.getValue()[0];
+        } else if (XATTR_ERASURECODING_POLICY.equals(XAttrHelper.getPrefixedName(xAttr))) {
+          try {
+            String policyName = WritableUtils.readString(
+                new DataInputStream(new ByteArrayInputStream(xAttr.getValue())));
+            ecPolicy = ecPolicyIds.getOrDefault(policyName, (byte) 0);
+          } catch (IOException e) {
+            LOG.warn("Failed to read the erasure coding policy xattr", e);
+          }
+        }
+      }
+    }
+  }
+
+  private static class Directory {
+    private final String path;
+    private final byte storagePolicy;
+    private final byte ecPolicy;
+
+    private Directory(String path, byte storagePolicy, byte ecPolicy) {
+      this.path = path;
+      this.storagePolicy = storagePolicy;
+      this.ecPolicy = ecPolicy;
+    }
+  }
+
+  /**
+   * Rebuilds paths and inherited policies of the directories. Since inodes
+   * of the same directory are usually stored close to each other, the last
+   * resolved directories are cached.
+   */
+  private static class DirectoryResolver {
+    // marks the ignored directories and the directories outside of the tree
+    private static final Directory SKIPPED = new Directory(null, (byte) 0, (byte) 0);
+
+    private final InodeTree tree;
+    private final PathChecker pathChecker;
+    private final Map<Long, Directory> cache;
+
+    private DirectoryResolver(InodeTree tree, PathChecker pathChecker) {
+      this.tree = tree;
+      this.pathChecker = pathChecker;
+      this.cache = new LinkedHashMap<Long, Directory>(DIRECTORIES_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Directory> eldest) {
+          return size() > DIRECTORIES_CACHE_SIZE;
+        }
+      };
+    }
+
+    private Directory resolve(long id) {
+      Directory directory = cache.get(id);
+      if (directory == null) {
+        directory = doResolve(id);
+        cache.put(id, directory);
+      }
+      return directory == SKIPPED ? null : directory;
+    }
+
+    private Directory doResolve(long id) {
+      byte storagePolicy = tree.getStoragePolicy(id);
+      byte ecPolicy = tree.getEcPolicy(id);
+      if (id == INodeId.ROOT_INODE_ID) {
+        return pathChecker.isIgnored("/")
+            ? SKIPPED
+            : new Directory("/", storagePolicy, ecPolicy == InodeTree.NO_EC_POLICY ? 0 : ecPolicy);
+      }
+
+      long parentId = tree.getParent(id);
+      byte[] name = tree.getName(id);
+      Directory parent = parentId == InodeTree.NO_PARENT || name == null
+          ? null
+          : resolve(parentId);
+      if (parent == null) {
+        return SKIPPED;
+      }
+      String path = childPath(parent.path, name);
+      if (pathChecker.isIgnored(path) || pathChecker.isIgnored(path + "/")) {
+        return SKIPPED;
+      }
+      return new Directory(path,
+          storagePolicy == 0 ? parent.storagePolicy : storagePolicy,
+          ecPolicy == InodeTree.NO_EC_POLICY ? parent.ecPolicy : ecPolicy);
+    }
+
+    /**
+     * @return path to save or null if the file is ignored or isn't covered
+     */
+    private String filePath(Directory parent, byte[] name) {
+      String path = childPath(parent.path, name);
+      return pathChecker.isIgnored(path) || !pathChecker.isCovered(path) ? null : path;
+    }
+
+    /**
+     * @return path to save or null if the directory isn't covered
+     */
+    private String directoryPath(Directory directory) {
+      if (pathChecker.isCovered(directory.path)) {
+        return directory.path;
+      }
+      // roots of the cover directories are saved as the listing-based fetching does
+      String path = directory.path + "/";
+      return pathChecker.isCovered(path) ? path : null;
+    }
+  }
+
+  /**
+   * Open addressing table of the inode tree with the primitive inode id keys.
+   * Names and policies are stored only for the directories.
+   */
+  private static class InodeTree {
+    private static final long NO_PARENT = 0L;
+    private static final byte NO_EC_POLICY = -1;
+    private static final int MAX_CAPACITY_BITS = 30;
+
+    private final long[] ids;
+    private final long[] parents;
+    private final byte[][] names;
+    private final byte[] storagePolicies;
+    private final byte[] ecPolicies;
+    private final int shift;
+    private int size;
+
+    private InodeTree(long maxInodes) throws IOException {
+      // keep the load factor below 0.75
+      int bits = Math.max(4, 64 - Long.numberOfLeadingZeros(maxInodes * 4 / 3 + 1));
+      if (bits > MAX_CAPACITY_BITS) {
+        throw new IOException("Too many inodes in the fsimage: " + maxInodes);
+      }
+      this.ids = new long[1 << bits];
+      this.parents = new long[ids.length];
+      this.names = new byte[ids.length][];
+      this.storagePolicies = new byte[ids.length];
+      this.ecPolicies = new byte[ids.length];
+      this.shift = 64 - bits;
+      this.size = 0;
+      setParent(INodeId.ROOT_INODE_ID, NO_PARENT);
+    }
+
+    private int slot(long id) {
+      int mask = ids.length - 1;
+      int slot = (int) ((id * 0x9E3779B97F4A7C15L) >>> shift);
+      while (ids[slot] != 0 && ids[slot] != id) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private int insert(long id) {
+      int slot = slot(id);
+      if (ids[slot] == 0) {
+        if (size == ids.length - 1) {
+          throw new IllegalStateException("fsimage contains more inodes than declared");
+        }
+        ids[slot] = id;
+        ecPolicies[slot] = NO_EC_POLICY;
+        size++;
+      }
+      return slot;
+    }
+
+    private void setParent(long id, long parent) {
+      parents[insert(id)] = parent;
+    }
+
+    private void setDirectory(long id, byte[] name, byte storagePolicy, byte ecPolicy) {
+      int slot = slot(id);
+      // directories outside of the current tree aren't needed
+      if (ids[slot] == id) {
+        names[slot] = name;
+        storagePolicies[slot] = storagePolicy;
+        ecPolicies[slot] = ecPolicy;
+      }
+    }
+
+    private long getParent(long id) {
+      int slot = slot(id);
+      return ids[slot] == id ? parents[slot] : NO_PARENT;
+    }
+
+    private byte[] getName(long id) {
+      int slot = slot(id);
+      return ids[slot] == id ? names[slot] : null;
+    }
+
+    private byte getStoragePolicy(long id) {
+      int slot = slot(id);
+      return ids[slot] == id ? storagePolicies[slot] : 0;
+    }
+
+    private byte getEcPolicy(long id) {
+      int slot = slot(id);
+      return ids[slot] == id ? ecPolicies[slot] : NO_EC_POLICY;
+    }
+  }
+}
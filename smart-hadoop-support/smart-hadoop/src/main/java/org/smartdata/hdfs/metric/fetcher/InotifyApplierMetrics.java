@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+/**
+ * Metrics of the inotify events application. The lag is reported both
+ * in transactions and in seconds passed since the applier was last
+ * caught up with the NameNode edit log.
+ */
+public class InotifyApplierMetrics implements MetricsSource {
+  public static final String NAME = "InotifyApplier";
+
+  private final MetricsRegistry registry;
+  private final MutableCounterLong eventsApplied;
+  private final MutableCounterLong eventsCoalesced;
+  private final MutableRate windowApplyTime;
+  private final MutableGaugeLong lagTxids;
+  private final MutableGaugeLong lagSeconds;
+
+  public InotifyApplierMetrics() {
+    this.registry = new MetricsRegistry(NAME);
+    this.eventsApplied = registry.newCounter("EventsApplied",
+        "Number of the applied inotify events", 0L);
+    this.eventsCoalesced = registry.newCounter("EventsCoalesced",
+        "Number of the inotify events merged with the other events of the same path", 0L);
+    this.windowApplyTime = registry.newRate("WindowApplyTime",
+        "Time of the events window application in milliseconds", false);
+    this.lagTxids = registry.newGauge("LagTxids",
+        "Estimated number of the transactions not applied yet", 0L);
+    this.lagSeconds = registry.newGauge("LagSeconds",
+        "Seconds passed since the applier was last caught up with the edit log", 0L);
+  }
+
+  public void addWindow(int eventsNum, int coalescedNum, long applyTimeMs) {
+    eventsApplied.incr(eventsNum);
+    eventsCoalesced.incr(coalescedNum);
+    windowApplyTime.add(applyTimeMs);
+  }
+
+  public void setLag(long txids, long seconds) {
+    lagTxids.set(txids);
+    lagSeconds.set(seconds);
+  }
+
+  public long getEventsApplied() {
+    return eventsApplied.value();
+  }
+
+  public long getEventsCoalesced() {
+    return eventsCoalesced.value();
+  }
+
+  public long getLagTxids() {
+    return lagTxids.value();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    registry.snapshot(collector.addRecord(registry.info()), all);
+  }
+}
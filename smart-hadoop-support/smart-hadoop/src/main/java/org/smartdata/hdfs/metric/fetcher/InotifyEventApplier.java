@@ -19,7 +19,9 @@
 
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.io.WritableUtils;
 import org.slf4j.Logger;
@@ -29,6 +31,9 @@
 import org.smartdata.hdfs.HadoopUtil;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.metastore.accesscount.PathFidCache;
+import org.smartdata.metastore.transaction.TransactionRunner;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
 import org.smartdata.model.BackUpInfo;
 import org.smartdata.model.FileDiff;
 import org.smartdata.model.FileDiffType;
@@ -39,22 +44,47 @@
 import java.io.DataInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.smartdata.model.PathChecker;
 
 /**
  * This is a very preliminary and buggy applier, can further enhance by referring to
  * {@link org.apache.hadoop.hdfs.server.namenode.FSEditLogLoader}
+ *
+ * <p>Events are applied by windows. Creates, closes, metadata updates and unlinks
+ * of the same path are coalesced within the window, e.g. create, close and
+ * metadata updates of the new file result in the single file record, and the
+ * file created and deleted within the window is never inserted. Statuses of the
+ * created files are requested in batches and the whole window is applied in one
+ * metastore transaction. Renames and events of the backup sources are applied
+ * one by one in their original order, because their effect depends on the
+ * current content of the metastore.
  */
 public class InotifyEventApplier {
   private static final String ROOT_DIRECTORY = "/";
+  // minimal number of the created files in the same directory to list it
+  // instead of requesting statuses of the files one by one
+  private static final int MIN_LISTED_CHILDREN = 8;
 
   private final MetaStore metaStore;
+  // mappings are invalidated after the file table update,
+  // so concurrent lookups can't cache the outdated file id
+  private final PathFidCache pathFidCache;
   private final PathChecker pathChecker;
+  private final TransactionRunner transactionRunner;
+  private final InotifyApplierMetrics metrics;
   private DFSClient client;
   private static final Logger LOG =
       LoggerFactory.getLogger(InotifyEventFetcher.class);
@@ -71,14 +101,31 @@ public InotifyEventApplier(SmartConf conf, MetaStore metaStore, DFSClient client
 
   public InotifyEventApplier(SmartConf conf, MetaStore metaStore, DFSClient client) {
     this.metaStore = metaStore;
+    this.pathFidCache = metaStore.pathFidCache();
     this.client = client;
     this.pathChecker = new PathChecker(conf);
+    this.transactionRunner = new TransactionRunner(metaStore.transactionManager());
+    this.metrics = SmartMetricsSystem.register(InotifyApplierMetrics.NAME,
+        "Inotify events application", new InotifyApplierMetrics());
+  }
+
+  public InotifyApplierMetrics getMetrics() {
+    return metrics;
   }
 
   public void apply(List<Event> events) throws IOException, MetaStoreException, InterruptedException {
+    long startTime = System.currentTimeMillis();
+    EventWindow window = new EventWindow();
     for (Event event : events) {
-      apply(event);
+      if (!window.add(event)) {
+        // preceding events should be applied before the ones that can't be coalesced
+        window.flush();
+        apply(event);
+      }
     }
+    window.flush();
+    metrics.addWindow(events.size(), window.coalescedNum,
+        System.currentTimeMillis() - startTime);
   }
 
   public void apply(Event[] events) throws IOException, MetaStoreException, InterruptedException {
@@ -141,6 +188,7 @@ private void applyCreate(Event.CreateEvent createEvent) throws IOException, Meta
     metaStore.deleteFileByPath(fileInfo.getPath(), false);
     metaStore.deleteFileState(fileInfo.getPath());
     metaStore.insertFile(fileInfo);
+    pathFidCache.invalidate(fileInfo.getPath(), false);
   }
 
   private void applyRenameIgnoredFile(Event.RenameEvent renameEvent) throws IOException, MetaStoreException {
@@ -153,6 +201,8 @@ private void applyRenameIgnoredFile(Event.RenameEvent renameEvent) throws IOExce
     metaStore.deleteFileByPath(fileInfo.getPath(), false);
     metaStore.insertFile(fileInfo);
     metaStore.renameFile(renameEvent.getSrcPath(), renameEvent.getDstPath(), fileInfo.isdir());
+    pathFidCache.invalidate(renameEvent.getSrcPath(), fileInfo.isdir());
+    pathFidCache.invalidate(renameEvent.getDstPath(), fileInfo.isdir());
   }
 
   private FileInfo getFileInfo(String path) throws IOException {
@@ -257,6 +307,7 @@ private void applyRename(Event.RenameEvent renameEvent)
     FileInfo destInfo = metaStore.getFile(dest);
     if (destInfo != null) {
       metaStore.deleteFileByPath(dest, false);
+      pathFidCache.invalidate(dest, destInfo.isdir());
     }
     // src is not in file table because it is not fetched or other reason
     if (info == null) {
@@ -269,6 +320,7 @@ private void applyRename(Event.RenameEvent renameEvent)
           Thread.sleep(100);
         }
         namespaceFetcher.stop();
+        pathFidCache.invalidate(dest, status.isDir());
       }
       return;
     }
@@ -278,10 +330,13 @@ private void applyRename(Event.RenameEvent renameEvent)
     if (pathChecker.isIgnored(dest)) {
       // fuzzy matching is used to delete content under the dir
       metaStore.deleteFileByPath(src, true);
+      pathFidCache.invalidate(src, true);
       return;
     }
 
     metaStore.renameFile(src, dest, info.isdir());
+    pathFidCache.invalidate(src, info.isdir());
+    pathFidCache.invalidate(dest, info.isdir());
   }
 
   private void generateFileDiff(Event.RenameEvent renameEvent)
@@ -329,51 +384,69 @@ private void generateFileDiff(Event.RenameEvent renameEvent)
   }
 
   private void applyMetadataUpdate(Event.MetadataUpdateEvent metadataUpdateEvent) throws MetaStoreException {
-
-    FileDiff fileDiff = null;
+    if (metadataUpdateEvent.getMetadataType() == Event.MetadataUpdateEvent.MetadataType.ACLS) {
+      return;
+    }
     if (inBackup(metadataUpdateEvent.getPath())) {
-      fileDiff = new FileDiff(FileDiffType.METADATA);
-      fileDiff.setSrc(metadataUpdateEvent.getPath());
+      insertMetadataFileDiff(metadataUpdateEvent);
     }
     FileInfoDiff fileInfoUpdate = new FileInfoDiff();
+    addMetadataUpdate(metadataUpdateEvent, fileInfoUpdate);
+    updateFile(metadataUpdateEvent.getPath(), fileInfoUpdate);
+  }
+
+  private void insertMetadataFileDiff(Event.MetadataUpdateEvent metadataUpdateEvent)
+      throws MetaStoreException {
+    FileDiff fileDiff = new FileDiff(FileDiffType.METADATA);
+    fileDiff.setSrc(metadataUpdateEvent.getPath());
     switch (metadataUpdateEvent.getMetadataType()) {
       case TIMES:
+        if (metadataUpdateEvent.getMtime() <= 0) {
+          return;
+        }
+        fileDiff.getParameters().put("-mtime", String.valueOf(metadataUpdateEvent.getMtime()));
+        // fileDiff.getParameters().put("-access_time", "" + metadataUpdateEvent.getAtime());
+        break;
+      case OWNER:
+        fileDiff.getParameters().put("-owner", metadataUpdateEvent.getOwnerName());
+        break;
+      case PERMS:
+        fileDiff.getParameters().put("-permission", "" + metadataUpdateEvent.getPerms().toShort());
+        break;
+      case REPLICATION:
+        fileDiff.getParameters().put("-replication", "" + metadataUpdateEvent.getReplication());
+        break;
+      default:
+        return;
+    }
+    metaStore.insertFileDiff(fileDiff);
+  }
+
+  /**
+   * Merges changes of the metadata update event into the file update.
+   */
+  private void addMetadataUpdate(Event.MetadataUpdateEvent metadataUpdateEvent,
+                                 FileInfoDiff fileInfoUpdate) {
+    switch (metadataUpdateEvent.getMetadataType()) {
+      case TIMES:
+        // The property dfs.namenode.accesstime.precision in HDFS's configuration controls
+        // the precision of access time. Its default value is 1h. To avoid missing a
+        // MetadataUpdateEvent for updating access time, a smaller value should be set.
         if (metadataUpdateEvent.getMtime() > 0) {
-          if (fileDiff != null) {
-            fileDiff.getParameters().put("-mtime", String.valueOf(metadataUpdateEvent.getMtime()));
-            // fileDiff.getParameters().put("-access_time", "" + metadataUpdateEvent.getAtime());
-            metaStore.insertFileDiff(fileDiff);
-          }
           fileInfoUpdate.setModificationTime(metadataUpdateEvent.getMtime());
         }
         if (metadataUpdateEvent.getAtime() > 0) {
-          // if (fileDiff != null) {
-          //   fileDiff.getParameters().put("-access_time", "" + metadataUpdateEvent.getAtime());
-          //   metaStore.insertFileDiff(fileDiff);
-          // }
           fileInfoUpdate.setAccessTime(metadataUpdateEvent.getAtime());
         }
         break;
       case OWNER:
-        if (fileDiff != null) {
-          fileDiff.getParameters().put("-owner", metadataUpdateEvent.getOwnerName());
-          metaStore.insertFileDiff(fileDiff);
-        }
         fileInfoUpdate.setOwner(metadataUpdateEvent.getOwnerName())
             .setGroup(metadataUpdateEvent.getGroupName());
         break;
       case PERMS:
-        if (fileDiff != null) {
-          fileDiff.getParameters().put("-permission", "" + metadataUpdateEvent.getPerms().toShort());
-          metaStore.insertFileDiff(fileDiff);
-        }
         fileInfoUpdate.setPermission(metadataUpdateEvent.getPerms().toShort());
         break;
       case REPLICATION:
-        if (fileDiff != null) {
-          fileDiff.getParameters().put("-replication", "" + metadataUpdateEvent.getReplication());
-          metaStore.insertFileDiff(fileDiff);
-        }
         fileInfoUpdate.setBlockReplication((short) metadataUpdateEvent.getReplication());
         break;
       case XATTRS:
@@ -405,10 +478,15 @@ private void applyMetadataUpdate(Event.MetadataUpdateEvent metadataUpdateEvent)
           }
         }
         break;
-      case ACLS:
-        return;
+      default:
+    }
+  }
+
+  private void updateFile(String path, FileInfoDiff fileInfoUpdate) {
+    // e.g. the xattrs update unrelated to the erasure coding policy
+    if (!new FileInfoDiff().equals(fileInfoUpdate)) {
+      metaStore.updateFileByPath(path, fileInfoUpdate);
     }
-    metaStore.updateFileByPath(metadataUpdateEvent.getPath(), fileInfoUpdate);
   }
 
   private void applyUnlink(Event.UnlinkEvent unlinkEvent) throws MetaStoreException {
@@ -417,6 +495,7 @@ private void applyUnlink(Event.UnlinkEvent unlinkEvent) throws MetaStoreExceptio
       LOG.warn("Deleting root directory!!!");
       insertDeleteDiff(ROOT_DIRECTORY, true);
       metaStore.unlinkRootDirectory();
+      pathFidCache.invalidateAll();
       return;
     }
 
@@ -428,6 +507,7 @@ private void applyUnlink(Event.UnlinkEvent unlinkEvent) throws MetaStoreExceptio
     if (fileInfo != null) {
       insertDeleteDiff(unlinkEvent.getPath(), fileInfo.isdir());
       metaStore.unlinkFile(unlinkEvent.getPath(), fileInfo.isdir());
+      pathFidCache.invalidate(fileInfo.getPath(), fileInfo.isdir());
     }
   }
 
@@ -516,4 +596,263 @@ private boolean isUnderDir(String path, List<String> dirs) {
     }
     return false;
   }
+
+  /**
+   * Gets statuses of the files from the NameNode. Since there is no batch
+   * status request, the directory is listed instead of requesting statuses
+   * one by one if many of its children are requested.
+   */
+  private Map<String, FileInfo> getFileInfos(Collection<String> paths) throws IOException {
+    Map<String, FileInfo> fileInfos = new HashMap<>();
+    Set<String> lookedUpPaths = new HashSet<>();
+    Map<String, List<String>> pathsByParent = new HashMap<>();
+    for (String path : paths) {
+      int nameStart = path.lastIndexOf('/') + 1;
+      if (nameStart > 0 && nameStart < path.length()) {
+        String parent = nameStart == 1 ? ROOT_DIRECTORY : path.substring(0, nameStart - 1);
+        pathsByParent.computeIfAbsent(parent, key -> new ArrayList<>()).add(path);
+      }
+    }
+    for (Map.Entry<String, List<String>> children : pathsByParent.entrySet()) {
+      if (children.getValue().size() >= MIN_LISTED_CHILDREN) {
+        listChildren(children.getKey(), children.getValue(), fileInfos, lookedUpPaths);
+      }
+    }
+
+    for (String path : paths) {
+      if (!lookedUpPaths.contains(path)) {
+        FileInfo fileInfo = getFileInfo(path);
+        if (fileInfo != null) {
+          fileInfos.put(path, fileInfo);
+        }
+      }
+    }
+    return fileInfos;
+  }
+
+  /**
+   * Lists the part of the directory between the smallest and the largest
+   * requested names. Number of the listing requests is limited by the
+   * number of the requested children, the rest are requested one by one.
+   */
+  private void listChildren(String parent, List<String> childPaths,
+      Map<String, FileInfo> fileInfos, Set<String> lookedUpPaths) throws IOException {
+    Map<String, String> pathsByName = new HashMap<>();
+    byte[] minName = null;
+    byte[] maxName = null;
+    for (String path : childPaths) {
+      String name = path.substring(path.lastIndexOf('/') + 1);
+      pathsByName.put(name, path);
+      byte[] nameBytes = DFSUtilClient.string2Bytes(name);
+      if (minName == null || DFSUtilClient.compareBytes(nameBytes, minName) < 0) {
+        minName = nameBytes;
+      }
+      if (maxName == null || DFSUtilClient.compareBytes(nameBytes, maxName) > 0) {
+        maxName = nameBytes;
+      }
+    }
+
+    // the listing starts after the specified name,
+    // so start it from the prefix of the smallest name
+    byte[] startAfter = Arrays.copyOf(minName, minName.length - 1);
+    boolean listedAll = false;
+    for (int requests = 0; requests < childPaths.size() && !listedAll; requests++) {
+      DirectoryListing listing = client.listPaths(parent, startAfter);
+      if (listing == null) {
+        return;
+      }
+      for (HdfsFileStatus status : listing.getPartialListing()) {
+        String path = pathsByName.get(status.getLocalName());
+        if (path != null) {
+          fileInfos.put(path, HadoopUtil.convertFileStatus(status, path));
+          lookedUpPaths.add(path);
+        }
+      }
+      startAfter = listing.getLastName();
+      listedAll = !listing.hasMore()
+          || DFSUtilClient.compareBytes(startAfter, maxName) >= 0;
+    }
+    if (listedAll) {
+      // requested files absent in the listing were already deleted
+      lookedUpPaths.addAll(childPaths);
+    }
+  }
+
+  /**
+   * Events of the applied window coalesced by path.
+   */
+  private class EventWindow {
+    // latest state of the created files is requested from the NameNode,
+    // so their updates are not tracked
+    private final Set<String> createdPaths = new LinkedHashSet<>();
+    private final Map<String, FileInfoDiff> updates = new LinkedHashMap<>();
+    private final Set<String> unlinkedPaths = new LinkedHashSet<>();
+    private int coalescedNum = 0;
+
+    /**
+     * Adds the event to the window.
+     * @return false if the event can't be coalesced with other events
+     */
+    private boolean add(Event event) throws MetaStoreException {
+      switch (event.getEventType()) {
+        case CREATE:
+          return addCreate(((Event.CreateEvent) event).getPath());
+        case CLOSE:
+          Event.CloseEvent closeEvent = (Event.CloseEvent) event;
+          FileInfoDiff closeUpdate = getUpdate(closeEvent.getPath());
+          if (closeUpdate != null) {
+            closeUpdate.setLength(closeEvent.getFileSize())
+                .setModificationTime(closeEvent.getTimestamp());
+          }
+          return closeUpdate != null || createdPaths.contains(closeEvent.getPath());
+        case RENAME:
+          Event.RenameEvent renameEvent = (Event.RenameEvent) event;
+          // file renamed from the ignored path is a new one for the metastore
+          return pathChecker.isIgnored(renameEvent.getSrcPath())
+              && addCreate(renameEvent.getDstPath());
+        case METADATA:
+          Event.MetadataUpdateEvent metadataEvent = (Event.MetadataUpdateEvent) event;
+          if (metadataEvent.getMetadataType() == Event.MetadataUpdateEvent.MetadataType.ACLS) {
+            return true;
+          }
+          FileInfoDiff metadataUpdate = getUpdate(metadataEvent.getPath());
+          if (metadataUpdate != null) {
+            addMetadataUpdate(metadataEvent, metadataUpdate);
+          }
+          return metadataUpdate != null || createdPaths.contains(metadataEvent.getPath());
+        case APPEND:
+          return true;
+        case UNLINK:
+          return addUnlink(((Event.UnlinkEvent) event).getPath());
+        default:
+          return false;
+      }
+    }
+
+    private boolean addCreate(String path) throws MetaStoreException {
+      if (inBackup(path)) {
+        return false;
+      }
+      if (updates.remove(path) != null) {
+        coalescedNum++;
+      }
+      if (!createdPaths.add(path)) {
+        coalescedNum++;
+      }
+      return true;
+    }
+
+    /**
+     * Gets the pending update of the file existing before the window.
+     * @return null if the file is created in the window or
+     * the event should be applied separately
+     */
+    private FileInfoDiff getUpdate(String path) throws MetaStoreException {
+      if (createdPaths.contains(path)) {
+        coalescedNum++;
+        return null;
+      }
+      if (inBackup(path)) {
+        return null;
+      }
+      FileInfoDiff update = updates.get(path);
+      if (update != null) {
+        coalescedNum++;
+        return update;
+      }
+      update = new FileInfoDiff();
+      updates.put(path, update);
+      return update;
+    }
+
+    private boolean addUnlink(String path) throws MetaStoreException {
+      if (ROOT_DIRECTORY.equals(path) || inBackup(path)) {
+        return false;
+      }
+      String filePath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+      String dirPrefix = filePath + "/";
+      coalescedNum += removeUnlinked(createdPaths.iterator(), filePath, dirPrefix)
+          + removeUnlinked(updates.keySet().iterator(), filePath, dirPrefix);
+      if (!unlinkedPaths.add(path)) {
+        coalescedNum++;
+      }
+      return true;
+    }
+
+    private int removeUnlinked(Iterator<String> paths, String filePath, String dirPrefix) {
+      int removedNum = 0;
+      while (paths.hasNext()) {
+        String path = paths.next();
+        if (path.equals(filePath) || path.startsWith(dirPrefix)) {
+          paths.remove();
+          removedNum++;
+        }
+      }
+      return removedNum;
+    }
+
+    private void flush() throws IOException, MetaStoreException {
+      if (createdPaths.isEmpty() && updates.isEmpty() && unlinkedPaths.isEmpty()) {
+        return;
+      }
+      // request the NameNode before the transaction to keep it short
+      List<FileInfo> createdFiles = new ArrayList<>(getFileInfos(createdPaths).values());
+      List<FileInfo> unlinkedFiles = new ArrayList<>();
+      transactionRunner.inTransaction(() -> {
+        unlinkedFiles.addAll(applyUnlinks());
+        applyCreates(createdFiles);
+        for (Map.Entry<String, FileInfoDiff> update : updates.entrySet()) {
+          updateFile(update.getKey(), update.getValue());
+        }
+      });
+
+      for (FileInfo fileInfo : unlinkedFiles) {
+        pathFidCache.invalidate(fileInfo.getPath(), fileInfo.isdir());
+      }
+      for (FileInfo fileInfo : createdFiles) {
+        pathFidCache.invalidate(fileInfo.getPath(), false);
+      }
+      createdPaths.clear();
+      updates.clear();
+      unlinkedPaths.clear();
+    }
+
+    private List<FileInfo> applyUnlinks() throws MetaStoreException {
+      if (unlinkedPaths.isEmpty()) {
+        return new ArrayList<>();
+      }
+      // file has no "/" appended in the metaStore
+      Map<String, String> filePaths = new LinkedHashMap<>();
+      for (String path : unlinkedPaths) {
+        filePaths.put(path, path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+      }
+      Map<String, FileInfo> fileInfos = metaStore.getFilesByPaths(filePaths.values())
+          .stream()
+          .collect(Collectors.toMap(FileInfo::getPath, fileInfo -> fileInfo));
+
+      List<FileInfo> unlinkedFiles = new ArrayList<>();
+      for (Map.Entry<String, String> path : filePaths.entrySet()) {
+        FileInfo fileInfo = fileInfos.get(path.getValue());
+        if (fileInfo != null) {
+          metaStore.unlinkFile(path.getKey(), fileInfo.isdir());
+          unlinkedFiles.add(fileInfo);
+        }
+      }
+      return unlinkedFiles;
+    }
+
+    private void applyCreates(List<FileInfo> createdFiles) throws MetaStoreException {
+      if (createdFiles.isEmpty()) {
+        return;
+      }
+      List<String> paths = createdFiles.stream()
+          .map(FileInfo::getPath)
+          .collect(Collectors.toList());
+      metaStore.deleteFilesByPaths(paths);
+      for (String path : metaStore.getFileStates(paths).keySet()) {
+        metaStore.deleteFileState(path);
+      }
+      metaStore.insertFiles(createdFiles.toArray(new FileInfo[0]));
+    }
+  }
 }
@@ -53,6 +53,8 @@
 import java.util.concurrent.TimeUnit;
 
 public class InotifyEventFetcher {
+  private static final long NAMESPACE_FETCH_RETRY_DELAY_MS = 10_000L;
+
   private final DFSClient client;
   private final NamespaceFetcher nameSpaceFetcher;
   private final ScheduledExecutorService scheduledExecutorService;
@@ -99,8 +101,13 @@ public void start() throws IOException {
               && !isWhitelistChanged(conf, metaStore)) {
         startFromLastTxid(lastTxid);
       } else {
-        startWithFetchingNameSpace();
-        LOG.info("Start fetch namespace fully!");
+        FsImageLoader imageLoader = openFsImage();
+        if (imageLoader != null) {
+          startWithLoadingFsImage(imageLoader);
+        } else {
+          startWithFetchingNameSpace();
+          LOG.info("Start fetch namespace fully!");
+        }
       }
       //Update old whitelist
       try {
@@ -141,13 +148,54 @@ private Long getLastTxid() {
     }
   }
 
+  /**
+   * Opens the configured fsimage, if the inotify events following it
+   * are still available.
+   */
+  private FsImageLoader openFsImage() {
+    String imagePath = conf.getTrimmed(SmartConfKeys.SMART_NAMESPACE_FETCHER_FSIMAGE_PATH_KEY,
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_FSIMAGE_PATH_DEFAULT);
+    if (imagePath.isEmpty()) {
+      return null;
+    }
+    try {
+      FsImageLoader imageLoader = FsImageLoader.open(conf, imagePath);
+      if (canContinueFromLastTxid(client, imageLoader.getTxid())) {
+        return imageLoader;
+      }
+      LOG.warn("Edit log after the txid {} of the fsimage {} is not available, "
+          + "namespace will be fetched from NameNode", imageLoader.getTxid(),
+          imageLoader.getImageFile());
+    } catch (IOException e) {
+      LOG.warn("Failed to open fsimage {}, namespace will be fetched from NameNode",
+          imagePath, e);
+    }
+    return null;
+  }
+
+  private void startWithLoadingFsImage(FsImageLoader imageLoader) throws IOException {
+    LOG.info("Start loading namespace from fsimage with txid = " + imageLoader.getTxid());
+    nameSpaceFetcher.startLoad(imageLoader);
+    // the events are queued during the load, so that the NameNode
+    // can't purge them from the edit log before they are applied
+    startQueueingEvents(imageLoader.getTxid());
+  }
+
   private void startWithFetchingNameSpace() throws IOException {
-    ListeningExecutorService listeningExecutorService = MoreExecutors.listeningDecorator(scheduledExecutorService);
-    inotifyFile = new File("/tmp/inotify" + new Random().nextLong());
-    queueFile = new QueueFile(inotifyFile);
     long startId = client.getNamenode().getCurrentEditLogTxid();
     LOG.info("Start fetching namespace with current edit log txid = " + startId);
     nameSpaceFetcher.startFetch();
+    startQueueingEvents(startId);
+  }
+
+  /**
+   * Queues the inotify events following the startId to the file until
+   * the namespace is fetched, then applies them.
+   */
+  private void startQueueingEvents(long startId) throws IOException {
+    ListeningExecutorService listeningExecutorService = MoreExecutors.listeningDecorator(scheduledExecutorService);
+    inotifyFile = new File("/tmp/inotify" + new Random().nextLong());
+    queueFile = new QueueFile(inotifyFile);
     inotifyFetchFuture = scheduledExecutorService.scheduleAtFixedRate(
       new InotifyFetchTask(queueFile, client, startId), 0, 100, TimeUnit.MILLISECONDS);
     eventApplyTask = new EventApplyTask(nameSpaceFetcher, applier, queueFile, startId, conf);
@@ -156,6 +204,16 @@ private void startWithFetchingNameSpace() throws IOException {
     LOG.info("Start apply iNotify events.");
   }
 
+  private void stopQueueingEvents() {
+    inotifyFetchFuture.cancel(false);
+    nameSpaceFetcher.stop();
+    try {
+      queueFile.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close inotify queue file {}", inotifyFile, e);
+    }
+  }
+
   private void startFromLastTxid(long lastId) throws IOException {
     LOG.info("Skipped fetching Name Space, start applying inotify events from " + lastId);
     submitFetchAndApplyTask(lastId);
@@ -179,10 +237,8 @@ private class NameSpaceFetcherCallBack implements FutureCallback<Object> {
 
     @Override
     public void onSuccess(Object o) {
-      inotifyFetchFuture.cancel(false);
-      nameSpaceFetcher.stop();
+      stopQueueingEvents();
       try {
-        queueFile.close();
         submitFetchAndApplyTask(eventApplyTask.getLastId());
         LOG.info("Name space fetch finished.");
         finishedCallback.call();
@@ -193,7 +249,17 @@ public void onSuccess(Object o) {
 
     @Override
     public void onFailure(Throwable throwable) {
-      LOG.error("NameSpaceFetcher failed", throwable);
+      stopQueueingEvents();
+      inotifyFile.delete();
+      LOG.error("NameSpaceFetcher failed, fetching namespace from NameNode in {}ms",
+          NAMESPACE_FETCH_RETRY_DELAY_MS, throwable);
+      scheduledExecutorService.schedule(() -> {
+        try {
+          startWithFetchingNameSpace();
+        } catch (IOException e) {
+          LOG.error("Failed to start fetching namespace", e);
+        }
+      }, NAMESPACE_FETCH_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
     }
   }
 
@@ -281,6 +347,9 @@ public void run() {
           if (!namespaceFetcher.fetchFinished()) {
             Thread.sleep(100);
           } else {
+            if (namespaceFetcher.fetchFailed()) {
+              throw new IllegalStateException("Failed to fetch the whole namespace");
+            }
             while (!queueFile.isEmpty()) {
               EventBatch batch = EventBatchSerializer.deserialize(queueFile.peek());
               queueFile.remove();
@@ -24,12 +24,16 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smartdata.SmartConstants;
+import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.conf.SmartConf;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.model.SystemInfo;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class InotifyFetchAndApplyTask implements Runnable {
@@ -40,6 +44,8 @@ public class InotifyFetchAndApplyTask implements Runnable {
   private final InotifyEventApplier applier;
   private final DFSInotifyEventInputStream inotifyEventInputStream;
   private final INotifyEventFilter eventFilter;
+  private final int applyBatchSize;
+  private long lastCaughtUpTime;
 
   public InotifyFetchAndApplyTask(DFSClient client, MetaStore metaStore,
                                   InotifyEventApplier applier, long startId, SmartConf conf)
@@ -49,30 +55,51 @@ public InotifyFetchAndApplyTask(DFSClient client, MetaStore metaStore,
     this.lastId = new AtomicLong(startId);
     this.inotifyEventInputStream = client.getInotifyEventStream(startId);
     this.eventFilter = new INotifyEventFilter(conf);
+    this.applyBatchSize = conf.getInt(SmartConfKeys.SMART_INOTIFY_APPLY_BATCH_SIZE_KEY,
+        SmartConfKeys.SMART_INOTIFY_APPLY_BATCH_SIZE_DEFAULT);
+    this.lastCaughtUpTime = System.currentTimeMillis();
   }
 
   @Override
   public void run() {
     LOG.trace("InotifyFetchAndApplyTask run at " +  new Date());
     try {
+      List<Event> events = new ArrayList<>();
       EventBatch eventBatch = inotifyEventInputStream.poll();
       while (eventBatch != null) {
-        Event[] filteredEvents = eventFilter.filterIgnored(eventBatch.getEvents());
-        if (filteredEvents.length != 0) {
-          applier.apply(filteredEvents);
-        }
-
-        lastId.getAndSet(eventBatch.getTxid());
-        metaStore.updateAndInsertIfNotExist(
-            new SystemInfo(
-                SmartConstants.SMART_HDFS_LAST_INOTIFY_TXID, String.valueOf(lastId.get())));
+        Collections.addAll(events, eventFilter.filterIgnored(eventBatch.getEvents()));
+        long txid = eventBatch.getTxid();
         eventBatch = inotifyEventInputStream.poll();
+        // apply events of several batches together until all available batches are fetched
+        if (eventBatch == null || events.size() >= applyBatchSize) {
+          apply(events, txid);
+          events.clear();
+        }
       }
+      lastCaughtUpTime = System.currentTimeMillis();
+      updateLag();
     } catch (Throwable t) {
       LOG.error("Inotify Apply Events error", t);
     }
   }
 
+  private void apply(List<Event> events, long txid) throws Exception {
+    if (!events.isEmpty()) {
+      applier.apply(events.toArray(new Event[0]));
+    }
+    lastId.getAndSet(txid);
+    metaStore.updateAndInsertIfNotExist(
+        new SystemInfo(
+            SmartConstants.SMART_HDFS_LAST_INOTIFY_TXID, String.valueOf(lastId.get())));
+    updateLag();
+  }
+
+  private void updateLag() {
+    long lagTxids = Math.max(inotifyEventInputStream.getTxidsBehindEstimate(), 0);
+    long lagSeconds = (System.currentTimeMillis() - lastCaughtUpTime) / 1000;
+    applier.getMetrics().setLag(lagTxids, lagSeconds);
+  }
+
   public long getLastId() {
     return this.lastId.get();
   }
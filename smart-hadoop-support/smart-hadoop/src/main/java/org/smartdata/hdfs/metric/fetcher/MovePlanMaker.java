@@ -28,7 +28,6 @@
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
-import org.apache.hadoop.hdfs.server.balancer.Matcher;
 import org.apache.hadoop.net.NetworkTopology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,37 +41,32 @@
 import org.smartdata.model.action.FileMovePlan;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A processor to do Mover action.
+ * A processor to do Mover action. Plans can be made for multiple files
+ * concurrently: each plan uses the snapshot of the cluster storages,
+ * which is replaced as a whole on cluster info update.
  */
 public class MovePlanMaker {
   static final Logger LOG = LoggerFactory.getLogger(MovePlanMaker.class);
 
   private final DFSClient dfs;
-  private NetworkTopology networkTopology;
-  private StorageMap storages;
-  private final AtomicInteger retryCount;
+  private volatile MoveTargetIndex targetIndex;
 
   private final Map<String, BlockStoragePolicy> mapStoragePolicies;
   private final Map<Byte, String> mapPolicyIdToName;
   private final MovePlanStatistics statistics;
-  private FileMovePlan schedulePlan;
 
   public MovePlanMaker(DFSClient dfsClient, StorageMap storages,
       NetworkTopology cluster, MovePlanStatistics statistics) throws IOException {
     this.dfs = dfsClient;
-    this.storages = storages;
-    this.networkTopology = cluster;
-    this.retryCount = new AtomicInteger(1);
+    this.targetIndex = new MoveTargetIndex(storages, cluster);
     this.mapStoragePolicies = new HashMap<>();
     this.mapPolicyIdToName = new HashMap<>();
     initStoragePolicies();
@@ -88,18 +82,27 @@ private void initStoragePolicies() throws IOException {
     }
   }
 
-  public synchronized void updateClusterInfo(StorageMap storages, NetworkTopology cluster) {
-    this.storages = storages;
-    this.networkTopology = cluster;
+  public void updateClusterInfo(StorageMap storages, NetworkTopology cluster) {
+    this.targetIndex = new MoveTargetIndex(storages, cluster);
   }
 
   /**
    * @return whether there is still remaining migration work for the next
    * round
    */
-  public synchronized FileMovePlan processNamespace(Path targetPath, String destPolicy)
+  public FileMovePlan processNamespace(Path targetPath, String destPolicy)
       throws IOException {
-    schedulePlan = new FileMovePlan();
+    return makePlan(targetPath, destPolicy).getPlan();
+  }
+
+  /**
+   * Makes the plan keeping track of the space reserved for it,
+   * so the space can be released if the plan isn't executed.
+   */
+  public ReservedMovePlan makePlan(Path targetPath, String destPolicy)
+      throws IOException {
+    FileMovePlan schedulePlan = new FileMovePlan();
+    ReservedMovePlan reservedPlan = new ReservedMovePlan(schedulePlan, targetIndex);
     String filePath = targetPath.toUri().getPath();
     schedulePlan.setFileName(filePath);
     schedulePlan.setDestStoragePolicy(destPolicy);
@@ -110,7 +113,7 @@ public synchronized FileMovePlan processNamespace(Path targetPath, String destPo
     }
     if (status.isDir()) {
       schedulePlan.setDir(true);
-      return schedulePlan;
+      return reservedPlan;
     }
 
     byte currSpId = status.getStoragePolicy();
@@ -139,15 +142,24 @@ public synchronized FileMovePlan processNamespace(Path targetPath, String destPo
     schedulePlan.setModificationTime(status.getModificationTime());
     schedulePlan.setDir(false);
     schedulePlan.setFileLength(status.getLen());
-    processFile(targetPath.toUri().getPath(), (HdfsLocatedFileStatus) status, destPolicy);
-    return schedulePlan;
+    processFile(reservedPlan,
+        targetPath.toUri().getPath(), (HdfsLocatedFileStatus) status, destPolicy);
+    return reservedPlan;
+  }
+
+  /**
+   * Checks whether the plan was made with the outdated snapshot of the cluster storages.
+   */
+  public boolean isOutdated(ReservedMovePlan reservedPlan) {
+    return reservedPlan.getTargetIndex() != targetIndex;
   }
 
   /**
    * @return true if it is necessary to run another round of migration
    */
-  private void processFile(String fullPath, HdfsLocatedFileStatus status,
-      String destPolicy) throws IOException {
+  private void processFile(ReservedMovePlan reservedPlan,
+      String fullPath, HdfsLocatedFileStatus status, String destPolicy) throws IOException {
+    FileMovePlan schedulePlan = reservedPlan.getPlan();
     final BlockStoragePolicy policy = mapStoragePolicies.get(destPolicy);
     if (policy == null) {
       LOG.warn("Failed to get the storage policy of file " + fullPath);
@@ -181,7 +193,7 @@ private void processFile(String fullPath, HdfsLocatedFileStatus status,
       statistics.increaseTotalSize(toMove);
       statistics.increaseTotalBlocks(remainingReplications);
       if (remainingReplications != 0) {
-        scheduleMoveBlock(diff, lb, status);
+        scheduleMoveBlock(reservedPlan, diff, lb, status);
       }
     }
   }
@@ -189,7 +201,9 @@ private void processFile(String fullPath, HdfsLocatedFileStatus status,
   /**
    * TODO: consider the case that fails to move some blocks, i.e., scheduleMoveReplica fails.
    */
-  void scheduleMoveBlock(StorageTypeDiff diff, LocatedBlock lb, HdfsFileStatus status) {
+  void scheduleMoveBlock(ReservedMovePlan reservedPlan,
+      StorageTypeDiff diff, LocatedBlock lb, HdfsFileStatus status) {
+    MoveTargetIndex targets = reservedPlan.getTargetIndex();
     final List<MLocation> locations = MLocation.toLocations(lb);
     if (!(lb instanceof LocatedStripedBlock)) {
       // Shuffle replica locations to make storage medium in balance.
@@ -201,7 +215,7 @@ void scheduleMoveBlock(StorageTypeDiff diff, LocatedBlock lb, HdfsFileStatus sta
     final DBlock db =
         CompatibilityHelperLoader.getHelper().newDBlock(lb, status);
     for (MLocation ml : locations) {
-      StorageGroup source = storages.getSource(ml);
+      StorageGroup source = targets.getSource(ml);
       if (source != null) {
         db.addLocation(source);
       }
@@ -212,14 +226,17 @@ void scheduleMoveBlock(StorageTypeDiff diff, LocatedBlock lb, HdfsFileStatus sta
       Iterator<MLocation> iter = locations.iterator();
       while (iter.hasNext()) {
         MLocation ml = iter.next();
-        final Source source = storages.getSource(ml);
+        final Source source = targets.getSource(ml);
         // Check whether the replica's storage type equals with the one
         // in diff's existing list. If so, try to schedule the moving.
         if (ml.getStorageType() == t && source != null) {
           // Schedule moving a replica on a source location.
           // The corresponding storage type in diff's expected list is used.
-          if (scheduleMoveReplica(db, source,
-              Arrays.asList(diff.expected.get(index)))) {
+          StorageGroup target = targets.chooseTarget(source,
+              Collections.singletonList(diff.expected.get(index)), lb.getBlockSize());
+          if (target != null) {
+            reservedPlan.reserve(target, lb.getBlockSize());
+            addPlan(reservedPlan.getPlan(), source, target, db.getBlock().getBlockId());
             // If the replica is successfully scheduled to move.
             // No need to consider it any more.
             iter.remove();
@@ -231,61 +248,8 @@ void scheduleMoveBlock(StorageTypeDiff diff, LocatedBlock lb, HdfsFileStatus sta
     }
   }
 
-  boolean scheduleMoveReplica(DBlock db, Source source, List<String> targetTypes) {
-    // Match storage on the same node
-    if (chooseTargetInSameNode(db, source, targetTypes)) {
-      return true;
-    }
-
-    if (networkTopology.isNodeGroupAware()) {
-      if (chooseTarget(db, source, targetTypes, Matcher.SAME_NODE_GROUP)) {
-        return true;
-      }
-    }
-
-    // Then, match nodes on the same rack
-    if (chooseTarget(db, source, targetTypes, Matcher.SAME_RACK)) {
-      return true;
-    }
-    // At last, match all remaining nodes
-    return chooseTarget(db, source, targetTypes, Matcher.ANY_OTHER);
-  }
-
-  /**
-   * Choose the target storage within same Datanode if possible.
-   */
-  boolean chooseTargetInSameNode(DBlock db, Source source,
-                                 List<String> targetTypes) {
-    for (String t : targetTypes) {
-      StorageGroup target = storages.getTarget(source.getDatanodeInfo()
-              .getDatanodeUuid(), t);
-      if (target == null) {
-        continue;
-      }
-      addPlan(source, target, db.getBlock().getBlockId());
-      return true;
-    }
-    return false;
-  }
-
-  boolean chooseTarget(DBlock db, Source source,
-                       List<String> targetTypes, Matcher matcher) {
-    final NetworkTopology cluster = this.networkTopology;
-    for (String t : targetTypes) {
-      final List<StorageGroup> targets = storages.getTargetStorages(t);
-      Collections.shuffle(targets);
-      for (StorageGroup target : targets) {
-        if (matcher.match(cluster, source.getDatanodeInfo(),
-                target.getDatanodeInfo())) {
-          addPlan(source, target, db.getBlock().getBlockId());
-          return true;
-        }
-      }
-    }
-    return false;
-  }
-
-  private void addPlan(StorageGroup source, StorageGroup target, long blockId) {
+  private void addPlan(FileMovePlan schedulePlan,
+      StorageGroup source, StorageGroup target, long blockId) {
     DatanodeInfo sourceDatanode = source.getDatanodeInfo();
     DatanodeInfo targetDatanode = target.getDatanodeInfo();
     schedulePlan.addPlan(blockId, sourceDatanode.getDatanodeUuid(), source.getStorageType(),
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.server.balancer.Matcher;
+import org.apache.hadoop.net.NetworkTopology;
+import org.smartdata.hdfs.action.move.MLocation;
+import org.smartdata.hdfs.action.move.Source;
+import org.smartdata.hdfs.action.move.StorageGroup;
+import org.smartdata.hdfs.action.move.StorageMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Snapshot of the cluster storages used to choose targets of the block moves.
+ * Targets are indexed by storage type and rack, so only the suitable
+ * targets are checked. Space of the targets chosen for the plans made
+ * since the snapshot creation is reserved, so the concurrent plans don't
+ * overfill the same storages. The index isn't changed after creation
+ * except for the reservations, so it can be used by multiple threads.
+ */
+public class MoveTargetIndex {
+  private final StorageMap storages;
+  private final NetworkTopology networkTopology;
+  private final Map<String, List<StorageGroup>> typeTargets;
+  private final Map<String, Map<String, List<StorageGroup>>> typeRackTargets;
+  private final Map<StorageGroup, AtomicLong> remainingSpace;
+
+  public MoveTargetIndex(StorageMap storages, NetworkTopology networkTopology) {
+    this.storages = storages;
+    this.networkTopology = networkTopology;
+    this.typeTargets = new HashMap<>();
+    this.typeRackTargets = new HashMap<>();
+    this.remainingSpace = new HashMap<>();
+
+    for (StorageGroup target : storages.getTargets().values()) {
+      String storageType = target.getStorageType();
+      typeTargets.computeIfAbsent(storageType, type -> new ArrayList<>()).add(target);
+      typeRackTargets.computeIfAbsent(storageType, type -> new HashMap<>())
+          .computeIfAbsent(getRack(target.getDatanodeInfo()), rack -> new ArrayList<>())
+          .add(target);
+      remainingSpace.put(target, new AtomicLong(storages.getTargetRemaining(target)));
+    }
+  }
+
+  public Source getSource(MLocation location) {
+    return storages.getSource(location);
+  }
+
+  /**
+   * Chooses the target of the replica move preferring the same datanode,
+   * then the same node group and rack and then any other datanode.
+   * Space of the chosen target is reserved for the block.
+   *
+   * @return null if there are no targets with enough space
+   */
+  public StorageGroup chooseTarget(Source source, List<String> targetTypes, long blockSize) {
+    DatanodeInfo sourceNode = source.getDatanodeInfo();
+    for (String type : targetTypes) {
+      StorageGroup target = storages.getTarget(sourceNode.getDatanodeUuid(), type);
+      if (target != null && reserve(target, blockSize)) {
+        return target;
+      }
+    }
+
+    if (networkTopology != null && networkTopology.isNodeGroupAware()) {
+      StorageGroup target = chooseTarget(targetTypes, blockSize, this::getRackTargets,
+          sourceNode, node -> Matcher.SAME_NODE_GROUP.match(networkTopology, sourceNode, node));
+      if (target != null) {
+        return target;
+      }
+    }
+
+    StorageGroup target = chooseTarget(targetTypes, blockSize, this::getRackTargets,
+        sourceNode, node -> true);
+    if (target != null) {
+      return target;
+    }
+    return chooseTarget(targetTypes, blockSize, (type, node) -> getTargets(type),
+        sourceNode, node -> !node.getDatanodeUuid().equals(sourceNode.getDatanodeUuid()));
+  }
+
+  private StorageGroup chooseTarget(List<String> targetTypes, long blockSize,
+      CandidatesProvider candidatesProvider, DatanodeInfo sourceNode,
+      Predicate<DatanodeInfo> nodeMatcher) {
+    for (String type : targetTypes) {
+      List<StorageGroup> candidates = candidatesProvider.getCandidates(type, sourceNode);
+      if (candidates.isEmpty()) {
+        continue;
+      }
+      // start from the random target to spread moves over the cluster
+      int offset = ThreadLocalRandom.current().nextInt(candidates.size());
+      for (int i = 0; i < candidates.size(); i++) {
+        StorageGroup target = candidates.get((offset + i) % candidates.size());
+        if (nodeMatcher.test(target.getDatanodeInfo()) && reserve(target, blockSize)) {
+          return target;
+        }
+      }
+    }
+    return null;
+  }
+
+  public List<StorageGroup> getTargets(String storageType) {
+    return typeTargets.getOrDefault(storageType, Collections.emptyList());
+  }
+
+  public List<StorageGroup> getRackTargets(String storageType, DatanodeInfo node) {
+    return typeRackTargets.getOrDefault(storageType, Collections.emptyMap())
+        .getOrDefault(getRack(node), Collections.emptyList());
+  }
+
+  public long getRemainingSpace(StorageGroup target) {
+    AtomicLong remaining = remainingSpace.get(target);
+    return remaining == null ? 0 : remaining.get();
+  }
+
+  /**
+   * Returns the space reserved for the plan, which isn't going to be executed.
+   */
+  void release(StorageGroup target, long size) {
+    AtomicLong remaining = remainingSpace.get(target);
+    if (remaining != null) {
+      remaining.addAndGet(size);
+    }
+  }
+
+  private boolean reserve(StorageGroup target, long size) {
+    AtomicLong remaining = remainingSpace.get(target);
+    if (remaining == null) {
+      return false;
+    }
+    long current;
+    do {
+      current = remaining.get();
+      if (current < size) {
+        return false;
+      }
+    } while (!remaining.compareAndSet(current, current - size));
+    return true;
+  }
+
+  private static String getRack(DatanodeInfo node) {
+    return node.getNetworkLocation() == null
+        ? NetworkTopology.DEFAULT_RACK
+        : node.getNetworkLocation();
+  }
+
+  private interface CandidatesProvider {
+    List<StorageGroup> getCandidates(String storageType, DatanodeInfo sourceNode);
+  }
+}
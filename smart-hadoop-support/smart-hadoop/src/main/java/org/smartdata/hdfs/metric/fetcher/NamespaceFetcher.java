@@ -17,6 +17,7 @@
  */
 package org.smartdata.hdfs.metric.fetcher;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.hdfs.DFSClient;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
@@ -28,78 +29,125 @@
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
 import org.smartdata.metastore.ingestion.FileStatusIngester;
-import org.smartdata.metastore.ingestion.IngestionTask;
+import org.smartdata.metastore.ingestion.IngestionQueue;
+import org.smartdata.metastore.ingestion.NamespaceIngestionMetrics;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
 import org.smartdata.model.ErasureCodingPolicyInfo;
 import org.smartdata.model.FileInfo;
 import org.smartdata.model.FileInfoBatch;
+import org.smartdata.model.PathChecker;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import org.smartdata.model.PathChecker;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.smartdata.hdfs.CompatibilityHelperLoader.getHelper;
 
+/**
+ * Fetches the namespace to the metastore file table.
+ *
+ * <p>Directories are listed in parallel by the producers pool. Each listed
+ * subdirectory is forked as a separate task, so idle producers steal the
+ * directories from the busy ones. Producers put the fetched files to the
+ * bounded {@link IngestionQueue}, which is drained by the
+ * {@link FileStatusIngester} consumers. Progress of the fetching is reported
+ * with the {@link NamespaceIngestionMetrics}. Producers blocked by the full
+ * queue are compensated by the pool, so they don't starve the other tasks.
+ * Failure to fetch any directory marks the whole fetching as failed.
+ *
+ * <p>Alternatively, the namespace can be loaded from the fsimage
+ * by the {@link FsImageLoader}, which replaces the listing producers.
+ */
 public class NamespaceFetcher {
-  private final ScheduledExecutorService scheduledExecutorService;
-  private final long fetchInterval;
-  private ScheduledFuture[] fetchTaskFutures;
-  private ScheduledFuture[] consumerFutures;
-  private FileStatusIngester[] consumers;
-  private IngestionTask[] ingestionTasks;
-  private DFSClient client;
-  private MetaStore metaStore;
-  private SmartConf conf;
-
   public static final Logger LOG = LoggerFactory.getLogger(NamespaceFetcher.class);
 
+  private final DFSClient client;
+  private final MetaStore metaStore;
+  private final SmartConf conf;
+  private final PathChecker pathChecker;
+  private final ExecutorService executorService;
+  private final int numProducers;
+  private final int numConsumers;
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final int maxPendingBatches;
+  private final boolean estimateTotal;
+  private final NamespaceIngestionMetrics metrics;
+  private volatile Ingestion ingestion;
+
   public NamespaceFetcher(DFSClient client, MetaStore metaStore, SmartConf conf) {
     this(client, metaStore, null, conf);
   }
 
   public NamespaceFetcher(DFSClient client, MetaStore metaStore,
                           ScheduledExecutorService service, SmartConf conf) {
-    int numProducers = conf.getInt(SmartConfKeys.SMART_NAMESPACE_FETCHER_PRODUCERS_NUM_KEY,
-        SmartConfKeys.SMART_NAMESPACE_FETCHER_PRODUCERS_NUM_DEFAULT);
-    numProducers = numProducers <= 0 ? 1 : numProducers;
-    this.ingestionTasks = new IngestionTask[numProducers];
-    HdfsFetchTask.init();
-    for (int i = 0; i < numProducers; i++) {
-      ingestionTasks[i] = new HdfsFetchTask(ingestionTasks, client, conf);
-    }
-
-    int numConsumers = conf.getInt(SmartConfKeys.SMART_NAMESPACE_FETCHER_CONSUMERS_NUM_KEY,
-        SmartConfKeys.SMART_NAMESPACE_FETCHER_CONSUMERS_NUM_DEFAULT);
-    numConsumers = numConsumers <= 0 ? 1 : numConsumers;
-    consumers = new FileStatusIngester[numConsumers];
-    for (int i = 0; i < numConsumers; i++) {
-      consumers[i] = new FileStatusIngester(metaStore);
-    }
-    this.fetchInterval = conf.getLong(
-        SmartConfKeys.SMART_NAMESPACE_FETCH_INTERVAL_MS_KEY,
-        SmartConfKeys.SMART_NAMESPACE_FETCH_INTERVAL_MS_DEFAULT
-    );
-    if (service != null) {
-      this.scheduledExecutorService = service;
-    } else {
-      scheduledExecutorService = Executors.newScheduledThreadPool(numProducers + numConsumers);
-    }
     this.client = client;
     this.metaStore = metaStore;
     this.conf = conf;
+    this.pathChecker = new PathChecker(conf);
+    this.numProducers = Math.max(1, conf.getInt(
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_PRODUCERS_NUM_KEY,
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_PRODUCERS_NUM_DEFAULT));
+    this.numConsumers = Math.max(1, conf.getInt(
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_CONSUMERS_NUM_KEY,
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_CONSUMERS_NUM_DEFAULT));
+    this.minBatchSize = conf.getInt(SmartConfKeys.SMART_NAMESPACE_FETCHER_BATCH_KEY,
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_BATCH_DEFAULT);
+    this.maxBatchSize = conf.getInt(SmartConfKeys.SMART_NAMESPACE_FETCHER_MAX_BATCH_KEY,
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_MAX_BATCH_DEFAULT);
+    this.maxPendingBatches = conf.getInt(
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_MAX_PENDING_BATCHES_KEY,
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_MAX_PENDING_BATCHES_DEFAULT);
+    this.estimateTotal = conf.getBoolean(
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_ESTIMATE_TOTAL_KEY,
+        SmartConfKeys.SMART_NAMESPACE_FETCHER_ESTIMATE_TOTAL_DEFAULT);
+    // consumers, producers watcher and total files estimation or fsimage loading
+    this.executorService = service != null
+        ? service
+        : Executors.newFixedThreadPool(numConsumers + 2, new ThreadFactoryBuilder()
+            .setNameFormat("namespace-ingester-%d")
+            .setDaemon(true)
+            .build());
+    this.metrics = SmartMetricsSystem.register(NamespaceIngestionMetrics.NAME,
+        "Namespace fetching progress", new NamespaceIngestionMetrics());
   }
 
-  public static void init(SmartConf conf) {
-    IngestionTask.init(conf);
+  public void startFetch() throws IOException {
+    resetNamespace();
+    List<String> fetchDirs = conf.getCoverDirs();
+    startIngestion(fetchDirs.isEmpty()
+        ? Collections.singletonList("/")
+        : fetchDirs);
+    LOG.info("Started.");
   }
 
-  public void startFetch() throws IOException {
+  /**
+   * Loads the whole namespace from the fsimage instead of listing it.
+   */
+  public void startLoad(FsImageLoader imageLoader) throws IOException {
+    resetNamespace();
+    stop();
+    IngestionQueue queue = new IngestionQueue(minBatchSize, maxBatchSize, maxPendingBatches);
+    metrics.start(queue);
+    ingestion = new Ingestion(queue);
+    ingestion.startLoad(imageLoader);
+    LOG.info("Started loading namespace from the fsimage {}", imageLoader.getImageFile());
+  }
+
+  private void resetNamespace() throws IOException {
     try {
-      init(conf);
       metaStore.deleteAllEcPolicies();
       Map<Byte, String> idToPolicyName =
           CompatibilityHelperLoader.getHelper().getErasureCodingPolicies(client);
@@ -120,22 +168,6 @@ public void startFetch() throws IOException {
     } catch (MetaStoreException e) {
       throw new IOException("Error while reset files", e);
     }
-    this.fetchTaskFutures = new ScheduledFuture[ingestionTasks.length];
-    for (int i = 0; i < ingestionTasks.length; i++) {
-      fetchTaskFutures[i] = this.scheduledExecutorService.scheduleAtFixedRate(
-          ingestionTasks[i], 0, fetchInterval, TimeUnit.MILLISECONDS);
-    }
-
-    this.consumerFutures = new ScheduledFuture[consumers.length];
-    for (int i = 0; i < consumers.length; i++) {
-      consumerFutures[i] = this.scheduledExecutorService.scheduleAtFixedRate(
-          consumers[i], 0, fetchInterval, TimeUnit.MILLISECONDS);
-    }
-    LOG.info("Started.");
-  }
-
-  public static void init(String dir) {
-    IngestionTask.init(dir);
   }
 
   /*
@@ -144,224 +176,329 @@ public static void init(String dir) {
   dest should be fetched by using startFetch(dest).
   */
   public void startFetch(String dir) {
-    init(dir);
-    this.fetchTaskFutures = new ScheduledFuture[ingestionTasks.length];
-    for (int i = 0; i < ingestionTasks.length; i++) {
-      fetchTaskFutures[i] = this.scheduledExecutorService.scheduleAtFixedRate(
-          ingestionTasks[i], 0, fetchInterval, TimeUnit.MILLISECONDS);
-    }
-
-    this.consumerFutures = new ScheduledFuture[consumers.length];
-    for (int i = 0; i < consumers.length; i++) {
-      consumerFutures[i] = this.scheduledExecutorService.scheduleAtFixedRate(
-          consumers[i], 0, fetchInterval, TimeUnit.MILLISECONDS);
-    }
+    startIngestion(Collections.singletonList(dir));
     LOG.info("Start fetch the given dir.");
   }
 
   public boolean fetchFinished() {
-    return IngestionTask.finished();
+    Ingestion currentIngestion = ingestion;
+    return currentIngestion != null && currentIngestion.isFinished();
+  }
+
+  /**
+   * @return true if the last fetching has finished, but failed to fetch
+   * the whole namespace
+   */
+  public boolean fetchFailed() {
+    Ingestion currentIngestion = ingestion;
+    return currentIngestion != null && currentIngestion.isFinished() && currentIngestion.failed;
   }
 
   public void stop() {
-    if (fetchTaskFutures != null) {
-      for (ScheduledFuture f : fetchTaskFutures) {
-        if (f != null) {
-          f.cancel(true);
-        }
-      }
+    Ingestion currentIngestion = ingestion;
+    if (currentIngestion != null) {
+      currentIngestion.stop();
     }
-    if (consumerFutures != null) {
-      for (ScheduledFuture f : consumerFutures) {
-        if (f != null) {
-          f.cancel(true);
-        }
+  }
+
+  public NamespaceIngestionMetrics getMetrics() {
+    return metrics;
+  }
+
+  private void startIngestion(List<String> dirs) {
+    stop();
+    IngestionQueue queue = new IngestionQueue(minBatchSize, maxBatchSize, maxPendingBatches);
+    metrics.start(queue);
+    ingestion = new Ingestion(queue);
+    ingestion.start(dirs);
+  }
+
+  /**
+   * Single fetching of the specified directories.
+   */
+  private class Ingestion {
+    private final IngestionQueue queue;
+    private final ForkJoinPool producersPool;
+    // batches of the producer threads, flushed when all directories are listed
+    private final Queue<ProducerBatch> producerBatches;
+    private final ThreadLocal<ProducerBatch> currentBatch;
+    // number of the forked and not yet completed producer tasks
+    private final AtomicInteger pendingTasks;
+    private final CountDownLatch producersLatch;
+    private final CountDownLatch consumersLatch;
+    private final List<Future<?>> futures;
+    private volatile boolean producersFinished;
+    private volatile boolean stopped;
+    private volatile boolean failed;
+
+    private Ingestion(IngestionQueue queue) {
+      this.queue = queue;
+      this.producersPool = new ForkJoinPool(numProducers);
+      this.producerBatches = new ConcurrentLinkedQueue<>();
+      this.currentBatch = ThreadLocal.withInitial(() -> {
+        ProducerBatch batch = new ProducerBatch(queue.newBatch());
+        producerBatches.add(batch);
+        return batch;
+      });
+      this.pendingTasks = new AtomicInteger();
+      this.producersLatch = new CountDownLatch(1);
+      this.consumersLatch = new CountDownLatch(numConsumers);
+      this.futures = new ArrayList<>();
+    }
+
+    private void start(List<String> dirs) {
+      pendingTasks.addAndGet(dirs.size());
+      for (String dir : dirs) {
+        producersPool.execute(new FetchRootTask(dir));
+      }
+      startConsumers();
+      if (estimateTotal) {
+        futures.add(executorService.submit(() -> estimateTotalFiles(dirs)));
       }
     }
-  }
 
-  private static class HdfsFetchTask extends IngestionTask {
-    private final HdfsFileStatus[] EMPTY_STATUS = new HdfsFileStatus[0];
-    private final DFSClient client;
-    private byte[] startAfter = null;
-    private final byte[] empty = HdfsFileStatus.EMPTY_NAME;
-    private String parent = "";
-    private String pendingParent;
-    private IngestionTask[] ingestionTasks;
-    private static int idCounter = 0;
-    private int id;
-
-    private final PathChecker pathChecker;
-
-    public HdfsFetchTask(IngestionTask[] ingestionTasks, DFSClient client, SmartConf conf) {
-      super();
-      id = idCounter++;
-      this.ingestionTasks = ingestionTasks;
-      this.client = client;
-      defaultBatchSize = conf.getInt(SmartConfKeys
-              .SMART_NAMESPACE_FETCHER_BATCH_KEY,
-          SmartConfKeys.SMART_NAMESPACE_FETCHER_BATCH_DEFAULT);
-      this.pathChecker = new PathChecker(conf);
+    private void startLoad(FsImageLoader imageLoader) {
+      pendingTasks.incrementAndGet();
+      metrics.setTotalFilesEstimate(imageLoader.getNumInodes());
+      futures.add(executorService.submit(() -> {
+        try {
+          imageLoader.load(pathChecker, this::addFileInfo);
+        } catch (IOException | RuntimeException e) {
+          LOG.error("Error loading the fsimage {}", imageLoader.getImageFile(), e);
+          failed = true;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          failed = true;
+        } finally {
+          if (pendingTasks.decrementAndGet() == 0) {
+            producersLatch.countDown();
+          }
+        }
+      }));
+      startConsumers();
     }
 
-    public static void init() {
-      HdfsFetchTask.idCounter = 0;
+    private void startConsumers() {
+      futures.add(executorService.submit(this::awaitProducers));
+      for (int i = 0; i < numConsumers; i++) {
+        FileStatusIngester ingester = new FileStatusIngester(metaStore, queue, metrics);
+        futures.add(executorService.submit(() -> {
+          try {
+            ingester.run();
+          } finally {
+            consumersLatch.countDown();
+          }
+        }));
+      }
     }
 
-    // BFS finished
-    public boolean isDequeEmpty() {
-      for (IngestionTask ingestionTask : ingestionTasks) {
-        if (((HdfsFetchTask) ingestionTask).parent != null) {
-          return false;
+    private void awaitProducers() {
+      try {
+        producersLatch.await();
+        producersPool.shutdown();
+        // completion of all producer tasks guarantees visibility of their batches
+        for (ProducerBatch batch : producerBatches) {
+          queue.put(batch.fileInfos);
         }
+        queue.finishProducing();
+        producersFinished = true;
+        consumersLatch.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
       }
-      return true;
+      metrics.finish();
+      LOG.info("Finished fetch Namespace! {}ms used, numDirs = {}, numFiles = {}, {} files/s",
+          System.currentTimeMillis() - metrics.getStartTime(),
+          metrics.getDirectoriesFetched(), metrics.getFilesFetched(), metrics.getThroughput());
     }
 
-    @Override
-    public void run() {
-      if (LOG.isDebugEnabled()) {
-        long curr = System.currentTimeMillis();
-        if (curr - lastUpdateTime >= 2000) {
-          LOG.debug(String.format(
-              "%d sec, numDirectories = %d, numFiles = %d, batchsInqueue = %d",
-              (curr - startTime) / 1000,
-              numDirectoriesFetched.get(), numFilesFetched.get(), batches.size()));
-          lastUpdateTime = curr;
+    private void estimateTotalFiles(List<String> dirs) {
+      long total = 0;
+      try {
+        for (String dir : dirs) {
+          total += client.getNamenode().getContentSummary(dir).getFileAndDirectoryCount();
         }
+        metrics.setTotalFilesEstimate(total);
+      } catch (IOException e) {
+        LOG.warn("Failed to estimate the number of files to fetch", e);
       }
+    }
 
-      if (batches.size() >= maxPendingBatches) {
-        return;
+    private boolean isFinished() {
+      return producersFinished && consumersLatch.getCount() == 0;
+    }
+
+    private void stop() {
+      stopped = true;
+      producersPool.shutdownNow();
+      for (Future<?> future : futures) {
+        future.cancel(true);
       }
+    }
 
-      if (this.pendingParent != null) {
-        this.parent = pendingParent;
-        this.pendingParent = null;
+    private void addFileInfo(FileInfo fileInfo) throws InterruptedException {
+      ProducerBatch batch = currentBatch.get();
+      batch.fileInfos.add(fileInfo);
+      if (batch.fileInfos.isFull()) {
+        ForkJoinPool.managedBlock(new QueuePut(batch.fileInfos));
+        batch.fileInfos = queue.newBatch();
+      }
+      if (fileInfo.isdir()) {
+        metrics.incrDirectoriesFetched();
       } else {
-        this.parent = deque.pollFirst();
+        metrics.incrFilesFetched();
       }
-      if (parent == null) {
-        if (currentBatch.actualSize() > 0) {
-          try {
-            this.batches.put(currentBatch);
-          } catch (InterruptedException e) {
-            LOG.error("Current batch actual size = "
-                + currentBatch.actualSize(), e);
-          }
-          this.currentBatch = new FileInfoBatch(defaultBatchSize);
+    }
+
+    private class QueuePut implements ForkJoinPool.ManagedBlocker {
+      private final FileInfoBatch fileInfos;
+      private boolean done;
+
+      private QueuePut(FileInfoBatch fileInfos) {
+        this.fileInfos = fileInfos;
+      }
+
+      @Override
+      public boolean block() throws InterruptedException {
+        if (!done) {
+          queue.put(fileInfos);
+          done = true;
+        }
+        return true;
+      }
+
+      @Override
+      public boolean isReleasable() {
+        if (!done) {
+          done = queue.offer(fileInfos);
         }
+        return done;
+      }
+    }
 
-        if (this.id == 0 && isDequeEmpty() && this.batches.isEmpty()) {
-          if (!IngestionTask.isFinished) {
-            IngestionTask.isFinished = true;
-            long curr = System.currentTimeMillis();
-            LOG.info(String.format(
-                "Finished fetch Namespace! %ds, %dms used, numDirs = %d, numFiles = %d",
-                (curr - startTime) / 1000, (curr - startTime) % 1000,
-                numDirectoriesFetched.get(), numFilesFetched.get()));
+    private abstract class ProducerTask extends RecursiveAction {
+      @Override
+      protected final void compute() {
+        try {
+          if (!stopped) {
+            fetch();
+          }
+        } finally {
+          if (pendingTasks.decrementAndGet() == 0) {
+            producersLatch.countDown();
           }
         }
-        return;
       }
 
-      if (startAfter == null) {
-        String tmpParent = parent.endsWith("/") ? parent : parent + "/";
+      protected abstract void fetch();
 
-        if (pathChecker.isIgnored(tmpParent)) {
-          return;
-        }
+      protected void forkTask(ProducerTask task) {
+        pendingTasks.incrementAndGet();
+        task.fork();
       }
+    }
 
-      try {
-        HdfsFileStatus status = client.getFileInfo(parent);
+    private class FetchRootTask extends ProducerTask {
+      private final String path;
 
-        if (status == null) {
-          throw new IOException();
-        }
+      private FetchRootTask(String path) {
+        this.path = path;
+      }
 
-        if (!status.isDir()) {
-          this.addFileStatus(convertToFileInfo(status, parent));
-          numFilesFetched.incrementAndGet();
+      @Override
+      protected void fetch() {
+        if (pathChecker.isIgnored(path.endsWith("/") ? path : path + "/")) {
+          return;
         }
-
-        if (status.isDir()) {
-          if (startAfter == null) {
-            FileInfo internal = convertToFileInfo(status, "");
-            internal.setPath(parent);
-            this.addFileStatus(internal);
-            numDirectoriesFetched.incrementAndGet();
+        try {
+          HdfsFileStatus status = client.getFileInfo(path);
+          if (status == null) {
+            LOG.warn("Path {} to fetch doesn't exist", path);
+            return;
           }
+          FileInfo fileInfo = convertToFileInfo(status, "");
+          fileInfo.setPath(path);
+          addFileInfo(fileInfo);
+          if (status.isDir()) {
+            forkTask(new ListDirectoryTask(path));
+          }
+        } catch (IOException e) {
+          LOG.error("Error fetching {}", path, e);
+          failed = true;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    private class ListDirectoryTask extends ProducerTask {
+      private final String path;
 
-          HdfsFileStatus[] children;
+      private ListDirectoryTask(String path) {
+        this.path = path;
+      }
+
+      @Override
+      protected void fetch() {
+        byte[] startAfter = HdfsFileStatus.EMPTY_NAME;
+        try {
+          DirectoryListing listing;
           do {
-            children = listStatus(parent);
-            if (children == null || children.length == 0) {
-              break;
+            if (stopped) {
+              return;
+            }
+            listing = client.listPaths(path, startAfter);
+            if (listing == null) {
+              // the directory was deleted
+              return;
             }
-            for (HdfsFileStatus child : children) {
-              String fullName = child.getFullName(parent);
-              if (pathChecker.isIgnored(fullName)) {
+            for (HdfsFileStatus child : listing.getPartialListing()) {
+              String fullName = child.getFullName(path);
+              if (pathChecker.isIgnored(fullName)
+                  || (child.isDir() && pathChecker.isIgnored(fullName + "/"))) {
                 continue;
               }
+              addFileInfo(convertToFileInfo(child, path));
               if (child.isDir()) {
-                this.deque.add(fullName);
-              } else {
-                this.addFileStatus(convertToFileInfo(child, parent));
-                numFilesFetched.incrementAndGet();
+                // let idle producers steal the subdirectory
+                forkTask(new ListDirectoryTask(fullName));
               }
             }
-          } while (startAfter != null && batches.size() < maxPendingBatches);
-          if (startAfter != null) {
-            pendingParent = parent;
-          }
+            startAfter = listing.getLastName();
+          } while (listing.hasMore());
+        } catch (IOException e) {
+          LOG.error("Error listing directory {}", path, e);
+          failed = true;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
         }
-      } catch (IOException | InterruptedException e) {
-        startAfter = null;
-        LOG.error("Totally, numDirectoriesFetched = " + numDirectoriesFetched
-            + ", numFilesFetched = " + numFilesFetched
-            + ". Parent = " + parent, e);
       }
-
     }
+  }
 
-    /**
-     *  Code copy form {@link org.apache.hadoop.fs.Hdfs}
-     */
-    private HdfsFileStatus[] listStatus(String src) throws IOException {
-      DirectoryListing thisListing = client.listPaths(
-          src, startAfter == null ? empty : startAfter);
-      if (thisListing == null) {
-        // the directory does not exist
-        startAfter = null;
-        return EMPTY_STATUS;
-      }
-      HdfsFileStatus[] partialListing = thisListing.getPartialListing();
-      if (!thisListing.hasMore()) {
-        // got all entries of the directory
-        startAfter = null;
-      } else {
-        startAfter = thisListing.getLastName();
-      }
-      return partialListing;
-    }
+  private static class ProducerBatch {
+    private FileInfoBatch fileInfos;
 
-    private FileInfo convertToFileInfo(HdfsFileStatus status, String parent) {
-      FileInfo fileInfo = new FileInfo(
-          status.getFullName(parent),
-          status.getFileId(),
-          status.getLen(),
-          status.isDir(),
-          status.getReplication(),
-          status.getBlockSize(),
-          status.getModificationTime(),
-          status.getAccessTime(),
-          status.getPermission().toShort(),
-          status.getOwner(),
-          status.getGroup(),
-          status.getStoragePolicy(),
-          getHelper().getErasureCodingPolicy(status));
-      return fileInfo;
+    private ProducerBatch(FileInfoBatch fileInfos) {
+      this.fileInfos = fileInfos;
     }
   }
+
+  private static FileInfo convertToFileInfo(HdfsFileStatus status, String parent) {
+    return new FileInfo(
+        status.getFullName(parent),
+        status.getFileId(),
+        status.getLen(),
+        status.isDir(),
+        status.getReplication(),
+        status.getBlockSize(),
+        status.getModificationTime(),
+        status.getAccessTime(),
+        status.getPermission().toShort(),
+        status.getOwner(),
+        status.getGroup(),
+        status.getStoragePolicy(),
+        getHelper().getErasureCodingPolicy(status));
+  }
 }
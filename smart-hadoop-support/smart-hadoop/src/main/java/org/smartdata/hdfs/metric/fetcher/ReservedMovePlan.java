@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import org.smartdata.hdfs.action.move.StorageGroup;
+import org.smartdata.model.action.FileMovePlan;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Move plan together with the space reserved for its block moves in the
+ * snapshot of the cluster storages, which the plan was made with.
+ * The space should be released if the plan isn't going to be executed,
+ * so the other plans made with the same snapshot can use it.
+ */
+public class ReservedMovePlan {
+  private final FileMovePlan plan;
+  private final MoveTargetIndex targetIndex;
+  private final Map<StorageGroup, Long> reservedSpace;
+  private boolean confirmed;
+  private boolean released;
+
+  ReservedMovePlan(FileMovePlan plan, MoveTargetIndex targetIndex) {
+    this.plan = plan;
+    this.targetIndex = targetIndex;
+    this.reservedSpace = new HashMap<>();
+  }
+
+  public FileMovePlan getPlan() {
+    return plan;
+  }
+
+  MoveTargetIndex getTargetIndex() {
+    return targetIndex;
+  }
+
+  synchronized void reserve(StorageGroup target, long size) {
+    reservedSpace.merge(target, size, Long::sum);
+  }
+
+  /**
+   * Keeps the space reserved, since the plan is going to be executed.
+   */
+  public synchronized void confirm() {
+    confirmed = true;
+  }
+
+  /**
+   * Returns the reserved space to the snapshot unless the plan is confirmed.
+   */
+  public synchronized void release() {
+    if (confirmed || released) {
+      return;
+    }
+    released = true;
+    reservedSpace.forEach(targetIndex::release);
+  }
+}
@@ -34,6 +34,7 @@
 import org.smartdata.hdfs.file.equality.FileEqualityStrategy;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
 import org.smartdata.model.ActionInfo;
 import org.smartdata.model.BackUpInfo;
 import org.smartdata.model.CmdletInfo;
@@ -49,8 +50,10 @@
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -60,7 +63,6 @@
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -84,6 +86,12 @@
 import static org.smartdata.conf.SmartConfKeys.SMART_COPY_SCHEDULER_DIFF_CACHE_SYNC_THRESHOLD_KEY;
 import static org.smartdata.conf.SmartConfKeys.SMART_COPY_SCHEDULER_FILE_DIFF_ARCHIVE_SIZE_DEFAULT;
 import static org.smartdata.conf.SmartConfKeys.SMART_COPY_SCHEDULER_FILE_DIFF_ARCHIVE_SIZE_KEY;
+import static org.smartdata.conf.SmartConfKeys.SMART_COPY_SCHEDULER_PENDING_DIFF_BATCH_DEFAULT;
+import static org.smartdata.conf.SmartConfKeys.SMART_COPY_SCHEDULER_PENDING_DIFF_BATCH_KEY;
+import static org.smartdata.conf.SmartConfKeys.SMART_COPY_SCHEDULER_PENDING_DIFF_GRACE_IDS_DEFAULT;
+import static org.smartdata.conf.SmartConfKeys.SMART_COPY_SCHEDULER_PENDING_DIFF_GRACE_IDS_KEY;
+import static org.smartdata.conf.SmartConfKeys.SMART_COPY_SCHEDULER_PENDING_DIFF_RESCAN_INTERVAL_MS_DEFAULT;
+import static org.smartdata.conf.SmartConfKeys.SMART_COPY_SCHEDULER_PENDING_DIFF_RESCAN_INTERVAL_MS_KEY;
 import static org.smartdata.model.FileDiffType.DELETE;
 import static org.smartdata.utils.ConfigUtil.toRemoteClusterConfig;
 import static org.smartdata.utils.FileDiffUtils.getDest;
@@ -124,8 +132,7 @@ public class CopyScheduler extends ActionSchedulerService {
   // records the number of file diffs in useless states
   private final AtomicInteger numFileDiffUseless = new AtomicInteger(0);
   // record the file diff info in order for check use
-  // todo encapsulate actions on archive in separate class
-  private final List<FileDiff> fileDiffArchive;
+  private final FileDiffArchive fileDiffArchive;
   // contains fileDiffs for deferred termination
   private final Queue<FileDiff> fileDiffsToTerminate;
   private final FileEqualityStrategy fileEqualityStrategy;
@@ -135,6 +142,10 @@ public class CopyScheduler extends ActionSchedulerService {
   private final long appendMergeCountThreshold;
   private final int syncActionRetryCount;
   private final int initialSyncBatchSize;
+  private final int pendingDiffBatchSize;
+  private final long pendingDiffRescanIntervalMs;
+  private final int pendingDiffGraceIds;
+  private final CopySchedulerMetrics metrics;
 
   public CopyScheduler(SmartContext context, MetaStore metaStore) {
     super(context, metaStore);
@@ -174,6 +185,15 @@ public CopyScheduler(SmartContext context, MetaStore metaStore) {
     this.initialSyncBatchSize = conf.getInt(
         SMART_COPY_SCHEDULER_BASE_SYNC_BATCH_KEY,
         SMART_COPY_SCHEDULER_BASE_SYNC_BATCH_DEFAULT);
+    this.pendingDiffBatchSize = conf.getInt(
+        SMART_COPY_SCHEDULER_PENDING_DIFF_BATCH_KEY,
+        SMART_COPY_SCHEDULER_PENDING_DIFF_BATCH_DEFAULT);
+    this.pendingDiffRescanIntervalMs = conf.getLong(
+        SMART_COPY_SCHEDULER_PENDING_DIFF_RESCAN_INTERVAL_MS_KEY,
+        SMART_COPY_SCHEDULER_PENDING_DIFF_RESCAN_INTERVAL_MS_DEFAULT);
+    this.pendingDiffGraceIds = Math.max(0, conf.getInt(
+        SMART_COPY_SCHEDULER_PENDING_DIFF_GRACE_IDS_KEY,
+        SMART_COPY_SCHEDULER_PENDING_DIFF_GRACE_IDS_DEFAULT));
     // throttle for copy action
     long throttleInMb = conf.getLong(
         SMART_ACTION_COPY_THROTTLE_MB_KEY,
@@ -185,8 +205,12 @@ public CopyScheduler(SmartContext context, MetaStore metaStore) {
     } catch (MetaStoreException e) {
       LOG.error("Failed to get num of useless file diffs!", e);
     }
-    this.fileDiffArchive = new CopyOnWriteArrayList<>();
+    this.fileDiffArchive = new FileDiffArchive(fileDiffArchiveSize);
     this.fileEqualityStrategy = FileEqualityStrategy.from(conf);
+    this.metrics = SmartMetricsSystem.register(CopySchedulerMetrics.NAME,
+        "Copy scheduler diff chains metrics",
+        new CopySchedulerMetrics(fileDiffChains::size, this::getMaxChainDepth,
+            this::getBacklogAgeMs));
   }
 
   @Override
@@ -545,6 +569,7 @@ private void mergePendingDiffs(String src) throws MetaStoreException {
           .collect(Collectors.toList());
 
       metaStore.batchUpdateFileDiff(pendingDiffIds, FileDiffState.MERGED);
+      metrics.incrMergedDiffs(pendingDiffIds.size());
       pendingDiffIds.forEach(id -> updateFileDiffArchive(id, FileDiffState.MERGED));
     } finally {
       // Unlock this file
@@ -568,34 +593,41 @@ private FileDiff runFileInitialSync(String src, String dest) throws MetaStoreExc
     }
 
     FileStatus remoteFileStatus = getFileStatus(dest);
-    long copyStartOffset = Optional.ofNullable(remoteFileStatus)
-        .map(FileStatus::getLen)
-        .filter(remoteFileLength -> remoteFileLength < srcFileInfo.getLength())
-        // Copy the full contents of the src file in case of dirty dest file
-        // or dest file with the same size but different content
-        // or dest file doesn't exist
-        .orElse(0L);
+    // Copy only the src file contents after the prefix already present
+    // in the dest file. The full contents are copied in case of
+    // dest file with different first block or dest file doesn't exist
+    long equalPrefixLength =
+        fileEqualityStrategy.getEqualPrefixLength(srcFileInfo, remoteFileStatus);
 
-    return createAppendFileDiff(srcFileInfo, remoteFileStatus, copyStartOffset);
+    return createAppendFileDiff(srcFileInfo, remoteFileStatus, equalPrefixLength);
   }
 
   private FileDiff createAppendFileDiff(
-      FileInfo srcFileInfo, FileStatus remoteFileStatus, long copyStartOffset) {
+      FileInfo srcFileInfo, FileStatus remoteFileStatus, long equalPrefixLength) {
 
     FileDiff fileDiff = new FileDiff(FileDiffType.APPEND, FileDiffState.PENDING);
     fileDiff.setSrc(srcFileInfo.getPath());
 
+    boolean areEqualFiles = remoteFileStatus != null
+        && equalPrefixLength == srcFileInfo.getLength()
+        && remoteFileStatus.getLen() == srcFileInfo.getLength();
+    long copyStartOffset = areEqualFiles ? 0 : equalPrefixLength;
+
     fileDiff.setParameter(CopyFileAction.LENGTH,
         String.valueOf(srcFileInfo.getLength() - copyStartOffset));
 
     fileDiff.setParameter(CopyFileAction.OFFSET_INDEX,
         String.valueOf(copyStartOffset));
 
-    boolean areEqualFiles =
-        fileEqualityStrategy.areEqual(srcFileInfo, remoteFileStatus);
     fileDiff.setParameter(CopyFileAction.COPY_CONTENT,
         String.valueOf(!areEqualFiles));
 
+    if (areEqualFiles) {
+      metrics.addSyncBytes(0, srcFileInfo.getLength());
+    } else {
+      metrics.addSyncBytes(srcFileInfo.getLength() - copyStartOffset, copyStartOffset);
+    }
+
     fileDiff.setRuleId(-1);
     return fileDiff;
   }
@@ -641,12 +673,27 @@ private synchronized void updateFileDiffInCache(
     }
   }
 
-  private synchronized void updateFileDiffArchive(long diffId, FileDiffState state) {
-    for (FileDiff diff : fileDiffArchive) {
-      if (diff.getDiffId() == diffId) {
-        diff.setState(state);
-      }
-    }
+  private void updateFileDiffArchive(long diffId, FileDiffState state) {
+    fileDiffArchive.updateState(diffId, state);
+  }
+
+  private int getMaxChainDepth() {
+    return fileDiffChains.values().stream()
+        .mapToInt(ScheduleTask.FileChain::size)
+        .max()
+        .orElse(0);
+  }
+
+  private long getBacklogAgeMs() {
+    long now = System.currentTimeMillis();
+    return fileDiffChains.values().stream()
+        .map(chain -> chain.diffChain.peekFirst())
+        .filter(Objects::nonNull)
+        .map(fileDiffCache::get)
+        .filter(Objects::nonNull)
+        .mapToLong(fileDiff -> now - fileDiff.getCreateTime())
+        .max()
+        .orElse(0L);
   }
 
   /***
@@ -710,21 +757,52 @@ public void stop() throws IOException {
   }
 
   private class ScheduleTask implements Runnable {
+    // id of the last pending diff read from the metastore
+    private long lastPendingDiffId = -1;
+    private long lastRescanTime = System.currentTimeMillis();
+    // diffs skipped due to initial sync should be re-read after it
+    private boolean skippedDiffsToRescan = false;
 
     private void syncFileDiff() {
       try {
         pushCacheToDB();
-        List<FileDiff> pendingDiffs = metaStore.getPendingDiff();
+        maybeRescanPendingDiffs();
+
+        // diffs committed out of the id order are re-read within the grace window,
+        // which can't contain more than graceIds already read diffs
+        long readAfterId = Math.max(-1, lastPendingDiffId - pendingDiffGraceIds);
+        int limit = pendingDiffBatchSize + (int) (lastPendingDiffId - readAfterId);
+        long readStartTime = System.currentTimeMillis();
+        List<FileDiff> pendingDiffs = metaStore.getPendingDiffsAfter(readAfterId, limit);
+        metrics.addPendingDiffsRead(System.currentTimeMillis() - readStartTime);
         processPendingDiffs(pendingDiffs);
       } catch (Exception e) {
         LOG.error("Sync fileDiffs error", e);
       }
     }
 
+    /**
+     * Pending diffs are read incrementally after the last read diff id
+     * with a short grace window to pick up diffs inserted out of the id order.
+     * All of them are periodically re-read to pick up diffs, which were skipped
+     * or returned to the pending state. Re-reading is safe, because diffs
+     * already added to the chains are skipped.
+     */
+    private void maybeRescanPendingDiffs() {
+      long now = System.currentTimeMillis();
+      if (now - lastRescanTime >= pendingDiffRescanIntervalMs
+          || (skippedDiffsToRescan && initialSyncQueue.isEmpty())) {
+        LOG.debug("Re-reading all pending file diffs");
+        lastPendingDiffId = -1;
+        lastRescanTime = now;
+        skippedDiffsToRescan = false;
+      }
+    }
+
     private void processPendingDiffs(
         List<FileDiff> fileDiffs) throws MetaStoreException {
       for (FileDiff fileDiff : fileDiffs) {
-        addToFileDiffArchive(fileDiff);
+        fileDiffArchive.addIfAbsent(fileDiff);
       }
 
       LOG.debug("Start processing pending diffs of size {}", fileDiffs.size());
@@ -735,6 +813,7 @@ private void processPendingDiffs(
 
       // Merge all existing fileDiffs into fileChains
       for (FileDiff fileDiff : fileDiffs) {
+        lastPendingDiffId = Math.max(lastPendingDiffId, fileDiff.getDiffId());
         if (fileDiff.getDiffType() == FileDiffType.BASESYNC) {
           metaStore.updateFileDiff(fileDiff.getDiffId(), FileDiffState.MERGED);
           updateFileDiffArchive(fileDiff.getDiffId(), FileDiffState.MERGED);
@@ -748,11 +827,13 @@ private void processPendingDiffs(
         }
         if (initialSyncQueue.containsKey(fileDiff.getSrc())) {
           // Will be directly sync
+          skippedDiffsToRescan = true;
           continue;
         }
 
         // Get or create fileChain
         addFileDiffToChain(fileDiff);
+        metrics.incrChainedDiffs();
       }
     }
 
@@ -780,23 +861,6 @@ private void fileDiffTerminatedInternal(FileDiff fileDiff) {
       fileDiffFailedTimes.remove(fileDiff.getDiffId());
     }
 
-    private void addToFileDiffArchive(FileDiff newFileDiff) {
-      for (FileDiff fileDiff : fileDiffArchive) {
-        if (fileDiff.getDiffId() == newFileDiff.getDiffId()) {
-          return;
-        }
-      }
-      fileDiffArchive.add(newFileDiff);
-      int index = 0;
-      while (fileDiffArchive.size() > fileDiffArchiveSize && index < fileDiffArchiveSize) {
-        if (FileDiffState.isTerminalState(fileDiffArchive.get(index).getState())) {
-          fileDiffArchive.remove(index);
-          continue;
-        }
-        index++;
-      }
-    }
-
     @Override
     public void run() {
       try {
@@ -814,13 +878,13 @@ private class FileChain {
       // Current file path/name
       private final String filePath;
       // file diff id
-      private final List<Long> diffChain;
+      private final Deque<Long> diffChain;
       // append file diff id
-      private final List<Long> appendChain;
+      private final Deque<Long> appendChain;
 
       FileChain(String filePath) {
-        this.diffChain = new ArrayList<>();
-        this.appendChain = new ArrayList<>();
+        this.diffChain = new ArrayDeque<>();
+        this.appendChain = new ArrayDeque<>();
         this.currAppendLength = 0;
         this.filePath = filePath;
       }
@@ -829,6 +893,10 @@ boolean isEmpty() {
         return diffChain.isEmpty();
       }
 
+      int size() {
+        return diffChain.size();
+      }
+
       void addToChain(FileDiff fileDiff) throws MetaStoreException {
         addDiffToCache(fileDiff);
 
@@ -902,6 +970,7 @@ void mergeAppend() throws MetaStoreException {
           long offset = Integer.MAX_VALUE;
           long totalLength = 0;
           long lastAppend = -1;
+          int mergedAppends = 0;
           for (long diffId : appendChain) {
             FileDiff fileDiff = fileDiffCache.get(diffId);
 
@@ -921,10 +990,13 @@ void mergeAppend() throws MetaStoreException {
             // Add current file length to length
             totalLength += Long.parseLong(getLength(fileDiff));
             lastAppend = diffId;
+            mergedAppends++;
           }
           if (lastAppend == -1) {
             return;
           }
+          // all appends are folded into the last one
+          metrics.incrMergedDiffs(mergedAppends - 1);
           FileDiff fileDiff = fileDiffCache.get(lastAppend);
           fileDiff.getParameters().put("-offset", "" + offset);
           fileDiff.getParameters().put("-length", "" + totalLength);
@@ -952,6 +1024,7 @@ void mergeDelete(FileDiff fileDiff) throws MetaStoreException {
           if (pathStartsWith(archiveDiff.getSrc(), fileDiff.getSrc())) {
             fileDiffsToTerminate.add(archiveDiff);
             updateFileDiffInCache(archiveDiff.getDiffId(), FileDiffState.APPLIED);
+            metrics.incrMergedDiffs(1);
           }
         }
         diffChain.add(fileDiff.getDiffId());
@@ -984,9 +1057,10 @@ void mergeRename(FileDiff fileDiff) throws MetaStoreException {
             // mark rename event as applied, because we've already
             // changed create (append) event path
             updateFileDiffInCache(fileDiff.getDiffId(), FileDiffState.APPLIED);
+            metrics.incrMergedDiffs(1);
           } else {
             // Insert rename fileDiff to head
-            diffChain.add(0, fileDiff.getDiffId());
+            diffChain.addFirst(fileDiff.getDiffId());
           }
         } finally {
           // Unlock file
@@ -1030,7 +1104,7 @@ && pathStartsWith(path, fileDiff.getSrc())) {
               renameFileDiff.getSrc(), getDest(fileDiff)));
           long did = metaStore.insertFileDiff(newFileDiff);
           newFileDiff.setDiffId(did);
-          fileDiffArchive.add(fileDiffArchive.indexOf(renameDiffInArchive), newFileDiff);
+          fileDiffArchive.addBefore(renameDiffInArchive, newFileDiff);
         }
         return false;
       }
@@ -1039,18 +1113,17 @@ long getHead() {
         if (diffChain.isEmpty()) {
           return -1;
         }
-        return diffChain.get(0);
+        return diffChain.peekFirst();
       }
 
       void removeHead() {
         if (diffChain.isEmpty()) {
           return;
         }
-        long fid = diffChain.get(0);
-        if (!appendChain.isEmpty() && fid == appendChain.get(0)) {
-          appendChain.remove(0);
+        long fid = diffChain.pollFirst();
+        if (!appendChain.isEmpty() && fid == appendChain.peekFirst()) {
+          appendChain.pollFirst();
         }
-        diffChain.remove(0);
       }
 
       void removeFromChain(long diffId) {
@@ -1070,6 +1143,7 @@ void mergeAllDiffs() throws MetaStoreException {
         if (!diffIds.isEmpty()) {
           metaStore.batchUpdateFileDiff(diffIds, FileDiffState.MERGED);
         }
+        metrics.incrMergedDiffs(diffChain.size());
         diffChain.clear();
         currAppendLength = 0;
         appendChain.clear();
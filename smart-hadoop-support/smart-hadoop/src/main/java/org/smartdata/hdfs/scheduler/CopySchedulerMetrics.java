@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.scheduler;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of the copy scheduler diff chains: number of pending diffs read
+ * from the metastore, share of diffs merged without running sync actions,
+ * chain depth and age of the oldest diff waiting in the chains. Also
+ * reports the number of bytes scheduled to copy during the initial files sync
+ * and the number of bytes saved compared to the full file copies.
+ */
+public class CopySchedulerMetrics implements MetricsSource {
+  public static final String NAME = "CopyScheduler";
+
+  private final MetricsRegistry registry;
+  private final MutableCounterLong chainedDiffs;
+  private final MutableCounterLong mergedDiffs;
+  private final MutableRate pendingDiffsReadTime;
+  private final MutableCounterLong syncBytesToCopy;
+  private final MutableCounterLong syncBytesSaved;
+  private final IntSupplier chains;
+  private final IntSupplier maxChainDepth;
+  private final LongSupplier backlogAgeMs;
+
+  public CopySchedulerMetrics(IntSupplier chains,
+                              IntSupplier maxChainDepth,
+                              LongSupplier backlogAgeMs) {
+    this.registry = new MetricsRegistry(NAME);
+    this.chainedDiffs = registry.newCounter("ChainedDiffs",
+        "Number of pending file diffs added to the diff chains", 0L);
+    this.mergedDiffs = registry.newCounter("MergedDiffs",
+        "Number of file diffs merged into other diffs without running sync actions", 0L);
+    this.pendingDiffsReadTime = registry.newRate("PendingDiffsReadTime",
+        "Time of reading new pending file diffs from the metastore in milliseconds", false);
+    this.syncBytesToCopy = registry.newCounter("SyncBytesToCopy",
+        "Number of bytes scheduled to copy during the initial files sync", 0L);
+    this.syncBytesSaved = registry.newCounter("SyncBytesSaved",
+        "Number of bytes already present in the dest files, "
+            + "which are not copied during the initial files sync", 0L);
+    this.chains = chains;
+    this.maxChainDepth = maxChainDepth;
+    this.backlogAgeMs = backlogAgeMs;
+  }
+
+  public void addPendingDiffsRead(long timeMs) {
+    pendingDiffsReadTime.add(timeMs);
+  }
+
+  public void incrChainedDiffs() {
+    chainedDiffs.incr();
+  }
+
+  public void incrMergedDiffs(int diffsNum) {
+    mergedDiffs.incr(diffsNum);
+  }
+
+  public void addSyncBytes(long bytesToCopy, long bytesSaved) {
+    syncBytesToCopy.incr(bytesToCopy);
+    syncBytesSaved.incr(bytesSaved);
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    long chained = chainedDiffs.value();
+    MetricsRecordBuilder recordBuilder = collector.addRecord(registry.info())
+        .addGauge(Interns.info("Chains",
+            "Number of files with pending diffs"), chains.getAsInt())
+        .addGauge(Interns.info("MaxChainDepth",
+            "Max number of pending diffs of a single file"), maxChainDepth.getAsInt())
+        .addGauge(Interns.info("BacklogAge",
+            "Age of the oldest pending diff in the chains in milliseconds"),
+            backlogAgeMs.getAsLong())
+        .addGauge(Interns.info("MergeRatio",
+            "Ratio of the merged diffs to the chained diffs"),
+            chained == 0 ? 0f : (float) mergedDiffs.value() / chained);
+    registry.snapshot(recordBuilder, all);
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.scheduler;
+
+import org.smartdata.model.FileDiff;
+import org.smartdata.model.FileDiffState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Recent file diffs in the order of their processing, used by the copy
+ * scheduler to check dependencies between diffs of the related paths.
+ * Diffs are indexed by id, so lookups and state updates don't scan
+ * the whole archive. Once the archive exceeds its size, the oldest diffs
+ * in terminal states are removed.
+ */
+class FileDiffArchive implements Iterable<FileDiff> {
+  private final List<FileDiff> diffs;
+  private final Map<Long, FileDiff> diffsById;
+  private final int maxSize;
+
+  FileDiffArchive(int maxSize) {
+    this.diffs = new CopyOnWriteArrayList<>();
+    this.diffsById = new ConcurrentHashMap<>();
+    this.maxSize = maxSize;
+  }
+
+  boolean contains(long diffId) {
+    return diffsById.containsKey(diffId);
+  }
+
+  synchronized void add(FileDiff fileDiff) {
+    diffs.add(fileDiff);
+    diffsById.put(fileDiff.getDiffId(), fileDiff);
+  }
+
+  synchronized void addAll(List<FileDiff> fileDiffs) {
+    diffs.addAll(fileDiffs);
+    fileDiffs.forEach(fileDiff -> diffsById.put(fileDiff.getDiffId(), fileDiff));
+  }
+
+  /**
+   * Inserts the diff right before the anchor diff
+   * or to the end of the archive if the anchor isn't archived.
+   */
+  synchronized void addBefore(FileDiff anchor, FileDiff fileDiff) {
+    int index = anchor == null ? -1 : diffs.indexOf(anchor);
+    if (index == -1) {
+      diffs.add(fileDiff);
+    } else {
+      diffs.add(index, fileDiff);
+    }
+    diffsById.put(fileDiff.getDiffId(), fileDiff);
+  }
+
+  /**
+   * Adds the diff if it isn't archived yet and evicts the oldest diffs
+   * in terminal states if the archive exceeds its size.
+   */
+  synchronized void addIfAbsent(FileDiff fileDiff) {
+    if (contains(fileDiff.getDiffId())) {
+      return;
+    }
+    add(fileDiff);
+    if (diffs.size() <= maxSize) {
+      return;
+    }
+
+    int toEvict = diffs.size() - maxSize;
+    Set<FileDiff> evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+    Iterator<FileDiff> iterator = diffs.iterator();
+    for (int index = 0; index < maxSize && iterator.hasNext() && evicted.size() < toEvict;
+         index++) {
+      FileDiff archived = iterator.next();
+      if (FileDiffState.isTerminalState(archived.getState())) {
+        evicted.add(archived);
+      }
+    }
+    // remove in one pass to copy the underlying array once
+    diffs.removeIf(evicted::contains);
+    evicted.forEach(archived -> diffsById.remove(archived.getDiffId(), archived));
+  }
+
+  void updateState(long diffId, FileDiffState state) {
+    FileDiff fileDiff = diffsById.get(diffId);
+    if (fileDiff != null) {
+      fileDiff.setState(state);
+    }
+  }
+
+  int size() {
+    return diffs.size();
+  }
+
+  List<FileDiff> toList() {
+    return new ArrayList<>(diffs);
+  }
+
+  @Override
+  public Iterator<FileDiff> iterator() {
+    return diffs.iterator();
+  }
+}
@@ -17,33 +17,34 @@
  */
 package org.smartdata.hdfs.scheduler;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class MovePlanStatistics {
-  private long totalBlocks;
-  private long totalSize;
+  private final AtomicLong totalBlocks;
+  private final AtomicLong totalSize;
 
   public MovePlanStatistics() {
-    totalBlocks = 0;
-    totalSize = 0;
+    this(0, 0);
   }
 
   public MovePlanStatistics(long totalBlocks, long totalSize) {
-    this.totalBlocks = totalBlocks;
-    this.totalSize = totalSize;
+    this.totalBlocks = new AtomicLong(totalBlocks);
+    this.totalSize = new AtomicLong(totalSize);
   }
 
   public void increaseTotalBlocks(int numBlocks) {
-    totalBlocks += numBlocks;
+    totalBlocks.addAndGet(numBlocks);
   }
 
   public void increaseTotalSize(long size) {
-    totalSize += size;
+    totalSize.addAndGet(size);
   }
 
   public long getTotalBlocks() {
-    return totalBlocks;
+    return totalBlocks.get();
   }
 
   public long getTotalSize() {
-    return totalSize;
+    return totalSize.get();
   }
 }
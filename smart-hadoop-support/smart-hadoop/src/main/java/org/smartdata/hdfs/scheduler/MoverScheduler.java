@@ -17,7 +17,11 @@
  */
 package org.smartdata.hdfs.scheduler;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSClient;
 import org.slf4j.Logger;
@@ -30,6 +34,7 @@
 import org.smartdata.hdfs.action.MoveFileAction;
 import org.smartdata.hdfs.metric.fetcher.DatanodeStorageReportProcTask;
 import org.smartdata.hdfs.metric.fetcher.MovePlanMaker;
+import org.smartdata.hdfs.metric.fetcher.ReservedMovePlan;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.model.ActionInfo;
 import org.smartdata.model.CmdletInfo;
@@ -41,15 +46,23 @@
 import java.io.IOException;
 import java.net.URI;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public class MoverScheduler extends ActionSchedulerService {
+  // plans of the cmdlets, which weren't scheduled for a long time, are made again
+  private static final long PREPARED_PLAN_EXPIRATION_MIN = 10;
+
   private DFSClient client;
   private MovePlanStatistics statistics;
   private MovePlanMaker planMaker;
@@ -61,6 +74,14 @@ public class MoverScheduler extends ActionSchedulerService {
   private RateLimiter rateLimiter = null;
   // Lock file after scheduling
   private Set<String> fileLock;
+  private final int planningThreads;
+  private ExecutorService planningService;
+  private final int maxPreparedPlans;
+  // plans being made in advance by action ids
+  private final Cache<Long, Future<ReservedMovePlan>> preparedPlans;
+  // submitted actions waiting for the plan preparation in the submission order
+  private final Map<Long, ActionInfo> waitingPlans;
+  private int numPreparedPlans;
 
   public static final Logger LOG =
       LoggerFactory.getLogger(MoverScheduler.class);
@@ -82,13 +103,32 @@ public MoverScheduler(SmartContext context, MetaStore metaStore)
       rateLimiter = RateLimiter.create(throttleInMb);
     }
 
-    this.fileLock = new HashSet<>();
+    this.fileLock = ConcurrentHashMap.newKeySet();
+    this.planningThreads = conf.getInt(
+        SmartConfKeys.SMART_MOVER_SCHEDULER_PLANNING_THREADS_KEY,
+        SmartConfKeys.SMART_MOVER_SCHEDULER_PLANNING_THREADS_DEFAULT);
+    this.maxPreparedPlans = conf.getInt(
+        SmartConfKeys.SMART_MOVER_SCHEDULER_PREPARED_PLANS_KEY,
+        SmartConfKeys.SMART_MOVER_SCHEDULER_PREPARED_PLANS_DEFAULT);
+    // the size is limited by the number of started preparations
+    this.preparedPlans = Caffeine.newBuilder()
+        .expireAfterWrite(PREPARED_PLAN_EXPIRATION_MIN, TimeUnit.MINUTES)
+        .removalListener(this::onPreparedPlanRemoved)
+        .build();
+    this.waitingPlans = new LinkedHashMap<>();
   }
 
   public void init() throws IOException {
     client = HadoopUtil.getDFSClient(nnUri, getContext().getConf());
     statistics = new MovePlanStatistics();
     updateService = Executors.newScheduledThreadPool(1);
+    if (planningThreads > 0) {
+      planningService = Executors.newFixedThreadPool(planningThreads,
+          new ThreadFactoryBuilder()
+              .setNameFormat("move-planner-%d")
+              .setDaemon(true)
+              .build());
+    }
   }
 
   /**
@@ -116,6 +156,13 @@ public void stop() throws IOException {
     if (updateServiceFuture != null) {
       updateServiceFuture.cancel(true);
     }
+    synchronized (this) {
+      waitingPlans.clear();
+      if (planningService != null) {
+        planningService.shutdownNow();
+      }
+    }
+    preparedPlans.invalidateAll();
   }
 
   private static final List<String> actions =
@@ -137,9 +184,106 @@ public boolean onSubmit(CmdletInfo cmdletInfo, ActionInfo actionInfo)
           actionInfo.getArgs().get(HdfsAction.FILE_PATH));
       return false;
     }
+    prepareMovePlan(actionInfo);
     return true;
   }
 
+  /**
+   * Starts making the move plan of the submitted action in the background,
+   * so plans of the submitted files are made in parallel. The number of
+   * prepared plans is limited, the rest of the actions wait for their turn.
+   */
+  private synchronized void prepareMovePlan(ActionInfo actionInfo) {
+    String file = actionInfo.getArgs().get(HdfsAction.FILE_PATH);
+    String policy = getStoragePolicy(actionInfo.getActionName());
+    if (planningService == null || planMaker == null || file == null || policy == null) {
+      return;
+    }
+    waitingPlans.put(actionInfo.getActionId(), actionInfo);
+    startWaitingPlans();
+  }
+
+  private synchronized void startWaitingPlans() {
+    while (numPreparedPlans < maxPreparedPlans && !waitingPlans.isEmpty()
+        && !planningService.isShutdown()) {
+      long actionId = waitingPlans.keySet().iterator().next();
+      ActionInfo actionInfo = waitingPlans.remove(actionId);
+      String file = actionInfo.getArgs().get(HdfsAction.FILE_PATH);
+      String policy = getStoragePolicy(actionInfo.getActionName());
+      numPreparedPlans++;
+      preparedPlans.put(actionId,
+          planningService.submit(() -> planMaker.makePlan(new Path(file), policy)));
+    }
+  }
+
+  private synchronized void removeWaitingPlan(long actionId) {
+    waitingPlans.remove(actionId);
+  }
+
+  /**
+   * Stops making the dropped plan or releases the space reserved for it,
+   * so the plans of the waiting actions can be made.
+   */
+  private void onPreparedPlanRemoved(
+      Long actionId, Future<ReservedMovePlan> preparedPlan, RemovalCause cause) {
+    if (preparedPlan != null && !preparedPlan.cancel(true)) {
+      try {
+        preparedPlan.get().release();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        // the plan wasn't made, nothing to release
+      }
+    }
+    synchronized (this) {
+      numPreparedPlans--;
+      startWaitingPlans();
+    }
+  }
+
+  private ReservedMovePlan getMovePlan(long actionId, String file, String policy)
+      throws IOException, InterruptedException {
+    removeWaitingPlan(actionId);
+    Future<ReservedMovePlan> preparedPlan = preparedPlans.getIfPresent(actionId);
+    if (preparedPlan == null) {
+      return planMaker.makePlan(new Path(file), policy);
+    }
+    try {
+      ReservedMovePlan plan = preparedPlan.get();
+      if (planMaker.isOutdated(plan)) {
+        // targets of the plan could be chosen with the stale storage reports
+        preparedPlans.invalidate(actionId);
+        return planMaker.makePlan(new Path(file), policy);
+      }
+      return plan;
+    } catch (ExecutionException e) {
+      preparedPlans.invalidate(actionId);
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static String getStoragePolicy(String actionType) {
+    switch (actionType) {
+      case "allssd":
+        return "ALL_SSD";
+      case "onessd":
+        return "ONE_SSD";
+      case "archive":
+        return "COLD";
+      case "alldisk":
+        return "HOT";
+      case "onedisk":
+        return "WARM";
+      case "ramdisk":
+        return "LAZY_PERSIST";
+      default:
+        return null;
+    }
+  }
+
   @Override
   public ScheduleResult onSchedule(CmdletInfo cmdletInfo, ActionInfo actionInfo,
       LaunchCmdlet cmdlet, LaunchAction action) {
@@ -153,30 +297,10 @@ public ScheduleResult onSchedule(CmdletInfo cmdletInfo, ActionInfo actionInfo,
       return ScheduleResult.FAIL;
     }
 
-    String policy = null;
-    switch (action.getActionType()) {
-      case "allssd":
-        policy = "ALL_SSD";
-        break;
-      case "onessd":
-        policy = "ONE_SSD";
-        break;
-      case "archive":
-        policy = "COLD";
-        break;
-      case "alldisk":
-        policy = "HOT";
-        break;
-      case "onedisk":
-        policy = "WARM";
-        break;
-      case "ramdisk":
-        policy = "LAZY_PERSIST";
-        break;
-    }
-
+    String policy = getStoragePolicy(action.getActionType());
     try {
-      FileMovePlan plan = planMaker.processNamespace(new Path(file), policy);
+      ReservedMovePlan reservedPlan = getMovePlan(actionInfo.getActionId(), file, policy);
+      FileMovePlan plan = reservedPlan.getPlan();
       if (rateLimiter != null) {
         // Two possible understandings here: file level and replica level
         int len = (int)(plan.getFileLengthToMove() >> 20);
@@ -185,10 +309,16 @@ public ScheduleResult onSchedule(CmdletInfo cmdletInfo, ActionInfo actionInfo,
             if (LOG.isDebugEnabled()) {
               LOG.debug("Cancel Scheduling action {} due to throttling. {}", actionInfo, plan);
             }
+            // the prepared plan is kept for the next attempt
+            if (preparedPlans.getIfPresent(actionInfo.getActionId()) == null) {
+              reservedPlan.release();
+            }
             return ScheduleResult.RETRY;
           }
         }
       }
+      reservedPlan.confirm();
+      preparedPlans.invalidate(actionInfo.getActionId());
       plan.setNamenode(nnUri);
       action.getArgs().put(MoveFileAction.MOVE_PLAN, plan.toString());
       fileLock.add(action.getArgs().get(HdfsAction.FILE_PATH));
@@ -206,6 +336,8 @@ public ScheduleResult onSchedule(CmdletInfo cmdletInfo, ActionInfo actionInfo,
 
   @Override
   public void onActionFinished(CmdletInfo cmdletInfo, ActionInfo actionInfo) {
+    removeWaitingPlan(actionInfo.getActionId());
+    preparedPlans.invalidate(actionInfo.getActionId());
     fileLock.remove(actionInfo.getArgs().get(HdfsAction.FILE_PATH));
   }
 
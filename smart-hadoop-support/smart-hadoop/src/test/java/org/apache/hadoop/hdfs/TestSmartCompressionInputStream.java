@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.commons.lang3.mutable.MutableFloat;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.hdfs.MiniClusterHarness;
+import org.smartdata.model.CompressionFileState;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestSmartCompressionInputStream extends MiniClusterHarness {
+  private static final String FILE = "/compressed";
+  private static final int BUFFER_SIZE = 4 * 1024;
+
+  private byte[] originalData;
+  private CompressionFileState fileState;
+
+  @Override
+  @Before
+  public void init() throws Exception {
+    DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    super.init();
+
+    Random random = new Random(2018);
+    originalData = new byte[BUFFER_SIZE * 5 + 123];
+    for (int i = 0; i < originalData.length; i++) {
+      originalData[i] = (byte) random.nextInt(16);
+    }
+    fileState = new CompressionFileState(FILE, BUFFER_SIZE, "Zlib");
+    fileState.setOriginalLength(originalData.length);
+    try (FSDataOutputStream out = dfs.create(new Path(FILE))) {
+      new SmartCompressorStream(new ByteArrayInputStream(originalData), out,
+          BUFFER_SIZE, fileState, new MutableFloat()).convert();
+    }
+  }
+
+  @Test
+  public void testSequentialRead() throws Exception {
+    try (SmartCompressionInputStream in = openCompressedFile()) {
+      assertEquals(originalData.length, in.available());
+      assertEquals(originalData[0] & 0xff, in.read());
+
+      byte[] buf = new byte[originalData.length + 10];
+      int readBytes = 1;
+      int read;
+      while ((read = in.read(buf, readBytes, Math.min(1000, buf.length - readBytes))) > 0) {
+        readBytes += read;
+      }
+      buf[0] = originalData[0];
+      assertEquals(originalData.length, readBytes);
+      assertArrayEquals(originalData, Arrays.copyOf(buf, readBytes));
+      assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  public void testSeekAndSkip() throws Exception {
+    try (SmartCompressionInputStream in = openCompressedFile()) {
+      in.seek(BUFFER_SIZE * 3 - 2);
+      assertEquals(BUFFER_SIZE * 3 - 2, in.getPos());
+      byte[] buf = new byte[5];
+      assertEquals(5, in.read(buf, 0, 5));
+      assertArrayEquals(copyOfData(BUFFER_SIZE * 3 - 2, 5), buf);
+
+      assertEquals(10, in.skip(10));
+      assertEquals(originalData[BUFFER_SIZE * 3 + 13] & 0xff, in.read());
+      in.seek(0);
+      assertEquals(originalData[0] & 0xff, in.read());
+    }
+  }
+
+  @Test
+  public void testPositionalRead() throws Exception {
+    try (SmartCompressionInputStream in = openCompressedFile()) {
+      in.seek(100);
+      byte[] buf = new byte[BUFFER_SIZE * 2];
+      in.readFully(BUFFER_SIZE - 50, buf, 0, buf.length);
+      assertArrayEquals(copyOfData(BUFFER_SIZE - 50, buf.length), buf);
+      // positional reads don't change the stream position
+      assertEquals(100, in.getPos());
+
+      assertEquals(-1, in.read(originalData.length, buf, 0, 1));
+      assertEquals(123, in.read(BUFFER_SIZE * 5, buf, 0, buf.length));
+    }
+  }
+
+  @Test
+  public void testDirectBufferRead() throws Exception {
+    try (SmartCompressionInputStream in = openCompressedFile()) {
+      ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE + 10);
+      in.readFully(BUFFER_SIZE * 2 + 7, buf);
+      buf.flip();
+      byte[] data = new byte[buf.remaining()];
+      buf.get(data);
+      assertArrayEquals(copyOfData(BUFFER_SIZE * 2 + 7, data.length), data);
+
+      buf.clear();
+      in.seek(BUFFER_SIZE - 3);
+      assertEquals(buf.capacity(), in.read(buf));
+      assertEquals(BUFFER_SIZE - 3 + buf.capacity(), in.getPos());
+    }
+  }
+
+  @Test(expected = EOFException.class)
+  public void testReadFullyAfterEof() throws Exception {
+    try (SmartCompressionInputStream in = openCompressedFile()) {
+      in.readFully(originalData.length - 1, ByteBuffer.allocate(2));
+    }
+  }
+
+  @Test
+  public void testConcurrentPositionalReads() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (SmartCompressionInputStream in = openCompressedFile()) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        Random random = new Random(thread);
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 50; i++) {
+            int position = random.nextInt(originalData.length - 100);
+            byte[] buf = new byte[100];
+            in.readFully(position, buf, 0, buf.length);
+            assertArrayEquals(copyOfData(position, buf.length), buf);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private SmartCompressionInputStream openCompressedFile() throws Exception {
+    return new SmartCompressionInputStream(dfsClient, FILE, true, fileState);
+  }
+
+  private byte[] copyOfData(int offset, int length) {
+    return Arrays.copyOfRange(originalData, offset, offset + length);
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the copy time of {@link StreamCopyHandler} with the previous copy loop.
+ * Isn't run by the regular build, run it with the benchmarks profile:
+ * mvn test -Pbenchmarks -pl smart-hadoop-support/smart-hadoop
+ */
+public class StreamCopyHandlerBenchmark extends MiniClusterHarness {
+  private static final Logger LOG = LoggerFactory.getLogger(StreamCopyHandlerBenchmark.class);
+
+  private static final Path SRC_FILE = new Path("/copy/src");
+  private static final Path DEST_FILE = new Path("/copy/dest");
+
+  @Test
+  public void benchmarkCopy() throws Exception {
+    long fileLength = 64L * 1024 * 1024;
+    // block size should be a multiple of the checksum chunk size
+    long bytesPerChecksum = dfs.getServerDefaults(SRC_FILE).getBytesPerChecksum();
+    long blockSize = 8L * 1024 * 1024 / bytesPerChecksum * bytesPerChecksum;
+    try (FSDataOutputStream out = dfs.create(SRC_FILE, FsPermission.getFileDefault(),
+        true, 4096, (short) 1, blockSize, null)) {
+      byte[] chunk = new byte[1024 * 1024];
+      new Random(0).nextBytes(chunk);
+      for (long written = 0; written < fileLength; written += chunk.length) {
+        out.write(chunk);
+      }
+    }
+    int rounds = 5;
+    int bufferSize = 64 * 1024;
+
+    long legacyTime = 0;
+    long sequentialTime = 0;
+    long readAheadTime = 0;
+    for (int round = 0; round < rounds; round++) {
+      legacyTime += timeCopy(blockSize, (in, out) ->
+          legacyCopy(in, out, bufferSize, fileLength));
+      sequentialTime += timeCopy(blockSize, (in, out) ->
+          StreamCopyHandler.of(in, out)
+              .count(fileLength)
+              .bufferSize(bufferSize)
+              .readAhead(false)
+              .build()
+              .runCopy());
+      readAheadTime += timeCopy(blockSize, (in, out) ->
+          StreamCopyHandler.of(in, out)
+              .count(fileLength)
+              .bufferSize(bufferSize)
+              .build()
+              .runCopy());
+    }
+
+    assertEquals(fileLength, dfs.getFileStatus(DEST_FILE).getLen());
+    LOG.info("Average copy time of {} bytes: previous copy loop = {}ms, "
+            + "pooled buffer = {}ms, pooled buffers with read-ahead = {}ms",
+        fileLength, legacyTime / rounds, sequentialTime / rounds, readAheadTime / rounds);
+  }
+
+  private long timeCopy(long blockSize, Copier copier) throws IOException {
+    long startTime = System.currentTimeMillis();
+    try (FSDataInputStream in = dfs.open(SRC_FILE);
+         FSDataOutputStream out = dfs.create(DEST_FILE, FsPermission.getFileDefault(),
+             true, 4096, (short) 1, blockSize, null)) {
+      copier.copy(in, out);
+    }
+    return System.currentTimeMillis() - startTime;
+  }
+
+  /** Copy loop used before the buffers pooling and read-ahead. */
+  private void legacyCopy(InputStream in, OutputStream out,
+                          int bufferSize, long count) throws IOException {
+    byte[] buf = new byte[bufferSize];
+    long bytesRemaining = count;
+    while (bytesRemaining > 0) {
+      int bytesRead = in.read(buf, 0, (int) Math.min(bytesRemaining, bufferSize));
+      if (bytesRead == -1) {
+        break;
+      }
+      out.write(buf, 0, bytesRead);
+      bytesRemaining -= bytesRead;
+    }
+  }
+
+  private interface Copier {
+    void copy(InputStream in, OutputStream out) throws IOException;
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestStreamCopyHandler extends MiniClusterHarness {
+  private static final Path SRC_FILE = new Path("/copy/src");
+  private static final Path DEST_FILE = new Path("/copy/dest");
+
+  @Test
+  public void testCopyRange() throws Exception {
+    DFSTestUtil.createFile(dfs, SRC_FILE, 1000, (short) 1, 0xFEED);
+    byte[] srcContent = DFSTestUtil.readFileAsBytes(dfs, SRC_FILE);
+
+    for (boolean readAhead : new boolean[] {true, false}) {
+      try (FSDataInputStream in = dfs.open(SRC_FILE);
+           FSDataOutputStream out = dfs.create(DEST_FILE, true)) {
+        StreamCopyHandler.of(in, out)
+            .offset(130)
+            .count(500)
+            .bufferSize(64)
+            .readAhead(readAhead)
+            .build()
+            .runCopy();
+      }
+      assertArrayEquals(Arrays.copyOfRange(srcContent, 130, 630),
+          DFSTestUtil.readFileAsBytes(dfs, DEST_FILE));
+    }
+  }
+
+  @Test
+  public void testCopyFromNonSeekableStream() throws Exception {
+    byte[] content = new byte[1000];
+    new Random(0).nextBytes(content);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    StreamCopyHandler.of(new ByteArrayInputStream(content), out)
+        .offset(100)
+        .count(2000)
+        .bufferSize(64)
+        .build()
+        .runCopy();
+
+    assertArrayEquals(Arrays.copyOfRange(content, 100, 1000), out.toByteArray());
+  }
+
+  @Test
+  public void testThrottleProgress() throws Exception {
+    byte[] content = new byte[1000];
+    List<Float> progress = new ArrayList<>();
+
+    StreamCopyHandler.of(new ByteArrayInputStream(content), new ByteArrayOutputStream())
+        .count(content.length)
+        .bufferSize(100)
+        .progressIntervalMs(Long.MAX_VALUE)
+        .progressConsumer(progress::add)
+        .build()
+        .runCopy();
+    assertEquals(Arrays.asList(1.0f), progress);
+
+    progress.clear();
+    StreamCopyHandler.of(new ByteArrayInputStream(content), new ByteArrayOutputStream())
+        .count(content.length)
+        .bufferSize(100)
+        .progressIntervalMs(0)
+        .progressConsumer(progress::add)
+        .build()
+        .runCopy();
+    assertEquals(10, progress.size());
+  }
+}
@@ -17,18 +17,26 @@
  */
 package org.smartdata.hdfs.action;
 
+import org.apache.commons.lang3.mutable.MutableFloat;
+import org.apache.hadoop.hdfs.ParallelCompressorStream;
+import org.apache.hadoop.hdfs.SmartCompressorStream;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.smartdata.hdfs.MiniClusterHarness;
+import org.smartdata.model.CompressionFileState;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TestCompressionAction extends MiniClusterHarness {
 
@@ -108,6 +116,36 @@ public void testExecute() throws Exception {
     }
   }
 
+  @Test
+  public void testParallelCompression() throws Exception {
+    int bufferSize = 16 * 1024;
+    byte[] bytes = TestCompressionAction.BytesGenerator.get(bufferSize * 5 + 100);
+
+    CompressionFileState serialState = new CompressionFileState("/file", bufferSize, "Zlib");
+    serialState.setOriginalLength(bytes.length);
+    ByteArrayOutputStream serialOut = new ByteArrayOutputStream();
+    new SmartCompressorStream(new ByteArrayInputStream(bytes), serialOut,
+        bufferSize, serialState, new MutableFloat()).convert();
+
+    CompressionFileState parallelState = new CompressionFileState("/file", bufferSize, "Zlib");
+    parallelState.setOriginalLength(bytes.length);
+    ByteArrayOutputStream parallelOut = new ByteArrayOutputStream();
+    MutableFloat progress = new MutableFloat();
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      new ParallelCompressorStream(new ByteArrayInputStream(bytes), parallelOut,
+          bufferSize, parallelState, progress, executor, 3).convert();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Assert.assertArrayEquals(serialOut.toByteArray(), parallelOut.toByteArray());
+    Assert.assertArrayEquals(serialState.getOriginalPos(), parallelState.getOriginalPos());
+    Assert.assertArrayEquals(serialState.getCompressedPos(), parallelState.getCompressedPos());
+    Assert.assertEquals(6, parallelState.getOriginalPos().length);
+    Assert.assertEquals(1.0f, progress.getValue(), 0.0001f);
+  }
+
   static final class BytesGenerator {
     private static final byte[] CACHE = new byte[] { 0x0, 0x1, 0x2, 0x3, 0x4,
       0x5, 0x6, 0x7, 0x8, 0x9, 0xA, 0xB, 0xC, 0xD, 0xE, 0xF };
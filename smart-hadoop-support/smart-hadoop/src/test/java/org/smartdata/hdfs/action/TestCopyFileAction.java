@@ -20,25 +20,38 @@
 import com.google.common.collect.Sets;
 import lombok.Setter;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSInputStream;
 import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.FailingDfsInputStream;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
+import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.hadoop.filesystem.SmartFileSystem;
 import org.smartdata.hdfs.MultiClusterHarness;
 import org.smartdata.hdfs.client.SmartDFSClient;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.smartdata.hdfs.MultiClusterHarness.TestType.INTRA_CLUSTER;
 import static org.smartdata.hdfs.action.CopyPreservedAttributesAction.PreserveAttribute.MODIFICATION_TIME;
 import static org.smartdata.hdfs.action.CopyPreservedAttributesAction.PreserveAttribute.OWNER;
 import static org.smartdata.hdfs.action.CopyPreservedAttributesAction.PreserveAttribute.REPLICATION_NUMBER;
@@ -49,12 +62,26 @@
 public class TestCopyFileAction extends MultiClusterHarness {
 
   private static final String FILE_TO_COPY_CONTENT = "testContent 112";
+  private static final int BLOCK_SIZE = 50;
+
+  @Override
+  public MiniDFSCluster createCluster(Configuration conf)
+      throws IOException, IllegalAccessException, ClassNotFoundException, InstantiationException {
+    // parallel copy parts are aligned with the block size,
+    // which could be changed by the other tests
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, BLOCK_SIZE);
+    File keyStore = new File(tmpFolder.newFolder(), "test.jks");
+    conf.set(CommonConfigurationKeysPublic.HADOOP_SECURITY_KEY_PROVIDER_PATH,
+        "jceks://file" + keyStore.getAbsolutePath());
+    return super.createCluster(conf);
+  }
 
   private void copyFile(Path src, Path dest, long length, long offset) {
     copyFile(src, dest, length, offset, action -> {});
   }
 
-  private void copyFile(Path src, Path dest, long length, long offset,
+  private CopyFileAction copyFile(Path src, Path dest, long length, long offset,
       Consumer<CopyFileAction> actionConfigurer,
       CopyPreservedAttributesAction.PreserveAttribute... preserveAttributes
   ) {
@@ -83,6 +110,7 @@ private void copyFile(Path src, Path dest, long length, long offset,
     if (!copyFileAction.getExpectedAfterRun()) {
       throw new RuntimeException("Action failed", copyFileAction.getThrowable());
     }
+    return copyFileAction;
   }
 
   @Test
@@ -190,6 +218,137 @@ public void testRetryUnsuccessfulAppend() throws Exception {
     }
   }
 
+  @Test
+  public void testParallelCopy() throws Exception {
+    enableParallelCopy();
+    Path srcPath = new Path("/testCopy/testParallelCopy");
+    Path destPath = anotherClusterPath("/backup", srcPath.getName());
+    DFSTestUtil.createFile(dfs, srcPath, 1000, (short) 3, 0xFEED);
+
+    copyFile(srcPath, destPath, 0, 0);
+
+    assertEqualContent(srcPath, destPath);
+    Assert.assertEquals(1, anotherDfs.listStatus(destPath.getParent()).length);
+  }
+
+  @Test
+  public void testParallelAppend() throws Exception {
+    enableParallelCopy();
+    Path srcPath = new Path("/testCopy/testParallelAppend");
+    Path destPath = anotherClusterPath("/backup", srcPath.getName());
+    DFSTestUtil.createFile(dfs, srcPath, 1000, (short) 3, 0xFEED);
+    byte[] srcContent = DFSTestUtil.readFileAsBytes(dfs, srcPath);
+    DFSTestUtil.writeFile(anotherDfs, destPath, Arrays.copyOf(srcContent, 130));
+
+    copyFile(srcPath, destPath, 870, 130);
+
+    assertEqualContent(srcPath, destPath);
+  }
+
+  @Test
+  public void testReuseCopiedParts() throws Exception {
+    enableParallelCopy();
+    Path srcPath = new Path("/testCopy/testReuseParts");
+    Path destPath = anotherClusterPath("/backup", srcPath.getName());
+    DFSTestUtil.createFile(dfs, srcPath, 1000, (short) 3, 0xFEED);
+    byte[] srcContent = DFSTestUtil.readFileAsBytes(dfs, srcPath);
+    byte[] srcModificationTime = Long.toString(
+        dfs.getFileStatus(srcPath).getModificationTime()).getBytes(StandardCharsets.UTF_8);
+
+    // part copied by the previous failed action
+    Path copiedPart = new Path(destPath.getParent(), "." + srcPath.getName() + ".part-100");
+    DFSTestUtil.writeFile(anotherDfs, copiedPart, Arrays.copyOfRange(srcContent, 100, 200));
+    anotherDfs.setXAttr(copiedPart, "user.ssm.copy.src.mtime", srcModificationTime);
+    // part copied before the source file modification
+    Path stalePart = new Path(destPath.getParent(), "." + srcPath.getName() + ".part-200");
+    DFSTestUtil.writeFile(anotherDfs, stalePart, new byte[100]);
+    anotherDfs.setXAttr(stalePart, "user.ssm.copy.src.mtime", "0".getBytes());
+
+    CopyFileAction action = copyFile(srcPath, destPath, 0, 0, copyAction -> {});
+
+    assertEqualContent(srcPath, destPath);
+    String result = action.getActionStatus().getResult();
+    Assert.assertTrue(result, result.contains("Reused already copied part [100, 200)"));
+    Assert.assertTrue(result.contains("Copied part [200, 300)"));
+    Assert.assertFalse(anotherDfs.exists(copiedPart));
+    Assert.assertFalse(anotherDfs.exists(stalePart));
+  }
+
+  @Test
+  public void testDeleteStaleParts() throws Exception {
+    enableParallelCopy();
+    Path srcPath = new Path("/testCopy/testDeleteStaleParts");
+    Path destPath = anotherClusterPath("/backup", srcPath.getName());
+    DFSTestUtil.createFile(dfs, srcPath, 1000, (short) 3, 0xFEED);
+    byte[] srcContent = DFSTestUtil.readFileAsBytes(dfs, srcPath);
+    DFSTestUtil.writeFile(anotherDfs, destPath, Arrays.copyOf(srcContent, 130));
+
+    // parts left by the failed copy of the other range
+    Path stalePart = new Path(destPath.getParent(), "." + srcPath.getName() + ".part-100");
+    Path unrecordedPart = new Path(destPath.getParent(), "." + srcPath.getName() + ".part-200");
+    DFSTestUtil.writeFile(anotherDfs, stalePart, new byte[100]);
+    DFSTestUtil.writeFile(anotherDfs, unrecordedPart, new byte[100]);
+    anotherDfs.setXAttr(destPath, "user.ssm.copy.parts", "100".getBytes());
+
+    CopyFileAction action = copyFile(srcPath, destPath, 870, 130, copyAction -> {});
+
+    assertEqualContent(srcPath, destPath);
+    Assert.assertTrue(action.getActionStatus().getResult().contains("Deleted stale part"));
+    Assert.assertFalse(anotherDfs.exists(stalePart));
+    Assert.assertTrue(anotherDfs.exists(unrecordedPart));
+    Assert.assertFalse(anotherDfs.getXAttrs(destPath).containsKey("user.ssm.copy.parts"));
+  }
+
+  @Test
+  public void testFallBackOnConcatFailure() throws Exception {
+    // the local file system is replaced only for the intra-cluster copy
+    Assume.assumeTrue(testType == INTRA_CLUSTER);
+    enableParallelCopy();
+    Path srcPath = new Path("/testCopy/testFallBackOnConcatFailure");
+    Path destPath = new Path("/backup", srcPath.getName());
+    DFSTestUtil.createFile(dfs, srcPath, 1000, (short) 3, 0xFEED);
+    DistributedFileSystem failingDfs = spy(dfs);
+    doThrow(new IOException("concat error")).when(failingDfs).concat(any(), any());
+
+    CopyFileAction action = copyFile(srcPath, destPath, 0, 0,
+        copyAction -> copyAction.setLocalFileSystem(failingDfs));
+
+    assertEqualContent(srcPath, destPath);
+    Assert.assertTrue(action.getActionStatus().getLog()
+        .contains("Falling back to the sequential copy"));
+    Assert.assertEquals(1, dfs.listStatus(destPath.getParent()).length);
+  }
+
+  @Test
+  public void testSequentialCopyToEncryptionZone() throws Exception {
+    enableParallelCopy();
+    Path srcPath = new Path("/testCopy/testCopyToEncryptionZone");
+    Path zone = new Path("/encrypted");
+    Path destPath = anotherClusterPath(zone.toString(), srcPath.getName());
+    DFSTestUtil.createFile(dfs, srcPath, 1000, (short) 3, 0xFEED);
+    DFSTestUtil.createKey("test_key", anotherCluster, anotherDfs.getConf());
+    anotherDfs.mkdirs(zone);
+    anotherDfs.createEncryptionZone(zone, "test_key");
+
+    CopyFileAction action = copyFile(srcPath, destPath, 0, 0, copyAction -> {});
+
+    assertEqualContent(srcPath, destPath);
+    Assert.assertTrue(action.getActionStatus().getResult()
+        .contains("Parallel copy isn't supported in encryption zones"));
+  }
+
+  private void enableParallelCopy() {
+    smartContext.getConf().setLong(SmartConfKeys.SMART_ACTION_COPY_PARALLEL_THRESHOLD_KEY, 100);
+    smartContext.getConf().setInt(SmartConfKeys.SMART_ACTION_COPY_PARALLEL_STREAMS_KEY, 4);
+    smartContext.getConf().setInt(
+        SmartConfKeys.SMART_ACTION_COPY_PARALLEL_BLOCKS_PER_PART_KEY, 2);
+  }
+
+  private void assertEqualContent(Path srcPath, Path destPath) throws IOException {
+    Assert.assertArrayEquals(DFSTestUtil.readFileAsBytes(dfs, srcPath),
+        DFSTestUtil.readFileAsBytes(anotherDfs, destPath));
+  }
+
   @Setter
   private static class FailingDfsClient extends SmartDFSClient {
     private boolean shouldFail;
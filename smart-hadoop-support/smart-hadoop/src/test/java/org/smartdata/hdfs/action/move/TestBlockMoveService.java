@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.action.move;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class TestBlockMoveService {
+  private BlockMoveService moveService;
+  private CountDownLatch releaseMoves;
+
+  @Before
+  public void setUp() {
+    moveService = new BlockMoveService(new Configuration(), 8, 2, new BlockMoveMetrics());
+    releaseMoves = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    releaseMoves.countDown();
+  }
+
+  @Test
+  public void testDatanodeMovesLimit() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(2);
+
+    List<CompletableFuture<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      results.add(moveService.submit("dn1:9866", 100L, () -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        started.countDown();
+        awaitRelease();
+        running.decrementAndGet();
+        return true;
+      }));
+    }
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    // moves to other datanodes are not blocked by the busy one
+    assertTrue(moveService.submit("dn2:9866", 100L, () -> true)
+        .get(10, TimeUnit.SECONDS));
+    assertEquals(2, running.get());
+
+    releaseMoves.countDown();
+    for (CompletableFuture<Boolean> result : results) {
+      assertTrue(result.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(2, maxRunning.get());
+  }
+
+  @Test
+  public void testFailedMove() throws Exception {
+    assertFalse(moveService.submit("dn1:9866", 100L, () -> false)
+        .get(10, TimeUnit.SECONDS));
+    assertFalse(moveService.submit("dn1:9866", 100L, () -> {
+      throw new IllegalStateException("move error");
+    }).get(10, TimeUnit.SECONDS));
+    // slots of the failed moves are released
+    releaseMoves.countDown();
+    for (int i = 0; i < 3; i++) {
+      assertTrue(moveService.submit("dn1:9866", 100L, () -> true)
+          .get(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testCloseTransportOnlyWhenReleased() throws Exception {
+    Configuration conf = new Configuration();
+    NameNodeConnector nnc = mock(NameNodeConnector.class);
+    BlockMoveService service = new BlockMoveService(conf, 1, 2, new BlockMoveMetrics(),
+        namenode -> new BlockMoveService.Transport(nnc, conf), 0L);
+    URI namenode = URI.create("hdfs://nn1:8020");
+
+    BlockMoveService.Transport transport = service.acquireTransport(namenode);
+    assertSame(transport, service.acquireTransport(namenode));
+
+    service.releaseTransport(namenode);
+    // the other executor still holds the transport
+    service.acquireTransport(URI.create("hdfs://nn2:8020"));
+    verify(nnc, never()).close();
+    assertEquals(2, service.getTransportsCount());
+
+    service.releaseTransport(namenode);
+    verify(nnc).close();
+    assertEquals(1, service.getTransportsCount());
+  }
+
+  private void awaitRelease() {
+    try {
+      releaseMoves.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -18,9 +18,13 @@
 package org.smartdata.hdfs.file.equality;
 
 import java.io.IOException;
+import java.util.Arrays;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Before;
@@ -34,11 +38,13 @@
 
 import static org.smartdata.hdfs.MultiClusterHarness.TestType.INTER_CLUSTER;
 import static org.smartdata.hdfs.MultiClusterHarness.TestType.INTRA_CLUSTER;
+import static org.smartdata.hdfs.file.equality.FileEqualityStrategy.Strategy.BLOCK_CHECKSUM;
 import static org.smartdata.hdfs.file.equality.FileEqualityStrategy.Strategy.CHECKSUM;
 import static org.smartdata.hdfs.file.equality.FileEqualityStrategy.Strategy.FILE_LENGTH;
 
 @RunWith(Parameterized.class)
 public class TestFileEqualityStrategy extends MultiClusterHarness {
+  private static final int BLOCK_SIZE = 50;
 
   private FileEqualityStrategy fileEqualityStrategy;
 
@@ -56,10 +62,22 @@ public static Object[] parameters() {
     return new Object[][] {
         {INTRA_CLUSTER, FILE_LENGTH},
         {INTRA_CLUSTER, CHECKSUM},
-        {INTER_CLUSTER, CHECKSUM}
+        {INTER_CLUSTER, CHECKSUM},
+        {INTRA_CLUSTER, BLOCK_CHECKSUM},
+        {INTER_CLUSTER, BLOCK_CHECKSUM}
     };
   }
 
+  @Override
+  public MiniDFSCluster createCluster(Configuration conf)
+      throws IOException, IllegalAccessException, ClassNotFoundException, InstantiationException {
+    // compared prefixes are aligned with the block size,
+    // which could be changed by the other tests
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, BLOCK_SIZE);
+    return super.createCluster(conf);
+  }
+
   @Test
   public void testCompareFilesWithDifferentLength() throws IOException {
     Path srcPath = new Path("/src");
@@ -97,7 +115,7 @@ public void testCompareFileWithItself() throws IOException {
 
   @Test
   public void testCompareNotEqualFilesWithEqualLength() throws IOException {
-    Assume.assumeTrue(strategy == CHECKSUM);
+    Assume.assumeTrue(strategy != FILE_LENGTH);
 
     Path srcPath = new Path("/src");
     Path destPath = anotherClusterPath("/", "dest");
@@ -109,14 +127,77 @@ public void testCompareNotEqualFilesWithEqualLength() throws IOException {
     Assert.assertFalse(areFilesEqual);
   }
 
+  @Test
+  public void testEqualPrefixOfEqualFiles() throws IOException {
+    byte[] data = generateData(120);
+
+    Assert.assertEquals(120, getEqualPrefixLength(data, data));
+  }
+
+  @Test
+  public void testEqualPrefixOfAppendedFile() throws IOException {
+    byte[] srcData = generateData(200);
+    byte[] destData = Arrays.copyOf(srcData, 120);
+
+    Assert.assertEquals(120, getEqualPrefixLength(srcData, destData));
+  }
+
+  @Test
+  public void testEqualPrefixOfChangedFile() throws IOException {
+    Assume.assumeTrue(strategy == BLOCK_CHECKSUM);
+
+    byte[] srcData = generateData(200);
+    byte[] destData = Arrays.copyOf(srcData, srcData.length);
+    destData[130]++;
+
+    Assert.assertEquals(100, getEqualPrefixLength(srcData, destData));
+
+    destData[10]++;
+    Assert.assertEquals(0, getEqualPrefixLength(srcData, destData));
+  }
+
+  @Test
+  public void testEqualPrefixOfFileWithDirtyTail() throws IOException {
+    Assume.assumeTrue(strategy == BLOCK_CHECKSUM);
+
+    byte[] destData = generateData(150);
+    byte[] srcData = Arrays.copyOf(destData, 120);
+
+    // dest tail is truncated at the block boundary
+    Assert.assertEquals(100, getEqualPrefixLength(srcData, destData));
+  }
+
+  private long getEqualPrefixLength(byte[] srcData, byte[] destData) throws IOException {
+    Path srcPath = new Path("/src");
+    Path destPath = anotherClusterPath("/", "dest");
+
+    DFSTestUtil.writeFile(dfs, srcPath, srcData);
+    DFSTestUtil.writeFile(anotherDfs, destPath, destData);
+
+    return fileEqualityStrategy.getEqualPrefixLength(
+        srcFileInfo(srcPath), anotherDfs.getFileStatus(destPath));
+  }
+
+  private byte[] generateData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) i;
+    }
+    return data;
+  }
+
   private boolean checkFilesEquality(Path srcPath, Path destPath) throws IOException {
+    FileStatus destFileStatus = anotherDfs.getFileStatus(destPath);
+
+    return fileEqualityStrategy.areEqual(srcFileInfo(srcPath), destFileStatus);
+  }
+
+  private FileInfo srcFileInfo(Path srcPath) throws IOException {
     FileStatus srcFileStatus = dfs.getFileStatus(srcPath);
-    FileInfo srcFileInfo = FileInfo.newBuilder()
+    return FileInfo.newBuilder()
         .setPath(srcPath.toUri().getPath())
         .setLength(srcFileStatus.getLen())
+        .setBlocksize(srcFileStatus.getBlockSize())
         .build();
-    FileStatus destFileStatus = anotherDfs.getFileStatus(destPath);
-
-    return fileEqualityStrategy.areEqual(srcFileInfo, destFileStatus);
   }
 }
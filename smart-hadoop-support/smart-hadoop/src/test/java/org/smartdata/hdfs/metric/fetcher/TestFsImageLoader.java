@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.namenode.FSImageTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.conf.SmartConf;
+import org.smartdata.conf.SmartConfKeys;
+import org.smartdata.model.FileInfo;
+import org.smartdata.model.PathChecker;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.smartdata.conf.SmartConfKeys.SMART_IGNORE_DIRS_KEY;
+import static org.smartdata.hdfs.CompatibilityHelperLoader.getHelper;
+
+public class TestFsImageLoader {
+  private SmartConf conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new SmartConf();
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    dfs = cluster.getFileSystem();
+
+    dfs.mkdirs(new Path("/user/data"), new FsPermission("750"));
+    dfs.setOwner(new Path("/user"), "user1", "group1");
+    dfs.setStoragePolicy(new Path("/user/data"), "ONE_SSD");
+    DFSTestUtil.createFile(dfs, new Path("/user/data/file1"), 1024, (short) 1, 0L);
+    DFSTestUtil.createFile(dfs, new Path("/user/file2"), 0, (short) 1, 0L);
+    DFSTestUtil.createFile(dfs, new Path("/tmp/file3"), 10, (short) 1, 0L);
+    dfs.setStoragePolicy(new Path("/tmp/file3"), "ALL_SSD");
+    dfs.mkdirs(new Path("/user/empty"));
+    // file renamed after the snapshot is listed by reference
+    dfs.allowSnapshot(new Path("/user"));
+    dfs.createSnapshot(new Path("/user"), "s1");
+    dfs.rename(new Path("/user/file2"), new Path("/user/data/renamed"));
+    dfs.delete(new Path("/user/empty"), true);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testLoadNamespace() throws Exception {
+    FsImageLoader imageLoader = saveNamespace();
+    Map<String, FileInfo> loadedFiles = load(imageLoader, new PathChecker(conf));
+
+    Map<String, FileInfo> expectedFiles = new HashMap<>();
+    for (String path : new String[] {"/", "/user", "/user/data", "/user/data/file1",
+        "/user/data/renamed", "/tmp", "/tmp/file3"}) {
+      expectedFiles.put(path, listedFileInfo(path));
+    }
+    assertEquals(expectedFiles, loadedFiles);
+    assertEquals(10, loadedFiles.get("/user/data/renamed").getStoragePolicy());
+    assertEquals(cluster.getNameNode().getFSImage().getMostRecentCheckpointTxId(),
+        imageLoader.getTxid());
+  }
+
+  @Test
+  public void testLoadCoveredDirs() throws Exception {
+    conf.set(SmartConfKeys.SMART_COVER_DIRS_KEY, "/user");
+    conf.set(SMART_IGNORE_DIRS_KEY, "/user/data");
+    Map<String, FileInfo> loadedFiles = load(saveNamespace(), new PathChecker(conf));
+
+    FileInfo coverDir = listedFileInfo("/user");
+    coverDir.setPath("/user/");
+    Map<String, FileInfo> expectedFiles = new HashMap<>();
+    expectedFiles.put("/user/", coverDir);
+    assertEquals(expectedFiles, loadedFiles);
+  }
+
+  private FsImageLoader saveNamespace() throws Exception {
+    dfs.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_ENTER);
+    dfs.saveNamespace();
+    dfs.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_LEAVE);
+    File imageDir = FSImageTestUtil.getNameNodeCurrentDirs(cluster, 0).get(0);
+    return FsImageLoader.open(conf, imageDir.getAbsolutePath());
+  }
+
+  private Map<String, FileInfo> load(FsImageLoader imageLoader, PathChecker pathChecker)
+      throws Exception {
+    Map<String, FileInfo> loadedFiles = new HashMap<>();
+    imageLoader.load(pathChecker, fileInfo -> loadedFiles.put(fileInfo.getPath(), fileInfo));
+    return loadedFiles;
+  }
+
+  private FileInfo listedFileInfo(String path) throws Exception {
+    HdfsFileStatus status = dfs.getClient().getFileInfo(path);
+    return new FileInfo(
+        path,
+        status.getFileId(),
+        status.getLen(),
+        status.isDir(),
+        status.getReplication(),
+        status.getBlockSize(),
+        status.getModificationTime(),
+        status.getAccessTime(),
+        status.getPermission().toShort(),
+        status.getOwner(),
+        status.getGroup(),
+        status.getStoragePolicy(),
+        getHelper().getErasureCodingPolicy(status));
+  }
+}
@@ -21,6 +21,7 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSClient;
 import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.junit.Assert;
 import org.junit.Test;
@@ -302,6 +303,53 @@ public void testApplierRenameEvent() throws Exception {
     Assert.assertTrue(info4 == null && info5 != null);
   }
 
+  @Test
+  public void testCoalesceWindowEvents() throws Exception {
+    DFSClient client = Mockito.mock(DFSClient.class);
+    InotifyEventApplier applier = new InotifyEventApplier(metaStore, client);
+    metaStore.insertFiles(new FileInfo[]{
+        HadoopUtil.convertFileStatus(getDummyFileStatus("/old", 3000), "/old"),
+        HadoopUtil.convertFileStatus(getDummyFileStatus("/gone", 3001), "/gone")
+    });
+
+    List<HdfsFileStatus> children = new ArrayList<>();
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      children.add(getDummyFileStatus("f" + i, 4000 + i));
+      events.add(new Event.CreateEvent.Builder().path("/dir/f" + i).build());
+      events.add(new Event.CloseEvent("/dir/f" + i, 1024, 5));
+    }
+    Mockito.when(client.listPaths(Matchers.eq("/dir"), Matchers.any()))
+        .thenReturn(new DirectoryListing(children.toArray(new HdfsFileStatus[0]), 0));
+
+    events.add(new Event.CreateEvent.Builder().path("/tmp").build());
+    events.add(new Event.UnlinkEvent.Builder().path("/tmp").build());
+    events.add(new Event.CloseEvent("/old", 2048, 7));
+    events.add(new Event.MetadataUpdateEvent.Builder()
+        .path("/old")
+        .metadataType(Event.MetadataUpdateEvent.MetadataType.OWNER)
+        .ownerName("user2")
+        .groupName("cg2")
+        .build());
+    events.add(new Event.UnlinkEvent.Builder().path("/gone").build());
+    applier.apply(events);
+
+    for (int i = 0; i < 8; i++) {
+      Assert.assertEquals(4000 + i, metaStore.getFile("/dir/f" + i).getFileId());
+    }
+    Assert.assertNull(metaStore.getFile("/tmp"));
+    Assert.assertNull(metaStore.getFile("/gone"));
+    FileInfo old = metaStore.getFile("/old");
+    Assert.assertEquals(2048, old.getLength());
+    Assert.assertEquals(7, old.getModificationTime());
+    Assert.assertEquals("user2", old.getOwner());
+    Mockito.verify(client, Mockito.never()).getFileInfo(Matchers.anyString());
+
+    Assert.assertEquals(events.size(), applier.getMetrics().getEventsApplied());
+    // closes of the created files, the created and deleted file and the metadata update
+    Assert.assertEquals(10, applier.getMetrics().getEventsCoalesced());
+  }
+
   private HdfsFileStatus getDummyFileStatus(String file, long fid) {
     return doGetDummyStatus(file, fid, false);
   }
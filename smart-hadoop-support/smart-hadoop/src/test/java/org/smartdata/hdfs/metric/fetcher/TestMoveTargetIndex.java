@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.metric.fetcher;
+
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.net.NetworkTopology;
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.hdfs.action.move.Source;
+import org.smartdata.hdfs.action.move.StorageGroup;
+import org.smartdata.hdfs.action.move.StorageMap;
+import org.smartdata.model.action.FileMovePlan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestMoveTargetIndex {
+  private static final int DATANODES = 1000;
+  private static final int RACKS = 20;
+  private static final long BLOCK_SIZE = 128L * 1024 * 1024;
+  // each target has room for 10 blocks
+  private static final long TARGET_REMAINING = 10 * BLOCK_SIZE;
+
+  private List<Source> diskSources;
+  private MoveTargetIndex targetIndex;
+
+  @Before
+  public void setUp() {
+    StorageMap storages = new StorageMap();
+    diskSources = new ArrayList<>();
+    for (int i = 0; i < DATANODES; i++) {
+      DatanodeInfo datanode = new DatanodeInfo.DatanodeInfoBuilder()
+          .setNodeID(new DatanodeID("10.0." + i / 256 + "." + i % 256, "dn" + i,
+              "uuid-" + i, 9866, 9864, 9865, 9867))
+          .setNetworkLocation("/rack" + i % RACKS)
+          .build();
+      Source diskSource = new Source("DISK", datanode);
+      diskSources.add(diskSource);
+      storages.add(diskSource, null);
+      // only odd datanodes have archive storages
+      StorageGroup archiveTarget = i % 2 == 1
+          ? new StorageGroup(datanode, "ARCHIVE")
+          : null;
+      storages.add(new Source("ARCHIVE", datanode), archiveTarget, TARGET_REMAINING);
+    }
+    targetIndex = new MoveTargetIndex(storages, NetworkTopology.getInstance(
+        new org.apache.hadoop.conf.Configuration()));
+  }
+
+  @Test
+  public void testChooseSameNodeTarget() {
+    Source source = diskSources.get(1);
+    StorageGroup target = targetIndex.chooseTarget(
+        source, Collections.singletonList("ARCHIVE"), BLOCK_SIZE);
+    assertSame(source.getDatanodeInfo(), target.getDatanodeInfo());
+    assertEquals(TARGET_REMAINING - BLOCK_SIZE, targetIndex.getRemainingSpace(target));
+  }
+
+  @Test
+  public void testReleaseUnusedPlan() {
+    Source source = diskSources.get(1);
+    ReservedMovePlan unusedPlan = new ReservedMovePlan(new FileMovePlan(), targetIndex);
+    ReservedMovePlan confirmedPlan = new ReservedMovePlan(new FileMovePlan(), targetIndex);
+    StorageGroup target = null;
+    for (ReservedMovePlan plan : Arrays.asList(unusedPlan, unusedPlan, confirmedPlan)) {
+      target = targetIndex.chooseTarget(
+          source, Collections.singletonList("ARCHIVE"), BLOCK_SIZE);
+      plan.reserve(target, BLOCK_SIZE);
+    }
+    assertEquals(TARGET_REMAINING - 3 * BLOCK_SIZE, targetIndex.getRemainingSpace(target));
+
+    confirmedPlan.confirm();
+    for (ReservedMovePlan plan : Arrays.asList(unusedPlan, unusedPlan, confirmedPlan)) {
+      plan.release();
+    }
+    assertEquals(TARGET_REMAINING - BLOCK_SIZE, targetIndex.getRemainingSpace(target));
+  }
+
+  @Test
+  public void testChooseSameRackTarget() {
+    // more blocks than the same node target can store
+    Source source = diskSources.get(3);
+    for (int i = 0; i < 100; i++) {
+      StorageGroup target = targetIndex.chooseTarget(
+          source, Collections.singletonList("ARCHIVE"), BLOCK_SIZE);
+      assertNotNull(target);
+      assertEquals(source.getDatanodeInfo().getNetworkLocation(),
+          target.getDatanodeInfo().getNetworkLocation());
+    }
+  }
+
+  @Test
+  public void testFallbackToOtherRacks() {
+    // even racks contain only datanodes without archive storages
+    Source source = diskSources.get(0);
+    StorageGroup target = targetIndex.chooseTarget(
+        source, Collections.singletonList("ARCHIVE"), BLOCK_SIZE);
+    assertNotNull(target);
+    assertTrue(!target.getDatanodeInfo().getNetworkLocation()
+        .equals(source.getDatanodeInfo().getNetworkLocation()));
+
+    assertNull(targetIndex.chooseTarget(
+        source, Collections.singletonList("SSD"), BLOCK_SIZE));
+  }
+
+  @Test
+  public void testConcurrentPlansDoNotOverfillTargets() throws Exception {
+    int archiveTargets = DATANODES / 2;
+    int capacity = (int) (archiveTargets * TARGET_REMAINING / BLOCK_SIZE);
+    Map<StorageGroup, AtomicLong> reserved = new ConcurrentHashMap<>();
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Integer>> results = new ArrayList<>();
+    try {
+      for (int thread = 0; thread < 8; thread++) {
+        int first = thread;
+        results.add(executor.submit(() -> {
+          int chosen = 0;
+          for (int i = first; i < capacity; i += 8) {
+            StorageGroup target = targetIndex.chooseTarget(diskSources.get(i % DATANODES),
+                Collections.singletonList("ARCHIVE"), BLOCK_SIZE);
+            if (target != null) {
+              reserved.computeIfAbsent(target, key -> new AtomicLong())
+                  .addAndGet(BLOCK_SIZE);
+              chosen++;
+            }
+          }
+          return chosen;
+        }));
+      }
+      int chosen = 0;
+      for (Future<Integer> result : results) {
+        chosen += result.get();
+      }
+      assertEquals(capacity, chosen);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    for (Map.Entry<StorageGroup, AtomicLong> targetReserved : reserved.entrySet()) {
+      assertTrue(targetReserved.getValue().get() <= TARGET_REMAINING);
+    }
+    assertNull(targetIndex.chooseTarget(diskSources.get(0),
+        Collections.singletonList("ARCHIVE"), BLOCK_SIZE));
+  }
+}
@@ -27,6 +27,8 @@
 import org.apache.hadoop.hdfs.DFSClient;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.FSImageTestUtil;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -41,7 +43,6 @@
 import static org.mockito.Mockito.*;
 import static org.smartdata.conf.SmartConfKeys.SMART_IGNORED_PATH_TEMPLATES_KEY;
 import static org.smartdata.conf.SmartConfKeys.SMART_IGNORE_DIRS_KEY;
-import static org.smartdata.conf.SmartConfKeys.SMART_NAMESPACE_FETCH_INTERVAL_MS_KEY;
 
 import java.io.IOException;
 
@@ -60,6 +61,13 @@ NamespaceFetcher init(MiniDFSCluster cluster, SmartConf conf)
       dfs.mkdir(new Path("/tmp"), new FsPermission("777"));
       DFSClient client = dfs.getClient();
 
+      SmartConf nonNullConfig = Optional.ofNullable(conf)
+          .orElseGet(SmartConf::new);
+
+      return new NamespaceFetcher(client, mockMetaStore(), nonNullConfig);
+  }
+
+  MetaStore mockMetaStore() throws MetaStoreException {
       MetaStore adapter = Mockito.mock(MetaStore.class);
       doAnswer(new Answer<Void>() {
         @Override
@@ -75,12 +83,7 @@ public Void answer(InvocationOnMock invocationOnMock) {
           return null;
         }
       }).when(adapter).insertFiles(any(FileInfo[].class));
-
-      SmartConf nonNullConfig = Optional.ofNullable(conf)
-          .orElseGet(SmartConf::new);
-      nonNullConfig.setLong(SMART_NAMESPACE_FETCH_INTERVAL_MS_KEY, 100L);
-
-      return new NamespaceFetcher(client, adapter, nonNullConfig);
+      return adapter;
   }
 
   @Test
@@ -192,4 +195,58 @@ public void testFetch() throws IOException, InterruptedException,
       cluster.shutdown();
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testLoadFromFsImage() throws Exception {
+    pathesInDB.clear();
+    final SmartConf conf = new SmartConf();
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).build();
+    try {
+      NamespaceFetcher fetcher = init(cluster, conf);
+      DistributedFileSystem dfs = cluster.getFileSystem();
+      dfs.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_ENTER);
+      dfs.saveNamespace();
+      dfs.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_LEAVE);
+      FsImageLoader imageLoader = FsImageLoader.open(conf,
+          FSImageTestUtil.getNameNodeCurrentDirs(cluster, 0).get(0).getAbsolutePath());
+
+      fetcher.startLoad(imageLoader);
+      Set<String> expected = Sets.newHashSet("/", "/user", "/user/user1", "/user/user2", "/tmp");
+      while (!fetcher.fetchFinished()) {
+        Thread.sleep(100);
+      }
+      Assert.assertEquals(expected, pathesInDB);
+      Assert.assertFalse(fetcher.fetchFailed());
+      fetcher.stop();
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testFailOnListingError() throws Exception {
+    pathesInDB.clear();
+    final SmartConf conf = new SmartConf();
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).build();
+    try {
+      init(cluster, conf);
+      DFSClient client = spy(cluster.getFileSystem().getClient());
+      doThrow(new IOException("listing error"))
+          .when(client).listPaths(eq("/user"), any(byte[].class));
+      NamespaceFetcher fetcher = new NamespaceFetcher(
+          client, mockMetaStore(), conf);
+
+      fetcher.startFetch();
+      while (!fetcher.fetchFinished()) {
+        Thread.sleep(100);
+      }
+      Assert.assertTrue(fetcher.fetchFailed());
+      Assert.assertFalse(pathesInDB.contains("/user/user1"));
+      fetcher.stop();
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
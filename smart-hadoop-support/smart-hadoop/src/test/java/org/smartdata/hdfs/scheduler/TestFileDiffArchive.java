@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.hdfs.scheduler;
+
+import org.junit.Test;
+import org.smartdata.model.FileDiff;
+import org.smartdata.model.FileDiffState;
+import org.smartdata.model.FileDiffType;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestFileDiffArchive {
+
+  @Test
+  public void testAddIfAbsent() {
+    FileDiffArchive archive = new FileDiffArchive(10);
+    archive.addIfAbsent(fileDiff(1, FileDiffState.PENDING));
+    archive.addIfAbsent(fileDiff(1, FileDiffState.PENDING));
+    archive.addIfAbsent(fileDiff(2, FileDiffState.PENDING));
+
+    assertEquals(Arrays.asList(1L, 2L), diffIds(archive));
+    assertTrue(archive.contains(2));
+    assertFalse(archive.contains(3));
+  }
+
+  @Test
+  public void testEvictTerminalDiffs() {
+    FileDiffArchive archive = new FileDiffArchive(3);
+    archive.addIfAbsent(fileDiff(1, FileDiffState.PENDING));
+    archive.addIfAbsent(fileDiff(2, FileDiffState.APPLIED));
+    archive.addIfAbsent(fileDiff(3, FileDiffState.MERGED));
+    archive.addIfAbsent(fileDiff(4, FileDiffState.PENDING));
+    assertEquals(Arrays.asList(1L, 3L, 4L), diffIds(archive));
+    assertFalse(archive.contains(2));
+
+    archive.updateState(3, FileDiffState.FAILED);
+    archive.addIfAbsent(fileDiff(5, FileDiffState.PENDING));
+    assertEquals(Arrays.asList(1L, 4L, 5L), diffIds(archive));
+
+    // pending diffs are never evicted
+    archive.addIfAbsent(fileDiff(6, FileDiffState.PENDING));
+    assertEquals(Arrays.asList(1L, 4L, 5L, 6L), diffIds(archive));
+  }
+
+  @Test
+  public void testAddBefore() {
+    FileDiffArchive archive = new FileDiffArchive(10);
+    FileDiff anchor = fileDiff(2, FileDiffState.PENDING);
+    archive.add(fileDiff(1, FileDiffState.PENDING));
+    archive.add(anchor);
+
+    archive.addBefore(anchor, fileDiff(3, FileDiffState.PENDING));
+    archive.addBefore(fileDiff(100, FileDiffState.PENDING), fileDiff(4, FileDiffState.PENDING));
+    archive.addBefore(null, fileDiff(5, FileDiffState.PENDING));
+
+    assertEquals(Arrays.asList(1L, 3L, 2L, 4L, 5L), diffIds(archive));
+  }
+
+  @Test
+  public void testUpdateState() {
+    FileDiffArchive archive = new FileDiffArchive(10);
+    FileDiff fileDiff = fileDiff(1, FileDiffState.PENDING);
+    archive.add(fileDiff);
+
+    archive.updateState(1, FileDiffState.APPLIED);
+    archive.updateState(2, FileDiffState.APPLIED);
+    assertEquals(FileDiffState.APPLIED, fileDiff.getState());
+  }
+
+  private FileDiff fileDiff(long diffId, FileDiffState state) {
+    FileDiff fileDiff = new FileDiff(FileDiffType.APPEND, state);
+    fileDiff.setDiffId(diffId);
+    fileDiff.setSrc("/file" + diffId);
+    return fileDiff;
+  }
+
+  private List<Long> diffIds(FileDiffArchive archive) {
+    return archive.toList().stream()
+        .map(FileDiff::getDiffId)
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.commons.lang3.mutable.MutableFloat;
+import org.apache.hadoop.io.compress.Compressor;
+import org.smartdata.model.CompressionFileState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses chunks of the input stream concurrently. Chunks are compressed
+ * independently, so the output has the same format as the output of the
+ * {@link SmartCompressorStream}: the stream reads ahead up to the parallelism
+ * chunks, compresses them on the executor and writes them in the original order.
+ * Each in-flight chunk owns its buffers and compressor, which are reused
+ * for the next chunks.
+ */
+public class ParallelCompressorStream {
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final InputStream in;
+  private final OutputStream out;
+  private final int bufferSize;
+  private final CompressionFileState compressionInfo;
+  private final MutableFloat progress;
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final AtomicLong workersCpuTime;
+
+  private final Deque<ChunkBuffers> freeBuffers = new ArrayDeque<>();
+  private final Deque<Future<ChunkBuffers>> pendingChunks = new ArrayDeque<>();
+
+  private long originPos = 0;
+  private long compressedPos = 0;
+  private final List<Long> originPositions = new ArrayList<>();
+  private final List<Long> compressedPositions = new ArrayList<>();
+
+  public ParallelCompressorStream(InputStream inputStream, OutputStream outputStream,
+      int bufferSize, CompressionFileState compressionInfo, MutableFloat progress,
+      ExecutorService executor, int parallelism) throws IOException {
+    this.in = inputStream;
+    this.out = outputStream;
+    this.bufferSize = bufferSize;
+    this.compressionInfo = compressionInfo;
+    this.progress = progress;
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.workersCpuTime = new AtomicLong();
+
+    ChunkBuffers buffers = new ChunkBuffers();
+    SmartCompressorStream.setCompressionImpl(buffers.compressor, compressionInfo);
+    freeBuffers.add(buffers);
+  }
+
+  /**
+   * Convert the original input stream to compressed output stream.
+   */
+  public void convert() throws IOException {
+    try {
+      while (true) {
+        ChunkBuffers chunk = takeBuffers();
+        chunk.length = readChunk(chunk.input);
+        if (chunk.length > 0) {
+          pendingChunks.add(executor.submit(() -> compress(chunk)));
+        } else {
+          freeBuffers.add(chunk);
+        }
+
+        boolean eof = chunk.length < bufferSize;
+        while (pendingChunks.size() >= parallelism || (eof && !pendingChunks.isEmpty())) {
+          write(awaitChunk(pendingChunks.poll()));
+        }
+        if (eof) {
+          break;
+        }
+      }
+      // the serial stream finishes the reset compressor after the last chunk
+      write(finish(takeBuffers()));
+    } finally {
+      for (Future<ChunkBuffers> pendingChunk : pendingChunks) {
+        pendingChunk.cancel(true);
+      }
+    }
+    out.close();
+    compressionInfo.setPositionMapping(originPositions.toArray(new Long[0]),
+        compressedPositions.toArray(new Long[0]));
+  }
+
+  /**
+   * Returns the CPU time in nanoseconds spent by the executor threads
+   * on the compression of this stream chunks.
+   */
+  public long getWorkersCpuTime() {
+    return workersCpuTime.get();
+  }
+
+  private ChunkBuffers takeBuffers() throws IOException {
+    return freeBuffers.isEmpty() ? new ChunkBuffers() : freeBuffers.poll();
+  }
+
+  private int readChunk(byte[] buf) throws IOException {
+    int off = 0;
+    while (off < bufferSize) {
+      int len = in.read(buf, off, bufferSize - off);
+      if (len <= 0) {
+        break;
+      }
+      off += len;
+    }
+    return off;
+  }
+
+  private ChunkBuffers awaitChunk(Future<ChunkBuffers> chunk) throws IOException {
+    try {
+      return chunk.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing file chunks");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to compress file chunk", e.getCause());
+    }
+  }
+
+  private void write(ChunkBuffers chunk) throws IOException {
+    if (chunk.length > 0) {
+      originPositions.add(originPos);
+      compressedPositions.add(compressedPos);
+    }
+    chunk.output.writeTo(out);
+    originPos += chunk.length;
+    compressedPos += chunk.output.size();
+    progress.setValue((float) originPos / compressionInfo.getOriginalLength());
+    freeBuffers.add(chunk);
+  }
+
+  private ChunkBuffers compress(ChunkBuffers chunk) throws IOException {
+    long startCpuTime = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+    chunk.output.reset();
+    chunk.compressor.setInput(chunk.input, 0, chunk.length);
+    chunk.compressor.finish();
+    while (!chunk.compressor.finished()) {
+      compressBuffered(chunk);
+    }
+    chunk.compressor.reset();
+    workersCpuTime.addAndGet(THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuTime);
+    return chunk;
+  }
+
+  private ChunkBuffers finish(ChunkBuffers chunk) throws IOException {
+    chunk.length = 0;
+    chunk.output.reset();
+    chunk.compressor.finish();
+    while (!chunk.compressor.finished()) {
+      compressBuffered(chunk);
+    }
+    return chunk;
+  }
+
+  private void compressBuffered(ChunkBuffers chunk) throws IOException {
+    int len = chunk.compressor.compress(chunk.compressed, 0, bufferSize);
+    if (len > 0) {
+      chunk.output.write((len >>> 24) & 0xFF);
+      chunk.output.write((len >>> 16) & 0xFF);
+      chunk.output.write((len >>> 8) & 0xFF);
+      chunk.output.write(len & 0xFF);
+      chunk.output.write(chunk.compressed, 0, len);
+    }
+  }
+
+  private class ChunkBuffers {
+    private final byte[] input;
+    private final byte[] compressed;
+    private final ByteArrayOutputStream output;
+    private final Compressor compressor;
+    private int length;
+
+    private ChunkBuffers() throws IOException {
+      int overHead = CompressionCodecFactory.getInstance()
+          .compressionOverhead(bufferSize, compressionInfo.getCompressionImpl());
+      this.input = new byte[bufferSize];
+      this.compressed = new byte[bufferSize + overHead];
+      this.output = new ByteArrayOutputStream(bufferSize + overHead + 4);
+      this.compressor = CompressionCodecFactory.getInstance()
+          .createCompressor(bufferSize + overHead, compressionInfo.getCompressionImpl());
+    }
+  }
+}
@@ -21,44 +21,74 @@
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.compress.Decompressor;
+import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.model.CompressionFileState;
-import org.smartdata.model.CompressionTrunk;
 import org.smartdata.model.FileState;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Input stream of the file compressed by SSM. The file is read by whole
+ * compression chunks: the compressed bytes of the chunk are fetched with
+ * a positional read and decompressed at once, so positional reads don't
+ * change the stream position and can be issued concurrently. A few recently
+ * decompressed chunks are kept in the per-stream LRU cache to serve
+ * the repeated reads of the same chunks without decompressing them again.
+ */
 public class SmartCompressionInputStream extends SmartInputStream {
   private final Decompressor decompressor;
-  private byte[] buffer;
-  private boolean closed = false;
+  private final Map<Integer, byte[]> chunkCache;
   private long pos = 0;
 
-  private final CompressionFileState compressionFileState;
   private final long originalLength;
+  private final long[] originalOffsets;
+  private final long[] compressedOffsets;
 
   SmartCompressionInputStream(DFSClient dfsClient, String src, boolean verifyChecksum,
       FileState fileState) throws IOException {
     super(dfsClient, src, verifyChecksum, fileState);
-    if (fileState instanceof CompressionFileState) {
-      compressionFileState = (CompressionFileState) fileState;
-    } else {
+    if (!(fileState instanceof CompressionFileState)) {
       throw new IOException("Compression info cannot be fetched");
     }
+    CompressionFileState compressionFileState = (CompressionFileState) fileState;
     originalLength = compressionFileState.getOriginalLength();
+    originalOffsets = toPrimitive(compressionFileState.getOriginalPos());
+    compressedOffsets = toPrimitive(compressionFileState.getCompressedPos());
+    if (originalOffsets.length != compressedOffsets.length) {
+      throw new IOException("Inconsistent compression position mapping of " + src);
+    }
+
     int bufferSize = compressionFileState.getBufferSize();
-    this.buffer = new byte[bufferSize];
     this.decompressor = CompressionCodecFactory.getInstance()
         .creatDecompressor(bufferSize, compressionFileState.getCompressionImpl());
+    int maxCachedChunks = Math.max(1, dfsClient.getConfiguration().getInt(
+        SmartConfKeys.SMART_COMPRESSION_INPUT_CACHED_CHUNKS_KEY,
+        SmartConfKeys.SMART_COMPRESSION_INPUT_CACHED_CHUNKS_DEFAULT));
+    this.chunkCache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+        return size() > maxCachedChunks;
+      }
+    };
   }
 
   @Override
   public synchronized int read() throws IOException {
-    byte[] oneByteBuf = new byte[1];
-    int ret = read( oneByteBuf, 0, 1 );
-    return ( ret <= 0 ) ? -1 : (oneByteBuf[0] & 0xff);
+    checkOpen();
+    if (pos >= originalLength) {
+      return -1;
+    }
+    int chunkIndex = getChunkIndex(pos);
+    byte[] chunk = getChunk(chunkIndex);
+    int b = chunk[(int) (pos - originalOffsets[chunkIndex])] & 0xff;
+    pos++;
+    return b;
   }
 
   @Override
@@ -68,82 +98,78 @@ public synchronized int read(final byte[] b, int off, int len) throws IOExceptio
     } else if (len == 0) {
       return 0;
     }
-
-    int n = decompress(b, off, len);
-    pos += n;
+    int n = read(pos, ByteBuffer.wrap(b, off, len));
+    if (n > 0) {
+      pos += n;
+    }
     return n;
   }
 
   @Override
   public synchronized int read(final ByteBuffer buf) throws IOException {
-    return read(buf.array(), buf.position(), buf.remaining());
+    if (!buf.hasRemaining()) {
+      return 0;
+    }
+    int n = read(pos, buf);
+    if (n > 0) {
+      pos += n;
+    }
+    return n;
   }
 
   @Override
   public int read(long position, byte[] buffer, int offset, int length)
       throws IOException {
-    seek(position);
-    return read(buffer, offset, length);
+    if ((offset | length | (offset + length) | (buffer.length - (offset + length))) < 0) {
+      throw new IndexOutOfBoundsException();
+    } else if (length == 0) {
+      return 0;
+    }
+    return read(position, ByteBuffer.wrap(buffer, offset, length));
   }
 
+  /**
+   * Reads the decompressed data starting from the position of the original
+   * file to the buffer without changing the stream position. The buffer
+   * may be either heap or direct one.
+   */
   @Override
-  public synchronized void close() throws IOException {
-    super.close();
-    this.closed = true;
-  }
-
-  private int decompress(byte[] b, int off, int len) throws IOException {
-    int n = 0;
-    while ((n = decompressor.decompress(b, off, len)) == 0) {
-      if (decompressor.needsInput()) {
-        int m;
-        try {
-          m = getCompressedData();
-        } catch (EOFException e) {
-          return -1;
-        }
-        // Send the read data to the decompressor
-        decompressor.reset();
-        decompressor.setInput(buffer, 0, m);
-      }
+  public int read(long position, ByteBuffer buf) throws IOException {
+    checkOpen();
+    if (position < 0) {
+      throw new EOFException("Cannot read from negative offset");
     }
-
-    // Note the no. of decompressed bytes read from 'current' block
-    //noUncompressedBytes += n;
-
-    return n;
-  }
-
-  private int getCompressedData() throws IOException {
-    // Get the size of the compressed chunk (always non-negative)
-    int len = rawReadInt();
-
-    // Read len bytes from underlying stream
-    if (len > buffer.length) {
-      buffer = new byte[len];
+    if (position >= originalLength) {
+      return -1;
     }
-    int n = 0, off = 0;
-    while (n < len) {
-      int count = super.read(buffer, off + n, len - n);
-      if (count < 0) {
-        throw new EOFException("Unexpected end of block in input stream");
-      }
-      n += count;
+    int read = 0;
+    while (buf.hasRemaining() && position < originalLength) {
+      int chunkIndex = getChunkIndex(position);
+      byte[] chunk = getChunk(chunkIndex);
+      int chunkOffset = (int) (position - originalOffsets[chunkIndex]);
+      int n = Math.min(buf.remaining(), chunk.length - chunkOffset);
+      buf.put(chunk, chunkOffset, n);
+      position += n;
+      read += n;
     }
+    return read;
+  }
 
-    return len;
+  @Override
+  public void readFully(long position, ByteBuffer buf) throws IOException {
+    int length = buf.remaining();
+    int n = read(position, buf);
+    if (n < length) {
+      throw new EOFException("End of file reached before reading fully.");
+    }
   }
 
-  private int rawReadInt() throws IOException {
-    byte[] bytes = new byte[4];
-    int b1 = super.read(bytes, 0, 1);
-    int b2 = super.read(bytes, 1, 1);
-    int b3 = super.read(bytes, 2, 1);
-    int b4 = super.read(bytes, 3, 1);
-    if ((b1 | b2 | b3 | b4) < 0)
-      throw new EOFException();
-    return (((bytes[0] & 0xff) << 24) + ((bytes[1] & 0xff) << 16)
-        + ((bytes[2] & 0xff) << 8) + ((bytes[3] & 0xff) << 0));
+  @Override
+  public synchronized void close() throws IOException {
+    super.close();
+    synchronized (chunkCache) {
+      chunkCache.clear();
+    }
   }
 
  /* @Override
@@ -152,10 +178,20 @@ public long getFileLength() {
   }*/
 
   @Override
-  public long skip(long n) throws IOException {
-    return super.skip(n);
+  public synchronized long skip(long n) throws IOException {
+    checkOpen();
+    if (n <= 0) {
+      return 0;
+    }
+    long skipped = Math.min(n, originalLength - pos);
+    pos += skipped;
+    return skipped;
   }
 
+  /**
+   * Only updates the stream position, the chunk containing it
+   * is decompressed on the next read.
+   */
   @Override
   public synchronized void seek(long targetPos) throws IOException {
     if (targetPos > originalLength) {
@@ -164,25 +200,7 @@ public synchronized void seek(long targetPos) throws IOException {
     if (targetPos < 0) {
       throw new EOFException("Cannot seek to negative offset");
     }
-    if(targetPos == pos) {
-      return;
-    }
-
-    // Seek to the start of the compression trunk
-    CompressionTrunk compressionTrunk = compressionFileState.locateCompressionTrunk(
-        false, targetPos);
-    long hdfsFilePos = compressionTrunk.getCompressedOffset();
-    super.seek(hdfsFilePos);
-
-    // Decompress the trunk until reaching the targetPos of the original file
-    int startPos = (int)(targetPos - compressionTrunk.getOriginOffset());
-    decompressor.reset();
-    int m = getCompressedData();
-    decompressor.setInput(buffer, 0, m);
-    if (startPos > 0) {
-      byte[] temp = new byte[startPos];
-      decompress(temp, 0, startPos);
-    }
+    checkOpen();
     pos = targetPos;
   }
 
@@ -198,11 +216,9 @@ public synchronized long getPos() {
 
   @Override
   public synchronized int available() throws IOException {
-    if (closed) {
-      throw new IOException("Stream closed");
-    }
+    checkOpen();
     final long remaining = originalLength - pos;
-    return remaining <= Integer.MAX_VALUE? (int)remaining: Integer.MAX_VALUE;
+    return remaining <= Integer.MAX_VALUE ? (int) remaining : Integer.MAX_VALUE;
   }
 
   @Override
@@ -228,4 +244,94 @@ public synchronized ByteBuffer read(ByteBufferPool bufferPool,
     throw new RuntimeException("Read(ByteBufferPool, int, EnumSet) not supported " +
         "for compressed file");
   }
+
+  private void checkOpen() throws IOException {
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  private int getChunkIndex(long originalPos) {
+    int index = Arrays.binarySearch(originalOffsets, originalPos);
+    // position is inside the chunk, so binary search returns -(next chunk index) - 1
+    return index >= 0 ? index : -index - 2;
+  }
+
+  private byte[] getChunk(int chunkIndex) throws IOException {
+    synchronized (chunkCache) {
+      byte[] chunk = chunkCache.get(chunkIndex);
+      if (chunk != null) {
+        return chunk;
+      }
+    }
+    // concurrent readers may decompress the same chunk, the last one is cached
+    byte[] chunk = decompressChunk(chunkIndex);
+    synchronized (chunkCache) {
+      chunkCache.put(chunkIndex, chunk);
+    }
+    return chunk;
+  }
+
+  private byte[] decompressChunk(int chunkIndex) throws IOException {
+    long originalEnd = chunkIndex + 1 < originalOffsets.length
+        ? originalOffsets[chunkIndex + 1] : originalLength;
+    // the last chunk is followed only by the finishing frames of the compressor
+    long compressedEnd = chunkIndex + 1 < compressedOffsets.length
+        ? compressedOffsets[chunkIndex + 1] : getFileLength();
+    byte[] compressed = new byte[(int) (compressedEnd - compressedOffsets[chunkIndex])];
+    readCompressed(compressedOffsets[chunkIndex], compressed);
+
+    byte[] chunk = new byte[(int) (originalEnd - originalOffsets[chunkIndex])];
+    synchronized (decompressor) {
+      int frameOffset = 0;
+      int decompressed = 0;
+      while (decompressed < chunk.length) {
+        int n = decompressor.decompress(chunk, decompressed, chunk.length - decompressed);
+        decompressed += n;
+        if (n == 0 && (decompressor.needsInput() || decompressor.finished())) {
+          // each compressed frame is prefixed with its length
+          if (frameOffset + 4 > compressed.length) {
+            throw new EOFException("Unexpected end of compressed chunk " + chunkIndex);
+          }
+          int frameLength = readInt(compressed, frameOffset);
+          frameOffset += 4;
+          if (frameLength < 0 || frameOffset + frameLength > compressed.length) {
+            throw new EOFException("Unexpected end of compressed chunk " + chunkIndex);
+          }
+          decompressor.reset();
+          decompressor.setInput(compressed, frameOffset, frameLength);
+          frameOffset += frameLength;
+        }
+      }
+      decompressor.reset();
+    }
+    return chunk;
+  }
+
+  private void readCompressed(long position, byte[] compressed) throws IOException {
+    int n = 0;
+    while (n < compressed.length) {
+      int count = super.read(position + n, compressed, n, compressed.length - n);
+      if (count < 0) {
+        throw new EOFException("Unexpected end of block in input stream");
+      }
+      n += count;
+    }
+  }
+
+  private static int readInt(byte[] bytes, int off) {
+    return ((bytes[off] & 0xff) << 24) + ((bytes[off + 1] & 0xff) << 16)
+        + ((bytes[off + 2] & 0xff) << 8) + (bytes[off + 3] & 0xff);
+  }
+
+  private static long[] toPrimitive(Long[] offsets) {
+    if (offsets == null) {
+      return new long[0];
+    }
+    long[] result = new long[offsets.length];
+    for (int i = 0; i < offsets.length; i++) {
+      result[i] = offsets[i];
+    }
+    return result;
+  }
 }
@@ -71,10 +71,10 @@ public SmartCompressorStream(InputStream inputStream, OutputStream outputStream,
     this.compressor = CompressionCodecFactory.getInstance()
         .createCompressor(bufferSize + overHead,
             compressionInfo.getCompressionImpl());
-    checkCompressor();
+    setCompressionImpl(compressor, compressionInfo);
   }
 
-  private void checkCompressor() {
+  static void setCompressionImpl(Compressor compressor, CompressionFileState compressionInfo) {
     if (compressor instanceof ZlibCompressor) {
       compressionInfo.setCompressionImpl(ZLibCompressorFactory.ZLIB_CODEC);
     } else if (compressor instanceof SnappyCompressor) {
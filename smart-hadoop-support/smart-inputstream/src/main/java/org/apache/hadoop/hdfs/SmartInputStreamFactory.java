@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs;
 
 import org.apache.hadoop.fs.UnresolvedLinkException;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.smartdata.hdfs.CompatibilityHelper;
 import org.smartdata.hdfs.CompatibilityHelperLoader;
 import org.smartdata.model.FileState;
@@ -40,12 +41,31 @@ public class SmartInputStreamFactory {
    */
   public static DFSInputStream create(DFSClient dfsClient, String src,
                                boolean verifyChecksum, FileState fileState) throws IOException {
+    return create(dfsClient, src, verifyChecksum, fileState, null);
+  }
+
+  /**
+   *  Get HDFS input stream from dfsClient, file path, its file state
+   *  and the located blocks fetched together with the state.
+   *
+   * @param dfsClient HDFS client
+   * @param src file path
+   * @param fileState file state
+   * @param verifyChecksum  check if need to checksum
+   * @param locatedBlocks blocks of the normal file or null to fetch them
+   * @return HDFS input stream
+   * @throws IOException if IOException occurs
+   */
+  public static DFSInputStream create(DFSClient dfsClient, String src,
+      boolean verifyChecksum, FileState fileState, LocatedBlocks locatedBlocks)
+      throws IOException {
     dfsClient.checkOpen();
-    return createSmartInputStream(dfsClient, src, verifyChecksum, fileState);
+    return createSmartInputStream(dfsClient, src, verifyChecksum, fileState, locatedBlocks);
   }
   
   protected static DFSInputStream createSmartInputStream(DFSClient dfsClient, String src,
-                                                  boolean verifyChecksum, FileState fileState) throws IOException {
+                                                  boolean verifyChecksum, FileState fileState,
+                                                  LocatedBlocks locatedBlocks) throws IOException {
     DFSInputStream inputStream;
     switch (fileState.getFileType()) {
       case NORMAL:
@@ -53,8 +73,11 @@ protected static DFSInputStream createSmartInputStream(DFSClient dfsClient, Stri
         // EC case should be considered. Please refer to DFSClient.open() -> DFSClient.openInternal().
         // EC data is also viewed as NORMAL. Currently, it is NOT supported to combine EC with SSM compact,
         // SSM compression etc.
-        inputStream = CompatibilityHelperLoader.getHelper().
-            getNormalInputStream(dfsClient, src, verifyChecksum, fileState);
+        inputStream = locatedBlocks == null
+            ? CompatibilityHelperLoader.getHelper().
+                getNormalInputStream(dfsClient, src, verifyChecksum, fileState)
+            : CompatibilityHelperLoader.getHelper().
+                getNormalInputStream(dfsClient, src, verifyChecksum, fileState, locatedBlocks);
         break;
       case COMPACT:
         inputStream = new CompactInputStream(dfsClient, verifyChecksum, fileState);
@@ -24,6 +24,7 @@
 import org.smartdata.metaservice.BackupMetaService;
 import org.smartdata.metaservice.CmdletMetaService;
 import org.smartdata.metaservice.CopyMetaService;
+import org.smartdata.metastore.accesscount.PathFidCache;
 import org.smartdata.metastore.dao.ActionDao;
 import org.smartdata.metastore.dao.BackUpInfoDao;
 import org.smartdata.metastore.dao.CacheFileDao;
@@ -86,8 +87,11 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
+import static org.smartdata.conf.SmartConfKeys.SMART_ACCESS_COUNT_PATH_CACHE_SIZE_DEFAULT;
+
 /**
  * Operations supported for upper functions.
  */
@@ -127,13 +131,25 @@ public class MetaStore implements CopyMetaService,
   private final WhitelistDao whitelistDao;
   private final UserActivityDao userActivityDao;
   private final DBPool dbPool;
+  private final PathFidCache pathFidCache;
 
   public MetaStore(DBPool pool,
                    DbSchemaManager dbSchemaManager,
                    DaoProvider daoProvider,
                    DbMetadataProvider dbMetadataProvider,
                    PlatformTransactionManager transactionManager) throws MetaStoreException {
+    this(pool, dbSchemaManager, daoProvider, dbMetadataProvider, transactionManager,
+        new PathFidCache(SMART_ACCESS_COUNT_PATH_CACHE_SIZE_DEFAULT));
+  }
+
+  public MetaStore(DBPool pool,
+                   DbSchemaManager dbSchemaManager,
+                   DaoProvider daoProvider,
+                   DbMetadataProvider dbMetadataProvider,
+                   PlatformTransactionManager transactionManager,
+                   PathFidCache pathFidCache) throws MetaStoreException {
     this.dbPool = pool;
+    this.pathFidCache = pathFidCache;
     this.dbSchemaManager = dbSchemaManager;
     this.dbMetadataProvider = dbMetadataProvider;
     this.defaultTransactionRunner = new TransactionRunner(transactionManager);
@@ -197,6 +213,10 @@ public FileAccessPartitionDao fileAccessPartitionDao() {
     return fileAccessPartitionDao;
   }
 
+  public PathFidCache pathFidCache() {
+    return pathFidCache;
+  }
+
 
   public PlatformTransactionManager transactionManager() {
     return defaultTransactionRunner.getTransactionManager();
@@ -407,6 +427,17 @@ public void deleteFileByPath(String path, boolean recursive) throws MetaStoreExc
     }
   }
 
+  public void deleteFilesByPaths(Collection<String> paths) throws MetaStoreException {
+    if (paths.isEmpty()) {
+      return;
+    }
+    try {
+      fileInfoDao.deleteByPaths(paths);
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
   public void insertUpdateStoragesTable(List<StorageCapacity> storages)
       throws MetaStoreException {
     mapStorageCapacity = null;
@@ -582,6 +613,20 @@ public void execute(String sql) throws MetaStoreException {
     }
   }
 
+  /**
+   * Executes the parameterized statement.
+   * @param queryTimeoutSec statement timeout in seconds, 0 means no timeout
+   */
+  public void execute(String sql, Object[] args, int queryTimeoutSec)
+      throws MetaStoreException {
+    try {
+      LOG.debug("Execute sql = {}", sql);
+      metaStoreHelper.execute(sql, args, queryTimeoutSec);
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
   //Todo: optimize
   public void execute(List<String> statements) throws MetaStoreException {
     for (String statement : statements) {
@@ -601,6 +646,69 @@ public List<String> executeFilesPathQuery(
     }
   }
 
+  /**
+   * Executes the parameterized query returning file paths.
+   * @param queryTimeoutSec query timeout in seconds, 0 means no timeout
+   */
+  public List<String> executeFilesPathQuery(
+      String sql, Object[] args, int queryTimeoutSec) throws MetaStoreException {
+    try {
+      LOG.debug("ExecuteFilesPathQuery sql = {}", sql);
+      return metaStoreHelper.getFilesPath(sql, args, queryTimeoutSec);
+    } catch (EmptyResultDataAccessException e) {
+      return new ArrayList<>();
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
+  /**
+   * Executes the parameterized query returning file paths and passes the paths
+   * to the consumer in batches, so the whole result is never loaded into memory.
+   * The query is executed once and its result is saved to a table indexed
+   * by path. Batches are fetched as the pages of this table ordered by path,
+   * each page with a separate short query, so no connection or transaction
+   * is held while the consumer processes the batch.
+   * @param fetchSize number of rows fetched at once and max size of the batch
+   * @param batchConsumer returns false to stop fetching the rest of the result
+   */
+  public void streamFilesPathQuery(String sql, Object[] args, int queryTimeoutSec,
+                                   int fetchSize, Predicate<List<String>> batchConsumer)
+      throws MetaStoreException {
+    LOG.debug("StreamFilesPathQuery sql = {}", sql);
+    String tableName;
+    try {
+      tableName = metaStoreHelper.materializeFilesPath(sql, args, queryTimeoutSec);
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+    try {
+      String lastPath = "";
+      while (true) {
+        List<String> page;
+        try {
+          page = metaStoreHelper.getFilesPathPage(
+              tableName, lastPath, fetchSize, queryTimeoutSec);
+        } catch (Exception e) {
+          throw new MetaStoreException(e);
+        }
+        if (page.isEmpty()) {
+          return;
+        }
+        lastPath = page.get(page.size() - 1);
+        if (!batchConsumer.test(page) || page.size() < fetchSize) {
+          return;
+        }
+      }
+    } finally {
+      try {
+        metaStoreHelper.dropTable(tableName);
+      } catch (Exception e) {
+        LOG.warn("Failed to drop the query result table {}", tableName, e);
+      }
+    }
+  }
+
   public boolean insertNewRule(RuleInfo info)
       throws MetaStoreException {
     try {
@@ -969,6 +1077,14 @@ public List<FileDiff> getPendingDiff() throws MetaStoreException {
     return fileDiffDao.getPendingDiff();
   }
 
+  public List<FileDiff> getPendingDiffsAfter(long diffId, int limit) throws MetaStoreException {
+    try {
+      return fileDiffDao.getPendingDiffsAfter(diffId, limit);
+    } catch (Exception e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
   public void dropAllTables() throws MetaStoreException {
     try {
       dbSchemaManager.clearDatabase();
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.accesscount;
+
+import org.smartdata.metastore.model.AggregatedAccessCounts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory pre-aggregation stage for file access counts. Accesses are
+ * grouped into fixed-width time buckets, so all accesses of a file within
+ * one bucket are merged into a single {@link AggregatedAccessCounts} with
+ * the summed access count and the time of the last access.
+ * A bucket is closed as soon as an access with the timestamp after the
+ * end of the bucket is observed.
+ */
+public class AccessCountBuckets {
+  private final long bucketWidthMs;
+  private final TreeMap<Long, Map<Long, AggregatedAccessCounts>> buckets;
+
+  /**
+   * @param bucketWidthMs width of the time bucket. If it's not positive,
+   *                      accesses are merged only within a single batch.
+   */
+  public AccessCountBuckets(long bucketWidthMs) {
+    this.bucketWidthMs = bucketWidthMs;
+    this.buckets = new TreeMap<>();
+  }
+
+  public void add(AggregatedAccessCounts accessCounts) {
+    long bucketStart = bucketWidthMs > 0
+        ? accessCounts.getLastAccessedTimestamp()
+          - Math.floorMod(accessCounts.getLastAccessedTimestamp(), bucketWidthMs)
+        : 0L;
+
+    buckets.computeIfAbsent(bucketStart, key -> new HashMap<>())
+        .merge(accessCounts.getFileId(), accessCounts, AggregatedAccessCounts::merge);
+  }
+
+  /**
+   * Removes buckets, that ended before or at the specified time.
+   * @return aggregated access counts from the removed buckets
+   */
+  public List<AggregatedAccessCounts> pollClosed(long currentTime) {
+    if (bucketWidthMs <= 0) {
+      return pollAll();
+    }
+
+    List<AggregatedAccessCounts> closedAccessCounts = new ArrayList<>();
+    Iterator<Map.Entry<Long, Map<Long, AggregatedAccessCounts>>> iterator =
+        buckets.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, Map<Long, AggregatedAccessCounts>> bucket = iterator.next();
+      if (bucket.getKey() + bucketWidthMs > currentTime) {
+        break;
+      }
+      closedAccessCounts.addAll(bucket.getValue().values());
+      iterator.remove();
+    }
+    return closedAccessCounts;
+  }
+
+  /**
+   * Removes all buckets regardless of their time range.
+   * @return aggregated access counts from all buckets
+   */
+  public List<AggregatedAccessCounts> pollAll() {
+    List<AggregatedAccessCounts> accessCounts = new ArrayList<>();
+    buckets.values().forEach(bucket -> accessCounts.addAll(bucket.values()));
+    buckets.clear();
+    return accessCounts;
+  }
+
+  public boolean isEmpty() {
+    return buckets.isEmpty();
+  }
+}
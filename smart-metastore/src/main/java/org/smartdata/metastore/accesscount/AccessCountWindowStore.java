@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.accesscount;
+
+import lombok.extern.slf4j.Slf4j;
+import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.metastore.transaction.TransactionRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared sliding window access count tables used by rules. Each table
+ * contains the number of accesses of every file accessed during the last
+ * interval and is shared by all rules with the same interval.
+ *
+ * <p>Instead of rescanning the whole interval on each rule execution, the
+ * table is updated incrementally: accesses which became older than the
+ * interval are subtracted and the new accesses are added. Because accesses
+ * are saved to the file access table with delay, accesses newer than the
+ * settle delay are kept in a separate tail table and are recalculated on
+ * every refresh. The table is fully rebuilt once per interval to
+ * compensate for possible inconsistencies, e.g. caused by file id updates.
+ */
+@Slf4j
+public class AccessCountWindowStore {
+  private static final String FILE_ACCESS_TABLE = "file_access";
+  private static final String TAIL_TABLE_SUFFIX = "_tail";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionRunner transactionRunner;
+  private final long settleDelayMs;
+  private final Map<String, Window> windows;
+
+  public AccessCountWindowStore(DataSource dataSource,
+                                TransactionRunner transactionRunner,
+                                long settleDelayMs) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.transactionRunner = transactionRunner;
+    this.settleDelayMs = settleDelayMs;
+    this.windows = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Updates the access count table to contain accesses made during
+   * the [currentTime - intervalMs, currentTime] time range.
+   * The table is created on the first refresh.
+   */
+  public void refresh(String table, long intervalMs, long currentTime)
+      throws MetaStoreException {
+    Window window = windows.computeIfAbsent(table, key -> new Window(table, intervalMs));
+    synchronized (window) {
+      if (window.needsRebuild(currentTime)) {
+        transactionRunner.inTransaction(() -> window.rebuild(currentTime));
+      } else {
+        transactionRunner.inTransaction(() -> window.update(currentTime));
+      }
+    }
+  }
+
+  private class Window {
+    private final String table;
+    private final String tailTable;
+    private final long intervalMs;
+
+    private boolean initialized;
+    private long lastRebuildTime;
+    private long start;
+    private long settledEnd;
+
+    private Window(String table, long intervalMs) {
+      this.table = table;
+      this.tailTable = table + TAIL_TABLE_SUFFIX;
+      this.intervalMs = intervalMs;
+      this.initialized = false;
+    }
+
+    private boolean needsRebuild(long currentTime) {
+      return !initialized
+          || currentTime - lastRebuildTime >= intervalMs
+          || currentTime - intervalMs > settledEnd;
+    }
+
+    private void rebuild(long currentTime) {
+      long newStart = currentTime - intervalMs;
+      long newSettledEnd = getSettledEnd(currentTime);
+
+      if (!initialized) {
+        createTable(table);
+        createTable(tailTable);
+      }
+      jdbcTemplate.execute("DELETE FROM " + table);
+      jdbcTemplate.execute("DELETE FROM " + tailTable);
+      jdbcTemplate.execute("INSERT INTO " + table + " (fid, count) " + selectAccessCounts(
+          "access_time >= " + newStart + " AND access_time <= " + newSettledEnd, false));
+      addTail(newSettledEnd, currentTime);
+
+      log.debug("Rebuilt access count table {} for the interval {}ms", table, intervalMs);
+      initialized = true;
+      lastRebuildTime = currentTime;
+      start = newStart;
+      settledEnd = newSettledEnd;
+    }
+
+    private void update(long currentTime) {
+      long newStart = currentTime - intervalMs;
+      long newSettledEnd = Math.max(getSettledEnd(currentTime), settledEnd);
+
+      // accesses in the tail could be changed since the last refresh
+      jdbcTemplate.execute("UPDATE " + table + " SET count = " + table + ".count - tail.count"
+          + " FROM " + tailTable + " tail WHERE " + table + ".fid = tail.fid");
+      jdbcTemplate.execute("DELETE FROM " + tailTable);
+
+      if (newSettledEnd > settledEnd) {
+        upsertAccessCounts(
+            "access_time > " + settledEnd + " AND access_time <= " + newSettledEnd, false);
+      }
+      if (newStart > start) {
+        upsertAccessCounts(
+            "access_time >= " + start + " AND access_time < " + newStart, true);
+      }
+      addTail(newSettledEnd, currentTime);
+      jdbcTemplate.execute("DELETE FROM " + table + " WHERE count <= 0");
+
+      start = newStart;
+      settledEnd = newSettledEnd;
+    }
+
+    private long getSettledEnd(long currentTime) {
+      return Math.max(currentTime - settleDelayMs, currentTime - intervalMs);
+    }
+
+    private void addTail(long tailStart, long currentTime) {
+      if (currentTime <= tailStart) {
+        return;
+      }
+      jdbcTemplate.execute("INSERT INTO " + tailTable + " (fid, count) " + selectAccessCounts(
+          "access_time > " + tailStart + " AND access_time <= " + currentTime, false));
+      jdbcTemplate.execute("INSERT INTO " + table + " (fid, count) "
+          + "SELECT fid, count FROM " + tailTable
+          + " ON CONFLICT (fid) DO UPDATE SET count = " + table + ".count + EXCLUDED.count");
+    }
+
+    /**
+     * Adds (or subtracts, if negate is true) access counts of the
+     * matching file accesses to the table.
+     */
+    private void upsertAccessCounts(String timeFilter, boolean negate) {
+      jdbcTemplate.execute("INSERT INTO " + table + " (fid, count) "
+          + selectAccessCounts(timeFilter, negate)
+          + " ON CONFLICT (fid) DO UPDATE SET count = " + table + ".count + EXCLUDED.count");
+    }
+
+    private String selectAccessCounts(String timeFilter, boolean negate) {
+      return "SELECT fid, " + (negate ? "-" : "") + "SUM(count) FROM " + FILE_ACCESS_TABLE
+          + " WHERE " + timeFilter + " GROUP BY fid";
+    }
+
+    private void createTable(String tableName) {
+      jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + tableName
+          + " (fid BIGINT PRIMARY KEY, count BIGINT NOT NULL)");
+    }
+  }
+}
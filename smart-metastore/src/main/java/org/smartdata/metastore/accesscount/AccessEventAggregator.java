@@ -23,4 +23,9 @@
 
 public interface AccessEventAggregator {
   void aggregate(List<FileAccessEvent> events);
+
+  /**
+   * Saves all pending aggregated access counts.
+   */
+  void flush();
 }
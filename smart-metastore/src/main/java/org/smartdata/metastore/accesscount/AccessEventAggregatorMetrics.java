@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.accesscount;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeFloat;
+
+/**
+ * Metrics of the file access events aggregation.
+ */
+public class AccessEventAggregatorMetrics implements MetricsSource {
+  public static final String NAME = "AccessEventAggregator";
+
+  private final MetricsRegistry registry;
+  private final MutableCounterLong accessesReceived;
+  private final MutableCounterLong accessesUnresolved;
+  private final MutableCounterLong accessesSaved;
+  private final MutableCounterLong rowsSaved;
+  private final MutableGaugeFloat compressionRatio;
+
+  public AccessEventAggregatorMetrics() {
+    this.registry = new MetricsRegistry(NAME);
+    this.accessesReceived = registry.newCounter("AccessesReceived",
+        "Number of received file accesses", 0L);
+    this.accessesUnresolved = registry.newCounter("AccessesUnresolved",
+        "Number of file accesses skipped because of unknown file path", 0L);
+    this.accessesSaved = registry.newCounter("AccessesSaved",
+        "Number of file accesses saved to the metastore", 0L);
+    this.rowsSaved = registry.newCounter("RowsSaved",
+        "Number of rows inserted to the file access table", 0L);
+    this.compressionRatio = registry.newGauge("CompressionRatio",
+        "Average number of file accesses stored in a single row", 0f);
+  }
+
+  public void incrAccessesReceived(long accesses) {
+    accessesReceived.incr(accesses);
+  }
+
+  public void incrAccessesUnresolved(long accesses) {
+    accessesUnresolved.incr(accesses);
+  }
+
+  public void onRowsSaved(long rows, long accesses) {
+    rowsSaved.incr(rows);
+    accessesSaved.incr(accesses);
+    if (rowsSaved.value() > 0) {
+      compressionRatio.set((float) accessesSaved.value() / rowsSaved.value());
+    }
+  }
+
+  public long getAccessesReceived() {
+    return accessesReceived.value();
+  }
+
+  public long getAccessesSaved() {
+    return accessesSaved.value();
+  }
+
+  public long getRowsSaved() {
+    return rowsSaved.value();
+  }
+
+  public float getCompressionRatio() {
+    return compressionRatio.value();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    registry.snapshot(collector.addRecord(registry.info()), all);
+  }
+}
@@ -24,61 +24,134 @@
 import org.smartdata.metastore.model.AggregatedAccessCounts;
 import org.smartdata.metrics.FileAccessEvent;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import static org.smartdata.conf.SmartConfKeys.SMART_ACCESS_COUNT_AGGREGATION_BUCKET_MS_DEFAULT;
+
+/**
+ * Resolves ids of the accessed files and saves access counts to the metastore.
+ * Accesses are pre-aggregated in memory by time buckets, so only one row
+ * per file and bucket is inserted to the file access table.
+ * File ids are resolved using the {@link PathFidCache}, so the metastore
+ * is queried only for the paths missing in the cache.
+ */
 @Slf4j
 public class DbAccessEventAggregator implements AccessEventAggregator {
 
   private final FileInfoDao fileInfoDao;
   private final FileAccessManager dbTableManager;
   private final Failover<AccessCountContext> accessCountFailover;
+  private final AccessCountBuckets accessCountBuckets;
+  private final AccessEventAggregatorMetrics metrics;
+  private final PathFidCache pathFidCache;
+  private long lastEventTimestamp;
 
   public DbAccessEventAggregator(FileInfoDao fileInfoDao,
                                  FileAccessManager dbTableManager,
                                  Failover<AccessCountContext> failover) {
+    this(fileInfoDao, dbTableManager, failover,
+        SMART_ACCESS_COUNT_AGGREGATION_BUCKET_MS_DEFAULT,
+        new AccessEventAggregatorMetrics(),
+        new PathFidCache(0L));
+  }
+
+  public DbAccessEventAggregator(FileInfoDao fileInfoDao,
+                                 FileAccessManager dbTableManager,
+                                 Failover<AccessCountContext> failover,
+                                 long bucketWidthMs,
+                                 AccessEventAggregatorMetrics metrics,
+                                 PathFidCache pathFidCache) {
     this.fileInfoDao = fileInfoDao;
     this.dbTableManager = dbTableManager;
     this.accessCountFailover = failover;
+    this.accessCountBuckets = new AccessCountBuckets(bucketWidthMs);
+    this.metrics = metrics;
+    this.pathFidCache = pathFidCache;
+    this.lastEventTimestamp = 0L;
   }
 
   @Override
-  public void aggregate(List<FileAccessEvent> events) {
-    List<AggregatedAccessCounts> fileAccessCounts = getAggregatedAccessCounts(events);
+  public synchronized void aggregate(List<FileAccessEvent> events) {
+    for (FileAccessEvent event : events) {
+      lastEventTimestamp = Math.max(lastEventTimestamp, event.getTimestamp());
+    }
+    getAggregatedAccessCounts(events).forEach(accessCountBuckets::add);
+    save(accessCountBuckets.pollClosed(lastEventTimestamp));
+  }
+
+  @Override
+  public synchronized void flush() {
+    save(accessCountBuckets.pollAll());
+  }
+
+  public AccessEventAggregatorMetrics getMetrics() {
+    return metrics;
+  }
+
+  private void save(List<AggregatedAccessCounts> fileAccessCounts) {
+    if (fileAccessCounts.isEmpty()) {
+      return;
+    }
     AccessCountContext accessCountContext =
         new AccessCountContext(fileAccessCounts);
-    accessCountFailover.execute(ctx -> dbTableManager.save(accessCountContext.getAccessCounts()),
+    accessCountFailover.execute(ctx -> dbTableManager.save(ctx.getAccessCounts()),
         accessCountContext);
+
+    long accesses = fileAccessCounts.stream()
+        .mapToLong(AggregatedAccessCounts::getAccessCount)
+        .sum();
+    metrics.onRowsSaved(fileAccessCounts.size(), accesses);
   }
 
   private List<AggregatedAccessCounts> getAggregatedAccessCounts(List<FileAccessEvent> events) {
-    List<String> paths =
-        events.stream()
-            .map(FileAccessEvent::getPath)
-            .collect(Collectors.toList());
-    final Map<String, Long> pathFids = getFileIdMap(paths);
-    return events.stream()
-        .map(e -> {
-          Long fileId = pathFids.get(e.getPath());
-          if (fileId != null) {
-            return AggregatedAccessCounts.fromEvent(e).withFileId(fileId);
-          } else {
-            return null;
-          }
-        })
-        .filter(Objects::nonNull)
+    // empty paths are used only to notify about the current time
+    List<FileAccessEvent> fileAccessEvents = events.stream()
+        .filter(event -> !event.getPath().isEmpty())
         .collect(Collectors.toList());
+    if (fileAccessEvents.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    Set<String> paths = fileAccessEvents.stream()
+        .map(FileAccessEvent::getPath)
+        .collect(Collectors.toSet());
+    final Map<String, Long> pathFids = getFileIdMap(paths);
+
+    List<AggregatedAccessCounts> accessCounts = new ArrayList<>();
+    for (FileAccessEvent event : fileAccessEvents) {
+      metrics.incrAccessesReceived(event.getAccessCount());
+      Long fileId = pathFids.get(event.getPath());
+      if (fileId != null) {
+        accessCounts.add(AggregatedAccessCounts.fromEvent(event).withFileId(fileId));
+      } else {
+        metrics.incrAccessesUnresolved(event.getAccessCount());
+      }
+    }
+    return accessCounts;
   }
 
-  private Map<String, Long> getFileIdMap(List<String> paths) {
+  private Map<String, Long> getFileIdMap(Set<String> paths) {
+    Map<String, Long> pathFids = pathFidCache.getAll(paths);
+    if (pathFids.size() == paths.size()) {
+      return pathFids;
+    }
+
+    List<String> missedPaths = paths.stream()
+        .filter(path -> !pathFids.containsKey(path))
+        .collect(Collectors.toList());
+    long cacheVersion = pathFidCache.version();
     try {
-      return fileInfoDao.getPathFids(paths);
+      Map<String, Long> fetchedPathFids = fileInfoDao.getPathFids(missedPaths);
+      pathFidCache.putAll(fetchedPathFids, cacheVersion);
+      pathFids.putAll(fetchedPathFids);
     } catch (Exception e) {
-      log.error("Error fetching file ids for paths {}", paths, e);
-      return Collections.emptyMap();
+      log.error("Error fetching file ids for paths {}", missedPaths, e);
     }
+    return pathFids;
   }
 }
@@ -0,0 +1,299 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.accesscount;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+
+/**
+ * Bounded in-memory cache of file path to file id mappings, used to resolve
+ * ids of the accessed files without querying the metastore. The cache uses
+ * the W-TinyLFU eviction policy, so rarely accessed paths don't push out
+ * the hot ones. Mappings should be invalidated on every namespace change
+ * affecting the path, i.e. on file creation, rename or deletion.
+ *
+ * <p>Instead of scanning all mappings on a directory invalidation, the cache
+ * remembers the version at which the directory was invalidated. Mappings are
+ * stamped with the version they were fetched at and the ones fetched before
+ * the invalidation of any of their parent directories are dropped on lookup.
+ * Recent file invalidations are remembered as well, so that only the fetched
+ * mappings of the paths changed during the fetch are skipped.
+ */
+public class PathFidCache implements MetricsSource {
+  public static final String NAME = "PathFidCache";
+  // invalidations of the least recently changed directories are forgotten
+  private static final int MAX_DIRECTORY_INVALIDATIONS = 10_000;
+
+  // invalidations of the least recently changed files are forgotten
+  private static final int MAX_FILE_INVALIDATIONS = 10_000;
+
+  private final Cache<String, Entry> cache;
+  private final AtomicLong version;
+  private final AtomicLong invalidations;
+  // mappings fetched before the forgotten directory invalidations are outdated
+  private final InvalidationLog directoryInvalidations;
+  // mappings fetched before the forgotten file invalidations aren't cached
+  private final InvalidationLog fileInvalidations;
+
+  /**
+   * @param maxSize maximum number of cached mappings.
+   *                If it's not positive, nothing is cached.
+   */
+  public PathFidCache(long maxSize) {
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(Math.max(maxSize, 0L))
+        // run eviction in the caller thread instead of the common pool
+        .executor(Runnable::run)
+        .recordStats()
+        .build();
+    this.version = new AtomicLong();
+    this.invalidations = new AtomicLong();
+    this.directoryInvalidations = new InvalidationLog(MAX_DIRECTORY_INVALIDATIONS);
+    this.fileInvalidations = new InvalidationLog(MAX_FILE_INVALIDATIONS);
+  }
+
+  /**
+   * Returns cached file ids of the specified paths. Paths without
+   * cached mapping are counted as misses.
+   */
+  public Map<String, Long> getAll(Collection<String> paths) {
+    Map<String, Long> pathFids = new HashMap<>();
+    for (String path : paths) {
+      Entry entry = cache.getIfPresent(path);
+      if (entry == null) {
+        continue;
+      }
+      if (isOutdated(path, entry.version)) {
+        cache.asMap().remove(path, entry);
+      } else {
+        pathFids.put(path, entry.fileId);
+      }
+    }
+    return pathFids;
+  }
+
+  /**
+   * Returns current version of the cache, which is changed on every invalidation.
+   * It should be obtained before fetching mappings from the metastore and
+   * passed to the {@link #putAll(Map, long)} to avoid caching of the mappings,
+   * that were invalidated during the fetch.
+   */
+  public long version() {
+    return version.get();
+  }
+
+  /**
+   * Caches mappings, except the ones whose path or parent directory
+   * was invalidated since the specified version.
+   */
+  public void putAll(Map<String, Long> pathFids, long expectedVersion) {
+    for (Map.Entry<String, Long> pathFid : pathFids.entrySet()) {
+      String path = pathFid.getKey();
+      if (isChanged(path, expectedVersion)) {
+        continue;
+      }
+      Entry entry = new Entry(pathFid.getValue(), expectedVersion);
+      cache.put(path, entry);
+      // invalidation could happen during the insertion
+      if (isChanged(path, expectedVersion)) {
+        cache.asMap().remove(path, entry);
+      }
+    }
+  }
+
+  /**
+   * Removes the cached mapping of the path. If the path is a directory,
+   * mappings of all files under it are outdated as well.
+   */
+  public void invalidate(String path, boolean isDirectory) {
+    long newVersion = version.incrementAndGet();
+    invalidations.incrementAndGet();
+    String normalizedPath = path.length() > 1 && path.endsWith("/")
+        ? path.substring(0, path.length() - 1)
+        : path;
+    // the invalidation is recorded before the removal,
+    // so that the concurrent putAll either sees it or is undone by the removal
+    if (isDirectory) {
+      directoryInvalidations.record(normalizedPath, newVersion);
+    } else {
+      fileInvalidations.record(normalizedPath, newVersion);
+    }
+    cache.invalidate(normalizedPath);
+  }
+
+  public void invalidateAll() {
+    long newVersion = version.incrementAndGet();
+    invalidations.incrementAndGet();
+    directoryInvalidations.reset(newVersion);
+    fileInvalidations.reset(newVersion);
+    cache.invalidateAll();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  /**
+   * Checks whether the mapping fetched at the version was outdated
+   * by the invalidation of any parent directory.
+   */
+  private boolean isOutdated(String path, long entryVersion) {
+    if (entryVersion < directoryInvalidations.minVersion()) {
+      return true;
+    }
+    if (directoryInvalidations.isEmpty()) {
+      return false;
+    }
+    for (int end = path.lastIndexOf('/'); end >= 0; end = path.lastIndexOf('/', end - 1)) {
+      String directory = end == 0 ? "/" : path.substring(0, end);
+      if (directoryInvalidations.isChangedAfter(directory, entryVersion)) {
+        return true;
+      }
+      if (end == 0) {
+        break;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether the path or any parent directory was invalidated since the version.
+   */
+  private boolean isChanged(String path, long fetchVersion) {
+    return fetchVersion < fileInvalidations.minVersion()
+        || fileInvalidations.isChangedAfter(path, fetchVersion)
+        || directoryInvalidations.isChangedAfter(path, fetchVersion)
+        || isOutdated(path, fetchVersion);
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    CacheStats stats = cache.stats();
+    collector.addRecord(NAME)
+        .addCounter(info("Hits", "Number of path lookups resolved from the cache"),
+            stats.hitCount())
+        .addCounter(info("Misses", "Number of path lookups missed the cache"),
+            stats.missCount())
+        .addCounter(info("Evictions", "Number of mappings evicted due to the size limit"),
+            stats.evictionCount())
+        .addCounter(info("Invalidations", "Number of invalidations by namespace changes"),
+            invalidations.get())
+        .addGauge(info("Size", "Estimated number of cached mappings"),
+            cache.estimatedSize())
+        .addGauge(info("HitRate", "Ratio of path lookups resolved from the cache"),
+            (float) stats.hitRate());
+  }
+
+  /**
+   * Bounded log of the latest invalidation version of the paths.
+   * Forgetting the eldest invalidation raises the min version,
+   * below which everything is considered changed.
+   */
+  private static class InvalidationLog {
+    private final int maxSize;
+    private final Map<String, Long> versions;
+    private final Queue<Invalidation> order;
+    private final AtomicInteger size;
+    private final AtomicLong minVersion;
+
+    private InvalidationLog(int maxSize) {
+      this.maxSize = maxSize;
+      this.versions = new ConcurrentHashMap<>();
+      this.order = new ConcurrentLinkedQueue<>();
+      this.size = new AtomicInteger();
+      this.minVersion = new AtomicLong();
+    }
+
+    private void record(String path, long version) {
+      versions.merge(path, version, Math::max);
+      order.add(new Invalidation(path, version));
+      if (size.incrementAndGet() > maxSize) {
+        Invalidation eldest = order.poll();
+        if (eldest != null) {
+          size.decrementAndGet();
+          // raise the min version before the invalidation is forgotten
+          minVersion.accumulateAndGet(eldest.version, Math::max);
+          versions.remove(eldest.path, eldest.version);
+        }
+      }
+    }
+
+    private boolean isChangedAfter(String path, long version) {
+      Long invalidationVersion = versions.get(path);
+      return invalidationVersion != null && invalidationVersion > version;
+    }
+
+    private boolean isEmpty() {
+      return versions.isEmpty();
+    }
+
+    private long minVersion() {
+      return minVersion.get();
+    }
+
+    private void reset(long version) {
+      minVersion.accumulateAndGet(version, Math::max);
+      versions.clear();
+      order.clear();
+      size.set(0);
+    }
+  }
+
+  private static class Invalidation {
+    private final String path;
+    private final long version;
+
+    private Invalidation(String path, long version) {
+      this.path = path;
+      this.version = version;
+    }
+  }
+
+  private static class Entry {
+    private final long fileId;
+    // cache version before the mapping was fetched
+    private final long version;
+
+    private Entry(long fileId, long version) {
+      this.fileId = fileId;
+      this.version = version;
+    }
+  }
+}
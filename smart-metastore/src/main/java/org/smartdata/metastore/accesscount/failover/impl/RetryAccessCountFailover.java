@@ -45,6 +45,8 @@ public void execute(Statement<AccessCountContext> statement, AccessCountContext
     } catch (Exception e) {
       retryCount++;
       if (retryCount < maxRetries + 1) {
+        // context already contains previously failed access counts
+        failedAccessCounts.clear();
         failedAccessCounts.addAll(context.getAccessCounts());
       } else {
         resetRetries();
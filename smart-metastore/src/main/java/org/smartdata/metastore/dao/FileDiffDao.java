@@ -30,6 +30,12 @@ public interface FileDiffDao {
 
   List<FileDiff> getPendingDiff();
 
+  /**
+   * Returns at most limit pending diffs with ids greater than the provided one
+   * in the order of ids.
+   */
+  List<FileDiff> getPendingDiffsAfter(long diffId, int limit);
+
   List<FileDiff> getByState(String prefix, FileDiffState fileDiffState);
 
   List<FileDiff> getPendingDiff(long rid);
@@ -55,6 +55,8 @@ Map<String, Long> getPathFids(Collection<String> paths)
 
   void deleteByPath(String path, boolean recursive);
 
+  void deleteByPaths(Collection<String> paths);
+
   void deleteAll();
 
   void renameFile(String oldPath, String newPath, boolean recursive);
@@ -21,8 +21,11 @@
 
 import javax.sql.DataSource;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 public class MetaStoreHelper {
   private DataSource dataSource;
@@ -48,12 +51,60 @@ public void dropTable(String tableName) {
 
   public List<String> getFilesPath(String sql) {
     JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
-    return jdbcTemplate.query(sql, rs -> {
-      List<String> files = new ArrayList<>();
-      while (rs.next()) {
-        files.add(rs.getString(1));
-      }
-      return files;
-    });
+    return jdbcTemplate.query(sql, MetaStoreHelper::extractFilesPath);
+  }
+
+  public void execute(String sql, Object[] args, int queryTimeoutSec) {
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.setQueryTimeout(queryTimeoutSec);
+    jdbcTemplate.update(sql, args);
+  }
+
+  public List<String> getFilesPath(String sql, Object[] args, int queryTimeoutSec) {
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.setQueryTimeout(queryTimeoutSec);
+    return jdbcTemplate.query(sql, MetaStoreHelper::extractFilesPath, args);
+  }
+
+  /**
+   * Saves the distinct file paths returned by the query to a new table
+   * indexed by path. The query should return the file paths in the 'path' column.
+   * @return name of the created table, which should be dropped by the caller
+   */
+  public String materializeFilesPath(String sql, Object[] args, int queryTimeoutSec) {
+    String tableName = "query_result_" + UUID.randomUUID().toString().replace("-", "");
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.setQueryTimeout(queryTimeoutSec);
+    jdbcTemplate.execute("CREATE TABLE " + tableName
+        + " (path VARCHAR(1000) PRIMARY KEY)");
+    try {
+      jdbcTemplate.update("INSERT INTO " + tableName + " (path)"
+          + " SELECT DISTINCT path FROM (" + sql + ") AS query_result", args);
+    } catch (RuntimeException e) {
+      dropTable(tableName);
+      throw e;
+    }
+    return tableName;
+  }
+
+  /**
+   * Returns the page of at most limit paths of the table created by
+   * {@link #materializeFilesPath}, which are greater than afterPath in the path order.
+   */
+  public List<String> getFilesPathPage(String tableName, String afterPath,
+                                       int limit, int queryTimeoutSec) {
+    String pageSql = "SELECT path FROM " + tableName
+        + " WHERE path > ? ORDER BY path LIMIT ?";
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.setQueryTimeout(queryTimeoutSec);
+    return jdbcTemplate.query(pageSql, MetaStoreHelper::extractFilesPath, afterPath, limit);
+  }
+
+  private static List<String> extractFilesPath(ResultSet rs) throws SQLException {
+    List<String> files = new ArrayList<>();
+    while (rs.next()) {
+      files.add(rs.getString(1));
+    }
+    return files;
   }
 }
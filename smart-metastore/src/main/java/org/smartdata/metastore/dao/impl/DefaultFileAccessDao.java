@@ -61,6 +61,7 @@ public void insert(Collection<AggregatedAccessCounts> aggregatedAccessCounts) {
   protected Map<String, Object> toMap(AggregatedAccessCounts accessCounts) {
     Map<String, Object> parameters = new HashMap<>();
     parameters.put(FileAccessDao.FILE_ID_FIELD, accessCounts.getFileId());
+    parameters.put(FileAccessDao.ACCESS_COUNT_FIELD, accessCounts.getAccessCount());
     parameters.put(FileAccessDao.ACCESS_TIME_FIELD,
         accessCounts.getLastAccessedTimestamp());
     return parameters;
@@ -84,7 +85,7 @@ protected MetastoreQuery searchQuery(FileAccessInfoSearchRequest searchRequest)
         "count",
         "access_time",
         "path")
-        .fromSubQuery("SELECT file.fid, count(*) AS count,\n"
+        .fromSubQuery("SELECT file.fid, SUM(file_access.count) AS count,\n"
             + "MAX(file_access.access_time) as access_time, file.path as path\n"
             + "FROM file_access\n"
             + "    JOIN file ON file_access.fid = file.fid\n"
@@ -67,6 +67,13 @@ public List<FileDiff> getPendingDiff() {
         "SELECT * FROM " + TABLE_NAME + " WHERE state = 0", new FileDiffRowMapper());
   }
 
+  @Override
+  public List<FileDiff> getPendingDiffsAfter(long diffId, int limit) {
+    return jdbcTemplate.query("SELECT * FROM " + TABLE_NAME
+            + " WHERE state = 0 AND did > ? ORDER BY did LIMIT ?",
+        new FileDiffRowMapper(), diffId, limit);
+  }
+
   @Override
   public List<FileDiff> getByState(String prefix, FileDiffState fileDiffState) {
     return jdbcTemplate
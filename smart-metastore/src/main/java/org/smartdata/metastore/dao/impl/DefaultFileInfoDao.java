@@ -137,6 +137,16 @@ public void deleteByPath(String path,  boolean recursive) {
     }
   }
 
+  @Override
+  public void deleteByPaths(Collection<String> paths) {
+    NamedParameterJdbcTemplate namedParameterJdbcTemplate =
+        new NamedParameterJdbcTemplate(dataSource);
+    MapSqlParameterSource parameterSource = new MapSqlParameterSource();
+    parameterSource.addValue("paths", paths);
+    namedParameterJdbcTemplate.update("DELETE FROM file WHERE path IN (:paths)",
+        parameterSource);
+  }
+
   @Override
   public void deleteAll() {
     final String sql = "DELETE FROM file";
@@ -39,6 +39,6 @@ public PostgresActionDao(
 
   @Override
   public void upsert(List<ActionInfo> actionInfos) {
-    upsertSupport.batchUpsert(actionInfos, this::toMap, PRIMARY_KEY_FIELD);
+    upsertSupport.multiRowUpsert(actionInfos, this::toMap, PRIMARY_KEY_FIELD);
   }
 }
@@ -38,6 +38,6 @@ public PostgresCmdletDao(
 
   @Override
   public void upsert(List<CmdletInfo> cmdletInfos) {
-    upsertSupport.batchUpsert(cmdletInfos, this::toMap, PRIMARY_KEY_FIELD);
+    upsertSupport.multiRowUpsert(cmdletInfos, this::toMap, PRIMARY_KEY_FIELD);
   }
 }
@@ -21,6 +21,7 @@
 import org.smartdata.metastore.dao.ActionDao;
 import org.smartdata.metastore.dao.CmdletDao;
 import org.smartdata.metastore.dao.CompressionFileDao;
+import org.smartdata.metastore.dao.FileInfoDao;
 import org.smartdata.metastore.dao.FileStateDao;
 import org.smartdata.metastore.dao.SmallFileDao;
 import org.smartdata.metastore.dao.StorageDao;
@@ -37,6 +38,11 @@ public StorageDao storageDao() {
     return new PostgresStorageDao(dataSource);
   }
 
+  @Override
+  public FileInfoDao fileInfoDao() {
+    return new PostgresFileInfoDao(dataSource);
+  }
+
   @Override
   public FileStateDao fileStateDao() {
     return new PostgresFileStateDao(dataSource);
@@ -17,6 +17,7 @@
  */
 package org.smartdata.metastore.dao.postgres;
 
+import com.google.common.collect.Iterables;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import javax.sql.DataSource;
@@ -24,11 +25,17 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class PostgresUpsertSupport {
+  // PostgreSQL protocol limits the number of statement parameters
+  private static final int MAX_STATEMENT_PARAMETERS = Short.MAX_VALUE;
+
   private final NamedParameterJdbcTemplate namedJdbcTemplate;
   private final String tableName;
 
@@ -56,6 +63,38 @@ public <T> int[] batchUpsert(
     return batchUpsert(Arrays.stream(entities), entityMapper, primaryKeyField);
   }
 
+  /**
+   * Upserts entities using multi-row statements instead of executing
+   * a statement per entity. Since a statement can't update the same row
+   * twice, only the last of the entities with the same primary key is written.
+   */
+  public <T> void multiRowUpsert(
+      Collection<T> entities,
+      EntityToMapConverter<T> entityMapper,
+      String primaryKeyField) {
+    Map<Object, Map<String, Object>> rows = new LinkedHashMap<>();
+    for (T entity : entities) {
+      Map<String, Object> row = entityMapper.toMap(entity);
+      rows.put(row.get(primaryKeyField), row);
+    }
+    if (rows.isEmpty()) {
+      return;
+    }
+
+    List<String> fieldNames = new ArrayList<>(rows.values().iterator().next().keySet());
+    int rowsPerStatement = Math.max(1, MAX_STATEMENT_PARAMETERS / fieldNames.size());
+    for (List<Map<String, Object>> statementRows
+        : Iterables.partition(rows.values(), rowsPerStatement)) {
+      List<Object> args = new ArrayList<>(statementRows.size() * fieldNames.size());
+      for (Map<String, Object> row : statementRows) {
+        fieldNames.forEach(field -> args.add(row.get(field)));
+      }
+      namedJdbcTemplate.getJdbcTemplate().update(
+          generateMultiRowSqlTemplate(fieldNames, statementRows.size(), primaryKeyField),
+          args.toArray());
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private  <T> int[] batchUpsert(
       Stream<T> entitiesStream,
@@ -105,6 +144,31 @@ String generateSqlTemplate(Map<String, Object> namedParameters, String primaryKe
         + setClause;
   }
 
+  String generateMultiRowSqlTemplate(
+      List<String> fieldNames, int rowsCount, String primaryKeyField) {
+    String rowClause = "(" + String.join(", ",
+        Collections.nCopies(fieldNames.size(), "?")) + ")";
+
+    String setClause = fieldNames
+        .stream()
+        .map(field -> String.format("%s = EXCLUDED.%s", field, field))
+        .collect(Collectors.joining(",\n"));
+
+    return "INSERT INTO "
+        + tableName
+        + "("
+        + String.join(", ", fieldNames)
+        + ")\n"
+        + "VALUES "
+        + String.join(",\n", Collections.nCopies(rowsCount, rowClause))
+        + "\n"
+        + "ON CONFLICT ("
+        + primaryKeyField
+        + ")\n"
+        + "DO UPDATE SET "
+        + setClause;
+  }
+
   public interface EntityToMapConverter<T> {
     Map<String, Object> toMap(T entity);
   }
@@ -24,62 +24,58 @@
 import org.smartdata.model.FileInfo;
 import org.smartdata.model.FileInfoBatch;
 
+import java.util.Arrays;
+
+/**
+ * Consumer saving the file info batches from the {@link IngestionQueue}
+ * to the metastore until the queue is drained.
+ */
 public class FileStatusIngester implements Runnable {
   public static final Logger LOG = LoggerFactory.getLogger(FileStatusIngester.class);
 
+  private static final long POLL_TIMEOUT_MS = 100L;
+
   private final MetaStore dbAdapter;
-  private long startTime = System.currentTimeMillis();
-  private long lastUpdateTime = startTime;
-  private static int idCounter = 0;
-  private int id;
+  private final IngestionQueue queue;
+  private final NamespaceIngestionMetrics metrics;
 
-  public FileStatusIngester(MetaStore dbAdapter) {
+  public FileStatusIngester(MetaStore dbAdapter,
+                            IngestionQueue queue,
+                            NamespaceIngestionMetrics metrics) {
     this.dbAdapter = dbAdapter;
-    id = idCounter++;
+    this.queue = queue;
+    this.metrics = metrics;
   }
 
   @Override
   public void run() {
-    FileInfoBatch batch = IngestionTask.pollBatch();
     try {
-      if (batch != null) {
-        FileInfo[] statuses = batch.getFileInfos();
-        if (statuses.length == batch.actualSize()) {
-          this.dbAdapter.insertFiles(batch.getFileInfos());
-          IngestionTask.numPersisted.addAndGet(statuses.length);
-        } else {
-          FileInfo[] actual = new FileInfo[batch.actualSize()];
-          System.arraycopy(statuses, 0, actual, 0, batch.actualSize());
-          this.dbAdapter.insertFiles(actual);
-          IngestionTask.numPersisted.addAndGet(actual.length);
-        }
-
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Consumer " + id + " " + batch.actualSize()
-              + " files insert into table 'files'.");
+      while (!queue.isDrained() && !Thread.currentThread().isInterrupted()) {
+        FileInfoBatch batch = queue.poll(POLL_TIMEOUT_MS);
+        if (batch != null) {
+          insert(batch);
         }
       }
-    } catch (MetaStoreException e) {
-      // TODO: handle this issue
-      LOG.error("Consumer {} error", id);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
+  }
 
-    if (id == 0) {
-      long curr = System.currentTimeMillis();
-      if (curr - lastUpdateTime >= 5000) {
-        long total =
-            IngestionTask.numDirectoriesFetched.get() + IngestionTask.numFilesFetched.get();
-        if (total > 0) {
-          LOG.info(String.format(
-              "%d sec, %d%% persisted into database",
-              (curr - startTime) / 1000, IngestionTask.numPersisted.get() * 100 / total));
-        } else {
-          LOG.info(String.format(
-              "%d sec, 0%% persisted into database",
-              (curr - startTime) / 1000));
-        }
-        lastUpdateTime = curr;
-      }
+  private void insert(FileInfoBatch batch) {
+    FileInfo[] fileInfos = batch.getFileInfos();
+    if (fileInfos.length != batch.actualSize()) {
+      fileInfos = Arrays.copyOf(fileInfos, batch.actualSize());
+    }
+
+    long startTime = System.currentTimeMillis();
+    try {
+      dbAdapter.insertFiles(fileInfos);
+      queue.onBatchInserted(fileInfos.length, System.currentTimeMillis() - startTime);
+      metrics.addFilesPersisted(fileInfos.length);
+      LOG.debug("{} files inserted into table 'file'", fileInfos.length);
+    } catch (MetaStoreException | RuntimeException e) {
+      metrics.addFilesFailed(fileInfos.length);
+      LOG.error("Error inserting {} files into table 'file'", fileInfos.length, e);
     }
   }
 }
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.ingestion;
+
+import org.smartdata.model.FileInfoBatch;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded queue of the file info batches passed from the namespace producers
+ * to the {@link FileStatusIngester}s. Producers are blocked while the queue is full.
+ *
+ * <p>The size of the new batches is adapted to the insertion time of the
+ * previous ones: it's doubled while batches are inserted faster than the
+ * target time and halved if the insertion becomes too slow.
+ */
+public class IngestionQueue {
+  static final long TARGET_INSERT_TIME_MS = 1000L;
+
+  private final BlockingQueue<FileInfoBatch> batches;
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final AtomicInteger batchSize;
+  private volatile boolean producersFinished;
+
+  public IngestionQueue(int minBatchSize, int maxBatchSize, int maxPendingBatches) {
+    this.minBatchSize = Math.max(minBatchSize, 1);
+    this.maxBatchSize = Math.max(maxBatchSize, this.minBatchSize);
+    this.batches = new LinkedBlockingQueue<>(Math.max(maxPendingBatches, 1));
+    this.batchSize = new AtomicInteger(this.minBatchSize);
+    this.producersFinished = false;
+  }
+
+  public FileInfoBatch newBatch() {
+    return new FileInfoBatch(batchSize.get());
+  }
+
+  public void put(FileInfoBatch batch) throws InterruptedException {
+    if (batch.actualSize() > 0) {
+      batches.put(batch);
+    }
+  }
+
+  /**
+   * Puts the batch if the queue isn't full.
+   * @return false if the queue is full
+   */
+  public boolean offer(FileInfoBatch batch) {
+    return batch.actualSize() == 0 || batches.offer(batch);
+  }
+
+  /**
+   * Retrieves the next batch, waiting up to the specified time if necessary.
+   * @return the batch or null if there are no batches available
+   */
+  public FileInfoBatch poll(long timeoutMs) throws InterruptedException {
+    return batches.poll(timeoutMs, TimeUnit.MILLISECONDS);
+  }
+
+  public void onBatchInserted(int insertedNum, long insertTimeMs) {
+    // the batches flushed before they are full don't reflect the insertion speed
+    if (insertedNum < batchSize.get()) {
+      return;
+    }
+    if (insertTimeMs < TARGET_INSERT_TIME_MS / 2) {
+      batchSize.updateAndGet(size -> Math.min(size * 2, maxBatchSize));
+    } else if (insertTimeMs > TARGET_INSERT_TIME_MS * 2) {
+      batchSize.updateAndGet(size -> Math.max(size / 2, minBatchSize));
+    }
+  }
+
+  /**
+   * Marks that all producers have put their last batches.
+   */
+  public void finishProducing() {
+    producersFinished = true;
+  }
+
+  public boolean isDrained() {
+    return producersFinished && batches.isEmpty();
+  }
+
+  public int getPendingBatches() {
+    return batches.size();
+  }
+
+  public int getBatchSize() {
+    return batchSize.get();
+  }
+}
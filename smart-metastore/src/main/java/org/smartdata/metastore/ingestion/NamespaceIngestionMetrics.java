@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.ingestion;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of the namespace ingestion. Values are reset on each ingestion start.
+ * Progress and estimated remaining time are reported only if the total number
+ * of files to fetch is known.
+ */
+public class NamespaceIngestionMetrics implements MetricsSource {
+  public static final String NAME = "NamespaceIngestion";
+
+  private final AtomicLong filesFetched;
+  private final AtomicLong directoriesFetched;
+  private final AtomicLong filesPersisted;
+  private final AtomicLong filesFailed;
+  private volatile long totalFilesEstimate;
+  private volatile long startTime;
+  private volatile long finishTime;
+  private volatile IngestionQueue queue;
+
+  public NamespaceIngestionMetrics() {
+    this.filesFetched = new AtomicLong();
+    this.directoriesFetched = new AtomicLong();
+    this.filesPersisted = new AtomicLong();
+    this.filesFailed = new AtomicLong();
+    this.totalFilesEstimate = -1L;
+  }
+
+  public void start(IngestionQueue queue) {
+    filesFetched.set(0);
+    directoriesFetched.set(0);
+    filesPersisted.set(0);
+    filesFailed.set(0);
+    this.totalFilesEstimate = -1L;
+    this.startTime = System.currentTimeMillis();
+    this.finishTime = 0L;
+    this.queue = queue;
+  }
+
+  public void finish() {
+    finishTime = System.currentTimeMillis();
+  }
+
+  public void incrFilesFetched() {
+    filesFetched.incrementAndGet();
+  }
+
+  public void incrDirectoriesFetched() {
+    directoriesFetched.incrementAndGet();
+  }
+
+  public void addFilesPersisted(long filesNum) {
+    filesPersisted.addAndGet(filesNum);
+  }
+
+  public void addFilesFailed(long filesNum) {
+    filesFailed.addAndGet(filesNum);
+  }
+
+  /**
+   * Sets the estimated number of files and directories to be fetched.
+   */
+  public void setTotalFilesEstimate(long totalFilesEstimate) {
+    this.totalFilesEstimate = totalFilesEstimate;
+  }
+
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public long getFilesFetched() {
+    return filesFetched.get();
+  }
+
+  public long getDirectoriesFetched() {
+    return directoriesFetched.get();
+  }
+
+  public long getFilesPersisted() {
+    return filesPersisted.get();
+  }
+
+  /** Number of the files persisted per second. */
+  public long getThroughput() {
+    long endTime = finishTime == 0 ? System.currentTimeMillis() : finishTime;
+    long elapsedMs = endTime - startTime;
+    return elapsedMs <= 0 ? 0 : filesPersisted.get() * 1000 / elapsedMs;
+  }
+
+  /** Persisted percentage of the estimated total number of files or -1 if it's unknown. */
+  public int getProgressPercent() {
+    if (finishTime != 0) {
+      return 100;
+    }
+    long total = totalFilesEstimate;
+    if (total <= 0) {
+      return -1;
+    }
+    return (int) Math.min(99, filesPersisted.get() * 100 / total);
+  }
+
+  /** Estimated time in seconds until all files are persisted or -1 if it's unknown. */
+  public long getEtaSec() {
+    if (finishTime != 0) {
+      return 0;
+    }
+    long throughput = getThroughput();
+    long total = totalFilesEstimate;
+    if (total <= 0 || throughput == 0) {
+      return -1;
+    }
+    return Math.max(total - filesPersisted.get(), 0) / throughput;
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    IngestionQueue currentQueue = queue;
+    collector.addRecord(NAME)
+        .addGauge(Interns.info("FilesFetched",
+            "Number of files fetched from the namespace"), filesFetched.get())
+        .addGauge(Interns.info("DirectoriesFetched",
+            "Number of directories fetched from the namespace"), directoriesFetched.get())
+        .addGauge(Interns.info("FilesPersisted",
+            "Number of files and directories saved to the metastore"), filesPersisted.get())
+        .addGauge(Interns.info("FilesFailed",
+            "Number of files and directories failed to be saved"), filesFailed.get())
+        .addGauge(Interns.info("PendingBatches",
+            "Number of batches waiting to be saved"),
+            currentQueue == null ? 0 : currentQueue.getPendingBatches())
+        .addGauge(Interns.info("BatchSize",
+            "Current size of the saved batches"),
+            currentQueue == null ? 0 : currentQueue.getBatchSize())
+        .addGauge(Interns.info("Throughput",
+            "Number of files saved per second"), getThroughput())
+        .addGauge(Interns.info("ProgressPercent",
+            "Percentage of the saved files, -1 if unknown"), getProgressPercent())
+        .addGauge(Interns.info("EtaSec",
+            "Estimated time to finish in seconds, -1 if unknown"), getEtaSec());
+  }
+}
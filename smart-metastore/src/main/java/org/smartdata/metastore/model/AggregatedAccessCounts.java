@@ -44,7 +44,7 @@ public AggregatedAccessCounts withFileId(long fileId) {
 
   public static AggregatedAccessCounts fromEvent(FileAccessEvent fileAccessEvent) {
     return new AggregatedAccessCounts(
-        1,
+        fileAccessEvent.getAccessCount(),
         fileAccessEvent.getTimestamp()
     );
   }
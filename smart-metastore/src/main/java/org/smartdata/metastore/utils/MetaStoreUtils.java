@@ -28,6 +28,7 @@
 import org.smartdata.metastore.DruidPool;
 import org.smartdata.metastore.MetaStore;
 import org.smartdata.metastore.MetaStoreException;
+import org.smartdata.metastore.accesscount.PathFidCache;
 import org.smartdata.metastore.dao.DaoProvider;
 import org.smartdata.metastore.dao.DaoProviderFactory;
 import org.smartdata.metastore.db.DBHandlersFactory;
@@ -124,8 +125,12 @@ public static MetaStore getDBAdapter(
     DbMetadataProvider dbMetadataProvider = dbHandlersFactory
         .createDbMetadataProvider(druidPool, dbType);
 
+    PathFidCache pathFidCache = new PathFidCache(conf.getLong(
+        SmartConfKeys.SMART_ACCESS_COUNT_PATH_CACHE_SIZE_KEY,
+        SmartConfKeys.SMART_ACCESS_COUNT_PATH_CACHE_SIZE_DEFAULT));
+
     return new MetaStore(druidPool, dbSchemaManager, daoProvider, dbMetadataProvider,
-        transactionManager);
+        transactionManager, pathFidCache);
   }
 
   private static Properties loadDruidConfig(SmartConf conf, File cpConfigFile)
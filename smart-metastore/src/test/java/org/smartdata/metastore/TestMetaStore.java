@@ -180,6 +180,32 @@ public void testGetFiles() throws Exception {
     Assert.assertEquals(fileInfo, dbFileInfo);
   }
 
+  @Test
+  public void testStreamFilesPathQuery() throws Exception {
+    FileInfo[] files = new FileInfo[7];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = FileInfo.newBuilder()
+          .setFileId(i)
+          .setPath("/stream/file" + i)
+          .setLength(i)
+          .build();
+    }
+    metaStore.insertFiles(files);
+
+    List<List<String>> batches = new ArrayList<>();
+    metaStore.streamFilesPathQuery("SELECT path FROM file WHERE length > ?",
+        new Object[] {1L}, 0, 2, batches::add);
+    Assert.assertEquals(Arrays.asList(
+        Arrays.asList("/stream/file2", "/stream/file3"),
+        Arrays.asList("/stream/file4", "/stream/file5"),
+        Collections.singletonList("/stream/file6")), batches);
+
+    batches.clear();
+    metaStore.streamFilesPathQuery("SELECT path FROM file WHERE length > ?",
+        new Object[] {1L}, 0, 2, batch -> batches.add(batch) && batches.size() < 2);
+    Assert.assertEquals(2, batches.size());
+  }
+
   @Test
   public void testGetNonExistFile() throws Exception {
     FileInfo info = metaStore.getFile("/non_exist_file_path");
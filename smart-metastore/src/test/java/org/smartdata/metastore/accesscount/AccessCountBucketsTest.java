@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.accesscount;
+
+import org.junit.Test;
+import org.smartdata.metastore.model.AggregatedAccessCounts;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AccessCountBucketsTest {
+
+  @Test
+  public void testMergeAccessesWithinBucket() {
+    AccessCountBuckets buckets = new AccessCountBuckets(1000);
+    buckets.add(new AggregatedAccessCounts(1, 1, 1000));
+    buckets.add(new AggregatedAccessCounts(1, 2, 1500));
+    buckets.add(new AggregatedAccessCounts(2, 1, 1999));
+    buckets.add(new AggregatedAccessCounts(1, 1, 2000));
+
+    assertTrue(buckets.pollClosed(1999).isEmpty());
+
+    List<AggregatedAccessCounts> closed = sorted(buckets.pollClosed(2000));
+    assertEquals(Arrays.asList(
+            new AggregatedAccessCounts(1, 3, 1500),
+            new AggregatedAccessCounts(2, 1, 1999)),
+        closed);
+
+    assertEquals(Collections.singletonList(new AggregatedAccessCounts(1, 1, 2000)),
+        buckets.pollAll());
+    assertTrue(buckets.isEmpty());
+  }
+
+  @Test
+  public void testMergeAccessesWithinBatchIfBucketsDisabled() {
+    AccessCountBuckets buckets = new AccessCountBuckets(0);
+    buckets.add(new AggregatedAccessCounts(1, 1, 1000));
+    buckets.add(new AggregatedAccessCounts(1, 1, 50000));
+
+    assertEquals(Collections.singletonList(new AggregatedAccessCounts(1, 2, 50000)),
+        buckets.pollClosed(0));
+    assertTrue(buckets.isEmpty());
+  }
+
+  private List<AggregatedAccessCounts> sorted(List<AggregatedAccessCounts> accessCounts) {
+    accessCounts.sort(Comparator.comparingLong(AggregatedAccessCounts::getFileId));
+    return accessCounts;
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.accesscount;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PathFidCacheTest {
+  private PathFidCache cache;
+
+  @Before
+  public void init() {
+    cache = new PathFidCache(100);
+    Map<String, Long> pathFids = new HashMap<>();
+    pathFids.put("/dir", 1L);
+    pathFids.put("/dir/file1", 2L);
+    pathFids.put("/dir/sub/file2", 3L);
+    pathFids.put("/dir1/file3", 4L);
+    cache.putAll(pathFids, cache.version());
+  }
+
+  @Test
+  public void testCountHitsAndMisses() {
+    Map<String, Long> pathFids = cache.getAll(
+        Arrays.asList("/dir/file1", "/dir1/file3", "/unknown"));
+
+    Map<String, Long> expectedPathFids = new HashMap<>();
+    expectedPathFids.put("/dir/file1", 2L);
+    expectedPathFids.put("/dir1/file3", 4L);
+    assertEquals(expectedPathFids, pathFids);
+    assertEquals(2, cache.stats().hitCount());
+    assertEquals(1, cache.stats().missCount());
+  }
+
+  @Test
+  public void testInvalidateDirectory() {
+    cache.invalidate("/dir/", true);
+
+    Map<String, Long> pathFids = cache.getAll(
+        Arrays.asList("/dir", "/dir/file1", "/dir/sub/file2", "/dir1/file3"));
+    assertEquals(Collections.singletonMap("/dir1/file3", 4L), pathFids);
+    assertEquals(1, cache.getInvalidations());
+  }
+
+  @Test
+  public void testCacheMappingsFetchedAfterDirectoryInvalidation() {
+    cache.invalidate("/dir", true);
+    cache.putAll(Collections.singletonMap("/dir/sub/file2", 5L), cache.version());
+    cache.invalidate("/dir1", true);
+
+    Map<String, Long> pathFids = cache.getAll(
+        Arrays.asList("/dir/file1", "/dir/sub/file2", "/dir1/file3"));
+    assertEquals(Collections.singletonMap("/dir/sub/file2", 5L), pathFids);
+  }
+
+  @Test
+  public void testForgetOldDirectoryInvalidations() {
+    cache.putAll(Collections.singletonMap("/dir2/file4", 5L), cache.version());
+    for (int i = 0; i <= 10_000; i++) {
+      cache.invalidate("/other/dir" + i, true);
+    }
+    cache.putAll(Collections.singletonMap("/dir2/file5", 6L), cache.version());
+
+    // mappings fetched before the forgotten invalidations are outdated
+    Map<String, Long> pathFids = cache.getAll(Arrays.asList("/dir2/file4", "/dir2/file5"));
+    assertEquals(Collections.singletonMap("/dir2/file5", 6L), pathFids);
+  }
+
+  @Test
+  public void testInvalidateFile() {
+    cache.invalidate("/dir", false);
+
+    Map<String, Long> pathFids = cache.getAll(Arrays.asList("/dir", "/dir/file1"));
+    assertEquals(Collections.singletonMap("/dir/file1", 2L), pathFids);
+  }
+
+  @Test
+  public void testSkipMappingsFetchedBeforeInvalidation() {
+    long version = cache.version();
+    cache.invalidate("/dir/file4", false);
+    cache.putAll(Collections.singletonMap("/dir/file4", 5L), version);
+
+    assertTrue(cache.getAll(Collections.singletonList("/dir/file4")).isEmpty());
+  }
+
+  @Test
+  public void testCacheMappingsUnaffectedByInvalidation() {
+    long version = cache.version();
+    cache.invalidate("/other/file", false);
+    cache.invalidate("/other/dir", true);
+    Map<String, Long> fetchedPathFids = new HashMap<>();
+    fetchedPathFids.put("/dir/file4", 5L);
+    fetchedPathFids.put("/dir/file5", 6L);
+    cache.putAll(fetchedPathFids, version);
+
+    Map<String, Long> pathFids = cache.getAll(Arrays.asList("/dir/file4", "/dir/file5"));
+    assertEquals(fetchedPathFids, pathFids);
+  }
+
+  @Test
+  public void testSkipMappingsUnderDirectoryInvalidatedDuringFetch() {
+    long version = cache.version();
+    cache.invalidate("/dir2", true);
+    Map<String, Long> fetchedPathFids = new HashMap<>();
+    fetchedPathFids.put("/dir2/sub/file4", 5L);
+    fetchedPathFids.put("/dir3/file5", 6L);
+    cache.putAll(fetchedPathFids, version);
+
+    Map<String, Long> pathFids = cache.getAll(
+        Arrays.asList("/dir2/sub/file4", "/dir3/file5"));
+    assertEquals(Collections.singletonMap("/dir3/file5", 6L), pathFids);
+  }
+
+  @Test
+  public void testCountEvictions() {
+    PathFidCache smallCache = new PathFidCache(2);
+    for (long i = 0; i < 5; i++) {
+      smallCache.putAll(Collections.singletonMap("/file" + i, i), smallCache.version());
+    }
+
+    assertEquals(2, smallCache.size());
+    assertEquals(3, smallCache.stats().evictionCount());
+  }
+
+  @Test
+  public void testDisabledCache() {
+    PathFidCache disabledCache = new PathFidCache(0);
+    disabledCache.putAll(Collections.singletonMap("/file", 1L), disabledCache.version());
+
+    assertTrue(disabledCache.getAll(Collections.singletonList("/file")).isEmpty());
+  }
+}
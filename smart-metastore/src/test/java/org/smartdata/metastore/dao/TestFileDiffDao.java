@@ -166,6 +166,32 @@ public void testUpdate() {
     Assert.assertEquals(fileDiff2, fileDiffDao.getById(2));
   }
 
+  @Test
+  public void testGetPendingDiffsAfter() {
+    FileDiff[] fileDiffs = new FileDiff[4];
+    for (int i = 0; i < fileDiffs.length; i++) {
+      fileDiffs[i] = new FileDiff();
+      fileDiffs[i].setDiffId(i + 1);
+      fileDiffs[i].setRuleId(1);
+      fileDiffs[i].setParameters(new HashMap<>());
+      fileDiffs[i].setSrc("src" + i);
+      fileDiffs[i].setState(FileDiffState.PENDING);
+      fileDiffs[i].setDiffType(FileDiffType.APPEND);
+      fileDiffs[i].setCreateTime(1);
+    }
+    fileDiffDao.insert(fileDiffs);
+    fileDiffDao.update(2, FileDiffState.APPLIED);
+
+    List<FileDiff> pendingDiffs = fileDiffDao.getPendingDiffsAfter(0, 2);
+    assertEquals(2, pendingDiffs.size());
+    assertEquals(1, pendingDiffs.get(0).getDiffId());
+    assertEquals(3, pendingDiffs.get(1).getDiffId());
+
+    pendingDiffs = fileDiffDao.getPendingDiffsAfter(3, 2);
+    assertEquals(1, pendingDiffs.size());
+    assertEquals(4, pendingDiffs.get(0).getDiffId());
+  }
+
   @Test
   public void testDeleteUselessRecords() {
     FileDiff[] fileDiffs = new FileDiff[2];
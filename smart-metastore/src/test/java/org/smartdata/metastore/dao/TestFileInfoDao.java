@@ -23,6 +23,7 @@
 import org.smartdata.metastore.TestDaoBase;
 import org.smartdata.model.FileInfo;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -99,4 +100,20 @@ public void testInsertUpdateFiles() throws Exception {
     fileInfo.setStoragePolicy((byte) 10);
     Assert.assertTrue(file.equals(fileInfo));
   }
+
+  @Test
+  public void testBulkInsertSpecialSymbols() throws Exception {
+    FileInfo[] fileInfos = {
+        new FileInfo("/dir\twith\ttabs", 1L, 10L, false, (short) 1, 128L,
+            100L, 100L, (short) 420, "root", "admin", (byte) 0, (byte) 0),
+        new FileInfo("/dir\nwith\\slashes", 2L, 0L, true, (short) 0, 0L,
+            200L, 200L, (short) 493, null, "admin", (byte) 0, (byte) 0)
+    };
+    fileInfoDao.insert(fileInfos);
+
+    List<FileInfo> storedFiles = fileInfoDao.getAll();
+    Assert.assertEquals(2, storedFiles.size());
+    Assert.assertTrue(storedFiles.containsAll(Arrays.asList(fileInfos)));
+    Assert.assertEquals(fileInfos[1], fileInfoDao.getByPath("/dir\nwith\\slashes"));
+  }
 }
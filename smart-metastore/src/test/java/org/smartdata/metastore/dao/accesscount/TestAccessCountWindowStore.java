@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.dao.accesscount;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smartdata.metastore.TestDaoBase;
+import org.smartdata.metastore.accesscount.AccessCountWindowStore;
+import org.smartdata.metastore.model.AggregatedAccessCounts;
+import org.smartdata.metastore.transaction.TransactionRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestAccessCountWindowStore extends TestDaoBase {
+  private static final String TABLE = "VIR_ACC_CNT_TAB_10000";
+
+  private AccessCountWindowStore windowStore;
+  private JdbcTemplate jdbcTemplate;
+
+  @Before
+  public void setup() {
+    windowStore = new AccessCountWindowStore(druidPool.getDataSource(),
+        new TransactionRunner(metaStore.transactionManager()), 1000L);
+    jdbcTemplate = new JdbcTemplate(druidPool.getDataSource());
+  }
+
+  @Test
+  public void testIncrementalRefresh() throws Exception {
+    long currentTimeMs = System.currentTimeMillis();
+    metaStore.accessCountEventDao().insert(Arrays.asList(
+        new AggregatedAccessCounts(1L, 2L, currentTimeMs - 9000),
+        new AggregatedAccessCounts(2L, 1L, currentTimeMs - 500)));
+
+    windowStore.refresh(TABLE, 10000L, currentTimeMs);
+    Map<Long, Long> expectedCounts = new HashMap<>();
+    expectedCounts.put(1L, 2L);
+    expectedCounts.put(2L, 1L);
+    assertEquals(expectedCounts, getAccessCounts());
+
+    // access to the tail of the window saved with delay
+    metaStore.accessCountEventDao().insert(Arrays.asList(
+        new AggregatedAccessCounts(2L, 3L, currentTimeMs - 200),
+        new AggregatedAccessCounts(3L, 1L, currentTimeMs + 2000)));
+
+    windowStore.refresh(TABLE, 10000L, currentTimeMs + 3000);
+    expectedCounts.clear();
+    expectedCounts.put(2L, 4L);
+    expectedCounts.put(3L, 1L);
+    assertEquals(expectedCounts, getAccessCounts());
+  }
+
+  @Test
+  public void testRebuildAfterInterval() throws Exception {
+    long currentTimeMs = System.currentTimeMillis();
+    metaStore.accessCountEventDao().insert(Arrays.asList(
+        new AggregatedAccessCounts(1L, 2L, currentTimeMs - 3000),
+        new AggregatedAccessCounts(2L, 1L, currentTimeMs - 2000)));
+    windowStore.refresh(TABLE, 10000L, currentTimeMs);
+
+    metaStore.accessCountEventDao().insert(Arrays.asList(
+        new AggregatedAccessCounts(2L, 5L, currentTimeMs + 9000)));
+    windowStore.refresh(TABLE, 10000L, currentTimeMs + 12000);
+
+    Map<Long, Long> expectedCounts = new HashMap<>();
+    expectedCounts.put(2L, 5L);
+    assertEquals(expectedCounts, getAccessCounts());
+  }
+
+  private Map<Long, Long> getAccessCounts() {
+    Map<Long, Long> accessCounts = new HashMap<>();
+    jdbcTemplate.query("SELECT fid, count FROM " + TABLE,
+        rs -> {
+          accessCounts.put(rs.getLong("fid"), rs.getLong("count"));
+        });
+    return accessCounts;
+  }
+}
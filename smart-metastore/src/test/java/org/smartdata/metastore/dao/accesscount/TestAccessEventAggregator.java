@@ -20,6 +20,7 @@
 import org.junit.Before;
 import org.junit.Test;
 import org.smartdata.metastore.TestDaoBase;
+import org.smartdata.metastore.accesscount.AccessEventAggregatorMetrics;
 import org.smartdata.metastore.accesscount.DbAccessEventAggregator;
 import org.smartdata.metastore.accesscount.FileAccessManager;
 import org.smartdata.metastore.accesscount.failover.AccessCountContext;
@@ -98,6 +99,38 @@ public void testAggregateEvents() throws Exception {
         fileAccessInfos.getItems());
   }
 
+  @Test
+  public void testSaveSingleRowPerBucket() throws Exception {
+    aggregator = new DbAccessEventAggregator(metaStore.fileInfoDao(),
+        dbTableManager, new Failover<AccessCountContext>(){},
+        1000L, new AccessEventAggregatorMetrics(), metaStore.pathFidCache());
+
+    long currentTimeMs = System.currentTimeMillis();
+    long bucketStart = currentTimeMs - currentTimeMs % 1000;
+    aggregator.aggregate(Arrays.asList(
+        new FileAccessEvent("/file1", bucketStart),
+        new FileAccessEvent("/file1", bucketStart + 100),
+        new FileAccessEvent("/file2", bucketStart + 200),
+        new FileAccessEvent("/file1", bucketStart + 999)));
+    aggregator.aggregate(Arrays.asList(
+        new FileAccessEvent("/file1", bucketStart + 1000, "", 3),
+        new FileAccessEvent("", bucketStart + 2000)));
+
+    assertEquals(3L, (long) metaStore.queryForLong("SELECT count(*) FROM file_access"));
+    assertEquals(3, aggregator.getMetrics().getRowsSaved());
+    assertEquals(7, aggregator.getMetrics().getAccessesSaved());
+
+    SearchResult<FileAccessInfo> fileAccessInfos =
+        dbTableManager.search(FileAccessInfoSearchRequest.noFilters(),
+            PageRequest.<FileAccessInfoSortField>builder()
+                .addSorting(FileAccessInfoSortField.FID, Sorting.Order.ASC)
+                .build());
+    assertEquals(Arrays.asList(
+            new FileAccessInfo(FILE_PATH_IDS.get("/file1"), "/file1", 6, bucketStart + 1000),
+            new FileAccessInfo(FILE_PATH_IDS.get("/file2"), "/file2", 1, bucketStart + 200)),
+        fileAccessInfos.getItems());
+  }
+
   private FileInfo[] testFileInfos() {
     return FILE_PATH_IDS.entrySet()
         .stream()
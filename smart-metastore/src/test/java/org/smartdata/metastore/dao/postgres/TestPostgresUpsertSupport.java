@@ -21,6 +21,7 @@
 
 import javax.sql.DataSource;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -59,4 +60,24 @@ public void generateSqlTemplate() {
 
     assertEquals(expectedSqlTemplate, sqlTemplate);
   }
+
+  @Test
+  public void generateMultiRowSqlTemplate() {
+    DataSource dataSource = mock(DataSource.class);
+    PostgresUpsertSupport upsertSupport = new PostgresUpsertSupport(dataSource, "table");
+
+    String sqlTemplate = upsertSupport.generateMultiRowSqlTemplate(
+        Arrays.asList("primaryKey", "intField", "strField"), 2, "primaryKey");
+
+    String expectedSqlTemplate =
+        "INSERT INTO table(primaryKey, intField, strField)\n"
+            + "VALUES (?, ?, ?),\n"
+            + "(?, ?, ?)\n"
+            + "ON CONFLICT (primaryKey)\n"
+            + "DO UPDATE SET primaryKey = EXCLUDED.primaryKey,\n"
+            + "intField = EXCLUDED.intField,\n"
+            + "strField = EXCLUDED.strField";
+
+    assertEquals(expectedSqlTemplate, sqlTemplate);
+  }
 }
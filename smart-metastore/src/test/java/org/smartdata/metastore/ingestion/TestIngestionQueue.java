@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metastore.ingestion;
+
+import org.junit.Test;
+import org.smartdata.model.FileInfo;
+import org.smartdata.model.FileInfoBatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestIngestionQueue {
+
+  @Test
+  public void testAdaptBatchSize() {
+    IngestionQueue queue = new IngestionQueue(10, 35, 4);
+    assertEquals(10, queue.getBatchSize());
+
+    queue.onBatchInserted(10, 10L);
+    assertEquals(20, queue.getBatchSize());
+    queue.onBatchInserted(20, 10L);
+    assertEquals(35, queue.getBatchSize());
+
+    // partially filled batches are ignored
+    queue.onBatchInserted(5, IngestionQueue.TARGET_INSERT_TIME_MS * 10);
+    assertEquals(35, queue.getBatchSize());
+
+    queue.onBatchInserted(35, IngestionQueue.TARGET_INSERT_TIME_MS * 10);
+    assertEquals(17, queue.getBatchSize());
+    queue.onBatchInserted(17, IngestionQueue.TARGET_INSERT_TIME_MS);
+    assertEquals(17, queue.getBatchSize());
+    queue.onBatchInserted(17, IngestionQueue.TARGET_INSERT_TIME_MS * 10);
+    assertEquals(10, queue.getBatchSize());
+  }
+
+  @Test
+  public void testDrain() throws Exception {
+    IngestionQueue queue = new IngestionQueue(10, 10, 4);
+    FileInfoBatch batch = queue.newBatch();
+    batch.add(FileInfo.newBuilder().setPath("/file").build());
+    queue.put(batch);
+    // empty batches are skipped
+    queue.put(queue.newBatch());
+    assertEquals(1, queue.getPendingBatches());
+
+    queue.finishProducing();
+    assertFalse(queue.isDrained());
+    assertEquals(batch, queue.poll(0));
+    assertTrue(queue.isDrained());
+    assertNull(queue.poll(0));
+  }
+
+  @Test
+  public void testOfferToFullQueue() {
+    IngestionQueue queue = new IngestionQueue(10, 10, 1);
+    FileInfoBatch batch = queue.newBatch();
+    batch.add(FileInfo.newBuilder().setPath("/file").build());
+    assertTrue(queue.offer(batch));
+    assertFalse(queue.offer(batch));
+    // empty batches are skipped
+    assertTrue(queue.offer(queue.newBatch()));
+    assertEquals(1, queue.getPendingBatches());
+  }
+}
@@ -18,11 +18,14 @@
 package org.smartdata.metrics;
 
 /**
- * A file access event.
+ * A file access event. A single event may represent several accesses
+ * of the same file coalesced on the client side, in which case the
+ * timestamp is the time of the last of them.
  */
 public class FileAccessEvent implements DataAccessEvent {
   private final String path;
   private final String user;
+  private final int accessCount;
   private long timeStamp;
 
   public FileAccessEvent(String path) {
@@ -34,9 +37,14 @@ public FileAccessEvent(String path, long timestamp) {
   }
 
   public FileAccessEvent(String path, long timeStamp, String user) {
+    this(path, timeStamp, user, 1);
+  }
+
+  public FileAccessEvent(String path, long timeStamp, String user, int accessCount) {
     this.path = path;
     this.timeStamp = timeStamp;
     this.user = user;
+    this.accessCount = accessCount;
   }
 
   public FileAccessEvent(String path, String user) {
@@ -58,6 +66,14 @@ public long getFileId() {
     return 0;
   }
 
+  /**
+   * Get the number of file accesses represented by this event.
+   * @return access count
+   */
+  public int getAccessCount() {
+    return accessCount;
+  }
+
   @Override
   public String getAccessedBy() {
     return this.user;
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartdata.metrics.impl;
+
+import org.apache.hadoop.metrics2.MetricsSystem;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+
+/**
+ * Registers SSM metrics sources in the Hadoop metrics system, so they are
+ * exported through JMX and configured metrics sinks. Registering a source
+ * with the name of the already registered one replaces the old source,
+ * because the same component can be re-created, e.g. on SSM service restart.
+ */
+public class SmartMetricsSystem {
+
+  private SmartMetricsSystem() {
+  }
+
+  /**
+   * Initializes the metrics system. Should be called once on the process start.
+   */
+  public static void initialize(String processName) {
+    DefaultMetricsSystem.initialize(processName);
+  }
+
+  public static synchronized <T> T register(String name, String description, T source) {
+    MetricsSystem metricsSystem = DefaultMetricsSystem.instance();
+    metricsSystem.unregisterSource(name);
+    return metricsSystem.register(name, description, source);
+  }
+
+  public static synchronized void unregister(String name) {
+    DefaultMetricsSystem.instance().unregisterSource(name);
+  }
+}
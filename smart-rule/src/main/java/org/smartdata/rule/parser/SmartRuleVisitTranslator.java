@@ -888,8 +888,7 @@ public NodeTransResult doGenerateSql(TreeNode root, String tableName) throws IOE
         // TODO: hard code now, abstract later
         if (p.getPropertyName().equals("accessCount")
             || p.getPropertyName().equals("ac")) {
-          String virTab = genAccessCountTable(transCtx == null ? 0 : transCtx.getRuleId(),
-              (Long) realParas.getValues().get(0));
+          String virTab = genAccessCountTable((Long) realParas.getValues().get(0));
           procAcc = true;
           return new NodeTransResult(virTab, realParas.formatParameters());
         }
@@ -900,8 +899,7 @@ public NodeTransResult doGenerateSql(TreeNode root, String tableName) throws IOE
             || p.getPropertyName().equals("acBot")) {
           boolean topFlag = p.getPropertyName().equals("accessCountTop")
               || p.getPropertyName().equals("acTop");
-          String virTab = genAccessCountTable(transCtx == null ? 0 : transCtx.getRuleId(),
-              (Long) realParas.getValues().get(0));
+          String virTab = genAccessCountTable((Long) realParas.getValues().get(0));
           String func = "$@genVirtualAccessCountTable" + (topFlag ? "Top" : "Bottom") + "Value";
           String mStr = virTab + (topFlag ? "_top_" : "_bottom_")
               + realParas.getValues().get(1).toString();
@@ -920,11 +918,11 @@ public NodeTransResult doGenerateSql(TreeNode root, String tableName) throws IOE
     // return new NodeTransResult(tableName, "");
   }
 
-  private String genAccessCountTable(long rid, long interval) {
-    String virTab = "VIR_ACC_CNT_TAB_" + rid + "_" + interval;
+  // access count tables are shared by all rules with the same interval
+  private String genAccessCountTable(long interval) {
+    String virTab = "VIR_ACC_CNT_TAB_" + interval;
     if (!tempTableNames.contains(virTab)) {
       tempTableNames.add(virTab);
-      sqlStatements.add("DROP TABLE IF EXISTS " + virTab + ";");
       sqlStatements.add("$@genVirtualAccessCountTable(" + virTab + ")");
       List<Object> args = new ArrayList<>();
       args.add(Arrays.asList((Long) interval));
@@ -36,6 +36,7 @@
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.List;
 
 /**
  * Implements the rpc calls.
@@ -136,6 +137,13 @@ public void reportFileAccessEvent(FileAccessEvent event)
     ssm.getStatesManager().reportFileAccessEvent(event);
   }
 
+  @Override
+  public void reportFileAccessEvents(List<FileAccessEvent> events)
+      throws IOException {
+    checkIfActive();
+    ssm.getStatesManager().reportFileAccessEvents(events);
+  }
+
   @Override
   public FileState getFileState(String filePath) throws IOException {
     checkIfActive();
@@ -31,6 +31,7 @@
 import org.smartdata.conf.SmartConfKeys;
 import org.smartdata.hdfs.HadoopUtil;
 import org.smartdata.metastore.MetaStore;
+import org.smartdata.metrics.impl.SmartMetricsSystem;
 import org.smartdata.server.cluster.ClusterNodesManager;
 import org.smartdata.server.engine.CmdletManager;
 import org.smartdata.server.engine.RuleManager;
@@ -326,6 +327,7 @@ public static SmartServer launchWith(String[] args, SmartConf conf) throws Excep
   public static void main(String[] args) {
     int errorCode = 0;  // if SSM exit normally then the errorCode is 0
     try {
+      SmartMetricsSystem.initialize("SmartServer");
       final SmartServer inst = launchWith(args, null);
       if (inst != null) {
         Runtime.getRuntime().addShutdownHook(new Thread() {
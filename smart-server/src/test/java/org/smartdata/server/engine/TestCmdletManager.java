@@ -46,6 +46,7 @@
 import org.smartdata.server.engine.cmdlet.CmdletInfoHandler;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.IntStream;
@@ -285,6 +286,23 @@ public void testSubmitEqualUserCmdlets() throws Exception {
     assertEquals(5, actionInfos.size());
   }
 
+  @Test
+  public void testSubmitRuleCmdletsBatch() throws Exception {
+    waitTillSSMExitSafeMode();
+
+    CmdletDescriptor sleepCmdlet = generateCmdletDescriptor("sleep -ms 10000");
+    List<Long> cmdletIds = cmdletManager.submitCmdlets(Arrays.asList(
+        sleepCmdlet,
+        generateCmdletDescriptor("sleep -ms 10000"),
+        generateCmdletDescriptor("sleep -ms 20000")));
+    assertEquals(2, cmdletIds.size());
+
+    // cmdlets of the same rule are tracked until they are finished
+    assertEquals(Collections.emptyList(),
+        cmdletManager.submitCmdlets(Collections.singletonList(sleepCmdlet)));
+    assertEquals(2, actionInfoHandler.listNewCreatedActions(10).size());
+  }
+
   private void safeSubmit(String cmdlet) {
     try {
       cmdletManager.submitCmdlet(cmdlet);